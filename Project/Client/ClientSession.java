@@ -0,0 +1,536 @@
+package Project.Client;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import Project.Common.BinaryPayloadCodec;
+import Project.Common.ConnectionPayload;
+import Project.Common.Payload;
+import Project.Common.PayloadCodec;
+import Project.Common.PayloadType;
+import Project.Common.Phase;
+import Project.Common.PointsPayload;
+import Project.Common.ReadyPayload;
+import Project.Common.RoomAction;
+import Project.Common.RoomDeltaPayload;
+import Project.Common.RoomResultPayload;
+import Project.Common.RoomSnapshotPayload;
+import Project.Common.User;
+
+/**
+ * One connection to the server: the socket, its codec and the state the
+ * server has synced to it (own id, room members, phase).
+ * <p>
+ * Room membership arrives as a RoomSnapshotPayload on join followed by
+ * versioned RoomDeltaPayloads; a gap in the versions triggers a snapshot
+ * request, so the table can't silently drift from the server's.
+ * </p>
+ * <p>
+ * It has no UI and doesn't log, so it can be embedded anywhere. What arrives
+ * is turned into ClientSessionListener events, delivered on the session's
+ * reader thread. Any number of sessions can run in one process; the
+ * Swing/console Client, bots and the load generator are all adapters on top
+ * of this class.
+ * </p>
+ */
+public class ClientSession {
+    private static final ThreadFactory DEFAULT_READER_FACTORY = r -> {
+        Thread thread = new Thread(r, "client-session-reader");
+        thread.setDaemon(true);
+        return thread;
+    };
+
+    private final ThreadFactory readerFactory;
+    private final List<ClientSessionListener> listeners = new CopyOnWriteArrayList<>();
+    private final PayloadCodec codec = new BinaryPayloadCodec();
+    private final ConcurrentHashMap<Long, User> knownClients = new ConcurrentHashMap<>();
+    private final User myUser = new User();
+    private volatile Phase currentPhase = Phase.READY;
+    // while waiting for a snapshot or a missing delta, ask for a snapshot after
+    // this long or once this many deltas are held
+    private static final long SNAPSHOT_RETRY_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final int MAX_HELD_DELTAS = 1024;
+    private volatile long roomVersion = -1; // room state version held, -1 while waiting for a snapshot
+    private String snapshotRoom; // room the last snapshot was for, reader thread only
+    // deltas ahead of roomVersion + 1, by version (reader thread only)
+    private final TreeMap<Long, RoomDeltaPayload> heldDeltas = new TreeMap<>();
+    private long waitingSince = System.nanoTime(); // reader thread only
+    private volatile Socket server;
+    private OutputStream out;
+    private int connectTimeoutMillis = 5000;
+    private final AtomicBoolean disconnected = new AtomicBoolean(false);
+
+    public ClientSession() {
+        this(DEFAULT_READER_FACTORY);
+    }
+
+    /**
+     * @param readerFactory creates the thread that reads from the server (i.e. a
+     *                      small stack size when running thousands of sessions)
+     */
+    public ClientSession(ThreadFactory readerFactory) {
+        this.readerFactory = readerFactory;
+    }
+
+    public void addListener(ClientSessionListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(ClientSessionListener listener) {
+        listeners.remove(listener);
+    }
+
+    public void setConnectTimeoutMillis(int connectTimeoutMillis) {
+        this.connectTimeoutMillis = connectTimeoutMillis;
+    }
+
+    public boolean isConnected() {
+        Socket socket = server;
+        return socket != null && socket.isConnected() && !socket.isClosed() && !disconnected.get();
+    }
+
+    public long getClientId() {
+        return myUser.getClientId();
+    }
+
+    public String getClientName() {
+        return myUser.getClientName();
+    }
+
+    public Phase getCurrentPhase() {
+        return currentPhase;
+    }
+
+    /**
+     * @return the members of the current room as last synced, keyed by client id
+     */
+    public Map<Long, User> getKnownClients() {
+        return Collections.unmodifiableMap(knownClients);
+    }
+
+    /**
+     * Opens the connection, starts reading and sends the name
+     *
+     * @param host
+     * @param port
+     * @param clientName
+     * @throws IOException if the connection can't be made
+     */
+    public void connect(String host, int port, String clientName) throws IOException {
+        if (server != null) {
+            throw new IllegalStateException("ClientSession already connected");
+        }
+        Socket socket = new Socket();
+        try {
+            socket.setTcpNoDelay(true); // small, latency sensitive frames
+            socket.connect(new InetSocketAddress(host, port), connectTimeoutMillis);
+            out = new BufferedOutputStream(socket.getOutputStream());
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+        server = socket;
+        myUser.setClientName(clientName);
+        for (ClientSessionListener listener : listeners) {
+            listener.onConnected(host, port);
+        }
+        readerFactory.newThread(this::listenToServer).start();
+        sendClientName(clientName);
+    }
+
+    // Start send methods
+    private void sendClientName(String name) throws IOException {
+        ConnectionPayload p = new ConnectionPayload();
+        p.setClientName(name);
+        p.setPayloadType(PayloadType.CLIENT_CONNECT);
+        sendToServer(p);
+    }
+
+    public void sendMessage(String message) throws IOException {
+        Payload p = new Payload();
+        p.setPayloadType(PayloadType.MESSAGE);
+        p.setMessage(message);
+        sendToServer(p);
+    }
+
+    /**
+     * @param choice "r", "p" or "s"
+     * @throws IOException
+     */
+    public void sendPick(String choice) throws IOException {
+        Payload p = new Payload();
+        p.setPayloadType(PayloadType.PICK);
+        p.setMessage(choice);
+        sendToServer(p);
+    }
+
+    public void sendReady() throws IOException {
+        ReadyPayload rp = new ReadyPayload();
+        rp.setPayloadType(PayloadType.READY);
+        sendToServer(rp);
+    }
+
+    /**
+     * Asks for the current room's member table again; done automatically when a
+     * missing delta or a snapshot doesn't arrive
+     *
+     * @throws IOException
+     */
+    public void sendSnapshotRequest() throws IOException {
+        Payload p = new Payload();
+        p.setPayloadType(PayloadType.ROOM_SNAPSHOT);
+        sendToServer(p);
+    }
+
+    public void sendStats() throws IOException {
+        Payload p = new Payload();
+        p.setPayloadType(PayloadType.STATS);
+        sendToServer(p);
+    }
+
+    /**
+     * Signs up for (or withdraws from) the lobby's next tournament, or starts it
+     *
+     * @param action "start" to start it, otherwise toggles the sign up
+     * @throws IOException
+     */
+    public void sendTournament(String action) throws IOException {
+        Payload p = new Payload();
+        p.setPayloadType(PayloadType.TOURNAMENT);
+        p.setMessage(action);
+        sendToServer(p);
+    }
+
+    /**
+     * @param query rooms whose name contains this, empty for all
+     * @param page  1 based
+     * @throws IOException
+     */
+    public void sendListRooms(String query, int page) throws IOException {
+        RoomResultPayload p = new RoomResultPayload();
+        p.setMessage(query);
+        p.setOffset((Math.max(1, page) - 1) * RoomResultPayload.PAGE_SIZE);
+        sendToServer(p);
+    }
+
+    public void sendRoomAction(String roomName, RoomAction action) throws IOException {
+        Payload p = new Payload();
+        p.setMessage(roomName);
+        switch (action) {
+            case CREATE:
+                p.setPayloadType(PayloadType.ROOM_CREATE);
+                break;
+            case JOIN:
+                p.setPayloadType(PayloadType.ROOM_JOIN);
+                break;
+            case LEAVE:
+                p.setPayloadType(PayloadType.ROOM_LEAVE);
+                break;
+            case LIST:
+                p.setPayloadType(PayloadType.ROOM_LIST);
+                break;
+        }
+        sendToServer(p);
+    }
+
+    /**
+     * Encodes and writes a payload; ignored if not connected
+     *
+     * @param payload
+     * @throws IOException
+     */
+    public void sendToServer(Payload payload) throws IOException {
+        if (!isConnected()) {
+            return;
+        }
+        try {
+            synchronized (codec) {
+                codec.write(out, payload);
+            }
+        } catch (IOException e) {
+            close("Send failed: " + e.getMessage());
+            throw e;
+        }
+    }
+    // End send methods
+
+    private void listenToServer() {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(server.getInputStream()))) {
+            while (isConnected()) {
+                processPayload(codec.read(in));
+            }
+        } catch (Exception e) {
+            // closed locally, by the server or a broken frame; either way the session is over
+        }
+        close("Server disconnected.");
+    }
+
+    private void processPayload(Payload payload) {
+        for (ClientSessionListener listener : listeners) {
+            listener.onPayload(payload);
+        }
+        switch (payload.getPayloadType()) {
+            case ROOM_SNAPSHOT:
+                applySnapshot((RoomSnapshotPayload) payload);
+                break;
+            case ROOM_DELTA:
+                applyDelta((RoomDeltaPayload) payload);
+                break;
+            case CLIENT_ID: {
+                ConnectionPayload cp = (ConnectionPayload) payload;
+                myUser.setClientId(cp.getClientId());
+                myUser.setClientName(cp.getClientName());
+                for (ClientSessionListener listener : listeners) {
+                    listener.onClientId(cp.getClientId(), cp.getClientName());
+                }
+                break;
+            }
+            case MESSAGE:
+                for (ClientSessionListener listener : listeners) {
+                    listener.onMessage(payload.getClientId(), payload.getMessage());
+                }
+                break;
+            case ROOM_LIST: {
+                RoomResultPayload r = (RoomResultPayload) payload;
+                for (ClientSessionListener listener : listeners) {
+                    listener.onRoomList(r.getRooms(), r.getOffset(), r.getTotal());
+                }
+                break;
+            }
+            case STATS:
+                for (ClientSessionListener listener : listeners) {
+                    listener.onStats(payload.getMessage());
+                }
+                break;
+            case POINTS: {
+                PointsPayload pp = (PointsPayload) payload;
+                User user = knownClients.get(pp.getClientId());
+                if (user != null) {
+                    user.setPoints(pp.getPoints());
+                }
+                if (pp.getClientId() == myUser.getClientId()) {
+                    myUser.setPoints(pp.getPoints());
+                }
+                for (ClientSessionListener listener : listeners) {
+                    listener.onPoints(pp.getClientId(), pp.getPoints());
+                }
+                break;
+            }
+            default:
+                for (ClientSessionListener listener : listeners) {
+                    listener.onUnhandled(payload);
+                }
+                break;
+        }
+    }
+
+    private void applySnapshot(RoomSnapshotPayload snapshot) {
+        if (roomVersion >= 0 && snapshot.getVersion() < roomVersion
+                && snapshot.getMessage() != null && snapshot.getMessage().equals(snapshotRoom)) {
+            return; // answers an older request, the table is already past it
+        }
+        snapshotRoom = snapshot.getMessage();
+        roomVersion = snapshot.getVersion();
+        knownClients.clear();
+        for (ClientSessionListener listener : listeners) {
+            listener.onUserListReset();
+        }
+        for (RoomSnapshotPayload.Member member : snapshot.getMembers()) {
+            User user = new User();
+            user.setClientId(member.getClientId());
+            user.setClientName(member.getClientName());
+            user.setReady(member.isReady());
+            user.setTookTurn(member.didTakeTurn());
+            knownClients.put(member.getClientId(), user);
+            // our own entry is the join itself, the rest is existing state
+            boolean quiet = member.getClientId() != myUser.getClientId();
+            for (ClientSessionListener listener : listeners) {
+                listener.onClientJoined(member.getClientId(), member.getClientName(), quiet);
+                if (member.isReady()) {
+                    listener.onReady(member.getClientId(), true, true);
+                }
+                if (member.didTakeTurn()) {
+                    listener.onTurn(member.getClientId(), true, true);
+                }
+            }
+        }
+        if (snapshot.getPhase() != null) {
+            // always announced, a joining client acts on the phase it walks into
+            currentPhase = snapshot.getPhase();
+            for (ClientSessionListener listener : listeners) {
+                listener.onPhase(currentPhase);
+            }
+        }
+        applyHeldDeltas();
+    }
+
+    private void applyDelta(RoomDeltaPayload delta) {
+        long version = delta.getVersion();
+        if (roomVersion >= 0 && version <= roomVersion) {
+            return; // already part of the table we have
+        }
+        if (roomVersion >= 0 && version == roomVersion + 1) {
+            applyChange(delta);
+            applyHeldDeltas();
+            return;
+        }
+        // early: the snapshot is on its way, or a delta in between hasn't arrived
+        // yet (the lobby doesn't order concurrent changes on the wire)
+        if (heldDeltas.isEmpty()) {
+            // the clock starts with the first early delta, not when the wait began
+            // (a slow connect would otherwise look like a lost snapshot)
+            waitingSince = System.nanoTime();
+        }
+        heldDeltas.put(version, delta);
+        // if deltas keep coming without the snapshot or the gap filling, a frame was
+        // lost (i.e. dropped from a full server queue) so ask for the whole table
+        if (heldDeltas.size() >= MAX_HELD_DELTAS) {
+            heldDeltas.clear(); // only the snapshot helps now
+            requestSnapshot();
+        } else if (System.nanoTime() - waitingSince >= SNAPSHOT_RETRY_NANOS) {
+            requestSnapshot();
+        }
+    }
+
+    /**
+     * Applies held deltas that now follow on from roomVersion and drops the ones
+     * it already covers
+     */
+    private void applyHeldDeltas() {
+        RoomDeltaPayload next;
+        while (roomVersion >= 0 && (next = heldDeltas.remove(roomVersion + 1)) != null) {
+            applyChange(next);
+        }
+        if (roomVersion >= 0) {
+            heldDeltas.headMap(roomVersion, true).clear();
+        }
+    }
+
+    private void applyChange(RoomDeltaPayload delta) {
+        roomVersion = delta.getVersion();
+        long clientId = delta.getClientId();
+        switch (delta.getChange()) {
+            case JOIN: {
+                User user = new User();
+                user.setClientId(clientId);
+                user.setClientName(delta.getClientName());
+                knownClients.put(clientId, user);
+                for (ClientSessionListener listener : listeners) {
+                    listener.onClientJoined(clientId, delta.getClientName(), false);
+                }
+                break;
+            }
+            case LEAVE: {
+                User user = knownClients.remove(clientId);
+                String name = user == null ? null : user.getClientName();
+                for (ClientSessionListener listener : listeners) {
+                    listener.onClientLeft(clientId, name);
+                }
+                if (clientId == myUser.getClientId()) {
+                    waitForSnapshot(); // left; the next room sends its own snapshot
+                }
+                break;
+            }
+            case READY: {
+                User user = knownClients.get(clientId);
+                if (user != null) {
+                    user.setReady(delta.getValue());
+                }
+                for (ClientSessionListener listener : listeners) {
+                    listener.onReady(clientId, delta.getValue(), false);
+                }
+                break;
+            }
+            case TURN: {
+                User user = knownClients.get(clientId);
+                if (user != null) {
+                    user.setTookTurn(delta.getValue());
+                }
+                for (ClientSessionListener listener : listeners) {
+                    listener.onTurn(clientId, delta.getValue(), false);
+                }
+                break;
+            }
+            case RESET_READY:
+                knownClients.values().forEach(user -> user.setReady(false));
+                for (ClientSessionListener listener : listeners) {
+                    listener.onReadyReset();
+                }
+                break;
+            case RESET_TURN:
+                knownClients.values().forEach(user -> user.setTookTurn(false));
+                for (ClientSessionListener listener : listeners) {
+                    listener.onTurnReset();
+                }
+                break;
+            case PHASE:
+                currentPhase = delta.getPhase();
+                for (ClientSessionListener listener : listeners) {
+                    listener.onPhase(currentPhase);
+                }
+                break;
+        }
+    }
+
+    private void waitForSnapshot() {
+        roomVersion = -1;
+        heldDeltas.clear(); // anything held belongs to the room being left
+        waitingSince = System.nanoTime();
+    }
+
+    private void requestSnapshot() {
+        waitingSince = System.nanoTime();
+        try {
+            sendSnapshotRequest();
+        } catch (IOException e) {
+            // the session closed itself
+        }
+    }
+
+    /**
+     * @return the room state version the member table reflects, -1 while waiting
+     *         for a snapshot
+     */
+    public long getRoomVersion() {
+        return roomVersion;
+    }
+
+    /**
+     * Closes the connection; listeners get onDisconnected once
+     */
+    public void close() {
+        close("Disconnected.");
+    }
+
+    private void close(String reason) {
+        if (!disconnected.compareAndSet(false, true)) {
+            return;
+        }
+        Socket socket = server;
+        if (socket == null) {
+            return; // never connected
+        }
+        try {
+            socket.close(); // also ends the reader's blocking read
+        } catch (IOException e) {
+            // already closed
+        }
+        for (ClientSessionListener listener : listeners) {
+            listener.onDisconnected(reason);
+        }
+    }
+}
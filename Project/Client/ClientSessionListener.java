@@ -0,0 +1,117 @@
+package Project.Client;
+
+import java.util.List;
+
+import Project.Common.Payload;
+import Project.Common.Phase;
+
+/**
+ * Receives a ClientSession's events. Every method has an empty default so an
+ * adapter only overrides what it shows.
+ * <p>
+ * Events are delivered on the session's reader thread, in the order the
+ * server sent them. UI adapters must hand them over to their own thread (i.e.
+ * SwingUtilities.invokeLater) and should return quickly.
+ * </p>
+ */
+public interface ClientSessionListener {
+
+    /**
+     * Every payload as received, before it's turned into the events below
+     *
+     * @param payload
+     */
+    default void onPayload(Payload payload) {
+    }
+
+    default void onConnected(String host, int port) {
+    }
+
+    /**
+     * @param reason why the connection ended (closed locally, server gone, ...)
+     */
+    default void onDisconnected(String reason) {
+    }
+
+    /**
+     * The server accepted the name and assigned this session's id
+     *
+     * @param clientId
+     * @param clientName possibly changed by the server
+     */
+    default void onClientId(long clientId, String clientName) {
+    }
+
+    /**
+     * The server is about to send a new room's member list
+     */
+    default void onUserListReset() {
+    }
+
+    /**
+     * @param clientId   may be this session's own id
+     * @param clientName
+     * @param quiet      true when syncing existing members rather than a new join
+     */
+    default void onClientJoined(long clientId, String clientName, boolean quiet) {
+    }
+
+    default void onClientLeft(long clientId, String clientName) {
+    }
+
+    default void onPhase(Phase phase) {
+    }
+
+    /**
+     * @param clientId
+     * @param isReady
+     * @param quiet    true when syncing existing state rather than a change
+     */
+    default void onReady(long clientId, boolean isReady, boolean quiet) {
+    }
+
+    default void onReadyReset() {
+    }
+
+    /**
+     * @param clientId
+     * @param tookTurn
+     * @param quiet    true when syncing existing state rather than a change
+     */
+    default void onTurn(long clientId, boolean tookTurn, boolean quiet) {
+    }
+
+    default void onTurnReset() {
+    }
+
+    /**
+     * @param senderId Constants.DEFAULT_CLIENT_ID for server/room messages
+     * @param message
+     */
+    default void onMessage(long senderId, String message) {
+    }
+
+    /**
+     * @param rooms  one page of room names
+     * @param offset position of the first room in the full result
+     * @param total  number of matching rooms
+     */
+    default void onRoomList(List<String> rooms, int offset, int total) {
+    }
+
+    default void onStats(String text) {
+    }
+
+    /**
+     * @param clientId
+     * @param points   the player's total, kept by the server across games
+     */
+    default void onPoints(long clientId, int points) {
+    }
+
+    /**
+     * @param payload a payload type the session doesn't turn into an event
+     */
+    default void onUnhandled(Payload payload) {
+    }
+}
@@ -0,0 +1,310 @@
+package Project.Client;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Locale;
+import java.util.Scanner;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import Project.Common.Command;
+import Project.Common.LoggerUtil;
+import Project.Common.Payload;
+import Project.Common.Phase;
+import Project.Common.RoomAction;
+import Project.Common.RoomResultPayload;
+import Project.Common.TextFX;
+import Project.Common.TextFX.Color;
+import Project.Common.User;
+
+/**
+ * Text front end for a ClientSession: parses the slash commands, sends
+ * everything else as chat and renders the session's events as lines of text.
+ * <p>
+ * Where the lines go is up to the caller; the Swing Client hands in its log
+ * panel, main() here prints to the console. A session only lives for one
+ * connection, so /connect (or connect()) starts a fresh one and the extra
+ * listeners are carried over.
+ * </p>
+ */
+public class ConsoleClient implements ClientSessionListener {
+    // Regex for /connect
+    final Pattern ipAddressPattern = Pattern
+            .compile("/connect\\s+(\\d{1,3}\\.\\d{1,3}\\.\\d{1,3}\\.\\d{1,3}:\\d{3,5})");
+    final Pattern localhostPattern = Pattern.compile("/connect\\s+(localhost:\\d{3,5})");
+
+    private final Consumer<String> output;
+    private final List<ClientSessionListener> sessionListeners = new CopyOnWriteArrayList<>();
+    private volatile ClientSession session = new ClientSession();
+    private volatile String clientName;
+    private volatile boolean isRunning = true;
+
+    /**
+     * @param output receives every line to show; called from the session's
+     *               reader thread as well as the caller's
+     */
+    public ConsoleClient(Consumer<String> output) {
+        this.output = output;
+    }
+
+    private void error(String message) {
+        LoggerUtil.INSTANCE.severe(TextFX.colorize(message, Color.RED));
+        output.accept("ERROR: " + message);
+    }
+
+    /**
+     * @return the current session, a fresh unconnected one before the first
+     *         connect
+     */
+    public ClientSession getSession() {
+        return session;
+    }
+
+    /**
+     * Adds a listener to the current session and every later one
+     *
+     * @param listener
+     */
+    public void addSessionListener(ClientSessionListener listener) {
+        sessionListeners.add(listener);
+        session.addListener(listener);
+    }
+
+    public void setClientName(String clientName) {
+        this.clientName = clientName;
+    }
+
+    /**
+     * Drops any current connection and connects with a new session
+     *
+     * @param host
+     * @param port
+     * @return true if connected
+     */
+    public boolean connect(String host, int port) {
+        if (clientName == null || clientName.isEmpty()) {
+            error("Use /name <yourname> first");
+            return false;
+        }
+        session.close();
+        ClientSession next = new ClientSession();
+        next.addListener(this);
+        sessionListeners.forEach(next::addListener);
+        session = next;
+        try {
+            next.connect(host, port, clientName);
+            return true;
+        } catch (IOException e) {
+            error("Connection failed: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private boolean isConnection(String text) {
+        Matcher ip = ipAddressPattern.matcher(text);
+        Matcher local = localhostPattern.matcher(text);
+        return ip.matches() || local.matches();
+    }
+
+    /**
+     * Runs a slash command, or sends the line as a chat message
+     *
+     * @param line
+     * @throws IOException if sending failed
+     */
+    public void handleLine(String line) throws IOException {
+        if (!processClientCommand(line)) {
+            session.sendMessage(line);
+        }
+    }
+
+    private boolean processClientCommand(String text) throws IOException {
+        boolean wasCommand = false;
+
+        if (!text.startsWith("/")) {
+            return false;
+        }
+        if (isConnection(text)) {
+            String[] parts = text.trim().replaceAll(" +", " ").split(" ")[1].split(":");
+            connect(parts[0], Integer.parseInt(parts[1]));
+            return true;
+        }
+        text = text.substring(1);
+
+        if (text.startsWith("name")) {
+            text = text.replace("name", "").trim();
+            clientName = text;
+            output.accept("Name set to: " + text);
+            wasCommand = true;
+        } else if (text.startsWith(Command.CREATE_ROOM.command)) {
+            text = text.replace(Command.CREATE_ROOM.command, "").trim();
+            session.sendRoomAction(text, RoomAction.CREATE);
+            wasCommand = true;
+        } else if (text.startsWith(Command.JOIN_ROOM.command)) {
+            text = text.replace(Command.JOIN_ROOM.command, "").trim();
+            session.sendRoomAction(text, RoomAction.JOIN);
+            wasCommand = true;
+        } else if (text.startsWith(Command.LEAVE_ROOM.command)) {
+            session.sendRoomAction("lobby", RoomAction.LEAVE);
+            wasCommand = true;
+        } else if (text.startsWith(Command.LIST_ROOMS.command)) {
+            // /listrooms [query] [page]
+            text = text.replace(Command.LIST_ROOMS.command, "").trim();
+            int page = 1;
+            int lastSpace = text.lastIndexOf(' ');
+            String lastWord = text.substring(lastSpace + 1);
+            if (lastWord.matches("\\d+")) {
+                page = Math.max(1, Integer.parseInt(lastWord));
+                text = lastSpace < 0 ? "" : text.substring(0, lastSpace).trim();
+            }
+            session.sendListRooms(text, page);
+            wasCommand = true;
+        } else if (text.startsWith("pick")) {
+            String choice = text.replace("pick", "").trim();
+            if (choice.isEmpty()) {
+                error("Use /pick r, /pick p or /pick s");
+            } else {
+                session.sendPick(choice.substring(0, 1).toLowerCase(Locale.ROOT));
+            }
+            wasCommand = true;
+        } else if (text.startsWith(Command.TOURNAMENT.command)) {
+            // /tournament toggles the sign up, /tournament start begins it
+            session.sendTournament(text.replace(Command.TOURNAMENT.command, "").trim());
+            wasCommand = true;
+        } else if (text.equalsIgnoreCase(Command.STATS.command)) {
+            session.sendStats();
+            wasCommand = true;
+        } else if (text.equalsIgnoreCase("ready")) {
+            session.sendReady();
+            wasCommand = true;
+        } else if (text.equalsIgnoreCase("quit")) {
+            isRunning = false;
+            session.close();
+            wasCommand = true;
+        }
+        return wasCommand;
+    }
+
+    /**
+     * Reads commands from stdin until /quit or the input ends
+     *
+     * @return true if it ended because of /quit
+     */
+    public boolean listenToInput() {
+        try (Scanner sc = new Scanner(System.in)) {
+            while (isRunning) {
+                String line = sc.nextLine();
+                try {
+                    handleLine(line);
+                } catch (IOException e) {
+                    error("Send failed: " + e.getMessage());
+                }
+            }
+        } catch (Exception e) {
+            // no console attached or input closed
+            LoggerUtil.INSTANCE.fine(() -> "Console input ended: " + e);
+        }
+        return !isRunning;
+    }
+
+    // Start session events, rendered as text
+    @Override
+    public void onConnected(String host, int port) {
+        output.accept("Connected to server.");
+    }
+
+    @Override
+    public void onDisconnected(String reason) {
+        output.accept(reason);
+    }
+
+    @Override
+    public void onClientId(long clientId, String clientName) {
+        output.accept("Assigned client ID: " + clientId);
+    }
+
+    @Override
+    public void onClientJoined(long clientId, String clientName, boolean quiet) {
+        if (quiet) {
+            return;
+        }
+        output.accept(clientId == session.getClientId() ? "Joined room."
+                : String.format("%s#%s joined the room", clientName, clientId));
+    }
+
+    @Override
+    public void onClientLeft(long clientId, String clientName) {
+        output.accept(clientId == session.getClientId() ? "Left room."
+                : String.format("%s#%s left the room", clientName, clientId));
+    }
+
+    @Override
+    public void onPhase(Phase phase) {
+        output.accept("Phase: " + phase);
+    }
+
+    @Override
+    public void onReady(long clientId, boolean isReady, boolean quiet) {
+        if (!quiet) {
+            output.accept("Ready status: client " + clientId + " = " + isReady);
+        }
+    }
+
+    @Override
+    public void onMessage(long senderId, String message) {
+        output.accept(message);
+    }
+
+    @Override
+    public void onRoomList(List<String> rooms, int offset, int total) {
+        if (rooms.isEmpty()) {
+            output.accept(total == 0 ? "No rooms found" : "No rooms on this page");
+            return;
+        }
+        int page = offset / RoomResultPayload.PAGE_SIZE + 1;
+        int pages = (total + RoomResultPayload.PAGE_SIZE - 1) / RoomResultPayload.PAGE_SIZE;
+        output.accept(String.format("Rooms (page %s of %s, %s total):\n%s", page, pages, total,
+                String.join("\n", rooms)));
+    }
+
+    @Override
+    public void onPoints(long clientId, int points) {
+        if (clientId == session.getClientId()) {
+            output.accept("Your points: " + points);
+            return;
+        }
+        User user = session.getKnownClients().get(clientId);
+        output.accept(String.format("%s#%s has %s points", user == null ? "client" : user.getClientName(), clientId,
+                points));
+    }
+
+    @Override
+    public void onStats(String text) {
+        output.accept("Server stats:\n" + text);
+    }
+
+    @Override
+    public void onUnhandled(Payload payload) {
+        output.accept("Unhandled payload: " + payload.getPayloadType());
+    }
+    // End session events
+
+    /**
+     * Console only client, without the Swing frame
+     *
+     * @param args
+     */
+    public static void main(String[] args) {
+        LoggerUtil.LoggerConfig config = new LoggerUtil.LoggerConfig();
+        config.setFileSizeLimit(2048 * 1024);
+        config.setFileCount(1);
+        config.setLogLocation("client.log");
+        LoggerUtil.INSTANCE.setConfig(config);
+
+        ConsoleClient client = new ConsoleClient(System.out::println);
+        client.listenToInput();
+        client.getSession().close();
+    }
+}
@@ -0,0 +1,600 @@
+package Project.Client;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+import Project.Common.Constants;
+import Project.Common.Payload;
+import Project.Common.Phase;
+import Project.Common.RoomAction;
+import Project.Server.metrics.Histogram;
+
+/**
+ * Headless load generator: many simulated players in one JVM, speaking the
+ * real wire protocol.
+ * <p>
+ * Each simulated client connects, sends CLIENT_CONNECT, waits for the lobby,
+ * then joins a GameRoom with room-size - 1 others (the first of each group
+ * creates it). In the room it readies whenever the phase is READY, picks rock,
+ * paper or scissors at the start of every round, and chats at the configured
+ * rate. Its own chat messages come back through Room.relay(), which gives the
+ * round-trip time. Rejections the server sends back (wrong phase, not ready,
+ * unknown room, ...) and unexpected disconnects are counted as errors.
+ * </p>
+ *
+ * <pre>
+ * java Project.Client.LoadGenerator --port 3000 --clients 2000 --room-size 4 --duration 90 --chat-rate 1
+ * </pre>
+ * <p>
+ * With --mode idle the clients only connect and sit in the lobby. Once they
+ * are all there they're held for --duration seconds, then the server's thread
+ * count and resident memory (from its stats port, before and after) are
+ * reported per connection. The thread and virtual transports run a reader and
+ * a writer thread per connection, nio none. jvm.threads.live only counts
+ * platform threads, so virtual threads are compared by memory; on a JVM older
+ * than 21 the virtual transport falls back to platform threads. The report
+ * says which kind the server actually ran.
+ * </p>
+ *
+ * Note: the server starts a session 30 seconds after the first READY in a room,
+ * so runs shorter than that only exercise connects, joins and chat.
+ * This is just for testing/demo
+ */
+public class LoadGenerator {
+    // server replies (from DEFAULT_CLIENT_ID) that mean a request was rejected
+    private static final Pattern REJECTION = Pattern.compile(
+            "please try again later|It's not your turn|already exists|doesn't exist|You can't|You must"
+                    + "|You have already|You can only");
+    // relayed as "Room[name]: Round 2 has started"
+    private static final Pattern ROUND_STARTED = Pattern.compile("Round \\d+ has started$");
+    private static final String RTT_MARKER = "rtt ";
+    private static final String[] CHOICES = { "r", "p", "s" };
+
+    private String host = "localhost";
+    private int port = 3000;
+    private int clientCount = 100;
+    private int roomSize = 4;
+    private int durationSeconds = 60;
+    private double chatRate = 0.5; // messages per second per client
+    private int connectRate = 200; // new connections per second
+    private int thinkMillis = 20; // delay before READY/PICK
+    private int statsPort = -1; // server metrics side port, defaults to port + 1
+    private boolean idle = false; // connect and hold, no rooms, no chat
+
+    private final String runId = Long.toString(System.currentTimeMillis() % 1_000_000_000L, 36);
+    private ScheduledExecutorService scheduler;
+    private final List<SimClient> clients = new ArrayList<>();
+    private volatile boolean stopping = false;
+
+    private final Histogram setupNanos = new Histogram("setup");
+    private final Histogram joinNanos = new Histogram("join");
+    private final Histogram rttNanos = new Histogram("rtt");
+    private final LongAdder framesSent = new LongAdder();
+    private final LongAdder framesReceived = new LongAdder();
+    private final LongAdder chatsSent = new LongAdder();
+    private final LongAdder picksSent = new LongAdder();
+    private final LongAdder roundsStarted = new LongAdder();
+    private final LongAdder sessionsStarted = new LongAdder();
+    private final AtomicInteger connected = new AtomicInteger();
+    private final AtomicInteger inGame = new AtomicInteger();
+    private final Map<String, LongAdder> errors = new ConcurrentHashMap<>();
+
+    private enum State {
+        CONNECTING, WAITING_FOR_LOBBY, IN_LOBBY, JOINING, IN_GAME, CLOSED
+    }
+
+    /**
+     * Players that share a GameRoom; the leader creates it
+     */
+    private class Group {
+        private final String roomName;
+        private final SimClient leader;
+        private final List<SimClient> waiting = new ArrayList<>();
+        private boolean roomReady = false;
+
+        private Group(int index, SimClient leader) {
+            this.roomName = "load-" + runId + "-" + index;
+            this.leader = leader;
+        }
+
+        // a follower reached the lobby; join now or once the leader has created the room
+        private synchronized void followerInLobby(SimClient follower) {
+            if (roomReady) {
+                follower.sendJoin(roomName);
+            } else {
+                waiting.add(follower);
+            }
+        }
+
+        private synchronized void leaderInRoom() {
+            roomReady = true;
+            for (SimClient follower : waiting) {
+                follower.sendJoin(roomName);
+            }
+            waiting.clear();
+        }
+    }
+
+    /**
+     * One simulated player: a ClientSession on its own small-stack reader thread
+     * and a small state machine driven by the session's events
+     */
+    private class SimClient implements ClientSessionListener {
+        private final int index;
+        private final String name;
+        private Group group;
+        private final ClientSession session;
+        private volatile State state = State.CONNECTING;
+        private volatile Phase phase = null;
+        private volatile boolean sessionEnding = false; // RESET_READY seen, ignore the RESET_TURN that follows
+        private long connectStartedAt;
+        private long joinStartedAt;
+
+        private SimClient(int index) {
+            this.index = index;
+            this.name = "load" + index;
+            this.session = new ClientSession(r -> {
+                Thread reader = new Thread(null, r, "load-reader-" + index, 256 * 1024);
+                reader.setDaemon(true);
+                return reader;
+            });
+            session.addListener(this);
+        }
+
+        private boolean isLeader() {
+            return group.leader == this;
+        }
+
+        private void connect() {
+            connectStartedAt = System.nanoTime();
+            state = State.WAITING_FOR_LOBBY; // before the reader can see the lobby join
+            try {
+                session.connect(host, port, name);
+                connected.incrementAndGet();
+                framesSent.increment();
+            } catch (IOException e) {
+                error("connect failed: " + e.getClass().getSimpleName());
+                state = State.CLOSED;
+            }
+        }
+
+        private void send(SessionSend action) {
+            if (state == State.CLOSED) {
+                return;
+            }
+            try {
+                action.send(session);
+                framesSent.increment();
+            } catch (IOException e) {
+                // the session closed itself, onDisconnected counts it
+            }
+        }
+
+        private void sendJoin(String roomName) {
+            scheduler.execute(() -> {
+                joinStartedAt = System.nanoTime();
+                state = State.JOINING;
+                send(s -> s.sendRoomAction(roomName, isLeader() ? RoomAction.CREATE : RoomAction.JOIN));
+            });
+        }
+
+        private void later(Runnable action) {
+            scheduler.schedule(action, thinkMillis, TimeUnit.MILLISECONDS);
+        }
+
+        private void sendReady() {
+            send(ClientSession::sendReady);
+        }
+
+        private void sendPick() {
+            send(s -> s.sendPick(CHOICES[ThreadLocalRandom.current().nextInt(CHOICES.length)]));
+            picksSent.increment();
+        }
+
+        private void sendChat() {
+            if (state != State.IN_GAME) {
+                return;
+            }
+            send(s -> s.sendMessage(RTT_MARKER + System.nanoTime()));
+            chatsSent.increment();
+        }
+
+        @Override
+        public void onPayload(Payload payload) {
+            framesReceived.increment();
+        }
+
+        @Override
+        public void onDisconnected(String reason) {
+            if (!stopping && state != State.CLOSED) {
+                error("disconnected (" + state + ")");
+            }
+            close();
+        }
+
+        @Override
+        public void onClientJoined(long clientId, String clientName, boolean quiet) {
+            if (quiet || clientId != session.getClientId()) {
+                return;
+            }
+            if (state == State.WAITING_FOR_LOBBY) {
+                setupNanos.record(System.nanoTime() - connectStartedAt);
+                state = State.IN_LOBBY;
+                if (idle) {
+                    return;
+                } else if (isLeader()) {
+                    sendJoin(group.roomName);
+                } else {
+                    group.followerInLobby(this);
+                }
+            } else if (state == State.JOINING) {
+                joinNanos.record(System.nanoTime() - joinStartedAt);
+                state = State.IN_GAME;
+                inGame.incrementAndGet();
+                if (isLeader()) {
+                    group.leaderInRoom();
+                }
+                startChat();
+            }
+        }
+
+        @Override
+        public void onPhase(Phase phase) {
+            this.phase = phase;
+            if (state != State.IN_GAME) {
+                return;
+            }
+            if (phase == Phase.READY) {
+                later(this::sendReady);
+            } else if (phase == Phase.IN_PROGRESS) {
+                sessionEnding = false;
+                if (isLeader()) {
+                    sessionsStarted.increment();
+                }
+            }
+        }
+
+        @Override
+        public void onReadyReset() {
+            sessionEnding = true;
+        }
+
+        @Override
+        public void onTurnReset() {
+            if (state == State.IN_GAME && phase == Phase.IN_PROGRESS && !sessionEnding) {
+                later(this::sendPick);
+            }
+        }
+
+        @Override
+        public void onMessage(long senderId, String text) {
+            if (text == null) {
+                return;
+            }
+            if (senderId == session.getClientId()) {
+                int marker = text.lastIndexOf(RTT_MARKER);
+                if (marker >= 0) {
+                    try {
+                        long sentAt = Long.parseLong(text.substring(marker + RTT_MARKER.length()).trim());
+                        rttNanos.record(System.nanoTime() - sentAt);
+                    } catch (NumberFormatException e) {
+                        // someone else's text that happens to contain the marker
+                    }
+                }
+            } else if (senderId == Constants.DEFAULT_CLIENT_ID) {
+                if (REJECTION.matcher(text).find()) {
+                    error("rejected: " + text.replaceAll("Room \\S+", "Room <name>"));
+                } else if (isLeader() && ROUND_STARTED.matcher(text).find()) {
+                    roundsStarted.increment();
+                }
+            }
+        }
+
+        private void startChat() {
+            if (chatRate <= 0) {
+                return;
+            }
+            long periodMicros = (long) (1_000_000 / chatRate);
+            // spread the clients over the period so they don't all chat at once
+            long initialDelay = ThreadLocalRandom.current().nextLong(periodMicros);
+            scheduler.scheduleAtFixedRate(this::sendChat, initialDelay, periodMicros, TimeUnit.MICROSECONDS);
+        }
+
+        private synchronized void close() {
+            if (state == State.CLOSED) {
+                return;
+            }
+            if (state == State.IN_GAME) {
+                inGame.decrementAndGet();
+            }
+            if (state != State.CONNECTING) {
+                connected.decrementAndGet();
+            }
+            state = State.CLOSED;
+            session.close();
+        }
+    }
+
+    private interface SessionSend {
+        void send(ClientSession session) throws IOException;
+    }
+
+    private void error(String kind) {
+        errors.computeIfAbsent(kind, k -> new LongAdder()).increment();
+    }
+
+    private long errorCount() {
+        long total = 0;
+        for (LongAdder count : errors.values()) {
+            total += count.sum();
+        }
+        return total;
+    }
+
+    private static String percentiles(Histogram histogram) {
+        Histogram.Snapshot snapshot = histogram.snapshot();
+        if (snapshot.getCount() == 0) {
+            return "no samples";
+        }
+        return String.format("n=%s p50=%.2fms p90=%.2fms p99=%.2fms p999=%.2fms max=%.2fms", snapshot.getCount(),
+                snapshot.getValueAtPercentile(50) / 1e6, snapshot.getValueAtPercentile(90) / 1e6,
+                snapshot.getValueAtPercentile(99) / 1e6, snapshot.getValueAtPercentile(99.9) / 1e6,
+                snapshot.getMax() / 1e6);
+    }
+
+    private void printProgress(long startedAt) {
+        Histogram.Snapshot rtt = rttNanos.snapshot();
+        System.out.println(String.format(
+                "[%3ss] connected %s, in game %s, sent %s, received %s, rounds %s, rtt p50 %.2fms p99 %.2fms, errors %s",
+                (System.nanoTime() - startedAt) / 1_000_000_000L, connected.get(), inGame.get(), framesSent.sum(),
+                framesReceived.sum(), roundsStarted.sum(), rtt.getValueAtPercentile(50) / 1e6,
+                rtt.getValueAtPercentile(99) / 1e6, errorCount()));
+    }
+
+    private void run() throws InterruptedException {
+        scheduler = new ScheduledThreadPoolExecutor(Math.max(2, Runtime.getRuntime().availableProcessors()), r -> {
+            Thread thread = new Thread(r, "load-scheduler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (int i = 0; i < clientCount; i++) {
+            SimClient client = new SimClient(i);
+            int groupIndex = i / roomSize;
+            client.group = i % roomSize == 0 ? new Group(groupIndex, client) : clients.get(groupIndex * roomSize).group;
+            clients.add(client);
+        }
+        if (idle) {
+            runIdle();
+            return;
+        }
+        System.out.println(String.format("run %s: %s clients in rooms of %s against %s:%s for %ss, chat %.2f/s each",
+                runId, clientCount, roomSize, host, port, durationSeconds, chatRate));
+
+        long startedAt = System.nanoTime();
+        scheduler.scheduleAtFixedRate(() -> printProgress(startedAt), 5, 5, TimeUnit.SECONDS);
+        // ramp up at connectRate
+        long connectIntervalNanos = 1_000_000_000L / Math.max(1, connectRate);
+        for (int i = 0; i < clients.size(); i++) {
+            SimClient client = clients.get(i);
+            scheduler.schedule(client::connect, i * connectIntervalNanos, TimeUnit.NANOSECONDS);
+        }
+        Thread.sleep(TimeUnit.SECONDS.toMillis(durationSeconds));
+
+        stopping = true;
+        long elapsedNanos = System.nanoTime() - startedAt;
+        scheduler.shutdownNow();
+        for (SimClient client : clients) {
+            client.close();
+        }
+        report(elapsedNanos);
+    }
+
+    /**
+     * Connects every client, waits for them to reach the lobby, holds them and
+     * reports what the idle connections cost the server
+     *
+     * @throws InterruptedException
+     */
+    private void runIdle() throws InterruptedException {
+        System.out.println(String.format("run %s: %s idle clients against %s:%s, held %ss", runId, clientCount, host,
+                port, durationSeconds));
+        Map<String, Long> before = serverGauges();
+        long startedAt = System.nanoTime();
+        long connectIntervalNanos = 1_000_000_000L / Math.max(1, connectRate);
+        for (int i = 0; i < clients.size(); i++) {
+            scheduler.schedule(clients.get(i)::connect, i * connectIntervalNanos, TimeUnit.NANOSECONDS);
+        }
+        // ramp until everyone is in the lobby or stopped trying
+        long lastProgress = System.nanoTime();
+        long lastCount = 0;
+        while (setupNanos.getCount() + errorCount() < clientCount) {
+            Thread.sleep(1000);
+            if (setupNanos.getCount() != lastCount) {
+                lastCount = setupNanos.getCount();
+                lastProgress = System.nanoTime();
+            } else if (System.nanoTime() - lastProgress > TimeUnit.SECONDS.toNanos(30)) {
+                break; // stalled
+            }
+            if ((System.nanoTime() - startedAt) / 1_000_000_000L % 5 == 0) {
+                printProgress(startedAt);
+            }
+        }
+        long rampNanos = System.nanoTime() - startedAt;
+        Thread.sleep(TimeUnit.SECONDS.toMillis(durationSeconds));
+        Map<String, Long> after = serverGauges();
+        int held = connected.get();
+
+        stopping = true;
+        scheduler.shutdownNow();
+        for (SimClient client : clients) {
+            client.close();
+        }
+        System.out.println();
+        System.out.println(String.format("%s of %s connections reached the lobby in %.1fs, %s still open after %ss",
+                setupNanos.getCount(), clientCount, rampNanos / 1e9, held, durationSeconds));
+        System.out.println("connection setup (connect to lobby): " + percentiles(setupNanos));
+        System.out.println("errors: " + errorCount());
+        for (Map.Entry<String, LongAdder> error : new TreeMap<>(errors).entrySet()) {
+            System.out.println(String.format("  %8s  %s", error.getValue().sum(), error.getKey()));
+        }
+        if (before.isEmpty() || after.isEmpty()) {
+            System.out.println(String.format("server stats unavailable on port %s", statsPort));
+            return;
+        }
+        for (String gauge : new String[] { "jvm.threads.live", "process.rss.kb", "jvm.heap.used.bytes" }) {
+            long start = before.getOrDefault(gauge, 0L);
+            long end = after.getOrDefault(gauge, 0L);
+            System.out.println(String.format("server %-20s %10s -> %10s  (%+.2f per connection)", gauge, start, end,
+                    held == 0 ? 0.0 : (end - start) / (double) held));
+        }
+        long threadsEach = after.getOrDefault("connections.threads.each", 0L);
+        if (threadsEach == 0) {
+            System.out.println("server connections share the selector and worker threads");
+        } else if (after.getOrDefault("connections.threads.virtual", 0L) == 1) {
+            System.out.println(String.format(
+                    "server connections hold %s virtual threads each (reader and writer), not in jvm.threads.live",
+                    threadsEach));
+        } else {
+            System.out.println(String.format(
+                    "server connections hold %s platform threads each (reader and writer)", threadsEach));
+        }
+    }
+
+    // the server's gauges (name -> value), empty if the stats port can't be read
+    private Map<String, Long> serverGauges() {
+        Map<String, Long> gauges = new TreeMap<>();
+        String stats = fetchServerStats();
+        if (stats == null) {
+            return gauges;
+        }
+        for (String line : stats.split("\n")) {
+            String[] parts = line.split(" ");
+            if (parts.length == 2) {
+                try {
+                    gauges.put(parts[0], Long.parseLong(parts[1]));
+                } catch (NumberFormatException e) {
+                    // a header line
+                }
+            }
+        }
+        return gauges;
+    }
+
+    private void report(long elapsedNanos) {
+        double seconds = elapsedNanos / 1e9;
+        System.out.println();
+        System.out.println(String.format("duration %.1fs, frames sent %s (%.0f/s), received %s (%.0f/s)", seconds,
+                framesSent.sum(), framesSent.sum() / seconds, framesReceived.sum(), framesReceived.sum() / seconds));
+        System.out.println(String.format("chats %s, picks %s, sessions %s, rounds %s", chatsSent.sum(),
+                picksSent.sum(), sessionsStarted.sum(), roundsStarted.sum()));
+        System.out.println("connection setup (connect to lobby): " + percentiles(setupNanos));
+        System.out.println("room join (request to joined):       " + percentiles(joinNanos));
+        System.out.println("chat round trip:                     " + percentiles(rttNanos));
+        System.out.println("errors: " + errorCount());
+        for (Map.Entry<String, LongAdder> error : new TreeMap<>(errors).entrySet()) {
+            System.out.println(String.format("  %8s  %s", error.getValue().sum(), error.getKey()));
+        }
+        if (statsPort > 0) {
+            printServerStats();
+        }
+    }
+
+    // the server's own view of the run (only reachable when it runs on this machine)
+    private void printServerStats() {
+        String stats = fetchServerStats();
+        if (stats == null) {
+            System.out.println(String.format("server stats unavailable on port %s", statsPort));
+            return;
+        }
+        System.out.println("server stats:");
+        System.out.print(stats);
+    }
+
+    /**
+     * @return the server's metrics snapshot, null if the stats port can't be read
+     */
+    private String fetchServerStats() {
+        if (statsPort <= 0) {
+            return null;
+        }
+        try {
+            HttpURLConnection connection = (HttpURLConnection) new URL(
+                    "http://" + host + ":" + statsPort + "/stats").openConnection();
+            connection.setConnectTimeout(2000);
+            connection.setReadTimeout(2000);
+            try (InputStream in = connection.getInputStream()) {
+                return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            }
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @param args --host, --port, --clients, --room-size, --duration (seconds),
+     *             --chat-rate (messages/sec per client), --connect-rate
+     *             (connections/sec), --think-ms, --stats-port (0 skips the
+     *             server stats), --mode (play or idle)
+     * @throws InterruptedException
+     */
+    public static void main(String[] args) throws InterruptedException {
+        LoadGenerator load = new LoadGenerator();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "--host":
+                    load.host = value;
+                    break;
+                case "--port":
+                    load.port = Integer.parseInt(value);
+                    break;
+                case "--clients":
+                    load.clientCount = Integer.parseInt(value);
+                    break;
+                case "--room-size":
+                    load.roomSize = Math.max(1, Integer.parseInt(value));
+                    break;
+                case "--duration":
+                    load.durationSeconds = Integer.parseInt(value);
+                    break;
+                case "--chat-rate":
+                    load.chatRate = Double.parseDouble(value);
+                    break;
+                case "--connect-rate":
+                    load.connectRate = Integer.parseInt(value);
+                    break;
+                case "--think-ms":
+                    load.thinkMillis = Integer.parseInt(value);
+                    break;
+                case "--stats-port":
+                    load.statsPort = Integer.parseInt(value);
+                    break;
+                case "--mode":
+                    load.idle = "idle".equalsIgnoreCase(value);
+                    break;
+                default:
+                    System.err.println("Unknown option " + args[i]);
+                    System.exit(1);
+            }
+        }
+        if (load.statsPort < 0) {
+            load.statsPort = load.port + 1;
+        }
+        load.run();
+    }
+}
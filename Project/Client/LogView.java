@@ -0,0 +1,242 @@
+package Project.Client;
+
+import java.awt.BorderLayout;
+import java.awt.FontMetrics;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.swing.AbstractListModel;
+import javax.swing.JFrame;
+import javax.swing.JList;
+import javax.swing.JPanel;
+import javax.swing.JScrollBar;
+import javax.swing.JScrollPane;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+
+/**
+ * Scrolling log panel that stays responsive under a flood of messages.
+ * <p>
+ * append() may be called from any thread; it only queues the text. A Swing
+ * Timer drains the queue about 60 times a second and adds everything queued as
+ * one model change, so the EDT does a bounded amount of work per frame no
+ * matter how fast lines arrive. Only the last maxLines lines are kept (a ring
+ * buffer), and since it's a JList only the visible rows are ever laid out or
+ * painted. Lines can be selected and copied (Ctrl+C).
+ * </p>
+ * <p>
+ * The view follows new lines while it's scrolled to the bottom; scrolling up
+ * to read history stops that until it's scrolled back down.
+ * </p>
+ */
+public class LogView extends JPanel {
+    private static final int FRAME_MILLIS = 16; // ~60Hz
+
+    private final int maxLines;
+    private final ConcurrentLinkedQueue<String> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingCount = new AtomicInteger();
+    private final AtomicLong dropped = new AtomicLong();
+    private final RingListModel model;
+    private final JList<String> list;
+    private final JScrollPane scroll;
+    private final Timer timer;
+    private int widestLine = 0;
+
+    /**
+     * Fixed capacity ListModel; adding past the capacity evicts the oldest
+     * lines
+     */
+    static class RingListModel extends AbstractListModel<String> {
+        private final String[] lines;
+        private int head = 0; // index of the oldest line
+        private int size = 0;
+
+        RingListModel(int capacity) {
+            lines = new String[capacity];
+        }
+
+        @Override
+        public int getSize() {
+            return size;
+        }
+
+        @Override
+        public String getElementAt(int index) {
+            return lines[(head + index) % lines.length];
+        }
+
+        /**
+         * Adds the batch with at most one removed and one added event
+         *
+         * @param batch no larger than the capacity
+         */
+        void addAll(List<String> batch) {
+            int overflow = size + batch.size() - lines.length;
+            if (overflow > 0) {
+                for (int i = 0; i < overflow; i++) {
+                    lines[(head + i) % lines.length] = null;
+                }
+                head = (head + overflow) % lines.length;
+                size -= overflow;
+                fireIntervalRemoved(this, 0, overflow - 1);
+            }
+            int first = size;
+            for (String line : batch) {
+                lines[(head + size) % lines.length] = line;
+                size++;
+            }
+            fireIntervalAdded(this, first, size - 1);
+        }
+    }
+
+    /**
+     * @param maxLines lines kept for scrollback
+     */
+    public LogView(int maxLines) {
+        super(new BorderLayout());
+        this.maxLines = maxLines;
+        model = new RingListModel(maxLines);
+        list = new JList<>(model);
+        // fixed row sizes spare the JList from measuring every line on each change
+        FontMetrics metrics = list.getFontMetrics(list.getFont());
+        list.setFixedCellHeight(metrics.getHeight() + 2);
+        list.setFixedCellWidth(1);
+        scroll = new JScrollPane(list);
+        add(scroll, BorderLayout.CENTER);
+        timer = new Timer(FRAME_MILLIS, e -> flush());
+        timer.setCoalesce(true);
+        timer.start();
+    }
+
+    /**
+     * Queues text for the next frame; safe from any thread. Multi-line text
+     * becomes one row per line.
+     *
+     * @param text
+     */
+    public void append(String text) {
+        for (String line : text.split("\n", -1)) {
+            pending.offer(line);
+            // everything past maxLines would be evicted anyway, drop it now so a
+            // stalled EDT can't let the queue grow without bound
+            if (pendingCount.incrementAndGet() > maxLines && pending.poll() != null) {
+                pendingCount.decrementAndGet();
+                dropped.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * @return lines discarded before they were shown because more than maxLines
+     *         arrived within one frame
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * @return lines currently held for scrollback
+     */
+    public int getLineCount() {
+        return model.getSize();
+    }
+
+    public void stop() {
+        timer.stop();
+    }
+
+    // on the EDT, once per frame
+    private void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        List<String> batch = new ArrayList<>(Math.min(pendingCount.get(), maxLines));
+        String line;
+        while (batch.size() < maxLines && (line = pending.poll()) != null) {
+            pendingCount.decrementAndGet();
+            batch.add(line);
+        }
+        JScrollBar bar = scroll.getVerticalScrollBar();
+        boolean atBottom = bar.getValue() + bar.getVisibleAmount() >= bar.getMaximum() - list.getFixedCellHeight();
+        FontMetrics metrics = list.getFontMetrics(list.getFont());
+        int widest = widestLine;
+        for (String text : batch) {
+            widest = Math.max(widest, metrics.stringWidth(text));
+        }
+        if (widest > widestLine) {
+            widestLine = widest;
+            list.setFixedCellWidth(widest + 8);
+        }
+        model.addAll(batch);
+        if (atBottom) {
+            list.ensureIndexIsVisible(model.getSize() - 1);
+        }
+    }
+
+    /**
+     * Floods a LogView at the given rate and reports how late the EDT runs.
+     * Shows the frame when a display is available.
+     * This is just for testing/demo
+     *
+     * @param args [messages per second] [seconds]
+     * @throws Exception
+     */
+    public static void main(String[] args) throws Exception {
+        int rate = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        LogView[] holder = new LogView[1];
+        SwingUtilities.invokeAndWait(() -> {
+            holder[0] = new LogView(5000);
+            if (!java.awt.GraphicsEnvironment.isHeadless()) {
+                JFrame frame = new JFrame("LogView demo");
+                frame.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
+                frame.setSize(800, 600);
+                frame.setContentPane(holder[0]);
+                frame.setVisible(true);
+            }
+        });
+        LogView view = holder[0];
+
+        Thread producer = new Thread(() -> {
+            long interval = TimeUnit.SECONDS.toNanos(1) / rate;
+            long next = System.nanoTime();
+            for (long i = 0; i < (long) rate * seconds; i++) {
+                view.append(String.format("Room[demo]: user%s#%s: message %s", i % 50, i % 50, i));
+                next += interval;
+                while (System.nanoTime() < next) {
+                    Thread.onSpinWait();
+                }
+            }
+        }, "log-producer");
+        long start = System.nanoTime();
+        producer.start();
+
+        // how long a task posted to the EDT waits; a stall shows up here
+        long worstLag = 0;
+        long totalLag = 0;
+        int probes = 0;
+        while (producer.isAlive()) {
+            long posted = System.nanoTime();
+            long[] ranAt = new long[1];
+            SwingUtilities.invokeAndWait(() -> ranAt[0] = System.nanoTime());
+            long lag = ranAt[0] - posted;
+            worstLag = Math.max(worstLag, lag);
+            totalLag += lag;
+            probes++;
+            Thread.sleep(50);
+        }
+        Thread.sleep(100); // last frame
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        System.out.println(String.format("%s lines in %.1fs (%.0f/s), kept %s, dropped %s",
+                (long) rate * seconds, elapsed, rate * seconds / elapsed, view.getLineCount(), view.getDroppedCount()));
+        System.out.println(String.format("EDT lag over %s probes: mean %.2fms, max %.2fms", probes,
+                totalLag / (double) probes / 1e6, worstLag / 1e6));
+        if (java.awt.GraphicsEnvironment.isHeadless()) {
+            System.exit(0);
+        }
+    }
+}
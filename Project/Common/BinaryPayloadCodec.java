@@ -0,0 +1,395 @@
+package Project.Common;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Compact, reflection-free frame encoding (frame version 1).
+ * <p>
+ * Body layout: PayloadType ordinal (1 byte), Payload class tag (1 byte),
+ * zig-zag varint clientId, message string, then the fields of the subclass.
+ * Strings are a varint of (byte length + 1) followed by UTF-8 bytes, where 0
+ * means null.
+ * </p>
+ * Stateless, so unlike the serialized encoding any frame can be decoded on its
+ * own.
+ */
+public class BinaryPayloadCodec extends PayloadCodec {
+    public static final byte VERSION = 1;
+
+    // class tags (append only, they're part of the wire format)
+    private static final byte TAG_PAYLOAD = 0;
+    private static final byte TAG_CONNECTION = 1;
+    private static final byte TAG_READY = 2;
+    private static final byte TAG_ROOM_RESULT = 3;
+    private static final byte TAG_POINTS = 4;
+    private static final byte TAG_ROOM_SNAPSHOT = 5;
+    private static final byte TAG_ROOM_DELTA = 6;
+
+    private static final PayloadType[] PAYLOAD_TYPES = PayloadType.values();
+    private static final Phase[] PHASES = Phase.values();
+    private static final RoomDeltaPayload.Change[] CHANGES = RoomDeltaPayload.Change.values();
+
+    @Override
+    public byte getVersion() {
+        return VERSION;
+    }
+
+    @Override
+    public boolean isStateless() {
+        return true;
+    }
+
+    @Override
+    protected void writeBody(Payload payload, FrameBuffer out) throws IOException {
+        PayloadType type = payload.getPayloadType();
+        if (type == null) {
+            throw new StreamCorruptedException("Payload is missing a PayloadType");
+        }
+        out.write(type.ordinal());
+        if (payload instanceof ConnectionPayload) {
+            out.write(TAG_CONNECTION);
+        } else if (payload instanceof ReadyPayload) {
+            out.write(TAG_READY);
+        } else if (payload instanceof RoomResultPayload) {
+            out.write(TAG_ROOM_RESULT);
+        } else if (payload instanceof PointsPayload) {
+            out.write(TAG_POINTS);
+        } else if (payload instanceof RoomSnapshotPayload) {
+            out.write(TAG_ROOM_SNAPSHOT);
+        } else if (payload instanceof RoomDeltaPayload) {
+            out.write(TAG_ROOM_DELTA);
+        } else {
+            out.write(TAG_PAYLOAD);
+        }
+        writeVarLong(out, zigZag(payload.getClientId()));
+        writeString(out, payload.getMessage());
+
+        if (payload instanceof ConnectionPayload) {
+            writeString(out, ((ConnectionPayload) payload).getClientName());
+        } else if (payload instanceof ReadyPayload) {
+            out.write(((ReadyPayload) payload).isReady() ? 1 : 0);
+        } else if (payload instanceof RoomResultPayload) {
+            List<String> rooms = ((RoomResultPayload) payload).getRooms();
+            writeVarLong(out, rooms == null ? 0 : rooms.size());
+            if (rooms != null) {
+                for (String room : rooms) {
+                    writeString(out, room);
+                }
+            }
+            // paging fields were appended later, readers treat a missing tail as 0
+            writeVarLong(out, ((RoomResultPayload) payload).getOffset());
+            writeVarLong(out, ((RoomResultPayload) payload).getTotal());
+        } else if (payload instanceof PointsPayload) {
+            writeVarLong(out, zigZag(((PointsPayload) payload).getPoints()));
+        } else if (payload instanceof RoomSnapshotPayload) {
+            RoomSnapshotPayload snapshot = (RoomSnapshotPayload) payload;
+            writeVarLong(out, snapshot.getVersion());
+            writePhase(out, snapshot.getPhase());
+            List<RoomSnapshotPayload.Member> members = snapshot.getMembers();
+            writeVarLong(out, members == null ? 0 : members.size());
+            if (members != null) {
+                for (RoomSnapshotPayload.Member member : members) {
+                    writeVarLong(out, zigZag(member.getClientId()));
+                    writeString(out, member.getClientName());
+                    out.write((member.isReady() ? 1 : 0) | (member.didTakeTurn() ? 2 : 0));
+                }
+            }
+        } else if (payload instanceof RoomDeltaPayload) {
+            RoomDeltaPayload delta = (RoomDeltaPayload) payload;
+            if (delta.getChange() == null) {
+                throw new StreamCorruptedException("RoomDeltaPayload is missing a Change");
+            }
+            writeVarLong(out, delta.getVersion());
+            out.write(delta.getChange().ordinal());
+            switch (delta.getChange()) {
+                case JOIN:
+                    writeString(out, delta.getClientName());
+                    break;
+                case READY:
+                case TURN:
+                    out.write(delta.getValue() ? 1 : 0);
+                    break;
+                case PHASE:
+                    writePhase(out, delta.getPhase());
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    @Override
+    protected Payload readBody(byte[] data, int offset, int length) throws IOException {
+        Reader in = new Reader(data, offset, offset + length);
+        int ordinal = in.readByte();
+        if (ordinal >= PAYLOAD_TYPES.length) {
+            throw new StreamCorruptedException("Unknown PayloadType ordinal " + ordinal);
+        }
+        int tag = in.readByte();
+        Payload payload;
+        switch (tag) {
+            case TAG_PAYLOAD:
+                payload = new Payload();
+                break;
+            case TAG_CONNECTION:
+                payload = new ConnectionPayload();
+                break;
+            case TAG_READY:
+                payload = new ReadyPayload();
+                break;
+            case TAG_ROOM_RESULT:
+                payload = new RoomResultPayload();
+                break;
+            case TAG_POINTS:
+                payload = new PointsPayload();
+                break;
+            case TAG_ROOM_SNAPSHOT:
+                payload = new RoomSnapshotPayload();
+                break;
+            case TAG_ROOM_DELTA:
+                payload = new RoomDeltaPayload();
+                break;
+            default:
+                throw new StreamCorruptedException("Unknown Payload tag " + tag);
+        }
+        // set after construction since some subclasses assign a default type
+        payload.setPayloadType(PAYLOAD_TYPES[ordinal]);
+        payload.setClientId(unZigZag(in.readVarLong()));
+        payload.setMessage(in.readString());
+
+        switch (tag) {
+            case TAG_CONNECTION:
+                ((ConnectionPayload) payload).setClientName(in.readString());
+                break;
+            case TAG_READY:
+                ((ReadyPayload) payload).setReady(in.readByte() != 0);
+                break;
+            case TAG_ROOM_RESULT:
+                long count = in.readVarLong();
+                if (count > length) {
+                    throw new StreamCorruptedException("Invalid room count " + count);
+                }
+                List<String> rooms = new ArrayList<>((int) count);
+                for (int i = 0; i < count; i++) {
+                    rooms.add(in.readString());
+                }
+                ((RoomResultPayload) payload).setRooms(rooms);
+                if (in.hasRemaining()) {
+                    ((RoomResultPayload) payload).setOffset((int) in.readVarLong());
+                    ((RoomResultPayload) payload).setTotal((int) in.readVarLong());
+                }
+                break;
+            case TAG_POINTS:
+                ((PointsPayload) payload).setPoints((int) unZigZag(in.readVarLong()));
+                break;
+            case TAG_ROOM_SNAPSHOT: {
+                RoomSnapshotPayload snapshot = (RoomSnapshotPayload) payload;
+                snapshot.setVersion(in.readVarLong());
+                snapshot.setPhase(readPhase(in));
+                long members = in.readVarLong();
+                if (members > length) {
+                    throw new StreamCorruptedException("Invalid member count " + members);
+                }
+                List<RoomSnapshotPayload.Member> table = new ArrayList<>((int) members);
+                for (int i = 0; i < members; i++) {
+                    long clientId = unZigZag(in.readVarLong());
+                    String clientName = in.readString();
+                    int flags = in.readByte();
+                    table.add(new RoomSnapshotPayload.Member(clientId, clientName, (flags & 1) != 0, (flags & 2) != 0));
+                }
+                snapshot.setMembers(table);
+                break;
+            }
+            case TAG_ROOM_DELTA: {
+                RoomDeltaPayload delta = (RoomDeltaPayload) payload;
+                delta.setVersion(in.readVarLong());
+                int change = in.readByte();
+                if (change >= CHANGES.length) {
+                    throw new StreamCorruptedException("Unknown room Change ordinal " + change);
+                }
+                delta.setChange(CHANGES[change]);
+                switch (delta.getChange()) {
+                    case JOIN:
+                        delta.setClientName(in.readString());
+                        break;
+                    case READY:
+                    case TURN:
+                        delta.setValue(in.readByte() != 0);
+                        break;
+                    case PHASE:
+                        delta.setPhase(readPhase(in));
+                        break;
+                    default:
+                        break;
+                }
+                break;
+            }
+            default:
+                break;
+        }
+        return payload;
+    }
+
+    // 0 for none, otherwise ordinal + 1
+    private static void writePhase(FrameBuffer out, Phase phase) {
+        out.write(phase == null ? 0 : phase.ordinal() + 1);
+    }
+
+    private static Phase readPhase(Reader in) throws IOException {
+        int value = in.readByte();
+        if (value > PHASES.length) {
+            throw new StreamCorruptedException("Unknown Phase ordinal " + (value - 1));
+        }
+        return value == 0 ? null : PHASES[value - 1];
+    }
+
+    // zig-zag keeps small negative numbers (i.e., DEFAULT_CLIENT_ID) to one byte
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static void writeVarLong(FrameBuffer out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static void writeString(FrameBuffer out, String value) {
+        if (value == null) {
+            writeVarLong(out, 0);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarLong(out, bytes.length + 1L);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Bounds-checked cursor over a frame body
+     */
+    private static class Reader {
+        private final byte[] data;
+        private final int end;
+        private int position;
+
+        Reader(byte[] data, int position, int end) {
+            this.data = data;
+            this.position = position;
+            this.end = end;
+        }
+
+        boolean hasRemaining() {
+            return position < end;
+        }
+
+        int readByte() throws EOFException {
+            if (position >= end) {
+                throw new EOFException("Frame ended early");
+            }
+            return data[position++] & 0xFF;
+        }
+
+        long readVarLong() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new StreamCorruptedException("Malformed varint");
+        }
+
+        String readString() throws IOException {
+            long length = readVarLong() - 1;
+            if (length < 0) {
+                return null;
+            }
+            if (length > end - position) {
+                throw new EOFException("Frame ended early");
+            }
+            String value = new String(data, position, (int) length, StandardCharsets.UTF_8);
+            position += (int) length;
+            return value;
+        }
+    }
+
+    /**
+     * Compares bytes per message and encode/decode cost against the serialized
+     * encoding. This is just for testing/demo
+     *
+     * @param args optional iteration count
+     * @throws Exception
+     */
+    public static void main(String[] args) throws Exception {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        // new instances per send like the server does, and new chat text each time:
+        // the serialized encoding writes Payloads unshared but sends a String it
+        // already wrote as a back-reference
+        int[] sent = { 0 };
+        List<Supplier<Payload>> samples = List.of(() -> {
+            Payload p = new Payload();
+            p.setPayloadType(PayloadType.MESSAGE);
+            p.setClientId(42);
+            p.setMessage("alice#42: hello everyone " + (sent[0]++ % 1000));
+            return p;
+        }, () -> {
+            ReadyPayload p = new ReadyPayload();
+            p.setClientId(42);
+            p.setReady(true);
+            return p;
+        }, () -> {
+            ConnectionPayload p = new ConnectionPayload();
+            p.setPayloadType(PayloadType.ROOM_JOIN);
+            p.setClientId(42);
+            p.setClientName("alice");
+            return p;
+        });
+        List<Supplier<PayloadCodec>> codecs = List.of(SerializedPayloadCodec::new, BinaryPayloadCodec::new);
+
+        for (int pass = 0; pass < 2; pass++) { // first pass is warmup
+            for (Supplier<Payload> sample : samples) {
+                Payload[] payloads = new Payload[iterations];
+                for (int i = 0; i < iterations; i++) {
+                    payloads[i] = sample.get();
+                }
+                for (Supplier<PayloadCodec> codec : codecs) {
+                    // fresh codecs per run since the serialized encoding is stateful
+                    PayloadCodec encoder = codec.get();
+                    PayloadCodec decoder = codec.get();
+                    byte[][] frames = new byte[iterations][];
+                    long start = System.nanoTime();
+                    for (int i = 0; i < iterations; i++) {
+                        frames[i] = encoder.encode(payloads[i]);
+                    }
+                    long encodeNs = (System.nanoTime() - start) / iterations;
+                    start = System.nanoTime();
+                    for (int i = 0; i < iterations; i++) {
+                        decoder.decode(nextFrame(ByteBuffer.wrap(frames[i])));
+                    }
+                    long decodeNs = (System.nanoTime() - start) / iterations;
+                    if (pass > 0) {
+                        System.out.println(String.format(
+                                "%-22s %-18s first %4d bytes, steady %4d bytes, encode %5d ns/op, decode %5d ns/op",
+                                encoder.getClass().getSimpleName(), payloads[0].getClass().getSimpleName(),
+                                frames[0].length, frames[iterations - 1].length, encodeNs, decodeNs));
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,592 @@
+package Project.Common;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Append-only binary log of server events (connects, joins, relays, picks,
+ * phase changes) written to memory-mapped segment files.
+ * <p>
+ * Each segment is a fixed size file named {@code <prefix>-<n>.evl} that starts
+ * with an 8 byte header (magic + version) followed by records:
+ * </p>
+ *
+ * <pre>
+ * int    record length (0 marks the end of written data)
+ * byte   Type ordinal
+ * long   epoch millis
+ * long   clientId
+ * short  room byte length, room UTF-8
+ * short  detail byte length, detail UTF-8
+ * </pre>
+ *
+ * Appending only claims a slot in a bounded ring and copies the fields (the
+ * Strings by reference) into it, so rooms never share a lock, wait on the disk
+ * or allocate per event. One writer thread encodes the slots into the mapped
+ * segment in claim order; when a record doesn't fit the current segment that
+ * thread maps the next one, forces the old one and deletes the oldest segment
+ * beyond the configured count. When the ring is full the overflow policy
+ * either waits for the writer (BLOCK) or drops and counts the event.
+ */
+public class EventLog implements AutoCloseable {
+    public static final int MAGIC = 0x45564C47; // "EVLG"
+    public static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    private static final int FIXED_RECORD_SIZE = 4 + 1 + 8 + 8 + 2 + 2;
+    private static final int MAX_STRING_BYTES = Short.MAX_VALUE;
+    private static final String SUFFIX = ".evl";
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final long FULL_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    /**
+     * Event kinds; ordinals are stored in the segments so append only
+     */
+    public enum Type {
+        CONNECT, DISCONNECT, JOIN, LEAVE, RELAY, PICK, PHASE
+    }
+
+    private static final Type[] TYPES = Type.values();
+
+    private final Path directory;
+    private final String prefix;
+    private final int segmentSize;
+    private final int segmentCount;
+
+    // producers
+    private final Slot[] slots;
+    private final int mask;
+    private final boolean blockWhenFull;
+    private final AtomicLong head = new AtomicLong(); // next sequence to claim
+    private final AtomicLong dropped = new AtomicLong();
+    private volatile boolean isClosed = false;
+    private volatile IOException failure; // set by the writer, appends stop once it is
+
+    // writer thread only (and the constructor before it starts)
+    private long segmentIndex;
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private volatile long tail = 0; // next sequence the writer will read
+    private volatile boolean writerIdle = false;
+    private volatile boolean forceRequested = false;
+    private final Thread writer;
+
+    /**
+     * One queued event; sequence is published last so the writer sees the
+     * fields filled in
+     */
+    private static class Slot {
+        private volatile long sequence = -1;
+        private Type type;
+        private long time;
+        private long clientId;
+        private String room;
+        private String detail;
+    }
+
+    /**
+     * Keeps up to 8192 queued events and drops new ones when that's full
+     *
+     * @param location     path prefix of the segment files, i.e. logs/server-events
+     * @param segmentSize  bytes per segment file
+     * @param segmentCount segments kept before the oldest is deleted
+     * @throws IOException
+     */
+    public EventLog(String location, int segmentSize, int segmentCount) throws IOException {
+        this(location, segmentSize, segmentCount, 8192, LoggerUtil.OverflowPolicy.DROP);
+    }
+
+    /**
+     * @param location     path prefix of the segment files, i.e. logs/server-events
+     * @param segmentSize  bytes per segment file
+     * @param segmentCount segments kept before the oldest is deleted
+     * @param capacity     events the ring can hold (rounded up to a power of 2)
+     * @param policy       BLOCK waits for the writer when the ring is full, the
+     *                     others drop the event
+     * @throws IOException
+     */
+    public EventLog(String location, int segmentSize, int segmentCount, int capacity,
+            LoggerUtil.OverflowPolicy policy) throws IOException {
+        Path path = Paths.get(location).toAbsolutePath();
+        this.directory = path.getParent();
+        this.prefix = path.getFileName().toString();
+        this.segmentSize = Math.max(segmentSize, 4096);
+        this.segmentCount = Math.max(1, segmentCount);
+        Files.createDirectories(directory);
+        List<Path> existing = segments(directory, prefix);
+        // never append into an old segment; its tail may be from a crashed run
+        segmentIndex = existing.isEmpty() ? 0 : indexOf(existing.get(existing.size() - 1), prefix) + 1;
+        openSegment();
+
+        int size = 2;
+        while (size < capacity) {
+            size <<= 1;
+        }
+        slots = new Slot[size];
+        for (int i = 0; i < size; i++) {
+            slots[i] = new Slot();
+        }
+        mask = size - 1;
+        blockWhenFull = policy == LoggerUtil.OverflowPolicy.BLOCK;
+        writer = new Thread(this::drain, "event-log-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Queues one event for the writer thread
+     *
+     * @param type
+     * @param clientId
+     * @param room     may be null
+     * @param detail   may be null (message text, pick, phase name, ...)
+     * @throws UncheckedIOException if the writer failed to map a segment
+     */
+    public void append(Type type, long clientId, String room, String detail) {
+        if (failure != null) {
+            throw new UncheckedIOException(failure);
+        }
+        long time = System.currentTimeMillis();
+        while (!isClosed) {
+            long seq = head.get();
+            if (seq - tail >= slots.length) {
+                if (!blockWhenFull || !writer.isAlive()) {
+                    dropped.incrementAndGet();
+                    return;
+                }
+                LockSupport.parkNanos(FULL_PARK_NANOS);
+                continue;
+            }
+            if (head.compareAndSet(seq, seq + 1)) {
+                Slot slot = slots[(int) (seq & mask)];
+                slot.type = type;
+                slot.time = time;
+                slot.clientId = clientId;
+                slot.room = room;
+                slot.detail = detail;
+                slot.sequence = seq;
+                if (writerIdle) {
+                    LockSupport.unpark(writer);
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Writer loop: encodes queued events in sequence order until closed and
+     * empty
+     */
+    private void drain() {
+        try {
+            while (true) {
+                long seq = tail;
+                Slot slot = slots[(int) (seq & mask)];
+                if (slot.sequence != seq) {
+                    // empty, or a producer claimed the slot and hasn't filled it yet
+                    if (forceRequested && head.get() == seq) {
+                        buffer.force();
+                        forceRequested = false;
+                    }
+                    if (isClosed && head.get() == seq) {
+                        break;
+                    }
+                    writerIdle = true;
+                    if (slot.sequence != seq && !forceRequested) {
+                        LockSupport.parkNanos(this, head.get() == seq ? IDLE_PARK_NANOS : FULL_PARK_NANOS);
+                    }
+                    writerIdle = false;
+                    continue;
+                }
+                write(slot.type, slot.time, slot.clientId, slot.room, slot.detail);
+                slot.room = null;
+                slot.detail = null;
+                tail = seq + 1;
+            }
+            closeSegment();
+        } catch (IOException e) {
+            failure = e;
+        }
+    }
+
+    private void write(Type type, long time, long clientId, String room, String detail) throws IOException {
+        int roomLength = utf8Length(room);
+        int detailLength = utf8Length(detail);
+        int length = FIXED_RECORD_SIZE + roomLength + detailLength;
+        // keep room for the 0 end marker after the record
+        if (buffer.remaining() < length + 4) {
+            if (length + 4 > segmentSize - HEADER_SIZE) {
+                return; // can never fit
+            }
+            segmentIndex++;
+            openSegment();
+        }
+        buffer.putInt(length);
+        buffer.put((byte) type.ordinal());
+        buffer.putLong(time);
+        buffer.putLong(clientId);
+        putString(room, roomLength);
+        putString(detail, detailLength);
+    }
+
+    /**
+     * @param value may be null
+     * @return UTF-8 length of value, capped at MAX_STRING_BYTES on a character
+     *         boundary
+     */
+    private static int utf8Length(String value) {
+        if (value == null) {
+            return 0;
+        }
+        int length = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            int size;
+            if (c < 0x80) {
+                size = 1;
+            } else if (c < 0x800) {
+                size = 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+                    && Character.isLowSurrogate(value.charAt(i + 1))) {
+                size = 4;
+                i++;
+            } else {
+                size = 3; // unpaired surrogates are written as '?'
+            }
+            if (length + size > MAX_STRING_BYTES) {
+                break;
+            }
+            length += size;
+        }
+        return length;
+    }
+
+    /**
+     * Writes the length prefix and the first length UTF-8 bytes of value
+     * straight into the segment (no intermediate byte[])
+     */
+    private void putString(String value, int length) {
+        buffer.putShort((short) length);
+        int end = buffer.position() + length;
+        for (int i = 0; buffer.position() < end; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                buffer.put((byte) c);
+            } else if (c < 0x800) {
+                buffer.put((byte) (0xC0 | (c >> 6)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            } else if (Character.isSurrogate(c)) {
+                if (Character.isHighSurrogate(c) && i + 1 < value.length()
+                        && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    int cp = Character.toCodePoint(c, value.charAt(++i));
+                    buffer.put((byte) (0xF0 | (cp >> 18)));
+                    buffer.put((byte) (0x80 | ((cp >> 12) & 0x3F)));
+                    buffer.put((byte) (0x80 | ((cp >> 6) & 0x3F)));
+                    buffer.put((byte) (0x80 | (cp & 0x3F)));
+                } else {
+                    // keep the 3 bytes utf8Length() counted
+                    buffer.put((byte) '?');
+                    buffer.put((byte) '?');
+                    buffer.put((byte) '?');
+                }
+            } else {
+                buffer.put((byte) (0xE0 | (c >> 12)));
+                buffer.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            }
+        }
+    }
+
+    private void openSegment() throws IOException {
+        closeSegment();
+        Path file = directory.resolve(prefix + "-" + segmentIndex + SUFFIX);
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        // rotation: drop segments older than the configured count
+        List<Path> existing = segments(directory, prefix);
+        for (int i = 0; i < existing.size() - segmentCount; i++) {
+            Files.deleteIfExists(existing.get(i));
+        }
+    }
+
+    private void closeSegment() throws IOException {
+        if (buffer != null) {
+            buffer.force();
+            buffer = null;
+        }
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    /**
+     * Waits until every event queued so far is in the segment and the writer has
+     * forced it to disk
+     */
+    public void flush() {
+        long target = head.get();
+        forceRequested = true;
+        while ((tail < target || forceRequested) && writer.isAlive()) {
+            LockSupport.unpark(writer);
+            LockSupport.parkNanos(FULL_PARK_NANOS);
+        }
+    }
+
+    /**
+     * Stops accepting events, waits for the writer to write what's queued and
+     * closes the segment
+     */
+    @Override
+    public void close() throws IOException {
+        isClosed = true;
+        LockSupport.unpark(writer);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * @return events discarded because the ring was full
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * Lists the segment files for a prefix, oldest first
+     *
+     * @param directory
+     * @param prefix
+     * @return
+     * @throws IOException
+     */
+    public static List<Path> segments(Path directory, String prefix) throws IOException {
+        List<Path> found = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, prefix + "-*" + SUFFIX)) {
+            for (Path path : stream) {
+                if (indexOf(path, prefix) >= 0) {
+                    found.add(path);
+                }
+            }
+        }
+        found.sort((a, b) -> Long.compare(indexOf(a, prefix), indexOf(b, prefix)));
+        return found;
+    }
+
+    private static long indexOf(Path segment, String prefix) {
+        String name = segment.getFileName().toString();
+        try {
+            return Long.parseLong(name.substring(prefix.length() + 1, name.length() - SUFFIX.length()));
+        } catch (NumberFormatException | IndexOutOfBoundsException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * A decoded record
+     */
+    public static class Event {
+        private final Type type;
+        private final long time;
+        private final long clientId;
+        private final String room;
+        private final String detail;
+
+        public Event(Type type, long time, long clientId, String room, String detail) {
+            this.type = type;
+            this.time = time;
+            this.clientId = clientId;
+            this.room = room;
+            this.detail = detail;
+        }
+
+        public Type getType() {
+            return type;
+        }
+
+        public long getTime() {
+            return time;
+        }
+
+        public long getClientId() {
+            return clientId;
+        }
+
+        public String getRoom() {
+            return room;
+        }
+
+        public String getDetail() {
+            return detail;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s %s client=%s room=%s %s", Instant.ofEpochMilli(time), type, clientId,
+                    room, detail);
+        }
+    }
+
+    /**
+     * Record filter applied before the strings are decoded; null fields match
+     * anything
+     */
+    public static class Filter {
+        private Long clientId;
+        private byte[] room; // compared as raw UTF-8, case sensitive
+        private long from = Long.MIN_VALUE;
+        private long to = Long.MAX_VALUE;
+        private Type type;
+
+        public Filter clientId(long clientId) {
+            this.clientId = clientId;
+            return this;
+        }
+
+        public Filter room(String room) {
+            this.room = room.getBytes(StandardCharsets.UTF_8);
+            return this;
+        }
+
+        public Filter from(long epochMillis) {
+            this.from = epochMillis;
+            return this;
+        }
+
+        public Filter to(long epochMillis) {
+            this.to = epochMillis;
+            return this;
+        }
+
+        public Filter type(Type type) {
+            this.type = type;
+            return this;
+        }
+    }
+
+    /**
+     * Scans one segment, handing every matching record to the consumer
+     *
+     * @param segment
+     * @param filter
+     * @param consumer
+     * @return number of records read (matching or not)
+     * @throws IOException
+     */
+    public static long scan(Path segment, Filter filter, Consumer<Event> consumer) throws IOException {
+        long read = 0;
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+            ByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (in.remaining() < HEADER_SIZE || in.getInt() != MAGIC) {
+                throw new IOException("Not an event segment: " + segment);
+            }
+            int version = in.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported event segment version " + version + ": " + segment);
+            }
+            while (in.remaining() >= FIXED_RECORD_SIZE) {
+                int start = in.position();
+                int length = in.getInt();
+                if (length < FIXED_RECORD_SIZE || length > in.remaining() + 4) {
+                    break; // end of written data (or a torn record from a crash)
+                }
+                read++;
+                int typeOrdinal = in.get() & 0xFF;
+                long time = in.getLong();
+                long clientId = in.getLong();
+                int roomLength = in.getShort() & 0xFFFF;
+                int roomStart = in.position();
+                in.position(roomStart + roomLength);
+                int detailLength = in.getShort() & 0xFFFF;
+                int detailStart = in.position();
+                in.position(start + length);
+                if (typeOrdinal >= TYPES.length
+                        || (filter.type != null && filter.type.ordinal() != typeOrdinal)
+                        || (filter.clientId != null && filter.clientId != clientId)
+                        || time < filter.from || time > filter.to
+                        || (filter.room != null && !bytesEqual(in, roomStart, roomLength, filter.room))) {
+                    continue;
+                }
+                consumer.accept(new Event(TYPES[typeOrdinal], time, clientId,
+                        decode(in, roomStart, roomLength), decode(in, detailStart, detailLength)));
+            }
+        }
+        return read;
+    }
+
+    private static boolean bytesEqual(ByteBuffer in, int offset, int length, byte[] expected) {
+        if (length != expected.length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (in.get(offset + i) != expected[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String decode(ByteBuffer in, int offset, int length) {
+        byte[] bytes = new byte[length];
+        in.get(offset, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes a batch of synthetic events, then scans them back. This is just for
+     * testing/demo
+     *
+     * @param args optional location and event count
+     * @throws IOException
+     */
+    public static void main(String[] args) throws IOException {
+        String location = args.length > 0 ? args[0] : "demo-events";
+        int count = args.length > 1 ? Integer.parseInt(args[1]) : 1_000_000;
+        Type[] types = Type.values();
+        long start = System.nanoTime();
+        // BLOCK so the scan below finds every event
+        try (EventLog log = new EventLog(location, 16 * 1024 * 1024, 8, 8192, LoggerUtil.OverflowPolicy.BLOCK)) {
+            for (int i = 0; i < count; i++) {
+                log.append(types[i % types.length], i % 1000, "room-" + (i % 50), "message " + i);
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        System.out.println(String.format("appended %s events in %s ms (%.0f events/sec)", count, elapsed / 1_000_000,
+                count / (elapsed / 1e9)));
+
+        Path path = Paths.get(location).toAbsolutePath();
+        long[] matched = new long[1];
+        long read = 0;
+        start = System.nanoTime();
+        for (Path segment : segments(path.getParent(), path.getFileName().toString())) {
+            read += scan(segment, new Filter().clientId(7), e -> matched[0]++);
+        }
+        elapsed = System.nanoTime() - start;
+        System.out.println(String.format("scanned %s events in %s ms (%.0f events/sec), %s for client 7", read,
+                elapsed / 1_000_000, read / (elapsed / 1e9), matched[0]));
+    }
+}
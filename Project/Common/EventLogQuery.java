@@ -0,0 +1,112 @@
+package Project.Common;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Command line scanner for EventLog segments.
+ * 
+ * <pre>
+ * java Project.Common.EventLogQuery server-events [--client 12] [--room lobby]
+ *      [--from 2026-10-18T09:00:00] [--to 1760778000000] [--type RELAY] [--count]
+ * </pre>
+ * 
+ * Times are epoch millis, an ISO instant or a local date-time. Matches are
+ * printed one per line (or only counted with --count); a summary with the scan
+ * rate goes to stderr.
+ */
+public class EventLogQuery {
+
+    private static long parseTime(String value) {
+        if (value.matches("-?\\d+")) {
+            return Long.parseLong(value);
+        }
+        if (value.endsWith("Z")) {
+            return Instant.parse(value).toEpochMilli();
+        }
+        return LocalDateTime.parse(value).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    private static void usage() {
+        System.err.println("usage: EventLogQuery <location> [--client id] [--room name] [--from time] [--to time]"
+                + " [--type " + Arrays.toString(EventLog.Type.values()) + "] [--count]");
+        System.exit(1);
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            usage();
+        }
+        Path location = Paths.get(args[0]).toAbsolutePath();
+        EventLog.Filter filter = new EventLog.Filter();
+        boolean countOnly = false;
+        try {
+            for (int i = 1; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--client":
+                        filter.clientId(Long.parseLong(args[++i]));
+                        break;
+                    case "--room":
+                        filter.room(args[++i]);
+                        break;
+                    case "--from":
+                        filter.from(parseTime(args[++i]));
+                        break;
+                    case "--to":
+                        filter.to(parseTime(args[++i]));
+                        break;
+                    case "--type":
+                        filter.type(EventLog.Type.valueOf(args[++i].toUpperCase(Locale.ROOT)));
+                        break;
+                    case "--count":
+                        countOnly = true;
+                        break;
+                    default:
+                        usage();
+                }
+            }
+        } catch (RuntimeException e) {
+            System.err.println(e.getMessage());
+            usage();
+        }
+
+        List<Path> segments = EventLog.segments(location.getParent(), location.getFileName().toString());
+        long[] matches = { 0 };
+        long scanned = 0;
+        long bytes = 0;
+        long start = System.nanoTime();
+        final boolean print = !countOnly;
+        try (BufferedWriter out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8),
+                1 << 16)) {
+            for (Path segment : segments) {
+                bytes += Files.size(segment);
+                scanned += EventLog.scan(segment, filter, event -> {
+                    matches[0]++;
+                    if (print) {
+                        try {
+                            out.write(event.toString());
+                            out.newLine();
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    }
+                });
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.err.println(String.format("%s segments, %s records scanned, %s matched in %.3fs (%.0f MB/s mapped)",
+                segments.size(), scanned, matches[0], seconds, bytes / 1e6 / Math.max(seconds, 1e-9)));
+    }
+}
@@ -0,0 +1,82 @@
+package Project.Common;
+
+import java.util.Arrays;
+import java.util.logging.Level;
+
+/**
+ * Measures LoggerUtil throughput and the latency seen by the logging thread.
+ * LoggerUtil can only be configured once per JVM, so run it once per mode:
+ * <pre>
+ * java Project.Common.LoggerBenchmark sync
+ * java Project.Common.LoggerBenchmark async
+ * java Project.Common.LoggerBenchmark async 200000 4 nocaller
+ * </pre>
+ * This is just for testing/demo
+ */
+public class LoggerBenchmark {
+
+    /**
+     * @param args mode (sync|async), records per thread, threads, and "nocaller"
+     *             to turn off caller resolution
+     * @throws InterruptedException
+     */
+    public static void main(String[] args) throws InterruptedException {
+        boolean async = args.length > 0 && args[0].equalsIgnoreCase("async");
+        int perThread = args.length > 1 ? Integer.parseInt(args[1]) : 100_000;
+        int threadCount = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+        boolean resolveCaller = !(args.length > 3 && args[3].equalsIgnoreCase("nocaller"));
+
+        LoggerUtil.LoggerConfig config = new LoggerUtil.LoggerConfig();
+        config.setLogLocation("logger-bench.log");
+        config.setFileSizeLimit(64 * 1024 * 1024);
+        config.setFileCount(1);
+        config.setConsoleLogLevel(Level.OFF); // keep the terminal out of the measurement
+        config.setAsync(async);
+        config.setAsyncBufferSize(64 * 1024);
+        config.setOverflowPolicy(LoggerUtil.OverflowPolicy.BLOCK); // count every record
+        config.setResolveCaller(resolveCaller);
+        LoggerUtil.INSTANCE.setConfig(config);
+
+        // warmup
+        for (int i = 0; i < 20_000; i++) {
+            LoggerUtil.INSTANCE.info("warmup " + i);
+        }
+        LoggerUtil.INSTANCE.flush();
+
+        long[][] latencies = new long[threadCount][perThread];
+        Thread[] threads = new Thread[threadCount];
+        long start = System.nanoTime();
+        for (int t = 0; t < threadCount; t++) {
+            final long[] mine = latencies[t];
+            final int id = t;
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < perThread; i++) {
+                    long before = System.nanoTime();
+                    LoggerUtil.INSTANCE.info("Thread[" + id + "]: Sending to client: Payload[MESSAGE] Client Id [" + i
+                            + "] Message: [hello]");
+                    mine[i] = System.nanoTime() - before;
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        long callersDone = System.nanoTime() - start;
+        LoggerUtil.INSTANCE.flush();
+        long allWritten = System.nanoTime() - start;
+
+        long total = (long) perThread * threadCount;
+        long[] all = new long[(int) total];
+        for (int t = 0; t < threadCount; t++) {
+            System.arraycopy(latencies[t], 0, all, t * perThread, perThread);
+        }
+        Arrays.sort(all);
+        System.out.println(String.format(
+                "%s, caller %s, %s threads: %.0f records/sec accepted, %.0f records/sec written, "
+                        + "caller latency p50 %.1f us, p99 %.1f us, max %.1f us",
+                async ? "async" : "sync", resolveCaller ? "on" : "off", threadCount, total / (callersDone / 1e9),
+                total / (allWritten / 1e9), all[(int) (total * 0.50)] / 1e3, all[(int) (total * 0.99)] / 1e3,
+                all[all.length - 1] / 1e3));
+    }
+}
@@ -1,11 +1,18 @@
 package Project.Common;
 
 import java.io.IOException;
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
 import java.util.logging.ConsoleHandler;
 import java.util.logging.FileHandler;
 import java.util.logging.Formatter;
+import java.util.logging.Handler;
 import java.util.logging.Level;
 import java.util.logging.LogRecord;
 import java.util.logging.Logger;
@@ -20,7 +27,12 @@ public enum LoggerUtil {
 
     private Logger logger;
     private LoggerConfig config;
-    private boolean isConfigured = false;
+    private volatile boolean isConfigured = false;
+    private int minimumLevel = Level.ALL.intValue(); // lowest level any handler accepts
+    private AsyncHandler asyncHandler; // null unless async mode is on
+    private volatile EventLog eventLog; // null unless an event log location is configured
+    private static final StackWalker stackWalker = StackWalker.getInstance();
+    private static final String loggerUtilPackage = LoggerUtil.class.getPackage().getName();
 
     LoggerUtil() {
     }
@@ -40,8 +52,10 @@ public enum LoggerUtil {
      * This class formats the log messages to include the date, log level, source,
      * and message.
      */
-    private static class CustomFormatter extends Formatter {
+    static class CustomFormatter extends Formatter {
         private static final String PATTERN = "MM/dd/yyyy HH:mm:ss";
+        private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern(PATTERN)
+                .withZone(ZoneId.systemDefault());
         private static final String RESET = "\u001B[0m";
         private static final String RED = "\u001B[31m";
         private static final String GREEN = "\u001B[32m";
@@ -51,45 +65,47 @@ public enum LoggerUtil {
         private static final String CYAN = "\u001B[36m";
         private static final String WHITE = "\u001B[37m";
 
+        // the pattern has one second resolution, so reuse the text within a second
+        private volatile CachedDate cachedDate = new CachedDate(Long.MIN_VALUE, "");
+
+        private static class CachedDate {
+            private final long epochSecond;
+            private final String text;
+
+            CachedDate(long epochSecond, String text) {
+                this.epochSecond = epochSecond;
+                this.text = text;
+            }
+        }
+
         @Override
         public String format(LogRecord record) {
-            SimpleDateFormat dateFormat = new SimpleDateFormat(PATTERN);
-            String date = dateFormat.format(new Date(record.getMillis()));
-            String callingClass = getCallingClassName();
-            String source = callingClass != null ? callingClass
-                    : record.getSourceClassName() != null ? record.getSourceClassName() : "unknown";
+            String date = formatDate(record.getMillis());
+            // resolved on the logging thread by LoggerUtil.log(), see resolveCaller
+            String source = record.getSourceClassName() != null ? record.getSourceClassName() : "unknown";
 
             String message = formatMessage(record);
             if (message == null)
                 message = "null";
-            String level = getColoredLevel(record.getLevel());
-            String throwable = "";
+            StringBuilder sb = new StringBuilder(date.length() + source.length() + message.length() + 32);
+            sb.append(date).append(" [").append(source).append("] (").append(getColoredLevel(record.getLevel()))
+                    .append("):\n> ").append(message);
             if (record.getThrown() != null) {
                 // Use stackTraceLimit from LoggerConfig to truncate stack trace
-                throwable = "\n"
-                        + getFormattedStackTrace(record.getThrown(), LoggerUtil.INSTANCE.config.getStackTraceLimit());
+                sb.append("\n").append(
+                        getFormattedStackTrace(record.getThrown(), LoggerUtil.INSTANCE.config.getStackTraceLimit()));
             }
-            return String.format("%s [%s] (%s):\n> %s%s\n", date, source, level, message, throwable);
+            return sb.append("\n").toString();
         }
 
-        /**
-         * Determines the name of the class that called the logging method.
-         * 
-         * @return the name of the calling class
-         */
-        private static String getCallingClassName() {
-            String loggerUtilPackage = LoggerUtil.class.getPackage().getName();
-            StackTraceElement[] stackTrace = Thread.currentThread().getStackTrace();
-            for (StackTraceElement element : stackTrace) {
-                String className = element.getClassName();
-                // Skip all classes in the logging framework and the package of LoggerUtil
-                if (!className.startsWith("java.util.logging") &&
-                        !className.startsWith(loggerUtilPackage) &&
-                        !className.equals(Thread.class.getName())) {
-                    return className;
-                }
+        private String formatDate(long millis) {
+            long second = Math.floorDiv(millis, 1000);
+            CachedDate cached = cachedDate;
+            if (cached.epochSecond != second) {
+                cached = new CachedDate(second, DATE_FORMAT.format(Instant.ofEpochMilli(millis)));
+                cachedDate = cached;
             }
-            return null;
+            return cached.text;
         }
 
         /**
@@ -197,13 +213,37 @@ public enum LoggerUtil {
                     true);
             fileHandler.setFormatter(new CustomFormatter());
             fileHandler.setLevel(config.getFileLogLevel());
-            logger.addHandler(fileHandler);
 
             // ConsoleHandler prints log messages to the console
             ConsoleHandler consoleHandler = new ConsoleHandler();
             consoleHandler.setFormatter(new CustomFormatter());
             consoleHandler.setLevel(config.getConsoleLogLevel());
-            logger.addHandler(consoleHandler);
+
+            minimumLevel = Math.min(config.getFileLogLevel().intValue(), config.getConsoleLogLevel().intValue());
+            if (config.isAsync()) {
+                // callers only enqueue; one background thread formats and writes
+                asyncHandler = new AsyncHandler(config.getAsyncBufferSize(), config.getOverflowPolicy(),
+                        fileHandler, consoleHandler);
+                logger.addHandler(asyncHandler);
+                Runtime.getRuntime().addShutdownHook(new Thread(asyncHandler::flush, "log-flush"));
+            } else {
+                logger.addHandler(fileHandler);
+                logger.addHandler(consoleHandler);
+            }
+
+            if (config.getEventLogLocation() != null) {
+                // events get their own writer thread, sized and overflowing like the text log
+                EventLog events = new EventLog(config.getEventLogLocation(), config.getEventSegmentSize(),
+                        config.getEventSegmentCount(), config.getAsyncBufferSize(), config.getOverflowPolicy());
+                Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                    try {
+                        events.close();
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    }
+                }, "event-log-close"));
+                eventLog = events;
+            }
 
             logger.setLevel(Level.ALL);
             isConfigured = true;
@@ -219,9 +259,35 @@ public enum LoggerUtil {
      * @param message the log message
      */
     public void log(Level level, String message) {
+        if (!isLoggable(level))
+            return;
+        publish(level, message, null);
+    }
+
+    /**
+     * Logs a message at the specified level, only building it if some handler
+     * would accept the level.
+     * 
+     * @param level   the level of the log message
+     * @param message supplies the log message
+     */
+    public void log(Level level, Supplier<String> message) {
+        if (!isLoggable(level))
+            return;
+        publish(level, message.get(), null);
+    }
+
+    /**
+     * Cheap check callers can use to skip building a message that would be
+     * filtered out anyway.
+     * 
+     * @param level the level of the log message
+     * @return true if the file or console handler accepts the level
+     */
+    public boolean isLoggable(Level level) {
         if (!isConfigured)
             setupLogger();
-        logger.log(level, message);
+        return level.intValue() >= minimumLevel && minimumLevel != Level.OFF.intValue();
     }
 
     /**
@@ -234,27 +300,27 @@ public enum LoggerUtil {
      * @param message the Object to log
      */
     public void log(Level level, Object message) {
-        if (!isConfigured) {
-            setupLogger();
+        if (!isLoggable(level)) {
+            return;
         }
 
         if (message instanceof String) {
-            logger.log(level, (String) message);
+            publish(level, (String) message, null);
 
         } else if (message instanceof Throwable) {
             Throwable t = (Throwable) message;
             String msg = (t.getMessage() != null) ? t.getMessage() : t.getClass().getName();
-            logger.log(level, msg, t);
+            publish(level, msg, t);
 
         } else if (message != null) {
             try {
-                logger.log(level, message.toString());
+                publish(level, message.toString(), null);
             } catch (Exception ex) {
-                logger.log(level, "Error during toString(): " + ex.getMessage(), ex);
+                publish(level, "Error during toString(): " + ex.getMessage(), ex);
             }
 
         } else {
-            logger.log(level, "null");
+            publish(level, "null", null);
         }
     }
 
@@ -266,9 +332,237 @@ public enum LoggerUtil {
      * @param throwable the exception to log
      */
     public void log(Level level, String message, Throwable throwable) {
+        if (!isLoggable(level))
+            return;
+        publish(level, message, throwable);
+    }
+
+    /**
+     * Builds the record on the calling thread (so the caller can be resolved
+     * there) and passes it to the handlers.
+     */
+    private void publish(Level level, String message, Throwable throwable) {
+        LogRecord record = new LogRecord(level, message);
+        record.setLoggerName(logger.getName());
+        record.setThrown(throwable);
+        // setting the source (even to null) stops LogRecord from inferring it later,
+        // possibly on the writer thread
+        record.setSourceClassName(config.isResolveCaller() ? findCaller() : null);
+        logger.log(record);
+    }
+
+    /**
+     * Determines the name of the class that called the logging method.
+     * StackWalker only materializes frames until the first match, unlike
+     * Thread.getStackTrace() which captures the whole stack.
+     * 
+     * @return the name of the calling class
+     */
+    private static String findCaller() {
+        return stackWalker.walk(frames -> frames
+                .map(StackWalker.StackFrame::getClassName)
+                // Skip all classes in the logging framework and the package of LoggerUtil
+                .filter(className -> !className.startsWith("java.util.logging")
+                        && !className.startsWith(loggerUtilPackage)
+                        && !className.equals(Thread.class.getName()))
+                .findFirst()
+                .orElse(null));
+    }
+
+    /**
+     * Records a structured event in the binary event log (no-op unless an event
+     * log location is configured). Unlike the text log this isn't level filtered.
+     * The event is only queued; the event log's own thread writes it.
+     * 
+     * @param type     what happened
+     * @param clientId who it happened to (or Constants.DEFAULT_CLIENT_ID)
+     * @param room     where it happened, may be null
+     * @param detail   message text, pick, phase name, etc., may be null
+     */
+    public void event(EventLog.Type type, long clientId, String room, String detail) {
+        EventLog events = eventLog;
+        if (events == null) {
+            return;
+        }
+        try {
+            events.append(type, clientId, room, detail);
+        } catch (RuntimeException e) {
+            eventLog = null; // stop trying, the text log still works
+            severe("Event log disabled after a write failure", e);
+        }
+    }
+
+    /**
+     * @return true if event() records anything
+     */
+    public boolean isEventLogEnabled() {
         if (!isConfigured)
             setupLogger();
-        logger.log(level, message, throwable);
+        return eventLog != null;
+    }
+
+    /**
+     * @return events discarded because the event log's buffer was full
+     */
+    public long getEventDroppedCount() {
+        EventLog events = eventLog;
+        return events == null ? 0 : events.getDropped();
+    }
+
+    /**
+     * Blocks until every queued record has been written (no-op unless async)
+     */
+    public void flush() {
+        if (asyncHandler != null) {
+            asyncHandler.flush();
+        }
+    }
+
+    /**
+     * @return records discarded because the async buffer was full
+     */
+    public long getDroppedCount() {
+        return asyncHandler == null ? 0 : asyncHandler.dropped.get();
+    }
+
+    /**
+     * What a caller does when the async buffer is full
+     */
+    public enum OverflowPolicy {
+        BLOCK, // wait for the writer to make room
+        DROP, // discard the record (counted and reported by the writer)
+        DROP_BELOW_WARNING, // discard INFO and lower, wait for WARNING and SEVERE
+    }
+
+    /**
+     * Hands records to one background writer through a bounded multi-producer
+     * ring buffer so the calling thread never formats or does I/O.
+     * Producers claim a slot by CAS on head and then publish the record into it;
+     * the writer consumes in sequence order and clears each slot.
+     */
+    private static class AsyncHandler extends Handler {
+        private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+        private static final long FULL_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+        private final Handler[] targets;
+        private final AtomicReferenceArray<LogRecord> slots;
+        private final int mask;
+        private final OverflowPolicy policy;
+        private final AtomicLong head = new AtomicLong(); // next sequence to claim
+        private volatile long tail = 0; // next sequence the writer will read
+        private volatile boolean writerIdle = false;
+        private final AtomicLong dropped = new AtomicLong();
+        private long reportedDrops = 0; // writer thread only
+        private final Thread writer;
+
+        AsyncHandler(int capacity, OverflowPolicy policy, Handler... targets) {
+            int size = 2;
+            while (size < capacity) {
+                size <<= 1;
+            }
+            this.slots = new AtomicReferenceArray<>(size);
+            this.mask = size - 1;
+            this.policy = policy;
+            this.targets = targets;
+            writer = new Thread(this::drain, "log-writer");
+            writer.setDaemon(true);
+            writer.start();
+        }
+
+        @Override
+        public void publish(LogRecord record) {
+            if (!isLoggableByAny(record)) {
+                return; // don't spend a slot on something every target would filter
+            }
+            while (true) {
+                long seq = head.get();
+                if (seq - tail >= slots.length()) {
+                    if (policy == OverflowPolicy.DROP || (policy == OverflowPolicy.DROP_BELOW_WARNING
+                            && record.getLevel().intValue() < Level.WARNING.intValue())) {
+                        dropped.incrementAndGet();
+                        return;
+                    }
+                    LockSupport.parkNanos(FULL_PARK_NANOS);
+                    continue;
+                }
+                if (head.compareAndSet(seq, seq + 1)) {
+                    slots.set((int) (seq & mask), record);
+                    if (writerIdle) {
+                        LockSupport.unpark(writer);
+                    }
+                    return;
+                }
+            }
+        }
+
+        private boolean isLoggableByAny(LogRecord record) {
+            for (Handler target : targets) {
+                if (target.isLoggable(record)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private void drain() {
+            while (true) {
+                long seq = tail;
+                int index = (int) (seq & mask);
+                LogRecord record = slots.get(index);
+                if (record == null) {
+                    // empty, or a producer claimed the slot and hasn't filled it yet
+                    reportDrops();
+                    writerIdle = true;
+                    if (slots.get(index) == null) {
+                        LockSupport.parkNanos(this, head.get() == seq ? IDLE_PARK_NANOS : FULL_PARK_NANOS);
+                    }
+                    writerIdle = false;
+                    continue;
+                }
+                slots.set(index, null);
+                tail = seq + 1;
+                for (Handler target : targets) {
+                    target.publish(record);
+                }
+            }
+        }
+
+        private void reportDrops() {
+            long drops = dropped.get();
+            if (drops != reportedDrops) {
+                LogRecord record = new LogRecord(Level.WARNING,
+                        String.format("%s log records dropped, async buffer was full", drops - reportedDrops));
+                record.setSourceClassName(LoggerUtil.class.getName());
+                reportedDrops = drops;
+                for (Handler target : targets) {
+                    target.publish(record);
+                }
+            }
+        }
+
+        /**
+         * Waits until everything enqueued so far has been written, then flushes the
+         * targets
+         */
+        @Override
+        public void flush() {
+            long target = head.get();
+            while (tail < target && writer.isAlive()) {
+                LockSupport.unpark(writer);
+                LockSupport.parkNanos(FULL_PARK_NANOS);
+            }
+            for (Handler handler : targets) {
+                handler.flush();
+            }
+        }
+
+        @Override
+        public void close() {
+            flush();
+            for (Handler handler : targets) {
+                handler.close();
+            }
+        }
     }
 
     /**
@@ -289,6 +583,15 @@ public enum LoggerUtil {
         log(Level.INFO, message);
     }
 
+    /**
+     * Logs an informational message that is only built if INFO is enabled.
+     * 
+     * @param message supplies the log message
+     */
+    public void info(Supplier<String> message) {
+        log(Level.INFO, message);
+    }
+
     /**
      * Logs an exception with an INFO level.
      *
@@ -317,6 +620,15 @@ public enum LoggerUtil {
         log(Level.WARNING, message);
     }
 
+    /**
+     * Logs a warning message that is only built if WARNING is enabled.
+     * 
+     * @param message supplies the log message
+     */
+    public void warning(Supplier<String> message) {
+        log(Level.WARNING, message);
+    }
+
     /**
      * Logs an exception with a WARNING level.
      *
@@ -373,6 +685,15 @@ public enum LoggerUtil {
         log(Level.FINE, message);
     }
 
+    /**
+     * Logs a fine-grained message that is only built if FINE is enabled.
+     * 
+     * @param message supplies the log message
+     */
+    public void fine(Supplier<String> message) {
+        log(Level.FINE, message);
+    }
+
     /**
      * Logs a finer-grained informational message.
      * 
@@ -421,6 +742,13 @@ public enum LoggerUtil {
         private Level fileLogLevel = Level.ALL; // default log level for file
         private Level consoleLogLevel = Level.ALL; // default log level for console
         private int stackTraceLimit = 10; // default maximum number of stack trace elements
+        private boolean async = false; // write from a background thread
+        private int asyncBufferSize = 8192; // records the async buffer can hold (rounded up to a power of 2)
+        private OverflowPolicy overflowPolicy = OverflowPolicy.DROP_BELOW_WARNING;
+        private boolean resolveCaller = true; // look up the calling class for each record
+        private String eventLogLocation = null; // path prefix of binary event segments, null disables
+        private int eventSegmentSize = 16 * 1024 * 1024; // 16MB per event segment
+        private int eventSegmentCount = 8; // event segments kept before the oldest is deleted
 
         // Getters and Setters for each property
 
@@ -531,6 +859,136 @@ public enum LoggerUtil {
         public void setStackTraceLimit(int stackTraceLimit) {
             this.stackTraceLimit = stackTraceLimit;
         }
+
+        /**
+         * Gets whether records are written by a background thread.
+         * 
+         * @return true if logging is asynchronous
+         */
+        public boolean isAsync() {
+            return async;
+        }
+
+        /**
+         * Sets whether records are written by a background thread. Callers then
+         * only build the record and enqueue it.
+         * 
+         * @param async true to log asynchronously
+         */
+        public void setAsync(boolean async) {
+            this.async = async;
+        }
+
+        /**
+         * Gets the number of records the async buffer can hold.
+         * 
+         * @return the async buffer capacity
+         */
+        public int getAsyncBufferSize() {
+            return asyncBufferSize;
+        }
+
+        /**
+         * Sets the number of records the async buffer can hold (rounded up to a
+         * power of 2).
+         * 
+         * @param asyncBufferSize the async buffer capacity
+         */
+        public void setAsyncBufferSize(int asyncBufferSize) {
+            this.asyncBufferSize = asyncBufferSize;
+        }
+
+        /**
+         * Gets what callers do when the async buffer is full.
+         * 
+         * @return the overflow policy
+         */
+        public OverflowPolicy getOverflowPolicy() {
+            return overflowPolicy;
+        }
+
+        /**
+         * Sets what callers do when the async buffer is full.
+         * 
+         * @param overflowPolicy the overflow policy
+         */
+        public void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+            this.overflowPolicy = overflowPolicy;
+        }
+
+        /**
+         * Gets whether the calling class is looked up for each record.
+         * 
+         * @return true if the caller is resolved
+         */
+        public boolean isResolveCaller() {
+            return resolveCaller;
+        }
+
+        /**
+         * Sets whether the calling class is looked up for each record. Turning it
+         * off skips the stack walk and logs the source as "unknown".
+         * 
+         * @param resolveCaller true to resolve the caller
+         */
+        public void setResolveCaller(boolean resolveCaller) {
+            this.resolveCaller = resolveCaller;
+        }
+
+        /**
+         * Gets the path prefix of the binary event log segments.
+         * 
+         * @return the event log location, or null if disabled
+         */
+        public String getEventLogLocation() {
+            return eventLogLocation;
+        }
+
+        /**
+         * Sets the path prefix of the binary event log segments, i.e.
+         * "server-events" writes server-events-0.evl, server-events-1.evl, ...
+         * 
+         * @param eventLogLocation the event log location, null disables it
+         */
+        public void setEventLogLocation(String eventLogLocation) {
+            this.eventLogLocation = eventLogLocation;
+        }
+
+        /**
+         * Gets the size of each event log segment.
+         * 
+         * @return bytes per segment
+         */
+        public int getEventSegmentSize() {
+            return eventSegmentSize;
+        }
+
+        /**
+         * Sets the size of each event log segment.
+         * 
+         * @param eventSegmentSize bytes per segment
+         */
+        public void setEventSegmentSize(int eventSegmentSize) {
+            this.eventSegmentSize = eventSegmentSize;
+        }
+
+        /**
+         * Gets the number of event log segments kept.
+         * 
+         * @return the number of segments
+         */
+        public int getEventSegmentCount() {
+            return eventSegmentCount;
+        }
+
+        /**
+         * Sets the number of event log segments kept before the oldest is deleted.
+         * 
+         * @param eventSegmentCount the number of segments
+         */
+        public void setEventSegmentCount(int eventSegmentCount) {
+            this.eventSegmentCount = eventSegmentCount;
+        }
     }
 
     /**
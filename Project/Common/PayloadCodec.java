@@ -0,0 +1,176 @@
+package Project.Common;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+
+/**
+ * Splits a connection's Payload stream into length-prefixed, versioned frames.
+ * <p>
+ * Frame layout: a 4-byte big-endian length, then that many bytes of which the
+ * first is the frame version (identifies the body encoding) followed by the
+ * encoded Payload. The length prefix lets a non-blocking reader know when a
+ * whole Payload has arrived before it hands the bytes to the decoder.
+ * </p>
+ * One instance is used per connection (per side) since an encoding may keep
+ * per-connection state.
+ */
+public abstract class PayloadCodec {
+    public static final int LENGTH_PREFIX_SIZE = 4;
+    public static final int HEADER_SIZE = LENGTH_PREFIX_SIZE + 1; // length + version
+    public static final int MAX_FRAME_SIZE = 1024 * 1024; // 1MB, anything larger is treated as corrupt
+
+    private static final byte[] EMPTY_HEADER = new byte[HEADER_SIZE];
+
+    private final FrameBuffer encodeBuffer = new FrameBuffer();
+
+    /**
+     * @return the version byte written at the start of each frame body
+     */
+    public abstract byte getVersion();
+
+    /**
+     * @return true if a frame doesn't depend on earlier frames, so the same bytes
+     *         can be sent on any connection using this encoding
+     */
+    public boolean isStateless() {
+        return false;
+    }
+
+    /**
+     * Appends the encoded payload to the frame being built
+     *
+     * @param payload
+     * @param out
+     * @throws IOException
+     */
+    protected abstract void writeBody(Payload payload, FrameBuffer out) throws IOException;
+
+    /**
+     * Decodes a payload from the frame body (after the version byte)
+     *
+     * @param data
+     * @param offset first byte after the version
+     * @param length
+     * @return the decoded Payload
+     * @throws IOException
+     * @throws ClassNotFoundException
+     */
+    protected abstract Payload readBody(byte[] data, int offset, int length)
+            throws IOException, ClassNotFoundException;
+
+    /**
+     * Encodes the payload into a complete frame (length prefix included)
+     *
+     * @param payload
+     * @return the frame bytes ready to be written to the wire
+     * @throws IOException
+     */
+    public synchronized byte[] encode(Payload payload) throws IOException {
+        encodeBuffer.reset();
+        encodeBuffer.write(EMPTY_HEADER, 0, HEADER_SIZE); // patched below
+        writeBody(payload, encodeBuffer);
+        int length = encodeBuffer.size() - LENGTH_PREFIX_SIZE;
+        checkFrameLength(length);
+        byte[] frame = encodeBuffer.toByteArray();
+        ByteBuffer.wrap(frame).putInt(length).put(getVersion());
+        return frame;
+    }
+
+    /**
+     * Decodes a single frame body (length prefix already removed)
+     *
+     * @param body
+     * @return the decoded Payload
+     * @throws IOException
+     * @throws ClassNotFoundException
+     */
+    public synchronized Payload decode(byte[] body) throws IOException, ClassNotFoundException {
+        if (body.length == 0 || body[0] != getVersion()) {
+            throw new StreamCorruptedException(String.format("Unsupported frame version %s (expected %s)",
+                    body.length == 0 ? "none" : body[0], getVersion()));
+        }
+        return readBody(body, 1, body.length - 1);
+    }
+
+    /**
+     * Encodes and writes a frame to a blocking stream
+     *
+     * @param out
+     * @param payload
+     * @throws IOException
+     */
+    public void write(OutputStream out, Payload payload) throws IOException {
+        out.write(encode(payload));
+        out.flush();
+    }
+
+    /**
+     * Blocks until a full frame is read from the stream and decodes it
+     *
+     * @param in
+     * @return the decoded Payload
+     * @throws IOException
+     * @throws ClassNotFoundException
+     */
+    public Payload read(DataInputStream in) throws IOException, ClassNotFoundException {
+        return decode(readFrame(in));
+    }
+
+    /**
+     * Blocks until a full frame is read from the stream
+     *
+     * @param in
+     * @return the frame body without the length prefix
+     * @throws IOException
+     */
+    public static byte[] readFrame(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        checkFrameLength(length);
+        byte[] body = new byte[length];
+        in.readFully(body);
+        return body;
+    }
+
+    /**
+     * Attempts to pull one frame body out of a non-blocking read buffer.
+     * The buffer is expected to be in read mode (flipped); if a full frame isn't
+     * available yet the buffer position is left untouched.
+     *
+     * @param buffer
+     * @return the frame body or null if more bytes are needed
+     * @throws IOException if the frame length is invalid
+     */
+    public static byte[] nextFrame(ByteBuffer buffer) throws IOException {
+        if (buffer.remaining() < LENGTH_PREFIX_SIZE) {
+            return null;
+        }
+        int length = buffer.getInt(buffer.position());
+        checkFrameLength(length);
+        if (buffer.remaining() < LENGTH_PREFIX_SIZE + length) {
+            return null;
+        }
+        buffer.position(buffer.position() + LENGTH_PREFIX_SIZE);
+        byte[] body = new byte[length];
+        buffer.get(body);
+        return body;
+    }
+
+    private static void checkFrameLength(int length) throws IOException {
+        if (length < 0 || length > MAX_FRAME_SIZE) {
+            throw new StreamCorruptedException("Invalid frame length " + length);
+        }
+    }
+
+    /**
+     * Reusable growable buffer a frame is built in
+     */
+    protected static class FrameBuffer extends ByteArrayOutputStream {
+        FrameBuffer() {
+            super(256);
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package Project.Common;
 
+// Note: ordinals are part of the binary wire format, only append new types
 public enum PayloadType {
        CLIENT_CONNECT, // client requesting to connect to server (passing of initialization data
                        // [name])
@@ -24,5 +25,12 @@ public enum PayloadType {
        SYNC_TURN, // quiet version of TURN, used to sync existing turn status of clients in a
                   // GameRoom
        RESET_TURN, // trigger to tell client to reset their local list turn status
-       PICK // a player chooses Rock, Paper, or Scissors
+       PICK, // a player chooses Rock, Paper, or Scissors
+       STATS, // client asking for the server's metrics, server replying with them as text
+       ROOM_SNAPSHOT, // server sending a room's whole member table (ids, names, ready, turn, phase);
+                      // client asking for one after it missed a delta
+       ROOM_DELTA, // server broadcasting one versioned change to the room's member table
+       POINTS, // server syncing a player's total points (PointsPayload)
+       TOURNAMENT // client signing up for (or withdrawing from) the lobby's next tournament, or
+                  // starting it with the message "start"
 }
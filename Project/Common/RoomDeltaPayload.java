@@ -0,0 +1,86 @@
+package Project.Common;
+
+/**
+ * One change to a room's member table, broadcast to everyone in the room.
+ * The clientId is the member it's about (unused for the resets and PHASE).
+ * <p>
+ * Every delta carries the room's new state version. A client applies a delta
+ * only when it's exactly one past the version it holds; anything else means
+ * it missed one, and it asks for a new RoomSnapshotPayload instead.
+ * </p>
+ */
+public class RoomDeltaPayload extends Payload {
+
+    // Note: ordinals are part of the binary wire format, only append new changes
+    public enum Change {
+        JOIN, // clientId joined, clientName set
+        LEAVE, // clientId left
+        READY, // clientId's ready flag is now value
+        TURN, // clientId's took-turn flag is now value
+        RESET_READY, // everyone's ready flag cleared
+        RESET_TURN, // everyone's took-turn flag cleared
+        PHASE // room phase is now phase
+    }
+
+    private long version = 0;
+    private Change change;
+    private String clientName; // JOIN only
+    private boolean value; // READY and TURN only
+    private Phase phase; // PHASE only
+
+    public RoomDeltaPayload() {
+        setPayloadType(PayloadType.ROOM_DELTA);
+    }
+
+    public RoomDeltaPayload(Change change, long clientId) {
+        this();
+        this.change = change;
+        setClientId(clientId);
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
+    public Change getChange() {
+        return change;
+    }
+
+    public void setChange(Change change) {
+        this.change = change;
+    }
+
+    public String getClientName() {
+        return clientName;
+    }
+
+    public void setClientName(String clientName) {
+        this.clientName = clientName;
+    }
+
+    public boolean getValue() {
+        return value;
+    }
+
+    public void setValue(boolean value) {
+        this.value = value;
+    }
+
+    public Phase getPhase() {
+        return phase;
+    }
+
+    public void setPhase(Phase phase) {
+        this.phase = phase;
+    }
+
+    @Override
+    public String toString() {
+        return super.toString() + String.format(" Version [%s] Change [%s] ClientName [%s] Value [%s] Phase [%s]",
+                version, change, clientName, value, phase);
+    }
+}
@@ -4,7 +4,11 @@ import java.util.ArrayList;
 import java.util.List;
 
 public class RoomResultPayload extends Payload {
+    public static final int PAGE_SIZE = 10; // rooms per page
+
     private List<String> rooms = new ArrayList<String>();
+    private int offset = 0; // index of the first room in this page
+    private int total = 0; // number of rooms matching the query
 
     public RoomResultPayload() {
         setPayloadType(PayloadType.ROOM_LIST);
@@ -18,8 +22,31 @@ public class RoomResultPayload extends Payload {
         this.rooms = rooms;
     }
 
+    /**
+     * In a request, the number of matches to skip; in a response, the position of
+     * the first room returned
+     * 
+     * @return
+     */
+    public int getOffset() {
+        return offset;
+    }
+
+    public void setOffset(int offset) {
+        this.offset = offset;
+    }
+
+    public int getTotal() {
+        return total;
+    }
+
+    public void setTotal(int total) {
+        this.total = total;
+    }
+
     @Override
     public String toString() {
-        return super.toString() + "Rooms [" + String.join(",", rooms) + "]";
+        return super.toString() + String.format("Rooms [%s] Offset [%s] Total [%s]", String.join(",", rooms), offset,
+                total);
     }
 }
@@ -0,0 +1,91 @@
+package Project.Common;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The whole member table of a room in one payload, sent to a client when it
+ * joins (or asks after missing a RoomDeltaPayload). The message is the room
+ * name.
+ * <p>
+ * version is the room's state version this table reflects; the next delta the
+ * client applies is version + 1.
+ * </p>
+ */
+public class RoomSnapshotPayload extends Payload {
+    private long version = 0;
+    private Phase phase = null; // null for rooms without a game
+    private List<Member> members = new ArrayList<>();
+
+    /**
+     * One row of the member table
+     */
+    public static class Member implements Serializable {
+        private final long clientId;
+        private final String clientName;
+        private final boolean ready;
+        private final boolean tookTurn;
+
+        public Member(long clientId, String clientName, boolean ready, boolean tookTurn) {
+            this.clientId = clientId;
+            this.clientName = clientName;
+            this.ready = ready;
+            this.tookTurn = tookTurn;
+        }
+
+        public long getClientId() {
+            return clientId;
+        }
+
+        public String getClientName() {
+            return clientName;
+        }
+
+        public boolean isReady() {
+            return ready;
+        }
+
+        public boolean didTakeTurn() {
+            return tookTurn;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s#%s%s%s", clientName, clientId, ready ? " ready" : "", tookTurn ? " took turn" : "");
+        }
+    }
+
+    public RoomSnapshotPayload() {
+        setPayloadType(PayloadType.ROOM_SNAPSHOT);
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
+    public Phase getPhase() {
+        return phase;
+    }
+
+    public void setPhase(Phase phase) {
+        this.phase = phase;
+    }
+
+    public List<Member> getMembers() {
+        return members;
+    }
+
+    public void setMembers(List<Member> members) {
+        this.members = members;
+    }
+
+    @Override
+    public String toString() {
+        return super.toString() + String.format(" Version [%s] Phase [%s] Members %s", version, phase, members);
+    }
+}
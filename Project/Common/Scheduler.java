@@ -0,0 +1,39 @@
+package Project.Common;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Clock plus delayed tasks. TimerWheel.INSTANCE is the real one;
+ * VirtualScheduler runs on simulated time so timer-driven code (TimedEvent,
+ * the game rooms' ready/turn/round timers) can be driven faster than real time
+ * and in a reproducible order.
+ */
+public interface Scheduler {
+    /**
+     * Handle to a scheduled task
+     */
+    interface Cancellable {
+        /**
+         * Prevents the task from running if it hasn't yet
+         *
+         * @return true if this call cancelled it
+         */
+        boolean cancel();
+    }
+
+    /**
+     * @return current time in nanoseconds, only meaningful relative to other
+     *         readings from the same Scheduler
+     */
+    long nanoTime();
+
+    /**
+     * Runs the task once, no earlier than the delay from now
+     *
+     * @param task
+     * @param delay
+     * @param unit
+     * @return handle that can cancel the task
+     */
+    Cancellable schedule(Runnable task, long delay, TimeUnit unit);
+}
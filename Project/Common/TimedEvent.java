@@ -2,20 +2,33 @@ package Project.Common;
 
 /* Originally based off of https://gist.github.com/MattToegel/c55747f26c5092d6362678d5b1729ec6 */
 
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Consumer;
 
 /**
- * Simple countdown timer demo of java.util.Timer facility.
- * Formerly called Countdown
+ * Simple countdown timer.
+ * Formerly called Countdown and backed by its own java.util.Timer (one thread
+ * per instance); ticks are now scheduled on the shared TimerWheel, or on the
+ * Scheduler passed in (i.e., a VirtualScheduler for simulations).
  */
 
 public class TimedEvent {
-    private int secondsRemaining;
-    private Runnable expireCallback = null;
-    private Consumer<Integer> tickCallback = null;
-    final private Timer timer;
+    private static final long TICK_NANOS = TimeUnit.SECONDS.toNanos(1);
+    // process-wide totals, read by the server's metrics
+    private static final LongAdder started = new LongAdder();
+    private static final LongAdder expired = new LongAdder();
+    private static final LongAdder cancelled = new LongAdder();
+
+    private volatile int secondsRemaining;
+    private volatile Runnable expireCallback = null;
+    private volatile Consumer<Integer> tickCallback = null;
+    private volatile boolean isCancelled = false;
+    private final Scheduler scheduler;
+    private volatile Scheduler.Cancellable nextTick;
+    private long nextTickAt; // deadlines advance from the start so ticks don't drift
+    private final AtomicBoolean finished = new AtomicBoolean(); // counted as expired or cancelled
 
     /**
      * Create a TimedEvent to trigger the passed in callback after a set duration
@@ -24,8 +37,23 @@ public class TimedEvent {
      * @param callback
      */
     public TimedEvent(int durationInSeconds, Runnable callback) {
-        this(durationInSeconds);
+        this(durationInSeconds, callback, TimerWheel.INSTANCE);
+    }
+
+    /**
+     * Create a TimedEvent that keeps time with the given Scheduler
+     * 
+     * @param durationInSeconds
+     * @param callback          may be null
+     * @param scheduler
+     */
+    public TimedEvent(int durationInSeconds, Runnable callback, Scheduler scheduler) {
+        this.scheduler = scheduler;
         this.expireCallback = callback;
+        secondsRemaining = durationInSeconds;
+        started.increment();
+        nextTickAt = scheduler.nanoTime();
+        scheduleTick();
     }
 
     /**
@@ -36,23 +64,39 @@ public class TimedEvent {
      * @param durationInSeconds
      */
     public TimedEvent(int durationInSeconds) {
-        timer = new Timer();
-        secondsRemaining = durationInSeconds;
-        timer.scheduleAtFixedRate(new TimerTask() {
-            public void run() {
-                secondsRemaining--;
-                if (tickCallback != null) {
-                    tickCallback.accept(secondsRemaining);
-                }
-                if (secondsRemaining <= 0) {
-                    timer.cancel();
-                    secondsRemaining = 0;
-                    if (expireCallback != null) {
-                        expireCallback.run();
-                    }
-                }
+        this(durationInSeconds, null, TimerWheel.INSTANCE);
+    }
+
+    private synchronized void scheduleTick() {
+        if (isCancelled) {
+            return;
+        }
+        nextTickAt += TICK_NANOS;
+        nextTick = scheduler.schedule(this::onTick, nextTickAt - scheduler.nanoTime(), TimeUnit.NANOSECONDS);
+    }
+
+    private void onTick() {
+        if (isCancelled) {
+            return;
+        }
+        secondsRemaining--;
+        Consumer<Integer> tick = tickCallback;
+        if (tick != null) {
+            tick.accept(secondsRemaining);
+        }
+        if (secondsRemaining <= 0) {
+            isCancelled = true;
+            secondsRemaining = 0;
+            if (finished.compareAndSet(false, true)) {
+                expired.increment();
+            }
+            Runnable expire = expireCallback;
+            if (expire != null) {
+                expire.run();
             }
-        }, 1000, 1000);
+        } else {
+            scheduleTick();
+        }
     }
 
     /**
@@ -80,7 +124,14 @@ public class TimedEvent {
     public void cancel() {
         expireCallback = null;
         tickCallback = null;
-        timer.cancel();
+        isCancelled = true;
+        if (finished.compareAndSet(false, true)) {
+            cancelled.increment();
+        }
+        Scheduler.Cancellable tick = nextTick;
+        if (tick != null) {
+            tick.cancel();
+        }
     }
 
     /**
@@ -94,17 +145,48 @@ public class TimedEvent {
         return secondsRemaining;
     }
 
+    /**
+     * @return number of TimedEvents created in this process
+     */
+    public static long getStartedCount() {
+        return started.sum();
+    }
+
+    /**
+     * @return number of TimedEvents that ran to zero
+     */
+    public static long getExpiredCount() {
+        return expired.sum();
+    }
+
+    /**
+     * @return number of TimedEvents cancelled before expiring
+     */
+    public static long getCancelledCount() {
+        return cancelled.sum();
+    }
+
+    /**
+     * @return number of TimedEvents still counting down
+     */
+    public static long getActiveCount() {
+        return getStartedCount() - getExpiredCount() - getCancelledCount();
+    }
+
     /**
      * This is just for testing/demo
      * 
      * @param args
+     * @throws InterruptedException
      */
-    public static void main(String args[]) {
+    public static void main(String args[]) throws InterruptedException {
         TimedEvent cd = new TimedEvent(30, () -> {
             System.out.println("Time expired");
         });
         cd.setTickCallback((tick) -> {
             System.out.println("Tick: " + tick);
         });
+        // the shared timer threads are daemons, keep the JVM alive for the demo
+        Thread.sleep(31 * 1000);
     }
 }
\ No newline at end of file
@@ -0,0 +1,214 @@
+package Project.Common;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Process-wide hashed timing wheel.
+ * <p>
+ * One thread advances the wheel every TICK_MS and hands expired tasks to a
+ * small pool so a slow callback can't delay other timers. Scheduling only
+ * appends to a lock-free queue and cancelling only flips a flag, so both are
+ * O(1) no matter how many timers are pending; cancelled timeouts are dropped
+ * when their bucket is next visited.
+ * </p>
+ * Tasks fire no earlier than their deadline and at most about one tick late.
+ */
+public enum TimerWheel implements Scheduler {
+    INSTANCE;
+
+    public static final long TICK_MS = 100;
+    private static final int WHEEL_SIZE = 512; // power of 2, one lap is ~51 seconds
+    private static final int MASK = WHEEL_SIZE - 1;
+
+    private final long tickNanos = TimeUnit.MILLISECONDS.toNanos(TICK_MS);
+    private final List<List<Timeout>> buckets = new ArrayList<>(WHEEL_SIZE);
+    private final ConcurrentLinkedQueue<Timeout> incoming = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final ExecutorService callbackPool;
+    private final long startTime;
+    private long currentTick = 0; // only touched by the wheel thread
+
+    TimerWheel() {
+        for (int i = 0; i < WHEEL_SIZE; i++) {
+            buckets.add(new ArrayList<>());
+        }
+        AtomicInteger threadCount = new AtomicInteger();
+        callbackPool = Executors.newFixedThreadPool(Math.max(2, Runtime.getRuntime().availableProcessors()), r -> {
+            Thread t = new Thread(r, "timer-callback-" + threadCount.getAndIncrement());
+            t.setDaemon(true);
+            return t;
+        });
+        startTime = System.nanoTime();
+        Thread wheelThread = new Thread(this::run, "timer-wheel");
+        wheelThread.setDaemon(true);
+        wheelThread.start();
+    }
+
+    @Override
+    public long nanoTime() {
+        return System.nanoTime();
+    }
+
+    /**
+     * Schedules a task to run once after the delay
+     *
+     * @param task
+     * @param delay
+     * @param unit
+     * @return handle that can cancel the task
+     */
+    @Override
+    public Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+        Timeout timeout = new Timeout(task, System.nanoTime() + unit.toNanos(Math.max(0, delay)));
+        pending.incrementAndGet();
+        incoming.add(timeout);
+        return timeout;
+    }
+
+    /**
+     * @return number of scheduled tasks that haven't fired or been cancelled
+     */
+    public int getPendingCount() {
+        return pending.get();
+    }
+
+    private void run() {
+        while (true) {
+            long deadline = startTime + (currentTick + 1) * tickNanos;
+            long sleepNanos = deadline - System.nanoTime();
+            if (sleepNanos > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(sleepNanos);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                continue; // sleep can return early, re-check the deadline
+            }
+            transferIncoming();
+            expire(buckets.get((int) (currentTick & MASK)), deadline);
+            currentTick++;
+        }
+    }
+
+    private void transferIncoming() {
+        Timeout timeout;
+        while ((timeout = incoming.poll()) != null) {
+            if (timeout.state.get() != Timeout.PENDING) {
+                continue;
+            }
+            // first tick whose deadline is at or after the timeout's
+            long tick = Math.max(currentTick, ceilDiv(timeout.deadline - startTime, tickNanos) - 1);
+            timeout.remainingRounds = (tick - currentTick) / WHEEL_SIZE;
+            buckets.get((int) (tick & MASK)).add(timeout);
+        }
+    }
+
+    private void expire(List<Timeout> bucket, long tickDeadline) {
+        int kept = 0;
+        for (int i = 0; i < bucket.size(); i++) {
+            Timeout timeout = bucket.get(i);
+            if (timeout.state.get() != Timeout.PENDING) {
+                continue; // cancelled, drop it
+            }
+            if (timeout.remainingRounds > 0) {
+                timeout.remainingRounds--;
+                bucket.set(kept++, timeout);
+                continue;
+            }
+            if (timeout.state.compareAndSet(Timeout.PENDING, Timeout.EXPIRED)) {
+                pending.decrementAndGet();
+                callbackPool.execute(timeout.task);
+            }
+        }
+        bucket.subList(kept, bucket.size()).clear();
+    }
+
+    private static long ceilDiv(long x, long y) {
+        return x <= 0 ? 0 : (x + y - 1) / y;
+    }
+
+    /**
+     * Handle to a scheduled task
+     */
+    public final class Timeout implements Scheduler.Cancellable {
+        private static final int PENDING = 0;
+        private static final int CANCELLED = 1;
+        private static final int EXPIRED = 2;
+
+        private final Runnable task;
+        private final long deadline;
+        private final AtomicInteger state = new AtomicInteger(PENDING);
+        private long remainingRounds; // only touched by the wheel thread
+
+        private Timeout(Runnable task, long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        /**
+         * Prevents the task from running if it hasn't fired yet
+         *
+         * @return true if this call cancelled it
+         */
+        @Override
+        public boolean cancel() {
+            if (state.compareAndSet(PENDING, CANCELLED)) {
+                pending.decrementAndGet();
+                return true;
+            }
+            return false;
+        }
+
+        public boolean isExpired() {
+            return state.get() == EXPIRED;
+        }
+    }
+
+    /**
+     * Schedules and cancels a large number of timers and reports the cost and
+     * how late they fired. This is just for testing/demo
+     *
+     * @param args optional timer count
+     * @throws InterruptedException
+     */
+    public static void main(String[] args) throws InterruptedException {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        TimerWheel wheel = TimerWheel.INSTANCE;
+        CountDownLatch fired = new CountDownLatch(count / 2);
+        AtomicLong totalLateNanos = new AtomicLong();
+        AtomicLong maxLateNanos = new AtomicLong();
+        Timeout[] timeouts = new Timeout[count];
+
+        long start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            final long delayMs = 500 + (i % 1500);
+            final long due = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMs);
+            timeouts[i] = wheel.schedule(() -> {
+                long late = System.nanoTime() - due;
+                totalLateNanos.addAndGet(late);
+                maxLateNanos.accumulateAndGet(late, Math::max);
+                fired.countDown();
+            }, delayMs, TimeUnit.MILLISECONDS);
+        }
+        long scheduleNs = (System.nanoTime() - start) / count;
+        start = System.nanoTime();
+        for (int i = 1; i < count; i += 2) {
+            timeouts[i].cancel();
+        }
+        long cancelNs = (System.nanoTime() - start) / (count / 2);
+        System.out.println(String.format("%s timers: schedule %s ns/op, cancel %s ns/op, pending %s", count,
+                scheduleNs, cancelNs, wheel.getPendingCount()));
+        fired.await();
+        System.out.println(String.format("fired %s, avg late %.1f ms, max late %.1f ms, pending %s", count / 2,
+                totalLateNanos.get() / 1e6 / (count / 2), maxLateNanos.get() / 1e6, wheel.getPendingCount()));
+    }
+}
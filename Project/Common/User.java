@@ -5,6 +5,7 @@ public class User {
     private String clientName;
     private boolean isReady = false;
     private boolean tookTurn = false;
+    private int points = 0;
 
     /**
      * @return the clientId
@@ -51,6 +52,7 @@ public class User {
         this.clientName = null;
         this.isReady = false;
         this.tookTurn = false;
+        this.points = 0;
     }
 
     /**
@@ -66,4 +68,15 @@ public class User {
     public void setTookTurn(boolean tookTurn) {
         this.tookTurn = tookTurn;
     }
+
+    /**
+     * @return total points across every game played under this name
+     */
+    public int getPoints() {
+        return points;
+    }
+
+    public void setPoints(int points) {
+        this.points = points;
+    }
 }
@@ -0,0 +1,142 @@
+package Project.Common;
+
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scheduler on simulated time, driven by whoever calls runNext()/advance().
+ * <p>
+ * Nothing happens on its own: tasks run one at a time on the calling thread,
+ * in deadline order, and the clock jumps straight to each deadline, so hours
+ * of 30 second timers take as long as the code they run. Tasks due at the
+ * same instant run in an order drawn from the seed, so one seed always gives
+ * the same interleaving and different seeds try different ones.
+ * </p>
+ * <p>
+ * It's also an Executor (execute() schedules with no delay), so a room's
+ * Mailbox can be drained by the same loop instead of a thread pool.
+ * </p>
+ * Not thread-safe: one thread owns a simulation.
+ */
+public class VirtualScheduler implements Scheduler, Executor {
+    private final PriorityQueue<Task> tasks = new PriorityQueue<>();
+    private final Random random;
+    private long now = 0;
+    private long executed = 0;
+
+    private static final class Task implements Scheduler.Cancellable, Comparable<Task> {
+        private final Runnable action;
+        private final long deadline;
+        private final long order; // tie break between tasks due at the same time
+        private boolean cancelled = false;
+
+        private Task(Runnable action, long deadline, long order) {
+            this.action = action;
+            this.deadline = deadline;
+            this.order = order;
+        }
+
+        @Override
+        public boolean cancel() {
+            if (cancelled) {
+                return false;
+            }
+            cancelled = true;
+            return true;
+        }
+
+        @Override
+        public int compareTo(Task other) {
+            int byDeadline = Long.compare(deadline, other.deadline);
+            return byDeadline != 0 ? byDeadline : Long.compare(order, other.order);
+        }
+    }
+
+    /**
+     * @param seed decides the order of tasks due at the same time
+     */
+    public VirtualScheduler(long seed) {
+        random = new Random(seed);
+    }
+
+    @Override
+    public long nanoTime() {
+        return now;
+    }
+
+    @Override
+    public Scheduler.Cancellable schedule(Runnable task, long delay, TimeUnit unit) {
+        Task scheduled = new Task(task, now + unit.toNanos(Math.max(0, delay)), random.nextLong());
+        tasks.add(scheduled);
+        return scheduled;
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        schedule(command, 0, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Moves the clock to the earliest pending task and runs it
+     *
+     * @return false if nothing was pending
+     */
+    public boolean runNext() {
+        Task task;
+        while ((task = tasks.poll()) != null) {
+            if (task.cancelled) {
+                continue;
+            }
+            now = Math.max(now, task.deadline);
+            executed++;
+            task.action.run();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Runs everything due within the duration (including what those tasks
+     * schedule), then leaves the clock at the end of it
+     *
+     * @param duration
+     * @param unit
+     */
+    public void advance(long duration, TimeUnit unit) {
+        long until = now + unit.toNanos(duration);
+        while (!tasks.isEmpty() && tasks.peek().deadline <= until) {
+            runNext();
+        }
+        now = Math.max(now, until);
+    }
+
+    /**
+     * Runs tasks until none are pending or the limit is reached
+     *
+     * @param maxTasks
+     * @return number of tasks run
+     */
+    public long runUntilIdle(long maxTasks) {
+        long ran = 0;
+        while (ran < maxTasks && runNext()) {
+            ran++;
+        }
+        return ran;
+    }
+
+    /**
+     * @return tasks waiting to run (cancelled ones included until they're reached)
+     */
+    public int getPendingCount() {
+        return tasks.size();
+    }
+
+    /**
+     * @return tasks run so far
+     */
+    public long getExecutedCount() {
+        return executed;
+    }
+}
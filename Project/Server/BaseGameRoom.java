@@ -1,9 +1,17 @@
 package Project.Server;
 
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+
 import Project.Common.Constants;
+import Project.Common.EventLog;
 import Project.Common.LoggerUtil;
 import Project.Common.Phase;
+import Project.Common.RoomDeltaPayload;
+import Project.Common.RoomSnapshotPayload;
+import Project.Common.Scheduler;
 import Project.Common.TimedEvent;
+import Project.Common.TimerWheel;
 import Project.Exceptions.NotReadyException;
 import Project.Exceptions.PhaseMismatchException;
 import Project.Exceptions.PlayerNotFoundException;
@@ -16,6 +24,14 @@ public abstract class BaseGameRoom extends Room {
 
     private TimedEvent readyTimer = null;
 
+    private final Mailbox mailbox;
+
+    // keeps time for the room's timers; TimerWheel unless simulated
+    protected final Scheduler scheduler;
+
+    // inputs and checkpoints for Replayer, null when not recording
+    protected ReplayLog replay;
+
     protected final int MINIMUM_REQUIRED_TO_START = 2;
 
     protected Phase currentPhase = Phase.READY;
@@ -24,6 +40,39 @@ public abstract class BaseGameRoom extends Room {
 
     public BaseGameRoom(String name) {
         super(name);
+        mailbox = new Mailbox(name);
+        scheduler = TimerWheel.INSTANCE;
+        replay = ReplayLog.open(name, scheduler);
+    }
+
+    /**
+     * Room whose timers and mailbox run on the given Scheduler/Executor, i.e.,
+     * the same VirtualScheduler for a deterministic simulation
+     * 
+     * @param name
+     * @param scheduler
+     * @param executor  drains the room's Mailbox
+     */
+    public BaseGameRoom(String name, Scheduler scheduler, Executor executor) {
+        super(name);
+        mailbox = new Mailbox(name, executor);
+        this.scheduler = scheduler;
+        replay = ReplayLog.open(name, scheduler);
+    }
+
+    /**
+     * Swaps where the room records (i.e., Replayer checking a replay against
+     * the original), closing the previous log
+     * 
+     * @param log may be null to stop recording
+     */
+    protected void setReplayLog(ReplayLog log) {
+        execute(() -> {
+            if (replay != null) {
+                replay.close();
+            }
+            replay = log;
+        });
     }
 
     /**
@@ -74,32 +123,106 @@ public abstract class BaseGameRoom extends Room {
      */
     protected abstract void onClientRemoved(ServerThread client);
 
-    @Override
-    protected synchronized void addClient(ServerThread client) {
-        if (!isRunning()) { // block action if Room isn't running
-            return;
+    /**
+     * Triggered after a client's ready flag was set or cleared
+     * 
+     * @param client
+     */
+    protected void onReadyChanged(ServerThread client) {
+    }
+
+    /**
+     * A timer ran out; runs on the mailbox and is recorded as an input since
+     * when it happens depends on the clock
+     * 
+     * @param timer READY_TIMER here, subclasses handle their own timers
+     */
+    protected void onTimerExpired(ReplayLog.Type timer) {
+        if (replay != null) {
+            replay.event(timer);
+        }
+        if (timer == ReplayLog.Type.READY_TIMER) {
+            checkReadyStatus();
         }
-        // do the base Room class logic
-        super.addClient(client);
-        onClientAdded(client);
+    }
+
+    /**
+     * Starts a timer whose expiry is posted to the room's mailbox. The expiry only
+     * counts if, when it runs, the timer is still the room's current one; one
+     * queued just before a reset or restart is ignored.
+     * 
+     * @param seconds
+     * @param type    handed to onTimerExpired()
+     * @param current reads the field holding the room's current timer of this kind
+     * @return the started timer
+     */
+    protected TimedEvent startTimer(int seconds, ReplayLog.Type type, Supplier<TimedEvent> current) {
+        TimedEvent[] timer = new TimedEvent[1];
+        timer[0] = new TimedEvent(seconds, () -> execute(() -> {
+            if (current.get() == timer[0]) {
+                onTimerExpired(type);
+            }
+        }), scheduler);
+        return timer[0];
+    }
+
+    /**
+     * GameRoom actions (client handlers and timer callbacks) are posted to the
+     * room's Mailbox instead of locking the room, so only one runs at a time
+     * 
+     * @param action
+     */
+    @Override
+    protected void execute(Runnable action) {
+        mailbox.execute(action);
     }
 
     @Override
-    protected synchronized void removeClient(ServerThread client) {
-        if (!isRunning()) { // block action if Room isn't running
-            return;
+    protected void addClient(ServerThread client) {
+        execute(() -> {
+            if (!isRunning()) { // block action if Room isn't running
+                return;
+            }
+            if (replay != null) {
+                // flags too, a player can arrive still marked ready from elsewhere
+                replay.join(client.getClientId(), client.getClientName(), client.isReady(), client.didTakeTurn());
+            }
+            // do the base Room class logic
+            super.addClient(client);
+            onClientAdded(client);
+        });
+    }
+
+    @Override
+    protected void removeClient(ServerThread client) {
+        execute(() -> {
+            if (!isRunning()) { // block action if Room isn't running
+                return;
+            }
+            if (replay != null) {
+                replay.input(ReplayLog.Type.LEAVE, client.getClientId());
+            }
+            LoggerUtil.INSTANCE.info(() -> "Players in room: " + clientsInRoom.size());
+            // do the base-class logic
+            super.removeClient(client);
+            onClientRemoved(client);
+        });
+    }
+
+    @Override
+    protected void onMemberDisconnected(ServerThread client) {
+        // runs inside disconnect()'s action, before the user is reset
+        if (replay != null) {
+            replay.input(ReplayLog.Type.DISCONNECT, client.getClientId());
         }
-        LoggerUtil.INSTANCE.info("Players in room: " + clientsInRoom.size());
-        // do the base-class logic
-        super.removeClient(client);
+        LoggerUtil.INSTANCE.info(() -> "Players in room: " + clientsInRoom.size());
         onClientRemoved(client);
     }
 
     @Override
-    protected synchronized void disconnect(ServerThread client) {
-        super.disconnect(client);
-        LoggerUtil.INSTANCE.info("Players in room: " + clientsInRoom.size());
-        onClientRemoved(client);
+    public void close() {
+        super.close();
+        setReplayLog(null); // finishes the file
     }
 
     /**
@@ -122,10 +245,7 @@ public abstract class BaseGameRoom extends Room {
             resetReadyTimer();
         }
         if (readyTimer == null) {
-            readyTimer = new TimedEvent(30, () -> {
-                // callback to trigger when ready expires
-                checkReadyStatus();
-            });
+            readyTimer = startTimer(30, ReplayLog.Type.READY_TIMER, () -> readyTimer);
             readyTimer.setTickCallback((time) -> System.out.println("Ready Timer: " + time));
         }
     }
@@ -136,8 +256,10 @@ public abstract class BaseGameRoom extends Room {
      */
     private void checkReadyStatus() {
         long numReady = clientsInRoom.values().stream().filter(p -> p.isReady()).count();
+        // the expired timer has to go either way, otherwise the next ready doesn't
+        // start a new one and a failed check leaves the room waiting forever
+        resetReadyTimer();
         if (numReady >= MINIMUM_REQUIRED_TO_START) {
-            resetReadyTimer();
             onSessionStart();
         } else {
             onSessionEnd();
@@ -145,7 +267,10 @@ public abstract class BaseGameRoom extends Room {
     }
 
     protected void resetReadyStatus() {
-        clientsInRoom.values().forEach(p -> p.setReady(false));
+        clientsInRoom.forEach(p -> {
+            p.setReady(false);
+            onReadyChanged(p);
+        });
         sendResetReadyTrigger();
     }
 
@@ -158,32 +283,59 @@ public abstract class BaseGameRoom extends Room {
     protected void changePhase(Phase phase) {
         if (currentPhase != phase) {
             currentPhase = phase;
+            LoggerUtil.INSTANCE.event(EventLog.Type.PHASE, Constants.DEFAULT_CLIENT_ID, getName(), phase.name());
             sendCurrentPhase();
+            if (replay != null) {
+                replay.phase(phase); // a checkpoint, written out right away
+            }
         }
     }
 
     // send/sync data to ServerThread(s)
 
     /**
-     * Syncs the current phase to a single client
-     * 
-     * @param sp
+     * Also folds the room's own messages into the replay digest (player chat
+     * isn't a game input so it's left out)
+     */
+    @Override
+    protected void relay(ServerThread sender, String message) {
+        execute(() -> {
+            if (replay != null && sender == null && isRunning()) {
+                replay.relayed(message);
+            }
+            super.relay(sender, message);
+        });
+    }
+
+    /**
+     * Also folds the delta into the replay digest
+     */
+    @Override
+    protected BroadcastFrame broadcastDelta(RoomDeltaPayload delta, ServerThread skip) {
+        BroadcastFrame broadcast = super.broadcastDelta(delta, skip);
+        if (replay != null) {
+            replay.delta(delta);
+        }
+        return broadcast;
+    }
+
+    /**
+     * Adds the phase to the member table (ready and turn flags are per member)
      */
-    protected void syncCurrentPhase(ServerThread sp) {
-        sp.sendCurrentPhase(currentPhase);
+    @Override
+    protected RoomSnapshotPayload buildSnapshot() {
+        RoomSnapshotPayload snapshot = super.buildSnapshot();
+        snapshot.setPhase(currentPhase);
+        return snapshot;
     }
 
     /**
      * Sends the current phase to all clients
      */
     protected void sendCurrentPhase() {
-        clientsInRoom.values().removeIf(spInRoom -> {
-            boolean failedToSend = !spInRoom.sendCurrentPhase(currentPhase);
-            if (failedToSend) {
-                removeClient(spInRoom);
-            }
-            return failedToSend;
-        });
+        RoomDeltaPayload delta = new RoomDeltaPayload(RoomDeltaPayload.Change.PHASE, Constants.DEFAULT_CLIENT_ID);
+        delta.setPhase(currentPhase);
+        broadcastDelta(delta, null);
     }
 
     /**
@@ -191,28 +343,7 @@ public abstract class BaseGameRoom extends Room {
      * status
      */
     protected void sendResetReadyTrigger() {
-        clientsInRoom.values().removeIf(spInRoom -> {
-            boolean failedToSend = !spInRoom.sendResetReady();
-            if (failedToSend) {
-                removeClient(spInRoom);
-            }
-            return failedToSend;
-        });
-    }
-
-    /**
-     * Sends the ready status of each ServerThread to one client
-     * 
-     * @param incomingSP
-     */
-    protected void syncReadyStatus(ServerThread incomingSP) {
-        clientsInRoom.values().removeIf(spInRoom -> {
-            boolean failedToSend = !incomingSP.sendReadyStatus(spInRoom.getClientId(), spInRoom.isReady(), true);
-            if (failedToSend) {
-                removeClient(spInRoom);
-            }
-            return failedToSend && spInRoom.getClientId() == incomingSP.getClientId();
-        });
+        broadcastDelta(new RoomDeltaPayload(RoomDeltaPayload.Change.RESET_READY, Constants.DEFAULT_CLIENT_ID), null);
     }
 
     /**
@@ -222,41 +353,42 @@ public abstract class BaseGameRoom extends Room {
      * @param isReady
      */
     protected void sendReadyStatus(ServerThread incomingSP, boolean isReady) {
-        clientsInRoom.values().removeIf(spInRoom -> {
-            boolean failedToSend = !spInRoom.sendReadyStatus(incomingSP.getClientId(), incomingSP.isReady());
-            if (failedToSend) {
-                removeClient(spInRoom);
-            }
-            return failedToSend;
-        });
+        RoomDeltaPayload delta = new RoomDeltaPayload(RoomDeltaPayload.Change.READY, incomingSP.getClientId());
+        delta.setValue(isReady);
+        broadcastDelta(delta, null);
     }
     // end send data to ServerThread(s)
 
     // receive data from ServerThread (GameRoom specific)
     protected void handleReady(ServerThread sender) {
-        try {
-            // early exit checks
-            checkPlayerInRoom(sender);
-            checkCurrentPhase(sender, Phase.READY);
-
-            ServerThread sp = null;
-            // option 1: simply just mark ready
-            if (!allowToggleReady) {
-                sp = clientsInRoom.get(sender.getClientId());
-                sp.setReady(true);
+        execute(() -> {
+            if (replay != null) {
+                replay.input(ReplayLog.Type.READY, sender.getClientId());
             }
-            // option 2: toggle
-            else {
-                sp = clientsInRoom.get(sender.getClientId());
-                sp.setReady(!sp.isReady());
+            try {
+                // early exit checks
+                checkPlayerInRoom(sender);
+                checkCurrentPhase(sender, Phase.READY);
+
+                ServerThread sp = null;
+                // option 1: simply just mark ready
+                if (!allowToggleReady) {
+                    sp = clientsInRoom.get(sender.getClientId());
+                    sp.setReady(true);
+                }
+                // option 2: toggle
+                else {
+                    sp = clientsInRoom.get(sender.getClientId());
+                    sp.setReady(!sp.isReady());
+                }
+                onReadyChanged(sp);
+                startReadyTimer(false); // <-- triggers the next step when it expires
+
+                sendReadyStatus(sp, sp.isReady());
+            } catch (Exception e) {
+                LoggerUtil.INSTANCE.severe("handleReady exception", e);
             }
-            startReadyTimer(false); // <-- triggers the next step when it expires
-
-            sendReadyStatus(sp, sp.isReady());
-        } catch (Exception e) {
-            LoggerUtil.INSTANCE.severe("handleReady exception", e);
-        }
-
+        });
     }
     // end receive data from ServerThread (GameRoom specific)
 
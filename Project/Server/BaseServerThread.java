@@ -1,22 +1,50 @@
 package Project.Server;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.io.OutputStream;
 import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+import java.util.logging.Level;
 
+import Project.Common.BinaryPayloadCodec;
+import Project.Common.LoggerUtil;
 import Project.Common.Payload;
+import Project.Common.PayloadCodec;
+import Project.Common.TimerWheel;
 import Project.Common.User;
+import Project.Server.metrics.Metrics;
 
 /**
  * Base class the handles the underlying connection between Client and
- * Server-side
+ * Server-side.
+ * <p>
+ * In thread-per-client mode the blocking read loop (run()) and the outbound
+ * queue's writer each run on a Thread created by the factory passed to
+ * start(), so every client costs two threads; these may be platform or
+ * virtual threads.
+ * </p>
  */
-public abstract class BaseServerThread extends Thread {
+public abstract class BaseServerThread implements Runnable {
+    // how long cleanup() lets already queued frames go out before closing
+    protected static final long DRAIN_TIMEOUT_MILLIS = 1000;
 
     protected boolean isRunning = false; // control variable to stop this thread
-    protected ObjectOutputStream out; // exposed here for send()
-    protected Socket client; // communication directly to "my" client
+    protected OutputStream out; // exposed here for send()
+    protected Socket client; // communication directly to "my" client (thread-per-client mode)
+    protected NioServer.Connection connection; // communication directly to "my" client (NIO mode)
+    protected final PayloadCodec codec = new BinaryPayloadCodec();
+    protected final OutboundQueue outbound = new OutboundQueue(); // frames waiting to be written
+    private Thread readerThread; // runs the blocking read loop (thread-per-client mode)
+    private Thread writerThread; // drains the outbound queue (thread-per-client mode)
+    private final AtomicBoolean isClosing = new AtomicBoolean(); // set by the first cleanup()
     protected User user = new User();
     protected Room currentRoom;
 
@@ -90,6 +118,18 @@ public abstract class BaseServerThread extends Thread {
      */
     protected abstract void info(String message);
 
+    /**
+     * Logs the supplied message only if INFO is enabled, so hot paths don't
+     * build strings (or call Payload.toString()) that would be filtered out
+     * 
+     * @param message
+     */
+    protected void info(Supplier<String> message) {
+        if (LoggerUtil.INSTANCE.isLoggable(Level.INFO)) {
+            info(message.get());
+        }
+    }
+
     /**
      * Triggered when object is fully initialized
      */
@@ -103,7 +143,8 @@ public abstract class BaseServerThread extends Thread {
     protected abstract void processPayload(Payload payload);
 
     /**
-     * Sends the payload over the socket
+     * Queues the payload to be sent over the socket; returns without waiting for
+     * the write
      * 
      * @param payload
      * @return true if no errors were encountered
@@ -113,9 +154,19 @@ public abstract class BaseServerThread extends Thread {
             return true;
         }
         try {
-            info("Sending to client: " + payload);
-            out.writeObject(payload);
-            out.flush();
+            info(() -> "Sending to client: " + payload);
+            // encode and queue under one lock so frames hit the wire in encode order
+            synchronized (codec) {
+                byte[] frame = codec.encode(payload);
+                Metrics.INSTANCE.recordEncoded(frame.length);
+                if (!outbound.offer(frame)) {
+                    throw new IOException("Outbound queue full or closed: " + outbound);
+                }
+                Metrics.INSTANCE.recordSent(payload.getPayloadType(), frame.length);
+            }
+            if (connection != null) {
+                connection.requestWrite();
+            }
             return true;
         } catch (IOException e) {
             info("Error sending message to client (most likely disconnected)");
@@ -126,6 +177,38 @@ public abstract class BaseServerThread extends Thread {
         }
     }
 
+    /**
+     * Queues a broadcast, reusing its pre-encoded frame when this connection's
+     * encoding allows it
+     * 
+     * @param broadcast
+     * @return true if no errors were encountered
+     */
+    protected boolean sendToClient(BroadcastFrame broadcast) {
+        byte[] frame = broadcast.getFrameFor(codec);
+        if (frame == null) {
+            return sendToClient(broadcast.getPayload());
+        }
+        if (!isRunning) {
+            return true;
+        }
+        try {
+            info(() -> "Sending to client: " + broadcast.getPayload());
+            if (!outbound.offer(frame)) {
+                throw new IOException("Outbound queue full or closed: " + outbound);
+            }
+            Metrics.INSTANCE.recordSent(broadcast.getPayload().getPayloadType(), frame.length);
+            if (connection != null) {
+                connection.requestWrite();
+            }
+            return true;
+        } catch (IOException e) {
+            info("Error sending message to client (most likely disconnected)");
+            cleanup();
+            return false;
+        }
+    }
+
     /**
      * Terminates the server-side of the connection
      */
@@ -136,43 +219,156 @@ public abstract class BaseServerThread extends Thread {
         }
         info("Thread being disconnected by server");
         isRunning = false;
-        this.interrupt(); // breaks out of blocking read in the run() method
+        if (readerThread != null) {
+            readerThread.interrupt(); // breaks out of blocking read in the run() method
+        }
         cleanup(); // good practice to ensure data is written out immediately
     }
 
+    /**
+     * Marks the connection as running and starts the name check
+     */
+    protected void onStarted() {
+        isRunning = true;
+        Metrics.INSTANCE.connectionOpened();
+        // shared timer wheel instead of a Timer (thread) per connection
+        TimerWheel.INSTANCE.schedule(() -> {
+            if (getClientName() == null || getClientName().isBlank()) {
+                info("Client name not received. Disconnecting");
+                disconnect();
+            }
+        }, 3, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Logs and dispatches a Payload received from the client
+     * 
+     * @param fromClient
+     */
+    protected void onReceived(Payload fromClient) {
+        info(() -> "Received from my client: " + fromClient);
+        Metrics.INSTANCE.recordReceived(fromClient.getPayloadType());
+        long start = System.nanoTime();
+        processPayload(fromClient);
+        Metrics.INSTANCE.recordDispatch(fromClient.getPayloadType(), System.nanoTime() - start);
+    }
+
+    /**
+     * Decodes a frame body, counting its bytes
+     * 
+     * @param body frame body without the length prefix
+     * @return the decoded Payload
+     * @throws IOException
+     * @throws ClassNotFoundException
+     */
+    private Payload decode(byte[] body) throws IOException, ClassNotFoundException {
+        Metrics.INSTANCE.recordDecoded(PayloadCodec.LENGTH_PREFIX_SIZE + body.length);
+        return codec.decode(body);
+    }
+
+    /**
+     * Decodes and dispatches a single frame (used by the NIO engine)
+     * 
+     * @param body frame body without the length prefix
+     */
+    protected void receive(byte[] body) {
+        if (!isRunning) {
+            return;
+        }
+        try {
+            onReceived(decode(body));
+        } catch (ClassCastException | ClassNotFoundException cce) {
+            System.err.println("Error reading object as specified type: " + cce.getMessage());
+            cce.printStackTrace();
+        } catch (IOException e) {
+            info("IO exception while reading from client");
+            e.printStackTrace();
+            connection.close();
+        } catch (Exception e) {
+            info("Unexpected exception while reading from client");
+            e.printStackTrace();
+            connection.close();
+        }
+    }
+
+    /**
+     * Triggered once the connection is gone; releases the client from its Room
+     */
+    protected void onStopped() {
+        Metrics.INSTANCE.connectionClosed();
+        Room room = currentRoom;
+        currentRoom = null;
+        if (room != null) {
+            // the Room may handle this later (GameRoom mailbox), it resets the user
+            // once the client is removed
+            room.handleDisconnect(this);
+        } else {
+            resetUser();
+        }
+        isRunning = false;
+        info("Exited thread loop. Cleaning up connection");
+        cleanup();
+    }
+
+    /**
+     * Starts the blocking read loop on a thread from the given factory; run()
+     * starts the writer, a second thread from it, once the streams are open
+     * 
+     * @param threadFactory platform or virtual thread factory
+     */
+    protected void start(ThreadFactory threadFactory) {
+        if (readerThread != null) {
+            throw new IllegalStateException("ServerThread already started");
+        }
+        readerThread = threadFactory.newThread(this);
+        writerThread = threadFactory.newThread(this::writeLoop);
+        readerThread.start();
+    }
+
+    /**
+     * Drains the outbound queue, writing everything queued with a single flush
+     * (thread-per-client mode)
+     */
+    private void writeLoop() {
+        List<byte[]> batch = new ArrayList<>();
+        try {
+            while (outbound.awaitBatch(batch)) {
+                long bytes = 0;
+                for (byte[] frame : batch) {
+                    out.write(frame);
+                    bytes += frame.length;
+                }
+                out.flush();
+                outbound.recordFlush(batch.size(), bytes);
+                batch.clear();
+            }
+        } catch (IOException e) {
+            info("Error sending message to client (most likely disconnected)");
+            outbound.discard();
+            cleanup();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
     @Override
     public void run() {
         info("Thread starting");
-        try (ObjectOutputStream out = new ObjectOutputStream(client.getOutputStream());
-                ObjectInputStream in = new ObjectInputStream(client.getInputStream());) {
-            this.out = out;
-            isRunning = true;
-            new java.util.Timer().schedule(new java.util.TimerTask() {
-                @Override
-                public void run() {
-                    if (getClientName() == null || getClientName().isBlank()) {
-                        info("Client name not received. Disconnecting");
-                        disconnect();
-                    }
-                }
-            }, 3000);
-            Payload fromClient;
+        // not try-with-resources: closing either stream closes the socket, which
+        // cleanup() does only once the writer had its chance to drain
+        try {
+            out = new BufferedOutputStream(client.getOutputStream());
+            DataInputStream in = new DataInputStream(new BufferedInputStream(client.getInputStream()));
+            onStarted();
+            writerThread.start();
             /**
              * isRunning is a flag to let us manage the loop exit condition
-             * fromClient (in.readObject()) is a blocking method that waits until data is
+             * codec.read(in) is a blocking method that waits until a full frame is
              * received
-             * - null would likely mean a disconnect so we use a "set and check" logic to
-             * alternatively exit the loop
              */
             while (isRunning) {
                 try {
-                    fromClient = (Payload) in.readObject(); // blocking method
-                    if (fromClient != null) {
-                        info("Received from my client: " + fromClient);
-                        processPayload(fromClient);
-                    } else {
-                        throw new IOException("Connection interrupted"); // Specific exception for a clean break
-                    }
+                    onReceived(decode(PayloadCodec.readFrame(in))); // blocking method
                 } catch (ClassCastException | ClassNotFoundException cce) {
                     System.err.println("Error reading object as specified type: " + cce.getMessage());
                     cce.printStackTrace();
@@ -196,26 +392,46 @@ public abstract class BaseServerThread extends Thread {
             e.printStackTrace();
             info("My Client disconnected");
         } finally {
-            if (currentRoom != null) {
-                currentRoom.handleDisconnect(this);
-            }
-            isRunning = false;
-            info("Exited thread loop. Cleaning up connection");
-            cleanup();
+            onStopped();
         }
     }
 
     /**
-     * Cleanup method to close the connection and reset the user object
+     * Clears the user's id, name and flags; only once no Room action still needs
+     * them
+     */
+    protected void resetUser() {
+        user.reset();
+    }
+
+    /**
+     * Cleanup method to close the connection. Frames queued before this are
+     * given up to DRAIN_TIMEOUT_MILLIS to be written first, unless the queue was
+     * discarded; only the first call does anything
      */
     protected void cleanup() {
+        if (!isClosing.compareAndSet(false, true)) {
+            return;
+        }
         info("ServerThread cleanup() start");
         try {
-            // close server-side end of connection
-            currentRoom = null;
-            out.close();
-            client.close();
-            user.reset();
+            // close server-side end of connection; currentRoom stays set so
+            // onStopped() can still tell the Room
+            outbound.close();
+            if (connection != null) {
+                if (outbound.isDiscarded()) {
+                    connection.close();
+                } else {
+                    connection.closeWhenDrained(DRAIN_TIMEOUT_MILLIS);
+                }
+            } else {
+                if (!outbound.isDiscarded()) {
+                    awaitWriter();
+                }
+                // not out.close(), its flush would block behind a writer still stuck in
+                // write(); closing the socket unblocks that write and closes both streams
+                client.close();
+            }
             info("Closed Server-side Socket");
         } catch (IOException e) {
             info("Client already closed");
@@ -223,4 +439,26 @@ public abstract class BaseServerThread extends Thread {
 
         info("ServerThread cleanup() end");
     }
+
+    /**
+     * Waits up to DRAIN_TIMEOUT_MILLIS for the writer to finish the closed queue
+     * (thread-per-client mode)
+     */
+    private void awaitWriter() {
+        Thread writer = writerThread;
+        if (writer == null || writer == Thread.currentThread()) {
+            return;
+        }
+        // disconnect() interrupts the reader, which may be the thread calling this
+        boolean interrupted = Thread.interrupted();
+        try {
+            writer.join(DRAIN_TIMEOUT_MILLIS);
+        } catch (InterruptedException e) {
+            interrupted = true;
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
 }
\ No newline at end of file
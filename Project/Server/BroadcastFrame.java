@@ -0,0 +1,59 @@
+package Project.Server;
+
+import java.io.IOException;
+
+import Project.Common.BinaryPayloadCodec;
+import Project.Common.LoggerUtil;
+import Project.Common.Payload;
+import Project.Common.PayloadCodec;
+import Project.Server.metrics.Metrics;
+
+/**
+ * A Payload that is encoded once and then handed, as the same immutable bytes,
+ * to every recipient of a broadcast.
+ * <p>
+ * Only connections using a stateless encoding of the same version can share
+ * the frame; anything else falls back to encoding the Payload itself. The
+ * frame is encoded when the first recipient asks for it, so a broadcast that
+ * only reaches in-memory clients (simulations, replays) is never encoded.
+ * </p>
+ */
+public class BroadcastFrame {
+    // encoding is stateless so each thread can keep its own encode buffer
+    private static final ThreadLocal<PayloadCodec> encoder = ThreadLocal.withInitial(BinaryPayloadCodec::new);
+
+    private final Payload payload;
+    private volatile byte[] frame; // never modified once set, null until first needed
+    private volatile boolean failed = false; // encoding failed, recipients encode it themselves
+
+    public BroadcastFrame(Payload payload) {
+        this.payload = payload;
+    }
+
+    public Payload getPayload() {
+        return payload;
+    }
+
+    /**
+     * @param codec the recipient's codec
+     * @return the shared frame if the recipient can use it as-is, otherwise null
+     */
+    protected byte[] getFrameFor(PayloadCodec codec) {
+        if (!codec.isStateless() || codec.getVersion() != BinaryPayloadCodec.VERSION) {
+            return null;
+        }
+        byte[] encoded = frame;
+        if (encoded == null && !failed) {
+            // fan-outs run on one thread; if two ever race they make identical bytes
+            try {
+                encoded = encoder.get().encode(payload);
+                Metrics.INSTANCE.recordEncoded(encoded.length);
+                frame = encoded;
+            } catch (IOException e) {
+                failed = true;
+                LoggerUtil.INSTANCE.warning("Failed to pre-encode broadcast, recipients will encode it", e);
+            }
+        }
+        return encoded;
+    }
+}
@@ -0,0 +1,71 @@
+package Project.Server;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Counts how often a lock was taken, how often the caller had to wait for it
+ * and how long it waited in total.
+ * <p>
+ * Acquiring through {@link #lock(ReentrantLock)} costs one tryLock() when the
+ * lock is free, so the numbers can stay on in production.
+ * </p>
+ */
+public class ContentionStats {
+    private final LongAdder acquisitions = new LongAdder();
+    private final LongAdder contended = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+
+    /**
+     * Acquires the lock, recording whether it had to wait
+     *
+     * @param lock
+     */
+    public void lock(ReentrantLock lock) {
+        acquisitions.increment();
+        if (lock.tryLock()) {
+            return;
+        }
+        contended.increment();
+        long start = System.nanoTime();
+        lock.lock();
+        waitNanos.add(System.nanoTime() - start);
+    }
+
+    public long getAcquisitions() {
+        return acquisitions.sum();
+    }
+
+    public long getContended() {
+        return contended.sum();
+    }
+
+    public long getWaitNanos() {
+        return waitNanos.sum();
+    }
+
+    /**
+     * @return fraction of acquisitions that had to wait, 0 to 1
+     */
+    public double getContentionRate() {
+        long total = getAcquisitions();
+        return total == 0 ? 0 : (double) getContended() / total;
+    }
+
+    /**
+     * Adds another set of counters into this one (used to total up shards)
+     *
+     * @param other
+     */
+    public void add(ContentionStats other) {
+        acquisitions.add(other.getAcquisitions());
+        contended.add(other.getContended());
+        waitNanos.add(other.getWaitNanos());
+    }
+
+    @Override
+    public String toString() {
+        return String.format("acquisitions=%s contended=%s (%.1f%%) waited=%.1fms", getAcquisitions(), getContended(),
+                getContentionRate() * 100, getWaitNanos() / 1e6);
+    }
+}
@@ -1,13 +1,19 @@
 package Project.Server;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Executor;
 import java.util.stream.Collectors;
 
 import Project.Common.Constants;
+import Project.Common.EventLog;
 import Project.Common.LoggerUtil;
 import Project.Common.Phase;
+import Project.Common.RoomDeltaPayload;
+import Project.Common.Scheduler;
 import Project.Common.TimedEvent;
 import Project.Exceptions.MissingCurrentPlayerException;
 import Project.Exceptions.NotPlayersTurnException;
@@ -25,24 +31,168 @@ public class GameRoom extends BaseGameRoom {
     private List<ServerThread> turnOrder = new ArrayList<>();
     private long currentTurnClientId = Constants.DEFAULT_CLIENT_ID;
     private int round = 0;
+    private int roundsPerSession = 3;
+    private MatchObserver observer = null;
+    private Random random = new Random(); // shuffles the turn order
+    private PlayerStats stats = null; // totals across games, null keeps no score
     
+    // players by seat; a player keeps its seat while it's in the room, freed seats
+    // are reused by the next player to join
+    private ServerThread[] seats = new ServerThread[4];
+
     //st944 10-30-25
-    //stores players rps choice for the current round
-    private final java.util.Map<Long, String> picks = new java.util.HashMap<>();
+    //stores players rps choice for the current round, with ready/turn/symbol counts per seat
+    private final RpsTally tally = new RpsTally(seats.length);
+    private int[] roundWins = new int[seats.length]; // rounds each seat won this session
 
     public GameRoom(String name) {
         super(name);
     }
 
+    /**
+     * GameRoom whose timers and mailbox run on the given Scheduler/Executor
+     * 
+     * @param name
+     * @param scheduler
+     * @param executor  drains the room's Mailbox
+     */
+    public GameRoom(String name, Scheduler scheduler, Executor executor) {
+        super(name, scheduler, executor);
+    }
+
+    /**
+     * @param random source for the turn order shuffle (seed it to make sessions
+     *               repeatable)
+     */
+    public void setRandom(Random random) {
+        this.random = random;
+    }
+
+    /**
+     * @param rounds rounds played before the session ends (at least 1)
+     */
+    public void setRoundsPerSession(int rounds) {
+        roundsPerSession = Math.max(1, rounds);
+    }
+
+    public int getRoundsPerSession() {
+        return roundsPerSession;
+    }
+
+    /**
+     * @param observer told about round starts and the session's result, or null
+     */
+    public void setMatchObserver(MatchObserver observer) {
+        this.observer = observer;
+    }
+
+    /**
+     * @param stats where round results are added up by player name, or null (the
+     *              default) to not keep score, i.e. for simulations and replays
+     */
+    public void setPlayerStats(PlayerStats stats) {
+        this.stats = stats;
+    }
+
+    /**
+     * Starts a session right away with everyone in the room marked ready; a
+     * tournament match doesn't wait for the ready check
+     */
+    protected void startMatch() {
+        execute(() -> {
+            if (replay != null) {
+                replay.event(ReplayLog.Type.MATCH_START);
+            }
+            if (!isRunning() || currentPhase != Phase.READY) {
+                return;
+            }
+            resetReadyTimer();
+            clientsInRoom.forEach(sp -> {
+                if (!sp.isReady()) {
+                    sp.setReady(true);
+                    onReadyChanged(sp);
+                    sendReadyStatus(sp, true);
+                }
+            });
+            onSessionStart();
+        });
+    }
+
+    /**
+     * Ends the session in progress (if any) with the round wins so far, i.e.,
+     * when a match runs out of time
+     */
+    protected void endMatch() {
+        execute(() -> {
+            if (replay != null) {
+                replay.event(ReplayLog.Type.MATCH_END);
+            }
+            if (currentPhase == Phase.IN_PROGRESS) {
+                relay(null, "Time's up");
+                onSessionEnd();
+            }
+        });
+    }
+
+    /**
+     * @return the seated players with the most round wins this session (more
+     *         than one on a tie)
+     */
+    protected List<ServerThread> getSessionLeaders() {
+        List<ServerThread> leaders = new ArrayList<>();
+        int best = -1;
+        for (int seat = 0; seat < seats.length; seat++) {
+            if (seats[seat] == null) {
+                continue;
+            }
+            if (roundWins[seat] > best) {
+                best = roundWins[seat];
+                leaders.clear();
+            }
+            if (roundWins[seat] == best) {
+                leaders.add(seats[seat]);
+            }
+        }
+        return leaders;
+    }
+
+    /**
+     * @return the seated players in seat order
+     */
+    protected List<ServerThread> getPlayers() {
+        List<ServerThread> players = new ArrayList<>();
+        for (ServerThread sp : seats) {
+            if (sp != null) {
+                players.add(sp);
+            }
+        }
+        return players;
+    }
+
     /** {@inheritDoc} */
     //st944 10-30-25
     //when user joins syncs phase, ready, turn status.
     @Override
     protected void onClientAdded(ServerThread sp) {
-        // sync GameRoom state to new client
-        syncCurrentPhase(sp);
-        syncReadyStatus(sp);
-        syncTurnStatus(sp);
+        // nothing extra to sync, the snapshot from Room.addClient() already has the
+        // phase and every member's ready/turn status
+        if (clientsInRoom.get(sp.getClientId()) == sp && seatOf(sp) < 0) {
+            int seat = 0;
+            while (seat < seats.length && seats[seat] != null) {
+                seat++;
+            }
+            if (seat == seats.length) {
+                seats = Arrays.copyOf(seats, seats.length * 2);
+                tally.ensureSeats(seats.length);
+                roundWins = Arrays.copyOf(roundWins, seats.length);
+            }
+            seats[seat] = sp;
+            sp.setSeat(seat);
+            roundWins[seat] = 0;
+            tally.clearSeat(seat);
+            tally.setReady(seat, sp.isReady());
+            syncPoints(sp);
+        }
     }
 
     /** {@inheritDoc} */
@@ -52,8 +202,14 @@ public class GameRoom extends BaseGameRoom {
     protected void onClientRemoved(ServerThread sp) {
         // added after Summer 2024 Demo
         // Stops the timers so room can clean up
-        LoggerUtil.INSTANCE.info("Player Removed, remaining: " + clientsInRoom.size());
+        LoggerUtil.INSTANCE.info(() -> "Player Removed, remaining: " + clientsInRoom.size());
         long removedClient = sp.getClientId();
+        int seat = seatOf(sp);
+        if (seat >= 0 && clientsInRoom.get(removedClient) != sp) {
+            seats[seat] = null;
+            sp.setSeat(-1);
+            tally.clearSeat(seat);
+        }
         turnOrder.removeIf(player -> player.getClientId() == sp.getClientId());
         if (clientsInRoom.isEmpty()) {
             resetReadyTimer();
@@ -65,9 +221,29 @@ public class GameRoom extends BaseGameRoom {
         }
     }
 
+    /** {@inheritDoc} */
+    @Override
+    protected void onReadyChanged(ServerThread sp) {
+        int seat = seatOf(sp);
+        if (seat >= 0) {
+            tally.setReady(seat, sp.isReady());
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected void onTimerExpired(ReplayLog.Type timer) {
+        super.onTimerExpired(timer);
+        if (timer == ReplayLog.Type.TURN_TIMER) {
+            onTurnEnd();
+        } else if (timer == ReplayLog.Type.ROUND_TIMER) {
+            onRoundEnd();
+        }
+    }
+
     // timer handlers
     private void startRoundTimer() {
-        roundTimer = new TimedEvent(30, () -> onRoundEnd());
+        roundTimer = startTimer(30, ReplayLog.Type.ROUND_TIMER, () -> roundTimer);
         roundTimer.setTickCallback((time) -> System.out.println("Round Time: " + time));
     }
 
@@ -79,7 +255,7 @@ public class GameRoom extends BaseGameRoom {
     }
 
     private void startTurnTimer() {
-        turnTimer = new TimedEvent(30, () -> onTurnEnd());
+        turnTimer = startTimer(30, ReplayLog.Type.TURN_TIMER, () -> turnTimer);
         turnTimer.setTickCallback((time) -> System.out.println("Turn Time: " + time));
     }
 
@@ -103,6 +279,7 @@ public class GameRoom extends BaseGameRoom {
         currentTurnClientId = Constants.DEFAULT_CLIENT_ID;
         setTurnOrder();
         round = 0;
+        Arrays.fill(roundWins, 0);
         LoggerUtil.INSTANCE.info("onSessionStart() end");
         onRoundStart();
     }
@@ -117,9 +294,12 @@ public class GameRoom extends BaseGameRoom {
         resetTurnStatus();
         //st944 10-30-25
         //starts new round and clears choices/announces round number
-        picks.clear();
+        clearPicks();
         round++;
         relay(null, String.format("Round %d has started", round));
+        if (observer != null) {
+            observer.onRoundStart(this, round);
+        }
         // startRoundTimer(); Round timers aren't needed for turns
         // if you do decide to use it, ensure it's reasonable and based on the number of
         // players
@@ -150,6 +330,9 @@ public class GameRoom extends BaseGameRoom {
     protected void onTurnEnd() {
         LoggerUtil.INSTANCE.info("onTurnEnd() start");
         resetTurnTimer(); // reset timer if turn ended without the time expiring
+        if (replay != null) {
+            replay.flush(); // the turn's inputs are on disk
+        }
         try {
             // optionally can use checkAllTookTurn();
             if (isLastPlayer()) {
@@ -174,9 +357,12 @@ public class GameRoom extends BaseGameRoom {
     protected void onRoundEnd() {
         LoggerUtil.INSTANCE.info("onRoundEnd() start");
         resetRoundTimer(); // reset timer if round ended without the time expiring
+        if (replay != null) {
+            replay.round(round);
+        }
 
         LoggerUtil.INSTANCE.info("onRoundEnd() end");
-        if (round >= 3) {
+        if (round >= roundsPerSession) {
             onSessionEnd();
         } else {
             onRoundStart();
@@ -189,56 +375,59 @@ public class GameRoom extends BaseGameRoom {
     @Override
     protected void onSessionEnd() {
         LoggerUtil.INSTANCE.info("onSessionEnd() start");
+        resetTurnTimer(); // otherwise it still expires into a session that's over
+        boolean wasInProgress = currentPhase == Phase.IN_PROGRESS;
+        List<ServerThread> leaders = wasInProgress ? getSessionLeaders() : null;
         turnOrder.clear();
         currentTurnClientId = Constants.DEFAULT_CLIENT_ID;
         resetReadyStatus();
         resetTurnStatus();
         changePhase(Phase.READY);
+        if (wasInProgress && observer != null) {
+            observer.onSessionEnd(this, leaders);
+        }
         LoggerUtil.INSTANCE.info("onSessionEnd() end");
     }
     // end lifecycle methods
 
     // send/sync data to ServerThread(s)
     private void sendResetTurnStatus() {
-        clientsInRoom.values().forEach(spInRoom -> {
-            boolean failedToSend = !spInRoom.sendResetTurnStatus();
-            if (failedToSend) {
-                removeClient(spInRoom);
-            }
-        });
+        broadcastDelta(new RoomDeltaPayload(RoomDeltaPayload.Change.RESET_TURN, Constants.DEFAULT_CLIENT_ID), null);
     }
 
     private void sendTurnStatus(ServerThread client, boolean tookTurn) {
-        clientsInRoom.values().removeIf(spInRoom -> {
-            boolean failedToSend = !spInRoom.sendTurnStatus(client.getClientId(), client.didTakeTurn());
-            if (failedToSend) {
-                removeClient(spInRoom);
-            }
-            return failedToSend;
-        });
-    }
-
-    private void syncTurnStatus(ServerThread incomingClient) {
-        clientsInRoom.values().forEach(serverUser -> {
-            if (serverUser.getClientId() != incomingClient.getClientId()) {
-                boolean failedToSync = !incomingClient.sendTurnStatus(serverUser.getClientId(),
-                        serverUser.didTakeTurn(), true);
-                if (failedToSync) {
-                    LoggerUtil.INSTANCE.warning(
-                            String.format("Removing disconnected %s from list", serverUser.getDisplayName()));
-                    disconnect(serverUser);
-                }
-            }
-        });
+        RoomDeltaPayload delta = new RoomDeltaPayload(RoomDeltaPayload.Change.TURN, client.getClientId());
+        delta.setValue(tookTurn);
+        broadcastDelta(delta, null);
     }
 
     // end send data to ServerThread(s)
 
     // misc methods
+
+    /**
+     * @param sp
+     * @return the player's index in seats and the tally, or -1 if it isn't seated here
+     */
+    private int seatOf(ServerThread sp) {
+        int seat = sp.getSeat();
+        if (seat >= 0 && seat < seats.length && seats[seat] == sp) {
+            return seat;
+        }
+        // the number on the player may be from another room
+        for (int i = 0; i < seats.length; i++) {
+            if (seats[i] == sp) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
     private void resetTurnStatus() {
-        clientsInRoom.values().forEach(sp -> {
+        clientsInRoom.forEach(sp -> {
             sp.setTookTurn(false);
         });
+        tally.newRound();
         sendResetTurnStatus();
     }
 
@@ -248,7 +437,12 @@ public class GameRoom extends BaseGameRoom {
     private void setTurnOrder() {
         turnOrder.clear();
         turnOrder = clientsInRoom.values().stream().filter(ServerThread::isReady).collect(Collectors.toList());
-        Collections.shuffle(turnOrder);
+        // a fresh seed per shuffle so the replay log can store it
+        long seed = random.nextLong();
+        if (replay != null) {
+            replay.shuffle(seed);
+        }
+        Collections.shuffle(turnOrder, new Random(seed));
     }
 
     /**
@@ -305,14 +499,11 @@ public class GameRoom extends BaseGameRoom {
     }
 
     private void checkAllTookTurn() {
-        int numReady = clientsInRoom.values().stream()
-                .filter(sp -> sp.isReady())
-                .collect(Collectors.toList()).size();
-        int numTookTurn = clientsInRoom.values().stream()
-                // ensure to verify the isReady part since it's against the original list
-                .filter(sp -> sp.isReady() && sp.didTakeTurn())
-                .collect(Collectors.toList()).size();
-        if (numReady == numTookTurn) {
+        // runs after every pick, the tally keeps the counts so this doesn't look at
+        // the players
+        if (tally.isRoundComplete()) {
+            int numReady = tally.getReadyCount();
+            int numTookTurn = tally.getTookTurnCount();
             relay(null,
                     String.format("All players have taken their turn (%d/%d) ending the round", numTookTurn, numReady));
                     //st944 10-30-25
@@ -341,109 +532,164 @@ public class GameRoom extends BaseGameRoom {
      *                    additional actions or information)
      */
     protected void handleTurnAction(ServerThread currentUser, String exampleText) {
-        // check if the client is in the room
-        try {
-            checkPlayerInRoom(currentUser);
-            checkCurrentPhase(currentUser, Phase.IN_PROGRESS);
-            checkCurrentPlayer(currentUser.getClientId());
-            checkIsReady(currentUser);
-            if (currentUser.didTakeTurn()) {
-                currentUser.sendMessage(Constants.DEFAULT_CLIENT_ID, "You have already taken your turn this round");
-                return;
+        execute(() -> {
+            if (replay != null) {
+                replay.input(ReplayLog.Type.TURN, currentUser.getClientId());
             }
-            currentUser.setTookTurn(true);
-            // TODO handle example text possibly or other turn related intention from client
-            sendTurnStatus(currentUser, currentUser.didTakeTurn());
-            // finished processing the turn
-            onTurnEnd();
-        } catch (NotPlayersTurnException e) {
-            currentUser.sendMessage(Constants.DEFAULT_CLIENT_ID, "It's not your turn");
-            LoggerUtil.INSTANCE.severe("handleTurnAction exception", e);
-        } catch (NotReadyException e) {
-            // The check method already informs the currentUser
-            LoggerUtil.INSTANCE.severe("handleTurnAction exception", e);
-        } catch (PlayerNotFoundException e) {
-            currentUser.sendMessage(Constants.DEFAULT_CLIENT_ID, "You must be in a GameRoom to do the ready check");
-            LoggerUtil.INSTANCE.severe("handleTurnAction exception", e);
-        } catch (PhaseMismatchException e) {
-            currentUser.sendMessage(Constants.DEFAULT_CLIENT_ID,
-                    "You can only take a turn during the IN_PROGRESS phase");
-            LoggerUtil.INSTANCE.severe("handleTurnAction exception", e);
-        } catch (Exception e) {
-            LoggerUtil.INSTANCE.severe("handleTurnAction exception", e);
-        }
+            // check if the client is in the room
+            try {
+                checkPlayerInRoom(currentUser);
+                checkCurrentPhase(currentUser, Phase.IN_PROGRESS);
+                checkCurrentPlayer(currentUser.getClientId());
+                checkIsReady(currentUser);
+                if (currentUser.didTakeTurn()) {
+                    currentUser.sendMessage(Constants.DEFAULT_CLIENT_ID, "You have already taken your turn this round");
+                    return;
+                }
+                currentUser.setTookTurn(true);
+                int seat = seatOf(currentUser);
+                if (seat >= 0) {
+                    tally.recordTurn(seat, RpsTally.NONE);
+                }
+                // TODO handle example text possibly or other turn related intention from client
+                sendTurnStatus(currentUser, currentUser.didTakeTurn());
+                // finished processing the turn
+                onTurnEnd();
+            } catch (NotPlayersTurnException e) {
+                currentUser.sendMessage(Constants.DEFAULT_CLIENT_ID, "It's not your turn");
+                LoggerUtil.INSTANCE.severe("handleTurnAction exception", e);
+            } catch (NotReadyException e) {
+                // The check method already informs the currentUser
+                LoggerUtil.INSTANCE.severe("handleTurnAction exception", e);
+            } catch (PlayerNotFoundException e) {
+                currentUser.sendMessage(Constants.DEFAULT_CLIENT_ID, "You must be in a GameRoom to do the ready check");
+                LoggerUtil.INSTANCE.severe("handleTurnAction exception", e);
+            } catch (PhaseMismatchException e) {
+                currentUser.sendMessage(Constants.DEFAULT_CLIENT_ID,
+                        "You can only take a turn during the IN_PROGRESS phase");
+                LoggerUtil.INSTANCE.severe("handleTurnAction exception", e);
+            } catch (Exception e) {
+                LoggerUtil.INSTANCE.severe("handleTurnAction exception", e);
+            }
+        });
     }
 
     //st944 10-30-25
     //handles rps choices
     protected void handlePick(ServerThread currentUser, String choice) {
-        try {
-            checkPlayerInRoom(currentUser);
-            checkCurrentPhase(currentUser, Phase.IN_PROGRESS);
-            checkIsReady(currentUser);
-            picks.put(currentUser.getClientId(), choice.toLowerCase());
-            currentUser.setTookTurn(true);
-            sendTurnStatus(currentUser, true);
-            checkAllTookTurn();
-        }
-        catch(Exception e) {
-            currentUser.sendMessage(Constants.DEFAULT_CLIENT_ID, "You can't pick right now.");
-        }
-    }
-
-    private void resolveRpsRound() {
-        boolean hasR = false, hasP = false, hasS = false;
-        StringBuilder rocks = new StringBuilder();
-        StringBuilder papers = new StringBuilder();
-        StringBuilder scissors = new StringBuilder();
-
-        for (ServerThread sp : clientsInRoom.values()) {
-            String v = picks.get(sp.getClientId());
-            if (v == null || v.isEmpty()) continue;
-            char c = Character.toLowerCase(v.charAt(0));
-            if (c == 'r') {
-                hasR = true;
-                if (rocks.length() > 0) rocks.append(", ");
-                rocks.append(sp.getDisplayName());
+        execute(() -> {
+            if (replay != null) {
+                replay.pick(currentUser.getClientId(), choice);
             }
-            else if (c == 'p') {
-                hasP = true;
-                if (papers.length() > 0) papers.append(", ");
-                papers.append(sp.getDisplayName());
+            try {
+                checkPlayerInRoom(currentUser);
+                checkCurrentPhase(currentUser, Phase.IN_PROGRESS);
+                checkIsReady(currentUser);
+                recordPick(currentUser, choice);
+                currentUser.setTookTurn(true);
+                sendTurnStatus(currentUser, true);
+                checkAllTookTurn();
             }
-            else if (c == 's') {
-                hasS = true;
-                if (scissors.length() > 0) scissors.append(", ");
-                scissors.append(sp.getDisplayName());
+            catch(Exception e) {
+                currentUser.sendMessage(Constants.DEFAULT_CLIENT_ID, "You can't pick right now.");
             }
+        });
+    }
+
+    /**
+     * Forgets every player's choice, at the start of a round
+     */
+    protected void clearPicks() {
+        tally.newRound();
+    }
+
+    /**
+     * Stores a player's choice for the current round
+     * 
+     * @param player
+     * @param choice
+     */
+    protected void recordPick(ServerThread player, String choice) {
+        int seat = seatOf(player);
+        if (seat >= 0) {
+            // anything but r/p/s still counts as a turn taken, it just doesn't play
+            tally.recordTurn(seat, choice.isEmpty() ? RpsTally.NONE : choice.charAt(0));
         }
+        LoggerUtil.INSTANCE.event(EventLog.Type.PICK, player.getClientId(), getName(), choice);
+    }
 
-        int present = (hasR ? 1 : 0) + (hasP ? 1 : 0) + (hasS ? 1 : 0);
+    protected void resolveRpsRound() {
+        // the tally already knows which symbols are in play, only the winners' names
+        // are gathered here, once, for the result
+        char winning = tally.getWinningSymbol();
+        scoreRound(winning);
         String outcome;
-        char winning = '?';
-        if(present != 2) {
-            outcome = "It's a tie. No winner.";
+        if (winning == 'r') {
+            outcome = "Rock beats Scissors.";
         }
-        else if (hasR && hasS) {
-            winning = 'r'; outcome = "Rock beats Scissors.";
+        else if (winning == 's') {
+            outcome = "Scissors beats Paper.";
         }
-        else if (hasS && hasP) {
-            winning = 's'; outcome = "Scissors beats Paper.";
+        else if (winning == 'p') {
+            outcome = "Paper beats Rock.";
         }
         else {
-            winning = 'p'; outcome = "Paper beats Rock.";
+            relay(null, "It's a tie. No winner.");
+            return;
         }
 
-        String winners = "";
-        if (winning == 'r') winners = rocks.toString();
-        else if (winning == 'p') winners = papers.toString();
-        else if (winning == 's') winners = scissors.toString();
+        StringBuilder winners = new StringBuilder(outcome).append(" Winners: ");
+        int prefix = winners.length();
+        for (int seat = 0; seat < seats.length; seat++) {
+            ServerThread sp = seats[seat];
+            if (sp == null || tally.getPick(seat) != winning) continue;
+            roundWins[seat]++;
+            if (winners.length() > prefix) winners.append(", ");
+            winners.append(sp.getDisplayName());
+        }
+        relay(null, winners.length() > prefix ? winners.toString() : outcome + " (no winners)");
+    }
+
+    /**
+     * Adds the round to the stats of every seat that picked and sends the new
+     * totals; only memory is touched, PlayerStats writes in the background
+     * 
+     * @param winning the winning symbol, NONE for a tie
+     */
+    private void scoreRound(char winning) {
+        if (stats == null) {
+            return;
+        }
+        for (int seat = 0; seat < seats.length; seat++) {
+            ServerThread sp = seats[seat];
+            char pick = tally.getPick(seat);
+            if (sp == null || pick == RpsTally.NONE) continue;
+            PlayerStats.Outcome outcome = winning == RpsTally.NONE ? PlayerStats.Outcome.TIE
+                    : pick == winning ? PlayerStats.Outcome.WIN : PlayerStats.Outcome.LOSS;
+            broadcastPoints(sp, stats.record(sp.getClientName(), outcome).getPoints());
+        }
+    }
 
-        String msg = outcome;
-        if (winning != '?') {
-            msg += winners.isEmpty() ? " (no winners)" : " Winners: " + winners;
+    /**
+     * Tells a newly seated player everyone's points and everyone the player's
+     * 
+     * @param sp
+     */
+    private void syncPoints(ServerThread sp) {
+        if (stats == null) {
+            return;
         }
-        relay(null, msg);
+        for (ServerThread other : seats) {
+            if (other != null && other != sp) {
+                sp.sendPoints(other.getClientId(), stats.get(other.getClientName()).getPoints());
+            }
+        }
+        broadcastPoints(sp, stats.get(sp.getClientName()).getPoints());
+    }
+
+    private void broadcastPoints(ServerThread player, int points) {
+        final BroadcastFrame broadcast = ServerThread.broadcastPoints(player.getClientId(), points);
+        forEachClient(serverThread -> disconnectIfFailed(serverThread, serverThread.sendBroadcast(broadcast)));
     }
 
     // end receive data from ServerThread (GameRoom specific)
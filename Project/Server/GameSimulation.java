@@ -0,0 +1,247 @@
+package Project.Server;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+
+import Project.Common.LoggerUtil;
+import Project.Common.Payload;
+import Project.Common.Phase;
+import Project.Common.RoomDeltaPayload;
+import Project.Common.RoomSnapshotPayload;
+import Project.Common.TimedEvent;
+import Project.Common.VirtualScheduler;
+
+/**
+ * Plays GameRooms full of bots on a VirtualScheduler: no sockets, no threads
+ * and no waiting, the clock jumps from one timer or bot action to the next.
+ * <p>
+ * Everything comes from the seed (the bots' delays, picks and AFK turns, each
+ * room's turn order and the order of actions due at the same instant), so the
+ * same seed always replays the same games. Every payload the bots receive is
+ * folded into a digest; two runs with the same seed and the same room code
+ * give the same digest, and a different digest after a change means the change
+ * altered what players see.
+ * </p>
+ */
+public class GameSimulation {
+    private static final String[] CHOICES = { "r", "p", "s" };
+
+    private final VirtualScheduler clock;
+    private final Random random;
+    private final double afkChance;
+    private final List<GameRoom> rooms = new ArrayList<>();
+    private long rounds = 0;
+    private long sessions = 0;
+    private long payloads = 0;
+    private long digest = 17;
+
+    /**
+     * Reacts to what the room sends like a client would: readies up whenever the
+     * room is waiting for players. Picks are made when a round starts, see
+     * onRoundStart() below.
+     */
+    private final class Bot implements Consumer<Payload> {
+        private final GameRoom room;
+        private final InMemoryServerThread client;
+        private Phase phase = null; // as last told by the room
+
+        private Bot(GameRoom room, long clientId) {
+            this.room = room;
+            client = new InMemoryServerThread(clientId, "bot" + clientId, this);
+        }
+
+        @Override
+        public void accept(Payload payload) {
+            record(client.getClientId(), payload);
+            if (payload instanceof RoomSnapshotPayload) {
+                phase = ((RoomSnapshotPayload) payload).getPhase();
+                if (phase == Phase.READY) {
+                    readyLater();
+                }
+            } else if (payload instanceof RoomDeltaPayload) {
+                RoomDeltaPayload delta = (RoomDeltaPayload) payload;
+                if (delta.getChange() == RoomDeltaPayload.Change.PHASE) {
+                    phase = delta.getPhase();
+                    if (phase == Phase.READY) {
+                        readyLater();
+                    }
+                } else if (delta.getChange() == RoomDeltaPayload.Change.RESET_READY && phase == Phase.READY) {
+                    // the ready check failed (too few ready), the room is waiting again
+                    readyLater();
+                }
+            }
+        }
+
+        private void readyLater() {
+            // an AFK bot comes back after the ready timer (30s) ran out; if nobody
+            // was ready then, its ready starts the next check
+            int delay = random.nextDouble() < afkChance ? 35_000 + random.nextInt(30_000) : 100 + random.nextInt(3000);
+            clock.schedule(() -> {
+                if (phase == Phase.READY) {
+                    room.handleReady(client);
+                }
+            }, delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * @param seed           decides everything random in the simulation
+     * @param roomCount
+     * @param playersPerRoom
+     * @param afkChance      chance a bot misses a pick or is late for a ready
+     *                       check, so the turn and ready timers expire sometimes
+     */
+    public GameSimulation(long seed, int roomCount, int playersPerRoom, double afkChance) {
+        clock = new VirtualScheduler(seed);
+        random = new Random(seed);
+        this.afkChance = afkChance;
+        MatchObserver observer = new MatchObserver() {
+            @Override
+            public void onRoundStart(GameRoom room, int round) {
+                rounds++;
+                for (ServerThread player : room.getPlayers()) {
+                    if (random.nextDouble() < afkChance) {
+                        continue;
+                    }
+                    String choice = CHOICES[random.nextInt(CHOICES.length)];
+                    clock.schedule(() -> room.handlePick(player, choice), 200 + random.nextInt(5000),
+                            TimeUnit.MILLISECONDS);
+                }
+            }
+
+            @Override
+            public void onSessionEnd(GameRoom room, List<ServerThread> leaders) {
+                sessions++;
+            }
+        };
+        long nextClientId = 1;
+        for (int i = 0; i < roomCount; i++) {
+            GameRoom room = new GameRoom("sim-" + i, clock, clock);
+            room.setRandom(new Random(seed + i));
+            room.setMatchObserver(observer);
+            rooms.add(room);
+            for (int p = 0; p < playersPerRoom; p++) {
+                room.addClient(new Bot(room, nextClientId++).client);
+            }
+        }
+    }
+
+    private void record(long recipient, Payload payload) {
+        payloads++;
+        // ordinals, not enum hashCodes, so the digest is the same in every JVM
+        int hash = Objects.hash(recipient, payload.getPayloadType().ordinal(), payload.getClientId(),
+                payload.getMessage());
+        if (payload instanceof RoomDeltaPayload) {
+            RoomDeltaPayload delta = (RoomDeltaPayload) payload;
+            hash = 31 * hash + Objects.hash(delta.getChange().ordinal(), delta.getVersion(), delta.getValue(),
+                    delta.getPhase() == null ? -1 : delta.getPhase().ordinal());
+        }
+        digest = 31 * digest + hash;
+    }
+
+    /**
+     * Runs until the rooms have started the given number of rounds (in total)
+     * or nothing is left to do
+     *
+     * @param targetRounds
+     */
+    public void run(long targetRounds) {
+        while (rounds < targetRounds && clock.runNext()) {
+        }
+    }
+
+    /**
+     * Finishes the rooms' replay logs (if ReplayLog was recording when they were
+     * made); the games are left where they are
+     */
+    public void stopRecording() {
+        for (GameRoom room : rooms) {
+            room.setReplayLog(null);
+        }
+        // the closes are queued on the mailboxes, which run on the clock
+        clock.advance(0, TimeUnit.NANOSECONDS);
+    }
+
+    public long getRounds() {
+        return rounds;
+    }
+
+    public long getSessions() {
+        return sessions;
+    }
+
+    public long getPayloads() {
+        return payloads;
+    }
+
+    /**
+     * @return hash of every payload every bot received, in order
+     */
+    public long getDigest() {
+        return digest;
+    }
+
+    /**
+     * @return simulated time so far
+     */
+    public long getElapsedNanos() {
+        return clock.nanoTime();
+    }
+
+    public long getTaskCount() {
+        return clock.getExecutedCount();
+    }
+
+    /**
+     * Runs the same seed twice and reports the throughput (simulated and real)
+     * and whether both runs produced the same digest.
+     * This is just for testing/demo
+     *
+     * @param args optional seed, rooms, players per room, rounds and AFK chance
+     */
+    public static void main(String[] args) {
+        long seed = args.length > 0 ? Long.parseLong(args[0]) : 42;
+        int roomCount = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        int players = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+        long targetRounds = args.length > 3 ? Long.parseLong(args[3]) : 20_000;
+        double afkChance = args.length > 4 ? Double.parseDouble(args[4]) : 0.05;
+        LoggerUtil.LoggerConfig logConfig = new LoggerUtil.LoggerConfig();
+        logConfig.setLogLocation("simulation.log");
+        logConfig.setFileLogLevel(Level.WARNING);
+        logConfig.setConsoleLogLevel(Level.WARNING);
+        LoggerUtil.INSTANCE.setConfig(logConfig);
+        // the room timers print every tick, keep the report readable
+        PrintStream console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+
+        long firstDigest = 0;
+        for (int pass = 0; pass < 2; pass++) {
+            long expiredBefore = TimedEvent.getExpiredCount();
+            long start = System.nanoTime();
+            GameSimulation simulation = new GameSimulation(seed, roomCount, players, afkChance);
+            simulation.run(targetRounds);
+            double elapsed = (System.nanoTime() - start) / 1e9;
+            double simulatedMinutes = simulation.getElapsedNanos() / 60e9;
+            console.println(String.format(
+                    "seed %s, %s rooms x %s players: %s rounds, %s sessions, %s timers expired, %s payloads in %.1f simulated minutes",
+                    seed, roomCount, players, simulation.getRounds(), simulation.getSessions(),
+                    TimedEvent.getExpiredCount() - expiredBefore, simulation.getPayloads(), simulatedMinutes));
+            console.println(String.format("  %.0f rounds per simulated minute, %.0f rounds/sec real (%.2fs, %s tasks), digest %016x",
+                    simulation.getRounds() / simulatedMinutes, simulation.getRounds() / elapsed, elapsed,
+                    simulation.getTaskCount(), simulation.getDigest()));
+            if (pass == 0) {
+                firstDigest = simulation.getDigest();
+            } else {
+                console.println(firstDigest == simulation.getDigest() ? "same seed, same games"
+                        : "DIFFERENT games from the same seed");
+            }
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package Project.Server;
+
+import java.net.Socket;
+import java.util.function.Consumer;
+
+import Project.Common.Payload;
+
+/**
+ * A ServerThread without a connection: everything the server sends to it is
+ * handed to a callback as Payload objects, skipping encoding and the outbound
+ * queue. Rooms can't tell the difference, so simulations and benchmarks can
+ * drive them with bots that read these payloads and call the handle*()
+ * methods.
+ */
+public class InMemoryServerThread extends ServerThread {
+    private final Consumer<Payload> sink;
+
+    /**
+     * Creates a ready (named and running) client
+     * 
+     * @param clientId
+     * @param clientName
+     * @param sink       receives everything sent to this client, on the sending
+     *                   thread
+     */
+    public InMemoryServerThread(long clientId, String clientName, Consumer<Payload> sink) {
+        super(new Socket(), st -> {
+        });
+        this.sink = sink;
+        setClientId(clientId);
+        setClientName(clientName);
+        isRunning = true;
+    }
+
+    @Override
+    protected boolean sendToClient(Payload payload) {
+        if (isRunning) {
+            sink.accept(payload);
+        }
+        return true;
+    }
+
+    @Override
+    protected boolean sendToClient(BroadcastFrame broadcast) {
+        return sendToClient(broadcast.getPayload());
+    }
+
+    /**
+     * Same as a real disconnect minus closing a connection (there isn't one)
+     */
+    @Override
+    protected void cleanup() {
+        outbound.close();
+    }
+}
@@ -0,0 +1,343 @@
+package Project.Server;
+
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+import java.util.logging.Level;
+
+import Project.Common.Constants;
+import Project.Common.LoggerUtil;
+
+/**
+ * The lobby, split into shards so clients landing in different shards don't
+ * contend on one Room lock.
+ * <p>
+ * Each client lives in exactly one shard (picked by client id) while a
+ * concurrent map still holds everyone, so lookups, size checks and the rest of
+ * Room treat it as the single Room.LOBBY (the base clientsInRoom isn't used,
+ * it's only safe inside a serialized execute()). Adding or removing a member
+ * only locks the client's shard; broadcasts visit the shards one after another
+ * holding one shard lock at a time. Disconnects triggered during a visit are deferred until
+ * the visit finishes so a thread never holds two shard locks.
+ * </p>
+ * <p>
+ * State versions come from an atomic counter, taken after the membership
+ * change (a leaver is removed before its LEAVE is stamped), and the delta is
+ * sent without holding any lock across the shards. Concurrent joins and leaves
+ * can therefore reach a client out of version order; ClientSession holds early
+ * deltas until the gap fills and asks for a snapshot if it doesn't. A snapshot
+ * reads the version before the members, so it holds every change up to it.
+ * </p>
+ * <p>
+ * Lobby members sign up for a Tournament with /tournament and any entrant
+ * starts it with /tournament start; the entrants still in the lobby play it,
+ * and eliminated players come back here. One runs at a time.
+ * </p>
+ */
+public class LobbyRoom extends Room {
+    public static final int DEFAULT_SHARDS = Math.max(4, Runtime.getRuntime().availableProcessors());
+    private static final int MINIMUM_TOURNAMENT_ENTRANTS = 2;
+
+    private final Shard[] shards;
+    private final ThreadLocal<Visit> visits = ThreadLocal.withInitial(Visit::new);
+    private final ConcurrentHashMap<Long, ServerThread> everyone = new ConcurrentHashMap<>();
+    private final AtomicLong stateVersion = new AtomicLong(); // replaces Room's, lobby actions aren't serialized
+    // signed up for the next tournament, in sign up order; guarded by itself
+    private final LinkedHashMap<Long, ServerThread> tournamentEntrants = new LinkedHashMap<>();
+    private Tournament tournament = null; // the one being played, guarded by tournamentEntrants
+
+    private static class Shard {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final ContentionStats contention = new ContentionStats();
+        private final ConcurrentHashMap<Long, ServerThread> members = new ConcurrentHashMap<>();
+    }
+
+    // per-thread state of an in-progress forEachClient()
+    private static class Visit {
+        private int depth = 0;
+        private final List<ServerThread> deferred = new ArrayList<>();
+    }
+
+    /**
+     * @param shardCount number of independently locked partitions
+     */
+    public LobbyRoom(int shardCount) {
+        super(Room.LOBBY);
+        shards = new Shard[Math.max(1, shardCount)];
+        for (int i = 0; i < shards.length; i++) {
+            shards[i] = new Shard();
+        }
+    }
+
+    private Shard shardFor(long clientId) {
+        return shards[(int) Math.floorMod(clientId, (long) shards.length)];
+    }
+
+    /**
+     * Lobby actions aren't serialized as a whole; membership changes lock the
+     * client's shard and broadcasts lock each shard in turn
+     */
+    @Override
+    protected void execute(Runnable action) {
+        action.run();
+    }
+
+    @Override
+    protected long getStateVersion() {
+        return stateVersion.get();
+    }
+
+    @Override
+    protected long nextStateVersion() {
+        return stateVersion.incrementAndGet();
+    }
+
+    @Override
+    protected boolean addMember(ServerThread client) {
+        Shard shard = shardFor(client.getClientId());
+        shard.contention.lock(shard.lock);
+        try {
+            if (everyone.putIfAbsent(client.getClientId(), client) != null) {
+                return false;
+            }
+            shard.members.put(client.getClientId(), client);
+            return true;
+        } finally {
+            shard.lock.unlock();
+        }
+    }
+
+    @Override
+    protected ServerThread getMember(long clientId) {
+        return everyone.get(clientId);
+    }
+
+    @Override
+    protected int getMemberCount() {
+        return everyone.size();
+    }
+
+    @Override
+    protected ServerThread removeMember(long clientId) {
+        Shard shard = shardFor(clientId);
+        shard.contention.lock(shard.lock);
+        try {
+            shard.members.remove(clientId);
+            return everyone.remove(clientId);
+        } finally {
+            shard.lock.unlock();
+        }
+    }
+
+    @Override
+    protected void forEachClient(Predicate<ServerThread> visitor) {
+        Visit visit = visits.get();
+        visit.depth++;
+        try {
+            for (Shard shard : shards) {
+                shard.contention.lock(shard.lock);
+                try {
+                    Iterator<ServerThread> iter = shard.members.values().iterator();
+                    while (iter.hasNext()) {
+                        ServerThread client = iter.next();
+                        // a deferred disconnect does its own removal and notifications later
+                        if (visitor.test(client) && !visit.deferred.contains(client)) {
+                            iter.remove();
+                            everyone.remove(client.getClientId());
+                        }
+                    }
+                } finally {
+                    shard.lock.unlock();
+                }
+            }
+        } finally {
+            visit.depth--;
+        }
+        if (visit.depth == 0) {
+            while (!visit.deferred.isEmpty()) {
+                super.disconnect(visit.deferred.remove(visit.deferred.size() - 1));
+            }
+        }
+    }
+
+    @Override
+    protected void disconnect(ServerThread client) {
+        Visit visit = visits.get();
+        if (visit.depth > 0) {
+            if (!visit.deferred.contains(client)) {
+                visit.deferred.add(client);
+            }
+            return;
+        }
+        super.disconnect(client);
+    }
+
+    @Override
+    protected void onMemberDisconnected(ServerThread client) {
+        synchronized (tournamentEntrants) {
+            tournamentEntrants.remove(client.getClientId());
+        }
+    }
+
+    /**
+     * Toggles the sender's sign up for the next tournament, or starts it
+     * 
+     * @param sender
+     * @param action "start" to start it
+     */
+    @Override
+    protected void handleTournament(ServerThread sender, String action) {
+        if (action != null && action.trim().equalsIgnoreCase("start")) {
+            startTournament(sender);
+            return;
+        }
+        int entrants;
+        synchronized (tournamentEntrants) {
+            if (tournamentEntrants.remove(sender.getClientId()) != null) {
+                sender.sendMessage(Constants.DEFAULT_CLIENT_ID, "You withdrew from the next tournament");
+                return;
+            }
+            tournamentEntrants.put(sender.getClientId(), sender);
+            entrants = tournamentEntrants.size();
+        }
+        relay(null, String.format("%s signed up for the next tournament (%s entrants, /tournament start begins it)",
+                sender.getDisplayName(), entrants));
+    }
+
+    private void startTournament(ServerThread sender) {
+        Tournament next;
+        List<ServerThread> players;
+        synchronized (tournamentEntrants) {
+            if (tournament != null) {
+                sender.sendMessage(Constants.DEFAULT_CLIENT_ID,
+                        String.format("%s is still being played", tournament.getName()));
+                return;
+            }
+            if (!tournamentEntrants.containsKey(sender.getClientId())) {
+                sender.sendMessage(Constants.DEFAULT_CLIENT_ID, "Sign up with /tournament first");
+                return;
+            }
+            // signing up doesn't hold a spot, only those still here play
+            tournamentEntrants.values().removeIf(p -> getMember(p.getClientId()) != p);
+            if (tournamentEntrants.size() < MINIMUM_TOURNAMENT_ENTRANTS) {
+                sender.sendMessage(Constants.DEFAULT_CLIENT_ID,
+                        String.format("A tournament needs at least %s entrants in the lobby",
+                                MINIMUM_TOURNAMENT_ENTRANTS));
+                return;
+            }
+            players = new ArrayList<>(tournamentEntrants.values());
+            tournamentEntrants.clear();
+            next = new Tournament(this, new Tournament.Config());
+            tournament = next;
+        }
+        relay(null, String.format("%s started by %s with %s players", next.getName(), sender.getDisplayName(),
+                players.size()));
+        next.start(players).whenComplete((champion, error) -> {
+            synchronized (tournamentEntrants) {
+                tournament = null;
+            }
+            relay(null, champion == null ? String.format("%s ended without a winner", next.getName())
+                    : String.format("%s won %s", champion.getDisplayName(), next.getName()));
+        });
+    }
+
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    /**
+     * @return contention totalled across all shards
+     */
+    @Override
+    public ContentionStats getContentionStats() {
+        ContentionStats total = new ContentionStats();
+        for (Shard shard : shards) {
+            total.add(shard.contention);
+        }
+        return total;
+    }
+
+    /**
+     * Drives relays plus join/leave churn from several threads against the
+     * old single-lock lobby and the sharded one, then prints throughput and lock
+     * contention for each. This is just for testing/demo
+     *
+     * @param args optional client count, shard count, thread count and seconds
+     *             per run
+     * @throws InterruptedException
+     */
+    public static void main(String[] args) throws InterruptedException {
+        int clientCount = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int shardCount = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_SHARDS;
+        int threadCount = args.length > 2 ? Integer.parseInt(args[2]) : 8;
+        int seconds = args.length > 3 ? Integer.parseInt(args[3]) : 3;
+        LoggerUtil.LoggerConfig config = new LoggerUtil.LoggerConfig();
+        config.setLogLocation("lobby-bench.log");
+        config.setFileLogLevel(Level.SEVERE);
+        config.setConsoleLogLevel(Level.SEVERE);
+        LoggerUtil.INSTANCE.setConfig(config);
+        // recipients are never drained here, keep their queues small and non-fatal
+        OutboundQueue.configure(16, OutboundQueue.OverflowPolicy.DROP_OLDEST);
+
+        Room[] lobbies = { new Room(Room.LOBBY), new LobbyRoom(shardCount) };
+        for (int pass = 0; pass < 3; pass++) { // first pass of each is warmup
+            Room lobby = lobbies[pass == 0 ? 1 : pass - 1];
+            ServerThread[] clients = new ServerThread[clientCount];
+            for (int i = 0; i < clientCount; i++) {
+                clients[i] = new ServerThread(new Socket(), st -> {
+                });
+                clients[i].setClientId(i + 1);
+                clients[i].setClientName("bench" + i);
+                clients[i].isRunning = true;
+                lobby.addClient(clients[i]);
+            }
+            ContentionStats before = new ContentionStats();
+            before.add(lobby.getContentionStats());
+            LongAdder ops = new LongAdder();
+            long end = System.nanoTime() + seconds * 1_000_000_000L;
+            Thread[] threads = new Thread[threadCount];
+            for (int t = 0; t < threads.length; t++) {
+                threads[t] = new Thread(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    while (System.nanoTime() < end) {
+                        ServerThread client = clients[random.nextInt(clientCount)];
+                        if (random.nextInt(10) == 0) {
+                            // join/leave churn
+                            lobby.removeClient(client);
+                            lobby.addClient(client);
+                        } else {
+                            lobby.relay(client, "hello");
+                        }
+                        ops.increment();
+                    }
+                });
+                threads[t].start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            if (pass > 0) {
+                ContentionStats stats = lobby.getContentionStats();
+                long acquisitions = stats.getAcquisitions() - before.getAcquisitions();
+                long contended = stats.getContended() - before.getContended();
+                System.out.println(String.format(
+                        "%s: %s clients, %s threads, %.0f ops/sec, lock acquisitions %s, contended %s (%.1f%%), waited %.1f ms",
+                        lobby instanceof LobbyRoom ? shardCount + " shards" : "single lock", clientCount, threadCount,
+                        ops.sum() / (double) seconds, acquisitions, contended,
+                        acquisitions == 0 ? 0 : contended * 100.0 / acquisitions,
+                        (stats.getWaitNanos() - before.getWaitNanos()) / 1e6));
+            }
+            for (ServerThread client : clients) {
+                lobby.removeClient(client);
+            }
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package Project.Server;
+
+import java.net.Socket;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+
+import Project.Common.LoggerUtil;
+import Project.Common.RoomDeltaPayload;
+import Project.Common.RoomSnapshotPayload;
+
+/**
+ * Checks that the sharded lobby numbers its state versions so a client can put
+ * them back together.
+ * <p>
+ * Several threads join (then leave) the lobby at once while every member
+ * records what is queued for it. The lobby doesn't order concurrent fan-outs,
+ * so deltas may be queued out of order or before the member's snapshot, but
+ * no member may get a version twice, and the observer (in the lobby the whole
+ * time) has to get every version past its snapshot; applying those in version
+ * order has to leave it alone in the lobby again.
+ * </p>
+ * This is just for testing/demo
+ */
+public class LobbyVersionCheck {
+
+    /**
+     * Member that records the versions as they're queued
+     */
+    private static class Watcher extends ServerThread {
+        private long snapshotVersion = -1;
+        private final Set<Long> snapshotMembers = new HashSet<>();
+        private final TreeMap<Long, RoomDeltaPayload> deltas = new TreeMap<>();
+        private long violations = 0; // duplicates
+
+        Watcher(long clientId) {
+            super(new Socket(), st -> {
+            });
+            setClientId(clientId);
+            setClientName("watcher" + clientId);
+            isRunning = true;
+        }
+
+        @Override
+        protected synchronized boolean sendRoomSnapshot(RoomSnapshotPayload snapshot) {
+            snapshotVersion = snapshot.getVersion();
+            snapshotMembers.clear();
+            snapshot.getMembers().forEach(m -> snapshotMembers.add(m.getClientId()));
+            return super.sendRoomSnapshot(snapshot);
+        }
+
+        @Override
+        protected synchronized boolean sendBroadcast(BroadcastFrame broadcast) {
+            if (broadcast.getPayload() instanceof RoomDeltaPayload) {
+                RoomDeltaPayload delta = (RoomDeltaPayload) broadcast.getPayload();
+                if (deltas.put(delta.getVersion(), delta) != null) {
+                    violations++;
+                }
+            }
+            return super.sendBroadcast(broadcast);
+        }
+
+        /**
+         * @return versions past the snapshot that never arrived
+         */
+        private synchronized long gaps() {
+            if (deltas.isEmpty()) {
+                return 0;
+            }
+            long expected = deltas.lastKey() - snapshotVersion;
+            return expected - deltas.tailMap(snapshotVersion, false).size();
+        }
+
+        /**
+         * @return members after applying the deltas past the snapshot in order
+         */
+        private synchronized Set<Long> members() {
+            Set<Long> members = new HashSet<>(snapshotMembers);
+            for (RoomDeltaPayload delta : deltas.tailMap(snapshotVersion, false).values()) {
+                if (delta.getChange() == RoomDeltaPayload.Change.JOIN) {
+                    members.add(delta.getClientId());
+                } else if (delta.getChange() == RoomDeltaPayload.Change.LEAVE) {
+                    members.remove(delta.getClientId());
+                }
+            }
+            return members;
+        }
+    }
+
+    /**
+     * @param args optional thread count and joins per thread
+     * @throws InterruptedException
+     */
+    public static void main(String[] args) throws InterruptedException {
+        int threadCount = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int joinsPerThread = args.length > 1 ? Integer.parseInt(args[1]) : 250;
+        LoggerUtil.LoggerConfig config = new LoggerUtil.LoggerConfig();
+        config.setLogLocation("lobby-version.log");
+        config.setFileLogLevel(Level.SEVERE);
+        config.setConsoleLogLevel(Level.SEVERE);
+        LoggerUtil.INSTANCE.setConfig(config);
+        // recipients are never drained here, keep their queues small and non-fatal
+        OutboundQueue.configure(16, OutboundQueue.OverflowPolicy.DROP_OLDEST);
+
+        LobbyRoom lobby = new LobbyRoom(LobbyRoom.DEFAULT_SHARDS);
+        Watcher observer = new Watcher(1); // stays for the whole run
+        lobby.addClient(observer);
+        Watcher[] clients = new Watcher[threadCount * joinsPerThread];
+        AtomicLong nextId = new AtomicLong(2);
+        for (int i = 0; i < clients.length; i++) {
+            clients[i] = new Watcher(nextId.getAndIncrement());
+        }
+
+        long start = System.nanoTime();
+        Thread[] threads = new Thread[threadCount];
+        for (int t = 0; t < threads.length; t++) {
+            final int first = t * joinsPerThread;
+            threads[t] = new Thread(() -> {
+                for (int i = first; i < first + joinsPerThread; i++) {
+                    lobby.addClient(clients[i]);
+                }
+                for (int i = first; i < first + joinsPerThread; i++) {
+                    lobby.removeClient(clients[i]);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        long elapsed = System.nanoTime() - start;
+
+        long violations = 0;
+        long duplicateClients = 0;
+        for (Watcher client : clients) {
+            if (client.violations > 0) {
+                violations += client.violations;
+                duplicateClients++;
+            }
+        }
+        long gaps = observer.gaps();
+        Set<Long> members = observer.members();
+        boolean alone = members.size() == 1 && members.contains(observer.getClientId());
+        System.out.println(String.format("%s threads x %s joins and leaves in %s ms", threadCount, joinsPerThread,
+                elapsed / 1_000_000));
+        System.out.println(String.format("observer: %s deltas, last version %s, %s duplicates, %s missing, %s members",
+                observer.deltas.size(), observer.deltas.isEmpty() ? observer.snapshotVersion : observer.deltas.lastKey(),
+                observer.violations, gaps, members.size()));
+        System.out.println(String.format("joiners: %s duplicates across %s of %s clients", violations,
+                duplicateClients, clients.length));
+        System.out.println(observer.violations == 0 && violations == 0 && gaps == 0 && alone
+                ? "PASS: versions unique and complete"
+                : "FAIL: versions duplicated or missing");
+    }
+}
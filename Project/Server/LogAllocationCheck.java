@@ -0,0 +1,90 @@
+package Project.Server;
+
+import java.lang.management.ManagementFactory;
+import java.net.Socket;
+import java.util.logging.Level;
+
+import Project.Common.EventLog;
+import Project.Common.LoggerUtil;
+
+/**
+ * Checks that filtered-out logging on the relay path doesn't allocate.
+ * <p>
+ * With the file and console handlers at WARNING it measures, using the
+ * per-thread allocated byte counter, the same logging calls Room.relay() and
+ * ServerThread.sendToClient() make, then the event log append Room.relay()
+ * makes (the event log is enabled here, as it is on the server), then a full
+ * relay for comparison (which still allocates its Payload and encoded frame).
+ * </p>
+ * This is just for testing/demo
+ */
+public class LogAllocationCheck {
+
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * @param args optional recipient count
+     */
+    public static void main(String[] args) {
+        int recipients = args.length > 0 ? Integer.parseInt(args[0]) : 50;
+        LoggerUtil.LoggerConfig config = new LoggerUtil.LoggerConfig();
+        config.setLogLocation("log-allocation.log");
+        config.setFileLogLevel(Level.WARNING);
+        config.setConsoleLogLevel(Level.WARNING);
+        config.setEventLogLocation("log-allocation-events");
+        LoggerUtil.INSTANCE.setConfig(config);
+        // recipients are never drained here
+        OutboundQueue.configure(16, OutboundQueue.OverflowPolicy.DROP_OLDEST);
+
+        Room room = new Room("allocation");
+        ServerThread[] clients = new ServerThread[recipients];
+        for (int i = 0; i < recipients; i++) {
+            clients[i] = new ServerThread(new Socket(), st -> {
+            });
+            clients[i].setClientId(i + 1);
+            clients[i].setClientName("alloc" + i);
+            clients[i].isRunning = true;
+            room.addClient(clients[i]);
+        }
+        ServerThread sender = clients[0];
+        final String message = "hello";
+
+        int iterations = 1_000_000;
+        long bytes = 0;
+        for (int pass = 0; pass < 3; pass++) { // earlier passes let the JIT inline the suppliers
+            long before = allocatedBytes();
+            for (int i = 0; i < iterations; i++) {
+                sender.info(() -> "Sending to client: " + message);
+                LoggerUtil.INSTANCE.info(() -> "Players in room: " + recipients);
+                LoggerUtil.INSTANCE.info("onTurnEnd() start");
+            }
+            bytes = allocatedBytes() - before;
+        }
+        System.out.println(String.format("filtered logging: %s bytes over %s iterations (%.3f bytes/iteration)", bytes,
+                iterations, bytes / (double) iterations));
+
+        for (int pass = 0; pass < 3; pass++) {
+            long before = allocatedBytes();
+            for (int i = 0; i < iterations; i++) {
+                LoggerUtil.INSTANCE.event(EventLog.Type.RELAY, sender.getClientId(), room.getName(), message);
+            }
+            bytes = allocatedBytes() - before;
+        }
+        System.out.println(String.format("event log: %s bytes over %s appends (%.3f bytes/append), %s dropped", bytes,
+                iterations, bytes / (double) iterations, LoggerUtil.INSTANCE.getEventDroppedCount()));
+
+        int relays = 20_000;
+        for (int pass = 0; pass < 3; pass++) {
+            long before = allocatedBytes();
+            for (int i = 0; i < relays; i++) {
+                room.relay(sender, message);
+            }
+            bytes = allocatedBytes() - before;
+        }
+        System.out.println(String.format("relay to %s recipients: %.0f bytes/relay (message, Payload and frame)",
+                recipients, bytes / (double) relays));
+    }
+}
@@ -0,0 +1,257 @@
+package Project.Server;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Map from primitive long keys to objects, so lookups by client id don't box
+ * the key or allocate entry nodes.
+ * <p>
+ * Open addressing with linear probing in two parallel arrays (keys and
+ * values, a null value marks a free slot), kept at most half full; removal
+ * shifts the rest of the probe run back instead of leaving tombstones.
+ * </p>
+ * <p>
+ * Not thread-safe: a Room only touches it inside execute(). It is safe to
+ * change the map from inside forEach()/removeIf() though (i.e., a failed send
+ * that disconnects someone mid-broadcast): while an iteration is running the
+ * arrays are copied before the first change, the iteration carries on over
+ * the old arrays and skips entries that were removed in the meantime.
+ * </p>
+ *
+ * @param <V> value type
+ */
+public class LongObjectMap<V> {
+    private long[] keys;
+    private Object[] values;
+    private int size = 0;
+    private int mask;
+    private boolean shared = false; // an iteration holds the current arrays, copy before changing them
+
+    public LongObjectMap() {
+        this(8);
+    }
+
+    /**
+     * @param expectedSize entries that fit without resizing
+     */
+    public LongObjectMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, expectedSize * 2 - 1)) << 1;
+        keys = new long[capacity];
+        values = new Object[capacity];
+        mask = capacity - 1;
+    }
+
+    // spreads sequential ids over the table
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private int slotOf(long key) {
+        int slot = hash(key) & mask;
+        while (values[slot] != null) {
+            if (keys[slot] == key) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    private void beforeChange() {
+        if (shared) {
+            keys = keys.clone();
+            values = values.clone();
+            shared = false;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        int slot = slotOf(key);
+        return slot < 0 ? null : (V) values[slot];
+    }
+
+    public boolean containsKey(long key) {
+        return slotOf(key) >= 0;
+    }
+
+    /**
+     * @param key
+     * @param value not null
+     * @return the previous value or null
+     */
+    public V put(long key, V value) {
+        return put(key, value, true);
+    }
+
+    /**
+     * @param key
+     * @param value not null
+     * @return the existing value (left in place) or null if value was added
+     */
+    public V putIfAbsent(long key, V value) {
+        return put(key, value, false);
+    }
+
+    @SuppressWarnings("unchecked")
+    private V put(long key, V value, boolean replace) {
+        if (value == null) {
+            throw new NullPointerException("LongObjectMap doesn't hold null values");
+        }
+        int slot = hash(key) & mask;
+        while (values[slot] != null) {
+            if (keys[slot] == key) {
+                V previous = (V) values[slot];
+                if (replace) {
+                    beforeChange();
+                    values[slot] = value;
+                }
+                return previous;
+            }
+            slot = (slot + 1) & mask;
+        }
+        beforeChange();
+        keys[slot] = key;
+        values[slot] = value;
+        if (++size * 2 > values.length) {
+            resize(values.length * 2);
+        }
+        return null;
+    }
+
+    private void resize(int capacity) {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        keys = new long[capacity];
+        values = new Object[capacity];
+        mask = capacity - 1;
+        shared = false;
+        for (int i = 0; i < oldValues.length; i++) {
+            if (oldValues[i] != null) {
+                int slot = hash(oldKeys[i]) & mask;
+                while (values[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    /**
+     * @param key
+     * @return the removed value or null if there was none
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(long key) {
+        int slot = slotOf(key);
+        if (slot < 0) {
+            return null;
+        }
+        beforeChange();
+        V removed = (V) values[slot];
+        // move later entries of the probe run back so lookups never hit a gap
+        int gap = slot;
+        int next = (gap + 1) & mask;
+        while (values[next] != null) {
+            int home = hash(keys[next]) & mask;
+            // the entry can fill the gap if its home isn't cyclically in (gap, next]
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                keys[gap] = keys[next];
+                values[gap] = values[next];
+                gap = next;
+            }
+            next = (next + 1) & mask;
+        }
+        values[gap] = null;
+        size--;
+        return removed;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        if (shared) {
+            keys = new long[keys.length];
+            values = new Object[values.length];
+            shared = false;
+        } else {
+            Arrays.fill(values, null);
+        }
+        size = 0;
+    }
+
+    /**
+     * Visits every value; entries removed during the visit aren't visited
+     *
+     * @param action
+     */
+    public void forEach(Consumer<? super V> action) {
+        removeIf(value -> {
+            action.accept(value);
+            return false;
+        });
+    }
+
+    /**
+     * Visits every value and removes the ones the filter returns true for
+     * (same contract as Collection.removeIf())
+     *
+     * @param filter
+     * @return true if anything was removed
+     */
+    @SuppressWarnings("unchecked")
+    public boolean removeIf(Predicate<? super V> filter) {
+        long[] iterKeys = keys;
+        Object[] iterValues = values;
+        boolean wasShared = shared;
+        shared = true;
+        boolean removed = false;
+        try {
+            for (int i = 0; i < iterValues.length; i++) {
+                Object value = iterValues[i];
+                if (value == null) {
+                    continue;
+                }
+                // the arrays were swapped by a change made during this visit
+                if (iterValues != values && get(iterKeys[i]) != value) {
+                    continue;
+                }
+                if (filter.test((V) value)) {
+                    remove(iterKeys[i]);
+                    removed = true;
+                }
+            }
+        } finally {
+            if (iterValues == values) {
+                shared = wasShared;
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * @return a copy of the values
+     */
+    @SuppressWarnings("unchecked")
+    public List<V> values() {
+        List<V> copy = new ArrayList<>(size);
+        for (Object value : values) {
+            if (value != null) {
+                copy.add((V) value);
+            }
+        }
+        return copy;
+    }
+}
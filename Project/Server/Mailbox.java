@@ -0,0 +1,144 @@
+package Project.Server;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import Project.Common.LoggerUtil;
+
+/**
+ * Runs the actions posted to it one at a time, in order, on a shared pool.
+ * <p>
+ * Each GameRoom owns one so its state is only ever touched by one thread at a
+ * time without holding a lock; different rooms run in parallel on the shared
+ * workers. An action posted from inside the mailbox's own action runs
+ * immediately so handlers can call each other as before.
+ * </p>
+ */
+public class Mailbox {
+    private static final int MAX_BATCH = 64; // actions run before yielding the worker to other rooms
+    private static final AtomicInteger workerCount = new AtomicInteger();
+    private static final ExecutorService workers = Executors
+            .newFixedThreadPool(Runtime.getRuntime().availableProcessors(), r -> {
+                Thread t = new Thread(r, "room-worker-" + workerCount.getAndIncrement());
+                t.setDaemon(true);
+                return t;
+            });
+
+    private final ConcurrentLinkedQueue<Runnable> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean isScheduled = new AtomicBoolean(false);
+    private volatile Thread runner; // thread currently draining, if any
+    private final String name;
+    private final Executor executor;
+
+    public Mailbox(String name) {
+        this(name, workers);
+    }
+
+    /**
+     * @param name
+     * @param executor runs the drain passes instead of the shared workers (i.e.,
+     *                 a VirtualScheduler)
+     */
+    public Mailbox(String name, Executor executor) {
+        this.name = name;
+        this.executor = executor;
+    }
+
+    /**
+     * Posts an action; runs it inline if called from this mailbox's own action
+     *
+     * @param action
+     */
+    public void execute(Runnable action) {
+        if (runner == Thread.currentThread()) {
+            action.run();
+            return;
+        }
+        queue.add(action);
+        if (isScheduled.compareAndSet(false, true)) {
+            executor.execute(this::drain);
+        }
+    }
+
+    /**
+     * @return number of actions waiting to run
+     */
+    public int getDepth() {
+        return queue.size();
+    }
+
+    private void drain() {
+        runner = Thread.currentThread();
+        try {
+            Runnable action;
+            int count = 0;
+            while (count++ < MAX_BATCH && (action = queue.poll()) != null) {
+                try {
+                    action.run();
+                } catch (Exception e) {
+                    LoggerUtil.INSTANCE.severe(String.format("Mailbox[%s] action failed", name), e);
+                }
+            }
+        } finally {
+            runner = null;
+            isScheduled.set(false);
+        }
+        // an action may have been posted after the last poll, or the batch limit was hit
+        if (!queue.isEmpty() && isScheduled.compareAndSet(false, true)) {
+            executor.execute(this::drain);
+        }
+    }
+
+    /**
+     * Posts messages to many mailboxes from several threads and reports the
+     * throughput. This is just for testing/demo
+     *
+     * @param args optional room count and messages per room
+     * @throws InterruptedException
+     */
+    public static void main(String[] args) throws InterruptedException {
+        int rooms = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int messagesPerRoom = args.length > 1 ? Integer.parseInt(args[1]) : 10_000;
+        int producers = Runtime.getRuntime().availableProcessors();
+        for (int pass = 0; pass < 2; pass++) { // first pass is warmup
+            Mailbox[] mailboxes = new Mailbox[rooms];
+            long[] state = new long[rooms]; // unsynchronized per-room state, only touched by its mailbox
+            for (int i = 0; i < rooms; i++) {
+                mailboxes[i] = new Mailbox("bench-" + i);
+            }
+            CountDownLatch done = new CountDownLatch(rooms * messagesPerRoom);
+            AtomicLong roomCursor = new AtomicLong();
+            Thread[] threads = new Thread[producers];
+            long start = System.nanoTime();
+            for (int p = 0; p < producers; p++) {
+                threads[p] = new Thread(() -> {
+                    long next;
+                    while ((next = roomCursor.getAndIncrement()) < (long) rooms * messagesPerRoom) {
+                        final int room = (int) (next % rooms);
+                        mailboxes[room].execute(() -> {
+                            state[room]++;
+                            done.countDown();
+                        });
+                    }
+                });
+                threads[p].start();
+            }
+            done.await();
+            long elapsed = System.nanoTime() - start;
+            long total = 0;
+            for (long s : state) {
+                total += s;
+            }
+            if (pass > 0) {
+                System.out.println(String.format("%s rooms, %s messages: %.0f messages/sec (state total %s)", rooms,
+                        (long) rooms * messagesPerRoom, (long) rooms * messagesPerRoom / (elapsed / 1e9), total));
+            }
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package Project.Server;
+
+import java.util.List;
+
+/**
+ * Follows a GameRoom's sessions (i.e., a Tournament learning who won a match).
+ * Called on the room's mailbox, so implementations shouldn't block; anything
+ * slow, like moving players to other rooms, belongs on another thread.
+ */
+public interface MatchObserver {
+    /**
+     * A round started and picks are open
+     * 
+     * @param room
+     * @param round 1-based
+     */
+    default void onRoundStart(GameRoom room, int round) {
+    }
+
+    /**
+     * A session that was in progress ended
+     * 
+     * @param room
+     * @param leaders the players with the most round wins (several on a tie,
+     *                empty if nobody was left)
+     */
+    void onSessionEnd(GameRoom room, List<ServerThread> leaders);
+}
@@ -0,0 +1,305 @@
+package Project.Server;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+import Project.Common.LoggerUtil;
+import Project.Common.PayloadCodec;
+import Project.Common.TextFX;
+import Project.Common.TextFX.Color;
+import Project.Common.TimerWheel;
+
+/**
+ * Selector-based connection engine.
+ * <p>
+ * A single thread owns the ServerSocketChannel and every client SocketChannel
+ * and only moves bytes. Complete frames are handed to a small pool of worker
+ * threads which decode them and run the usual processPayload() dispatch.
+ * Each connection is pinned to one worker so its Payloads are handled in the
+ * order they arrived.
+ * </p>
+ */
+public class NioServer implements Runnable {
+    private static final int READ_BUFFER_SIZE = 8 * 1024;
+
+    private final int port;
+    private final Consumer<ServerThread> onInitializationComplete;
+    private final ExecutorService[] workers;
+    private final Selector selector;
+    // connections with new outbound frames waiting for OP_WRITE interest
+    private final ConcurrentLinkedQueue<Connection> pendingWrites = new ConcurrentLinkedQueue<>();
+    private volatile boolean isRunning = false;
+    private long nextConnection = 0;
+
+    private void info(String message) {
+        LoggerUtil.INSTANCE.info(TextFX.colorize(String.format("NioServer: %s", message), Color.YELLOW));
+    }
+
+    /**
+     * @param port                     port to listen on
+     * @param workerCount              number of threads used to process Payloads
+     * @param onInitializationComplete passed to each ServerThread
+     * @throws IOException
+     */
+    public NioServer(int port, int workerCount, Consumer<ServerThread> onInitializationComplete) throws IOException {
+        Objects.requireNonNull(onInitializationComplete, "callback cannot be null");
+        this.port = port;
+        this.onInitializationComplete = onInitializationComplete;
+        this.selector = Selector.open();
+        this.workers = new ExecutorService[Math.max(1, workerCount)];
+        for (int i = 0; i < workers.length; i++) {
+            final String workerName = "nio-worker-" + i;
+            workers[i] = Executors.newSingleThreadExecutor(r -> {
+                Thread t = new Thread(r, workerName);
+                t.setDaemon(true);
+                return t;
+            });
+        }
+    }
+
+    /**
+     * Runs the event loop on the calling thread until stop() is called
+     */
+    @Override
+    public void run() {
+        try (ServerSocketChannel serverChannel = ServerSocketChannel.open()) {
+            serverChannel.bind(new InetSocketAddress(port));
+            serverChannel.configureBlocking(false);
+            serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+            isRunning = true;
+            info(String.format("Listening on port %s with %s workers", port, workers.length));
+            while (isRunning) {
+                selector.select();
+                Connection pending;
+                while ((pending = pendingWrites.poll()) != null) {
+                    pending.enableWrite();
+                }
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept(serverChannel);
+                        continue;
+                    }
+                    Connection connection = (Connection) key.attachment();
+                    try {
+                        if (key.isReadable()) {
+                            connection.onReadable();
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            connection.onWritable();
+                        }
+                    } catch (IOException e) {
+                        connection.close();
+                    }
+                }
+            }
+        } catch (IOException e) {
+            LoggerUtil.INSTANCE.severe(TextFX.colorize("NIO event loop failed", Color.RED), e);
+        } finally {
+            for (ExecutorService worker : workers) {
+                worker.shutdown();
+            }
+            try {
+                selector.close();
+            } catch (IOException e) {
+                // nothing left to do
+            }
+            info("Closed server channel");
+        }
+    }
+
+    /**
+     * Stops the event loop
+     */
+    public void stop() {
+        isRunning = false;
+        selector.wakeup();
+    }
+
+    private void accept(ServerSocketChannel serverChannel) {
+        try {
+            SocketChannel channel = serverChannel.accept();
+            if (channel == null) {
+                return;
+            }
+            info("Client connected");
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            ExecutorService worker = workers[(int) (nextConnection++ % workers.length)];
+            Connection connection = new Connection(channel, worker);
+            ServerThread serverThread = new ServerThread(connection, onInitializationComplete);
+            connection.serverThread = serverThread;
+            serverThread.onStarted();
+            connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+        } catch (IOException e) {
+            LoggerUtil.INSTANCE.severe(TextFX.colorize("Error accepting connection", Color.RED), e);
+        }
+    }
+
+    /**
+     * The channel-side state of a single client
+     */
+    protected class Connection {
+        private final SocketChannel channel;
+        private final ExecutorService worker;
+        private final List<byte[]> batch = new ArrayList<>();
+        private ByteBuffer[] inFlight; // batch currently being written
+        private long inFlightBytes;
+        private final AtomicBoolean writeRequested = new AtomicBoolean(false);
+        private final AtomicBoolean closed = new AtomicBoolean(false);
+        private volatile boolean closeWhenWritten = false; // close once the outbound queue is drained
+        private ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        private SelectionKey key;
+        private ServerThread serverThread;
+
+        private Connection(SocketChannel channel, ExecutorService worker) {
+            this.channel = channel;
+            this.worker = worker;
+        }
+
+        /**
+         * Asks the event loop to drain the ServerThread's outbound queue; safe to
+         * call from any thread
+         *
+         * @throws IOException if the connection is already closed
+         */
+        protected void requestWrite() throws IOException {
+            if (closed.get()) {
+                throw new ClosedChannelException();
+            }
+            if (writeRequested.compareAndSet(false, true)) {
+                pendingWrites.add(this);
+                selector.wakeup();
+            }
+        }
+
+        /**
+         * Closes once the event loop has written everything queued, or after
+         * timeoutMillis if the client isn't reading; the outbound queue must
+         * already be closed so nothing new is queued meanwhile
+         *
+         * @param timeoutMillis
+         */
+        protected void closeWhenDrained(long timeoutMillis) {
+            closeWhenWritten = true;
+            try {
+                requestWrite();
+            } catch (IOException e) {
+                return; // already closed
+            }
+            TimerWheel.INSTANCE.schedule(this::close, timeoutMillis, TimeUnit.MILLISECONDS);
+        }
+
+        /**
+         * Closes the channel and lets the ServerThread clean up on its worker
+         */
+        protected void close() {
+            if (!closed.compareAndSet(false, true)) {
+                return;
+            }
+            if (key != null) {
+                key.cancel();
+            }
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // already closed
+            }
+            try {
+                worker.execute(serverThread::onStopped);
+            } catch (RejectedExecutionException e) {
+                // the event loop already stopped the workers (server shutting down)
+                serverThread.onStopped();
+            }
+        }
+
+        // the methods below only run on the event loop thread
+
+        private void onReadable() throws IOException {
+            int read = channel.read(readBuffer);
+            if (read < 0) {
+                close();
+                return;
+            }
+            readBuffer.flip();
+            byte[] body;
+            while ((body = PayloadCodec.nextFrame(readBuffer)) != null) {
+                final byte[] frame = body;
+                worker.execute(() -> serverThread.receive(frame));
+            }
+            readBuffer.compact();
+            if (!readBuffer.hasRemaining()) {
+                // a single frame is larger than the buffer; nextFrame() already rejected
+                // anything over the max size
+                ByteBuffer larger = ByteBuffer.allocate(Math.min(readBuffer.capacity() * 2,
+                        PayloadCodec.MAX_FRAME_SIZE + PayloadCodec.LENGTH_PREFIX_SIZE));
+                readBuffer.flip();
+                larger.put(readBuffer);
+                readBuffer = larger;
+            }
+        }
+
+        private void enableWrite() {
+            if (key != null && key.isValid()) {
+                key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+            }
+        }
+
+        private void onWritable() throws IOException {
+            OutboundQueue outbound = serverThread.outbound;
+            while (true) {
+                if (inFlight == null) {
+                    if (outbound.drainTo(batch) == 0) {
+                        break;
+                    }
+                    inFlight = new ByteBuffer[batch.size()];
+                    inFlightBytes = 0;
+                    for (int i = 0; i < inFlight.length; i++) {
+                        inFlight[i] = ByteBuffer.wrap(batch.get(i));
+                        inFlightBytes += inFlight[i].remaining();
+                    }
+                    batch.clear();
+                }
+                // gathering write: the whole batch goes out in as few syscalls as possible
+                channel.write(inFlight);
+                if (inFlight[inFlight.length - 1].hasRemaining()) {
+                    return; // socket buffer is full, wait for the next OP_WRITE
+                }
+                outbound.recordFlush(inFlight.length, inFlightBytes);
+                inFlight = null;
+            }
+            key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+            writeRequested.set(false);
+            if (closeWhenWritten) {
+                close(); // the queue was closed before this was set, it stays empty
+                return;
+            }
+            // a frame may have been queued between the drain and the flag reset
+            if (!outbound.isEmpty() && writeRequested.compareAndSet(false, true)) {
+                enableWrite();
+            }
+        }
+    }
+}
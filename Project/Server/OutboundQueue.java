@@ -0,0 +1,297 @@
+package Project.Server;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import Project.Server.metrics.Metrics;
+
+/**
+ * Bounded queue of encoded frames waiting to be written to one client.
+ * <p>
+ * Senders only enqueue, so a slow client never blocks a Room. The connection's
+ * writer drains everything that is queued and writes it with a single flush.
+ * When the queue is full the OverflowPolicy decides between dropping the
+ * oldest frame and refusing the frame (the caller then disconnects the slow
+ * consumer). Server sets both at startup (--outbound-capacity,
+ * --outbound-policy); drops, refusals, the deepest queue and flush sizes go
+ * to the Metrics registry.
+ * </p>
+ * <p>
+ * Closing stops new frames but leaves the queued ones for the writer, so a
+ * goodbye sent just before a disconnect still goes out. A client refused
+ * under DISCONNECT, or whose connection broke, gets its queue discarded
+ * instead since nothing more will reach it.
+ * </p>
+ * <p>
+ * Guarded by a ReentrantLock rather than synchronized: a writer waiting here on
+ * a virtual thread then unmounts instead of pinning its carrier thread.
+ * </p>
+ */
+public class OutboundQueue {
+    public enum OverflowPolicy {
+        DROP_OLDEST, // discard the oldest queued frame to make room
+        DISCONNECT, // refuse the frame, the client is treated as disconnected
+    }
+
+    private static volatile int defaultCapacity = 1024;
+    private static volatile OverflowPolicy defaultPolicy = OverflowPolicy.DISCONNECT;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition(); // a frame was queued or the queue closed
+    private final ArrayDeque<byte[]> frames = new ArrayDeque<>();
+    private final int capacity;
+    private final OverflowPolicy policy;
+    private boolean isClosed = false;
+    private boolean isDiscarded = false;
+
+    // metrics (guarded by lock)
+    private int maxDepth = 0;
+    private long dropped = 0;
+    private long flushes = 0;
+    private long framesFlushed = 0;
+    private long bytesFlushed = 0;
+
+    /**
+     * Sets the capacity and policy used by queues created afterwards
+     *
+     * @param capacity max frames waiting per client
+     * @param policy   what to do when a client's queue is full
+     */
+    public static void configure(int capacity, OverflowPolicy policy) {
+        if (policy == null) {
+            throw new IllegalArgumentException("Policy is required");
+        }
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be at least 1");
+        }
+        defaultCapacity = capacity;
+        defaultPolicy = policy;
+    }
+
+    public static int getDefaultCapacity() {
+        return defaultCapacity;
+    }
+
+    public static OverflowPolicy getDefaultPolicy() {
+        return defaultPolicy;
+    }
+
+    public OutboundQueue() {
+        this(defaultCapacity, defaultPolicy);
+    }
+
+    public OutboundQueue(int capacity, OverflowPolicy policy) {
+        this.capacity = capacity;
+        this.policy = policy;
+    }
+
+    /**
+     * Queues a frame without blocking
+     *
+     * @param frame
+     * @return false if the queue is closed or full under the DISCONNECT policy
+     */
+    public boolean offer(byte[] frame) {
+        lock.lock();
+        try {
+            if (isClosed) {
+                return false;
+            }
+            if (frames.size() >= capacity) {
+                if (policy == OverflowPolicy.DISCONNECT) {
+                    Metrics.INSTANCE.recordOutboundOverflow(true);
+                    discard(); // the client is dropped, don't wait on it to drain
+                    return false;
+                }
+                frames.pollFirst();
+                dropped++;
+                Metrics.INSTANCE.recordOutboundOverflow(false);
+            }
+            frames.addLast(frame);
+            if (frames.size() > maxDepth) {
+                maxDepth = frames.size();
+                Metrics.INSTANCE.recordOutboundDepth(maxDepth);
+            }
+            changed.signalAll();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Moves every queued frame into batch without blocking
+     *
+     * @param batch
+     * @return number of frames moved
+     */
+    public int drainTo(List<byte[]> batch) {
+        lock.lock();
+        try {
+            int count = frames.size();
+            while (!frames.isEmpty()) {
+                batch.add(frames.pollFirst());
+            }
+            return count;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Blocks until at least one frame is queued then moves every queued frame
+     * into batch
+     *
+     * @param batch
+     * @return false once the queue is closed and empty
+     * @throws InterruptedException
+     */
+    public boolean awaitBatch(List<byte[]> batch) throws InterruptedException {
+        lock.lock();
+        try {
+            while (frames.isEmpty() && !isClosed) {
+                changed.await();
+            }
+            return drainTo(batch) > 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Records a completed flush for the metrics
+     *
+     * @param frameCount
+     * @param byteCount
+     */
+    public void recordFlush(int frameCount, long byteCount) {
+        lock.lock();
+        try {
+            flushes++;
+            framesFlushed += frameCount;
+            bytesFlushed += byteCount;
+            Metrics.INSTANCE.recordOutboundFlush(frameCount, byteCount);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stops accepting frames and wakes the writer; what's already queued is
+     * still handed out until the queue is empty
+     */
+    public void close() {
+        lock.lock();
+        try {
+            isClosed = true;
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stops accepting frames, drops what's queued and wakes the writer
+     */
+    public void discard() {
+        lock.lock();
+        try {
+            isDiscarded = true;
+            frames.clear();
+            close();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return true if the queued frames were dropped rather than left to drain
+     */
+    public boolean isDiscarded() {
+        lock.lock();
+        try {
+            return isDiscarded;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean isEmpty() {
+        lock.lock();
+        try {
+            return frames.isEmpty();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getDepth() {
+        lock.lock();
+        try {
+            return frames.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getMaxDepth() {
+        lock.lock();
+        try {
+            return maxDepth;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getDropped() {
+        lock.lock();
+        try {
+            return dropped;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getFlushes() {
+        lock.lock();
+        try {
+            return flushes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return average frames written per flush
+     */
+    public double getAverageFlushSize() {
+        lock.lock();
+        try {
+            return flushes == 0 ? 0 : (double) framesFlushed / flushes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getBytesFlushed() {
+        lock.lock();
+        try {
+            return bytesFlushed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public String toString() {
+        lock.lock();
+        try {
+            return String.format("depth %s (max %s), dropped %s, flushes %s (avg %.1f frames), bytes %s",
+                    frames.size(), maxDepth, dropped, flushes, getAverageFlushSize(), bytesFlushed);
+        } finally {
+            lock.unlock();
+        }
+    }
+}
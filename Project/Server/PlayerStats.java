@@ -0,0 +1,602 @@
+package Project.Server;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.CRC32;
+
+import Project.Common.LoggerUtil;
+
+/**
+ * Wins, losses, ties and points per player name, kept in memory and persisted
+ * to an append-only file.
+ * <p>
+ * Recording a result only updates the in-memory index and marks the name
+ * dirty; a background writer wakes up every flush interval, writes the
+ * current totals of every dirty name as one batch and (optionally) forces it
+ * to disk. A player that played ten rounds since the last batch costs one
+ * record, and a room resolving a round never waits on the disk.
+ * </p>
+ * <p>
+ * Records hold totals, not changes, so the latest record for a name wins.
+ * On startup the file is read back into the index; a batch torn by a crash
+ * fails its CRC and is cut off (its players lose at most the last flush
+ * interval), and a log holding mostly outdated records is rewritten with one
+ * record per player. A write that fails part way (disk full) is cut back off
+ * the file before the next batch goes after it, so a torn batch can only ever
+ * be the last one.
+ * </p>
+ *
+ * <pre>
+ * int    magic, int version
+ * then batches:
+ * int    length of the records, int CRC32 of the records
+ * records: short name length, name UTF-8, int wins, int losses, int ties, int points
+ * </pre>
+ */
+public class PlayerStats implements AutoCloseable {
+    public static final int MAGIC = 0x50535453; // "PSTS"
+    public static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    private static final int BATCH_HEADER_SIZE = 8;
+    private static final int MAX_BATCH_BYTES = 256 * 1024;
+    private static final int MAX_NAME_BYTES = 1024;
+    private static final int RECORD_FIXED_SIZE = 2 + 4 * 4;
+    private static final long WAIT_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    public enum Outcome {
+        WIN, LOSS, TIE
+    }
+
+    /**
+     * One player's totals (immutable, a result makes a new one)
+     */
+    public static final class Record {
+        public static final Record EMPTY = new Record(0, 0, 0, 0);
+
+        private final int wins;
+        private final int losses;
+        private final int ties;
+        private final int points;
+
+        public Record(int wins, int losses, int ties, int points) {
+            this.wins = wins;
+            this.losses = losses;
+            this.ties = ties;
+            this.points = points;
+        }
+
+        public int getWins() {
+            return wins;
+        }
+
+        public int getLosses() {
+            return losses;
+        }
+
+        public int getTies() {
+            return ties;
+        }
+
+        public int getPoints() {
+            return points;
+        }
+
+        private Record plus(Outcome outcome, Config config) {
+            switch (outcome) {
+                case WIN:
+                    return new Record(wins + 1, losses, ties, points + config.getPointsPerWin());
+                case TIE:
+                    return new Record(wins, losses, ties + 1, points + config.getPointsPerTie());
+                default:
+                    return new Record(wins, losses + 1, ties, points);
+            }
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Record)) {
+                return false;
+            }
+            Record r = (Record) other;
+            return wins == r.wins && losses == r.losses && ties == r.ties && points == r.points;
+        }
+
+        @Override
+        public int hashCode() {
+            return ((wins * 31 + losses) * 31 + ties) * 31 + points;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s W / %s L / %s T, %s points", wins, losses, ties, points);
+        }
+    }
+
+    public static class Config {
+        private String location = "player-stats.dat";
+        private long flushIntervalMillis = 200;
+        private boolean sync = true;
+        private int pointsPerWin = 3;
+        private int pointsPerTie = 1;
+
+        public String getLocation() {
+            return location;
+        }
+
+        public void setLocation(String location) {
+            this.location = location;
+        }
+
+        public long getFlushIntervalMillis() {
+            return flushIntervalMillis;
+        }
+
+        /**
+         * @param flushIntervalMillis how long results wait in memory at most
+         *                            (the most a crash can lose)
+         */
+        public void setFlushIntervalMillis(long flushIntervalMillis) {
+            this.flushIntervalMillis = Math.max(1, flushIntervalMillis);
+        }
+
+        public boolean isSync() {
+            return sync;
+        }
+
+        /**
+         * @param sync true to force every batch to the device, false to leave it
+         *             to the OS (survives the server crashing, not the machine)
+         */
+        public void setSync(boolean sync) {
+            this.sync = sync;
+        }
+
+        public int getPointsPerWin() {
+            return pointsPerWin;
+        }
+
+        public void setPointsPerWin(int pointsPerWin) {
+            this.pointsPerWin = pointsPerWin;
+        }
+
+        public int getPointsPerTie() {
+            return pointsPerTie;
+        }
+
+        public void setPointsPerTie(int pointsPerTie) {
+            this.pointsPerTie = pointsPerTie;
+        }
+    }
+
+    private final Config config;
+    private final Path file;
+    private final ConcurrentHashMap<String, Record> index = new ConcurrentHashMap<>();
+    private final Set<String> dirty = ConcurrentHashMap.newKeySet();
+    private final FileChannel channel;
+    private final Thread writer;
+    private volatile boolean isRunning = true;
+    private final AtomicLong flushRequested = new AtomicLong();
+    private volatile long flushCompleted = 0;
+    // writer thread only
+    private final ByteBuffer batch = ByteBuffer.allocate(MAX_BATCH_BYTES);
+    private final List<String> batchNames = new ArrayList<>();
+    private final CRC32 crc = new CRC32();
+    private int batchRecords = 0;
+    private long tornAt = -1; // end of the last whole batch while a failed write is still on disk
+    private boolean isFailing = false;
+    // stats
+    private volatile long batchesWritten = 0;
+    private volatile long recordsWritten = 0;
+    private final long recoveredRecords;
+    private final long recoveryNanos;
+
+    /**
+     * Opens (or creates) the store and reads it back into memory
+     *
+     * @param config
+     * @throws IOException if the file can't be read or isn't a stats file
+     */
+    public PlayerStats(Config config) throws IOException {
+        this.config = config;
+        file = Paths.get(config.getLocation()).toAbsolutePath();
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        long start = System.nanoTime();
+        recoveredRecords = recover();
+        if (recoveredRecords > 10_000 && recoveredRecords > 2L * index.size()) {
+            compact();
+        }
+        recoveryNanos = System.nanoTime() - start;
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+        if (channel.size() == 0) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putInt(VERSION);
+            header.flip();
+            channel.write(header);
+        }
+        writer = new Thread(this::drain, "player-stats-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    // Start recovery (constructor only)
+    /**
+     * Loads the file into the index, cutting off a torn batch at the end
+     *
+     * @return records read
+     * @throws IOException
+     */
+    private long recover() throws IOException {
+        if (!Files.exists(file) || Files.size(file) == 0) {
+            return 0;
+        }
+        long count = 0;
+        long validEnd;
+        long size;
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+            size = in.size();
+            MappedByteBuffer buffer = in.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (size < HEADER_SIZE || buffer.getInt() != MAGIC) {
+                throw new IOException("Not a player stats file: " + file);
+            }
+            int version = buffer.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported player stats version " + version + ": " + file);
+            }
+            CRC32 check = new CRC32();
+            while (buffer.remaining() >= BATCH_HEADER_SIZE) {
+                int length = buffer.getInt();
+                int expected = buffer.getInt();
+                if (length <= 0 || length > buffer.remaining()) {
+                    buffer.position(buffer.position() - BATCH_HEADER_SIZE);
+                    break;
+                }
+                ByteBuffer records = buffer.slice();
+                records.limit(length);
+                check.reset();
+                check.update(records.duplicate());
+                if ((int) check.getValue() != expected) {
+                    buffer.position(buffer.position() - BATCH_HEADER_SIZE);
+                    break;
+                }
+                while (records.hasRemaining()) {
+                    byte[] name = new byte[records.getShort() & 0xFFFF];
+                    records.get(name);
+                    index.put(new String(name, StandardCharsets.UTF_8),
+                            new Record(records.getInt(), records.getInt(), records.getInt(), records.getInt()));
+                    count++;
+                }
+                buffer.position(buffer.position() + length);
+            }
+            validEnd = buffer.position();
+        }
+        if (validEnd < size) {
+            LoggerUtil.INSTANCE.warning(String.format("Player stats: dropped a torn batch (%s bytes) at the end of %s",
+                    size - validEnd, file));
+            try (FileChannel out = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                out.truncate(validEnd);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Rewrites the file with one record per player, then swaps it in
+     *
+     * @throws IOException
+     */
+    private void compact() throws IOException {
+        Path compacted = file.resolveSibling(file.getFileName() + ".compact");
+        try (FileChannel out = FileChannel.open(compacted, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putInt(VERSION);
+            header.flip();
+            out.write(header);
+            batch.clear().position(BATCH_HEADER_SIZE);
+            for (Map.Entry<String, Record> entry : index.entrySet()) {
+                writeRecord(out, entry.getKey(), entry.getValue());
+            }
+            writeBatch(out);
+            out.force(true);
+        }
+        Files.move(compacted, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+    // End recovery
+
+    /**
+     * Adds a round's result to the player's totals; never touches the disk
+     *
+     * @param name
+     * @param outcome
+     * @return the player's new totals
+     */
+    public Record record(String name, Outcome outcome) {
+        if (name == null) {
+            return Record.EMPTY;
+        }
+        Record updated = index.compute(name, (key, old) -> (old == null ? Record.EMPTY : old).plus(outcome, config));
+        dirty.add(name);
+        return updated;
+    }
+
+    /**
+     * @param name
+     * @return the player's totals, EMPTY if it never played
+     */
+    public Record get(String name) {
+        Record record = name == null ? null : index.get(name);
+        return record == null ? Record.EMPTY : record;
+    }
+
+    public int getPlayerCount() {
+        return index.size();
+    }
+
+    /**
+     * @return players with results not yet written
+     */
+    public int getPendingCount() {
+        return dirty.size();
+    }
+
+    public long getBatchesWritten() {
+        return batchesWritten;
+    }
+
+    public long getRecordsWritten() {
+        return recordsWritten;
+    }
+
+    /**
+     * @return records read back when the store was opened
+     */
+    public long getRecoveredRecords() {
+        return recoveredRecords;
+    }
+
+    public long getRecoveryNanos() {
+        return recoveryNanos;
+    }
+
+    // Start writer (writer thread only)
+    private void drain() {
+        long intervalNanos = TimeUnit.MILLISECONDS.toNanos(config.getFlushIntervalMillis());
+        while (true) {
+            LockSupport.parkNanos(this, intervalNanos);
+            boolean stopping = !isRunning;
+            // read before draining: everything recorded before a flush() asked is
+            // already in dirty
+            long requested = flushRequested.get();
+            writeDirty();
+            flushCompleted = requested;
+            if (stopping) {
+                return;
+            }
+        }
+    }
+
+    private void writeDirty() {
+        if (dirty.isEmpty()) {
+            return;
+        }
+        batchNames.clear();
+        batch.clear().position(BATCH_HEADER_SIZE);
+        batchRecords = 0;
+        long batches = batchesWritten;
+        long records = recordsWritten;
+        try {
+            // nothing goes after a torn batch, recovery stops reading there
+            truncateTorn();
+            tornAt = channel.size();
+            for (String name : dirty) {
+                // removed before reading, a result landing in between marks it again
+                dirty.remove(name);
+                batchNames.add(name);
+                writeRecord(channel, name, index.get(name));
+            }
+            writeBatch(channel);
+            if (config.isSync()) {
+                channel.force(false);
+            }
+            tornAt = -1;
+            if (isFailing) {
+                isFailing = false;
+                LoggerUtil.INSTANCE.warning("Player stats: writing again");
+            }
+        } catch (IOException e) {
+            // try these players again next time, the totals stay in memory; whatever
+            // part of the write reached the file is cut off (now, or before the next
+            // write if the disk won't even allow that)
+            dirty.addAll(batchNames);
+            batchesWritten = batches;
+            recordsWritten = records;
+            try {
+                truncateTorn();
+            } catch (IOException ignored) {
+            }
+            if (!isFailing) {
+                isFailing = true;
+                LoggerUtil.INSTANCE.severe("Player stats: write failed, will retry", e);
+            }
+        }
+    }
+
+    /**
+     * Cuts the file back to the end of the last batch written in full, if a
+     * write failed after it
+     *
+     * @throws IOException
+     */
+    private void truncateTorn() throws IOException {
+        if (tornAt >= 0 && channel.size() > tornAt) {
+            channel.truncate(tornAt);
+        }
+        tornAt = -1;
+    }
+
+    private void writeRecord(FileChannel out, String name, Record record) throws IOException {
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        if (nameBytes.length > MAX_NAME_BYTES || record == null) {
+            return; // not a name a client can have
+        }
+        if (batch.remaining() < RECORD_FIXED_SIZE + nameBytes.length) {
+            writeBatch(out);
+        }
+        batch.putShort((short) nameBytes.length);
+        batch.put(nameBytes);
+        batch.putInt(record.getWins());
+        batch.putInt(record.getLosses());
+        batch.putInt(record.getTies());
+        batch.putInt(record.getPoints());
+        batchRecords++;
+    }
+
+    /**
+     * Frames the records in batch with their length and CRC and writes them
+     */
+    private void writeBatch(FileChannel out) throws IOException {
+        int length = batch.position() - BATCH_HEADER_SIZE;
+        if (length > 0) {
+            crc.reset();
+            crc.update(batch.array(), BATCH_HEADER_SIZE, length);
+            batch.putInt(0, length);
+            batch.putInt(4, (int) crc.getValue());
+            batch.flip();
+            while (batch.hasRemaining()) {
+                out.write(batch);
+            }
+            batchesWritten++;
+            recordsWritten += batchRecords;
+        }
+        batchRecords = 0;
+        batch.clear().position(BATCH_HEADER_SIZE);
+    }
+    // End writer
+
+    /**
+     * Blocks until every result recorded before the call is written (and forced
+     * if sync is on)
+     */
+    public void flush() {
+        long ticket = flushRequested.incrementAndGet();
+        LockSupport.unpark(writer);
+        while (flushCompleted < ticket && writer.isAlive()) {
+            LockSupport.parkNanos(WAIT_PARK_NANOS);
+            LockSupport.unpark(writer);
+        }
+    }
+
+    /**
+     * Writes what's pending and closes the file; results recorded afterwards
+     * only stay in memory
+     */
+    @Override
+    public void close() {
+        if (!isRunning) {
+            return;
+        }
+        isRunning = false;
+        LockSupport.unpark(writer);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            LoggerUtil.INSTANCE.warning("Player stats: file didn't close cleanly");
+        }
+    }
+
+    /**
+     * Records results from several threads (like rooms resolving rounds),
+     * reopens the store to time recovery and check every total came back, then
+     * does it again with a torn batch appended.
+     * This is just for testing/demo
+     *
+     * @param args optional location, players and results
+     * @throws Exception
+     */
+    public static void main(String[] args) throws Exception {
+        String location = args.length > 0 ? args[0] : "player-stats-demo.dat";
+        int players = args.length > 1 ? Integer.parseInt(args[1]) : 100_000;
+        int results = args.length > 2 ? Integer.parseInt(args[2]) : 4_000_000;
+        LoggerUtil.LoggerConfig logConfig = new LoggerUtil.LoggerConfig();
+        logConfig.setLogLocation("player-stats-demo.log");
+        LoggerUtil.INSTANCE.setConfig(logConfig);
+        Files.deleteIfExists(Paths.get(location));
+        Config config = new Config();
+        config.setLocation(location);
+
+        Map<String, Record> expected;
+        try (PlayerStats stats = new PlayerStats(config)) {
+            int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+            String[] names = new String[players];
+            for (int i = 0; i < players; i++) {
+                names[i] = "player" + i;
+            }
+            Outcome[] outcomes = Outcome.values();
+            CountDownLatch done = new CountDownLatch(threads);
+            long start = System.nanoTime();
+            for (int t = 0; t < threads; t++) {
+                final int offset = t;
+                new Thread(() -> {
+                    for (int i = offset; i < results; i += threads) {
+                        stats.record(names[(int) (i * 7919L % players)], outcomes[i % outcomes.length]);
+                    }
+                    done.countDown();
+                }, "room-" + t).start();
+            }
+            done.await();
+            long recorded = System.nanoTime() - start;
+            long flushStart = System.nanoTime();
+            stats.flush();
+            long flushed = System.nanoTime() - flushStart;
+            System.out.println(String.format(
+                    "recorded %s results for %s players on %s threads: %.0f results/sec, final flush %.1f ms",
+                    results, stats.getPlayerCount(), threads, results / (recorded / 1e9), flushed / 1e6));
+            System.out.println(String.format("writer: %s batches, %s records (%.1f results per record), %s KB",
+                    stats.getBatchesWritten(), stats.getRecordsWritten(),
+                    results / (double) stats.getRecordsWritten(), Files.size(Paths.get(location)) / 1024));
+            expected = new HashMap<>(stats.index);
+        }
+
+        for (int pass = 0; pass < 2; pass++) {
+            if (pass == 1) {
+                // a batch cut short by a crash: header promises more than is there
+                try (FileChannel out = FileChannel.open(Paths.get(location), StandardOpenOption.APPEND)) {
+                    ByteBuffer torn = ByteBuffer.allocate(12).putInt(4096).putInt(0).putInt(42);
+                    torn.flip();
+                    out.write(torn);
+                }
+            }
+            try (PlayerStats stats = new PlayerStats(config)) {
+                boolean identical = stats.index.equals(expected);
+                System.out.println(String.format("%s: recovered %s players from %s records in %.1f ms, %s, %s KB",
+                        pass == 0 ? "reopened" : "reopened after a torn write", stats.getPlayerCount(),
+                        stats.getRecoveredRecords(), stats.getRecoveryNanos() / 1e6,
+                        identical ? "identical totals" : "TOTALS DIFFER", Files.size(Paths.get(location)) / 1024));
+            }
+        }
+    }
+}
@@ -0,0 +1,708 @@
+package Project.Server;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import Project.Common.LoggerUtil;
+import Project.Common.Phase;
+import Project.Common.RoomDeltaPayload;
+import Project.Common.Scheduler;
+import Project.Common.TimerWheel;
+
+/**
+ * Append-only binary record of one GameRoom's inputs, enough to play its games
+ * again with Replayer.
+ * <p>
+ * Inputs are what the room can't work out by itself: who joined (with the
+ * ready/turn flags they brought along), left or disconnected, readies, turns,
+ * picks, timer expirations, tournament match starts/ends and the seed of each
+ * turn order shuffle. Outcomes are recorded as checkpoints: every phase change
+ * and every round end carries a digest of everything the room broadcast so far
+ * (deltas and the room's own relays, not player chat), so a replay can prove
+ * it reached the same state and said the same things.
+ * </p>
+ * File layout, one file per room ({@code <room>-<millis>-<n>.rpl}):
+ *
+ * <pre>
+ * int    magic, int version, long epoch millis, short room name length, name UTF-8
+ * then records:
+ * byte   Type ordinal
+ * int    millis since the log started
+ * ...    the type's fields (see Type)
+ * </pre>
+ *
+ * Records go into a small buffer, all on the room's mailbox with no locks or
+ * allocation on the way in. It's written out at every checkpoint (phase
+ * change, round end), at the end of each turn and at least every
+ * FLUSH_RECORDS records, so a crash loses little of a game. The file itself
+ * isn't created until the room starts a game (or fills the buffer before
+ * one); a room where nothing is played leaves no file. Each new file may
+ * prune the directory down to the newest maxFiles files, none older than
+ * maxAge.
+ */
+public class ReplayLog implements AutoCloseable {
+    public static final int MAGIC = 0x52504C47; // "RPLG"
+    public static final int VERSION = 1;
+    private static final String SUFFIX = ".rpl";
+    private static final int BUFFER_SIZE = 16 * 1024;
+    private static final int MAX_STRING_BYTES = 1024;
+    private static final int RECORD_HEADER_SIZE = 1 + 4;
+    private static final int FLUSH_RECORDS = 32;
+    private static final int PRUNE_EVERY_FILES = 64; // and on the first file
+
+    /**
+     * Record kinds; ordinals are stored in the files so append only
+     */
+    public enum Type {
+        JOIN, // long clientId, byte flags (1 ready, 2 took turn), short length + name
+        LEAVE, // long clientId
+        DISCONNECT, // long clientId
+        READY, // long clientId
+        TURN, // long clientId
+        PICK, // long clientId, short length + choice
+        READY_TIMER, // ready timer expired
+        TURN_TIMER, // turn timer expired
+        ROUND_TIMER, // round timer expired
+        MATCH_START, // tournament started the session
+        MATCH_END, // tournament ran out of time
+        SHUFFLE, // long seed of the turn order shuffle
+        PHASE, // byte Phase ordinal, long broadcast digest
+        ROUND // int round that ended, long broadcast digest
+    }
+
+    private static final Type[] TYPES = Type.values();
+    private static final Phase[] PHASES = Phase.values();
+
+    private static volatile Path directory = null; // null: rooms don't record
+    private static volatile int maxFiles = 1000;
+    private static volatile long maxAgeMillis = TimeUnit.DAYS.toMillis(7);
+    private static final AtomicLong sequence = new AtomicLong();
+    private static final AtomicLong filesCreated = new AtomicLong();
+
+    private final String room;
+    private final Scheduler clock;
+    private final long startNanos;
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private WritableByteChannel out;
+    private Path pendingDirectory; // where the file goes once there's a game in it, null once created
+    private boolean played = false; // a phase other than READY was recorded
+    private int unflushed = 0; // records in the buffer
+    private long digest = 17;
+
+    /**
+     * Sets where rooms created afterwards record, one file each
+     *
+     * @param location directory, created when needed; null turns recording off
+     */
+    public static void setDirectory(String location) {
+        directory = location == null ? null : Paths.get(location).toAbsolutePath();
+    }
+
+    /**
+     * Caps what's kept in the directory; checked when files are created
+     *
+     * @param files     newest files to keep
+     * @param ageMillis files older than this are deleted
+     */
+    public static void setRetention(int files, long ageMillis) {
+        maxFiles = Math.max(1, files);
+        maxAgeMillis = ageMillis;
+    }
+
+    /**
+     * Starts recording a room if recording is on; its file is created once a
+     * game starts
+     *
+     * @param room
+     * @param clock the room's scheduler, for the record times
+     * @return the log, or null if recording is off
+     */
+    public static ReplayLog open(String room, Scheduler clock) {
+        Path dir = directory;
+        if (dir == null) {
+            return null;
+        }
+        return new ReplayLog(room, clock, (WritableByteChannel) null, dir);
+    }
+
+    /**
+     * @param room
+     * @param clock
+     * @param out   where the records go (a file, or memory for a replay)
+     * @throws IOException
+     */
+    public ReplayLog(String room, Scheduler clock, WritableByteChannel out) throws IOException {
+        this(room, clock, out, null);
+        write();
+    }
+
+    private ReplayLog(String room, Scheduler clock, WritableByteChannel out, Path pendingDirectory) {
+        this.room = room;
+        this.clock = clock;
+        this.out = out;
+        this.pendingDirectory = pendingDirectory;
+        startNanos = clock.nanoTime();
+        byte[] name = truncate(room);
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putLong(System.currentTimeMillis());
+        buffer.putShort((short) name.length);
+        buffer.put(name);
+    }
+
+    // Start record methods (room mailbox only)
+    public void join(long clientId, String name, boolean ready, boolean tookTurn) {
+        byte[] encoded = asciiLength(name) < 0 ? truncate(name) : null;
+        if (begin(Type.JOIN, 8 + 1 + stringSize(name, encoded))) {
+            buffer.putLong(clientId);
+            buffer.put((byte) ((ready ? 1 : 0) | (tookTurn ? 2 : 0)));
+            putString(name, encoded);
+        }
+    }
+
+    /**
+     * @param type     LEAVE, DISCONNECT, READY or TURN
+     * @param clientId
+     */
+    public void input(Type type, long clientId) {
+        if (begin(type, 8)) {
+            buffer.putLong(clientId);
+        }
+    }
+
+    public void pick(long clientId, String choice) {
+        byte[] encoded = asciiLength(choice) < 0 ? truncate(choice) : null;
+        if (begin(Type.PICK, 8 + stringSize(choice, encoded))) {
+            buffer.putLong(clientId);
+            putString(choice, encoded);
+        }
+    }
+
+    /**
+     * @param type one of the timers, MATCH_START or MATCH_END
+     */
+    public void event(Type type) {
+        begin(type, 0);
+    }
+
+    public void shuffle(long seed) {
+        if (begin(Type.SHUFFLE, 8)) {
+            buffer.putLong(seed);
+        }
+    }
+
+    public void phase(Phase phase) {
+        if (begin(Type.PHASE, 1 + 8)) {
+            buffer.put((byte) phase.ordinal());
+            buffer.putLong(digest);
+            played |= phase != Phase.READY;
+            flush();
+        }
+    }
+
+    public void round(int round) {
+        if (begin(Type.ROUND, 4 + 8)) {
+            buffer.putInt(round);
+            buffer.putLong(digest);
+            flush();
+        }
+    }
+
+    /**
+     * Folds a relay from the room itself into the broadcast digest
+     *
+     * @param message
+     */
+    public void relayed(String message) {
+        digest = 31 * digest + (message == null ? 0 : message.hashCode());
+    }
+
+    /**
+     * Folds a delta into the broadcast digest (after its version is stamped)
+     *
+     * @param delta
+     */
+    public void delta(RoomDeltaPayload delta) {
+        // ordinals, not enum hashCodes, so the digest is the same in every JVM
+        long hash = delta.getChange().ordinal();
+        hash = 31 * hash + delta.getClientId();
+        hash = 31 * hash + delta.getVersion();
+        hash = 31 * hash + (delta.getValue() ? 1 : 0);
+        hash = 31 * hash + (delta.getPhase() == null ? -1 : delta.getPhase().ordinal());
+        digest = 31 * digest + hash;
+    }
+    // End record methods
+
+    public long getDigest() {
+        return digest;
+    }
+
+    private boolean begin(Type type, int size) {
+        if (out == null && pendingDirectory == null) {
+            return false; // closed, or stopped after a failure
+        }
+        if (buffer.remaining() < RECORD_HEADER_SIZE + size) {
+            write(); // a busy room gets its file even before its first game
+            if (out == null) {
+                return false;
+            }
+        } else if (unflushed >= FLUSH_RECORDS) {
+            flush();
+        }
+        unflushed++;
+        buffer.put((byte) type.ordinal());
+        buffer.putInt((int) TimeUnit.NANOSECONDS.toMillis(clock.nanoTime() - startNanos));
+        return true;
+    }
+
+    /**
+     * @param value
+     * @return the length if value (null counts as empty) can be copied as is,
+     *         -1 if it has to be encoded
+     */
+    private static int asciiLength(String value) {
+        if (value == null) {
+            return 0;
+        }
+        int length = value.length();
+        if (length > MAX_STRING_BYTES) {
+            return -1;
+        }
+        for (int i = 0; i < length; i++) {
+            if (value.charAt(i) >= 0x80) {
+                return -1;
+            }
+        }
+        return length;
+    }
+
+    private static int stringSize(String value, byte[] encoded) {
+        return 2 + (encoded != null ? encoded.length : value == null ? 0 : value.length());
+    }
+
+    // ASCII (picks, most names) is copied without allocating, anything else was encoded
+    private void putString(String value, byte[] encoded) {
+        if (encoded != null) {
+            buffer.putShort((short) encoded.length);
+            buffer.put(encoded);
+            return;
+        }
+        int length = value == null ? 0 : value.length();
+        buffer.putShort((short) length);
+        for (int i = 0; i < length; i++) {
+            buffer.put((byte) value.charAt(i));
+        }
+    }
+
+    private static byte[] truncate(String value) {
+        if (value == null) {
+            return new byte[0];
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > MAX_STRING_BYTES) {
+            byte[] shorter = new byte[MAX_STRING_BYTES];
+            System.arraycopy(bytes, 0, shorter, 0, MAX_STRING_BYTES);
+            return shorter;
+        }
+        return bytes;
+    }
+
+    /**
+     * Writes out buffered records, unless the room hasn't played a game yet (its
+     * file isn't created for nothing)
+     */
+    public void flush() {
+        if (pendingDirectory != null && !played) {
+            return;
+        }
+        write();
+    }
+
+    private void write() {
+        if (out == null) {
+            if (pendingDirectory == null) {
+                return;
+            }
+            try {
+                out = create(pendingDirectory, room);
+            } catch (IOException e) {
+                LoggerUtil.INSTANCE.severe(String.format("Replay log for room %s not started", room), e);
+            }
+            pendingDirectory = null;
+            if (out == null) {
+                buffer.clear();
+                return;
+            }
+        }
+        unflushed = 0;
+        buffer.flip();
+        try {
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+        } catch (IOException e) {
+            out = null; // stop recording, the game goes on
+            LoggerUtil.INSTANCE.severe(String.format("Replay log for room %s stopped after a write failure", room), e);
+        }
+        buffer.clear();
+    }
+
+    @Override
+    public void close() {
+        flush();
+        pendingDirectory = null; // nothing was played, no file
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException e) {
+                LoggerUtil.INSTANCE.warning(String.format("Replay log for room %s didn't close cleanly", room));
+            }
+            out = null;
+        }
+    }
+
+    private static WritableByteChannel create(Path dir, String room) throws IOException {
+        Files.createDirectories(dir);
+        if (filesCreated.getAndIncrement() % PRUNE_EVERY_FILES == 0) {
+            prune(dir);
+        }
+        // room names come from clients, keep them out of the path
+        String safeName = room.replaceAll("[^A-Za-z0-9_-]", "_");
+        Path file = dir.resolve(String.format("%s-%s-%s%s", safeName, System.currentTimeMillis(),
+                sequence.incrementAndGet(), SUFFIX));
+        return FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+    }
+
+    /**
+     * Deletes replay files past the newest maxFiles and any older than maxAge
+     *
+     * @param dir
+     * @return files deleted
+     */
+    static int prune(Path dir) {
+        List<Path> files = new ArrayList<>();
+        List<Long> modified = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, "*" + SUFFIX)) {
+            for (Path file : stream) {
+                try {
+                    modified.add(Files.getLastModifiedTime(file).toMillis());
+                    files.add(file);
+                } catch (IOException e) {
+                    // already gone (another room pruning)
+                }
+            }
+        } catch (IOException e) {
+            LoggerUtil.INSTANCE.warning(String.format("Couldn't list replay logs in %s: %s", dir, e));
+            return 0;
+        }
+        Integer[] newestFirst = new Integer[files.size()];
+        for (int i = 0; i < newestFirst.length; i++) {
+            newestFirst[i] = i;
+        }
+        Arrays.sort(newestFirst, (a, b) -> Long.compare(modified.get(b), modified.get(a)));
+        long cutoff = System.currentTimeMillis() - maxAgeMillis;
+        int keep = maxFiles - 1; // leaves room for the file about to be created
+        int deleted = 0;
+        for (int i = 0; i < newestFirst.length; i++) {
+            int index = newestFirst[i];
+            if (i < keep && modified.get(index) >= cutoff) {
+                continue;
+            }
+            try {
+                if (Files.deleteIfExists(files.get(index))) {
+                    deleted++;
+                }
+            } catch (IOException e) {
+                LoggerUtil.INSTANCE.warning(String.format("Couldn't delete replay log %s: %s", files.get(index), e));
+            }
+        }
+        return deleted;
+    }
+
+    /**
+     * A decoded record; fields a type doesn't have are 0/null
+     */
+    public static class Entry {
+        private final Type type;
+        private final int time;
+        private final long clientId;
+        private final int number; // JOIN flags, PHASE ordinal or ROUND number
+        private final long value; // SHUFFLE seed or checkpoint digest
+        private final String text; // JOIN name or PICK choice
+
+        public Entry(Type type, int time, long clientId, int number, long value, String text) {
+            this.type = type;
+            this.time = time;
+            this.clientId = clientId;
+            this.number = number;
+            this.value = value;
+            this.text = text;
+        }
+
+        public Type getType() {
+            return type;
+        }
+
+        /**
+         * @return millis since the log started
+         */
+        public int getTime() {
+            return time;
+        }
+
+        public long getClientId() {
+            return clientId;
+        }
+
+        public String getText() {
+            return text;
+        }
+
+        public long getValue() {
+            return value;
+        }
+
+        public int getNumber() {
+            return number;
+        }
+
+        public boolean isReady() {
+            return (number & 1) != 0;
+        }
+
+        public boolean didTakeTurn() {
+            return (number & 2) != 0;
+        }
+
+        public Phase getPhase() {
+            return type == Type.PHASE && number < PHASES.length ? PHASES[number] : null;
+        }
+
+        /**
+         * @param other
+         * @return true if both record the same thing, whenever it happened
+         */
+        public boolean sameAs(Entry other) {
+            return type == other.type && clientId == other.clientId && number == other.number
+                    && value == other.value && (text == null ? other.text == null : text.equals(other.text));
+        }
+
+        @Override
+        public String toString() {
+            String detail;
+            switch (type) {
+                case JOIN:
+                    detail = String.format("client=%s %s ready=%s tookTurn=%s", clientId, text, isReady(),
+                            didTakeTurn());
+                    break;
+                case PICK:
+                    detail = String.format("client=%s %s", clientId, text);
+                    break;
+                case LEAVE:
+                case DISCONNECT:
+                case READY:
+                case TURN:
+                    detail = "client=" + clientId;
+                    break;
+                case SHUFFLE:
+                    detail = "seed=" + value;
+                    break;
+                case PHASE:
+                    detail = String.format("%s digest=%016x", getPhase(), value);
+                    break;
+                case ROUND:
+                    detail = String.format("%s digest=%016x", number, value);
+                    break;
+                default:
+                    detail = "";
+                    break;
+            }
+            return String.format("+%.3fs %s %s", time / 1000.0, type, detail);
+        }
+    }
+
+    /**
+     * A decoded file
+     */
+    public static class Recording {
+        private final String room;
+        private final long startedAt;
+        private final List<Entry> entries;
+
+        public Recording(String room, long startedAt, List<Entry> entries) {
+            this.room = room;
+            this.startedAt = startedAt;
+            this.entries = entries;
+        }
+
+        public String getRoom() {
+            return room;
+        }
+
+        /**
+         * @return epoch millis
+         */
+        public long getStartedAt() {
+            return startedAt;
+        }
+
+        public List<Entry> getEntries() {
+            return entries;
+        }
+    }
+
+    /**
+     * @param file
+     * @return the decoded records, up to a torn record at the end if the room
+     *         didn't close cleanly
+     * @throws IOException
+     */
+    public static Recording read(Path file) throws IOException {
+        return read(ByteBuffer.wrap(Files.readAllBytes(file)));
+    }
+
+    /**
+     * @param in a whole log, header included
+     * @return the decoded records
+     * @throws IOException
+     */
+    public static Recording read(ByteBuffer in) throws IOException {
+        try {
+            if (in.getInt() != MAGIC) {
+                throw new IOException("Not a replay log");
+            }
+            int version = in.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported replay log version " + version);
+            }
+            long startedAt = in.getLong();
+            String room = readString(in);
+            List<Entry> entries = new ArrayList<>();
+            while (in.remaining() >= RECORD_HEADER_SIZE) {
+                int position = in.position();
+                try {
+                    Entry entry = readEntry(in);
+                    if (entry == null) {
+                        break;
+                    }
+                    entries.add(entry);
+                } catch (BufferUnderflowException e) {
+                    in.position(position);
+                    break; // torn record
+                }
+            }
+            return new Recording(room, startedAt, entries);
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Replay log header is incomplete");
+        }
+    }
+
+    private static Entry readEntry(ByteBuffer in) {
+        int ordinal = in.get() & 0xFF;
+        if (ordinal >= TYPES.length) {
+            return null;
+        }
+        Type type = TYPES[ordinal];
+        int time = in.getInt();
+        switch (type) {
+            case JOIN: {
+                long clientId = in.getLong();
+                int flags = in.get();
+                return new Entry(type, time, clientId, flags, 0, readString(in));
+            }
+            case LEAVE:
+            case DISCONNECT:
+            case READY:
+            case TURN:
+                return new Entry(type, time, in.getLong(), 0, 0, null);
+            case PICK: {
+                long clientId = in.getLong();
+                return new Entry(type, time, clientId, 0, 0, readString(in));
+            }
+            case SHUFFLE:
+                return new Entry(type, time, 0, 0, in.getLong(), null);
+            case PHASE: {
+                int phase = in.get();
+                return new Entry(type, time, 0, phase, in.getLong(), null);
+            }
+            case ROUND: {
+                int round = in.getInt();
+                return new Entry(type, time, 0, round, in.getLong(), null);
+            }
+            default:
+                return new Entry(type, time, 0, 0, 0, null);
+        }
+    }
+
+    private static String readString(ByteBuffer in) {
+        byte[] bytes = new byte[in.getShort() & 0xFFFF];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Records a stream of game-like events to a file and reads it back,
+     * reporting the cost per recorded event. This is just for testing/demo
+     *
+     * @param args optional directory and event count
+     * @throws IOException
+     */
+    public static void main(String[] args) throws IOException {
+        String location = args.length > 0 ? args[0] : "replays-bench";
+        int count = args.length > 1 ? Integer.parseInt(args[1]) : 2_000_000;
+        setDirectory(location);
+        String[] choices = { "r", "p", "s" };
+        RoomDeltaPayload delta = new RoomDeltaPayload(RoomDeltaPayload.Change.TURN, 1);
+        for (int pass = 0; pass < 2; pass++) { // first pass warms up the JIT
+            ReplayLog log = open("bench", TimerWheel.INSTANCE);
+            long start = System.nanoTime();
+            for (int i = 0; i < count; i++) {
+                // a pick with its turn delta, a ready every few, a round checkpoint now and then
+                long clientId = i & 3;
+                log.pick(clientId, choices[i % choices.length]);
+                delta.setVersion(i);
+                log.delta(delta);
+                if ((i & 3) == 0) {
+                    log.input(Type.READY, clientId);
+                }
+                if ((i & 15) == 0) {
+                    log.round(i);
+                }
+            }
+            log.close();
+            long elapsed = System.nanoTime() - start;
+            if (pass == 1) {
+                System.out.println(String.format("recorded %s picks (plus readies and checkpoints) in %s ms, %.1f ns/pick",
+                        count, elapsed / 1_000_000, elapsed / (double) count));
+            }
+        }
+        Path dir = Paths.get(location).toAbsolutePath();
+        long entries = 0;
+        long bytes = 0;
+        long start = System.nanoTime();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "bench-*" + SUFFIX)) {
+            for (Path file : files) {
+                entries += read(file).getEntries().size();
+                bytes += Files.size(file);
+                Files.delete(file);
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        System.out.println(String.format("read back %s entries (%.1f bytes each) in %s ms", entries,
+                bytes / (double) entries, elapsed / 1_000_000));
+    }
+}
@@ -0,0 +1,287 @@
+package Project.Server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+import Project.Common.LoggerUtil;
+import Project.Common.Scheduler;
+
+/**
+ * Plays a ReplayLog back through a fresh GameRoom and checks it ends up in the
+ * same place.
+ * <p>
+ * The room runs on a clock that never moves and a mailbox that runs actions
+ * right away, so nothing happens except the recorded inputs: joins, readies
+ * and picks go through the usual handlers, a recorded timer expiration runs
+ * the expiration handler, and turn orders are shuffled with the recorded
+ * seeds. The replayed room records its own log as it goes, which has to match
+ * the original entry for entry (times aside), including every phase and round
+ * checkpoint and the broadcast digest in it.
+ * </p>
+ * Known gap: when a send failure disconnected a player in the middle of an
+ * action, the replay runs that disconnect after the action instead.
+ */
+public class Replayer {
+    // timers never fire on their own, their expirations come from the log
+    private static final Scheduler FROZEN = new Scheduler() {
+        @Override
+        public long nanoTime() {
+            return 0;
+        }
+
+        @Override
+        public Scheduler.Cancellable schedule(Runnable task, long delay, TimeUnit unit) {
+            return () -> false;
+        }
+    };
+
+    /**
+     * Hands out the recorded shuffle seeds in order
+     */
+    private static final class RecordedSeeds extends Random {
+        private static final long serialVersionUID = 1L;
+        private final long[] seeds;
+        private int next = 0;
+
+        private RecordedSeeds(long[] seeds) {
+            this.seeds = seeds;
+        }
+
+        @Override
+        public long nextLong() {
+            // past the end means the replay shuffled more often than the original
+            return next < seeds.length ? seeds[next++] : 0;
+        }
+    }
+
+    /**
+     * What a replay found
+     */
+    public static class Result {
+        private final String room;
+        private final int entries;
+        private final int divergedAt; // index into the original's entries, -1 if none
+        private final ReplayLog.Entry expected;
+        private final ReplayLog.Entry actual;
+        private final long elapsedNanos;
+
+        private Result(String room, int entries, int divergedAt, ReplayLog.Entry expected, ReplayLog.Entry actual,
+                long elapsedNanos) {
+            this.room = room;
+            this.entries = entries;
+            this.divergedAt = divergedAt;
+            this.expected = expected;
+            this.actual = actual;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public boolean isIdentical() {
+            return divergedAt < 0;
+        }
+
+        public int getEntries() {
+            return entries;
+        }
+
+        public int getDivergedAt() {
+            return divergedAt;
+        }
+
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            if (isIdentical()) {
+                return String.format("%s: identical, %s entries replayed in %.2f ms", room, entries,
+                        elapsedNanos / 1e6);
+            }
+            return String.format("%s: DIVERGED at entry %s of %s, expected [%s] got [%s]", room, divergedAt, entries,
+                    expected, actual == null ? "nothing" : actual);
+        }
+    }
+
+    /**
+     * Replays a recording and compares the logs
+     *
+     * @param recording
+     * @return
+     * @throws IOException
+     */
+    public static Result replay(ReplayLog.Recording recording) throws IOException {
+        List<ReplayLog.Entry> entries = recording.getEntries();
+        long[] seeds = entries.stream().filter(e -> e.getType() == ReplayLog.Type.SHUFFLE)
+                .mapToLong(ReplayLog.Entry::getValue).toArray();
+        long start = System.nanoTime();
+
+        GameRoom room = new GameRoom(recording.getRoom(), FROZEN, Runnable::run);
+        room.setRandom(new RecordedSeeds(seeds));
+        ByteArrayOutputStream replayed = new ByteArrayOutputStream();
+        room.setReplayLog(new ReplayLog(recording.getRoom(), FROZEN, Channels.newChannel(replayed)));
+        Map<Long, InMemoryServerThread> clients = new HashMap<>();
+        for (ReplayLog.Entry entry : entries) {
+            long clientId = entry.getClientId();
+            switch (entry.getType()) {
+                case JOIN: {
+                    InMemoryServerThread client = new InMemoryServerThread(clientId, entry.getText(), payload -> {
+                    });
+                    client.setReady(entry.isReady());
+                    client.setTookTurn(entry.didTakeTurn());
+                    clients.put(clientId, client);
+                    room.addClient(client);
+                    break;
+                }
+                case LEAVE:
+                    room.removeClient(clientFor(clients, clientId));
+                    break;
+                case DISCONNECT:
+                    room.disconnect(clientFor(clients, clientId));
+                    break;
+                case READY:
+                    room.handleReady(clientFor(clients, clientId));
+                    break;
+                case TURN:
+                    room.handleTurnAction(clientFor(clients, clientId), null);
+                    break;
+                case PICK:
+                    room.handlePick(clientFor(clients, clientId), entry.getText());
+                    break;
+                case READY_TIMER:
+                case TURN_TIMER:
+                case ROUND_TIMER:
+                    room.execute(() -> room.onTimerExpired(entry.getType()));
+                    break;
+                case MATCH_START:
+                    room.startMatch();
+                    break;
+                case MATCH_END:
+                    room.endMatch();
+                    break;
+                default:
+                    // SHUFFLE, PHASE and ROUND are outcomes, the room records its own
+                    break;
+            }
+        }
+        room.setReplayLog(null); // flushes what the replay recorded
+        long elapsed = System.nanoTime() - start;
+
+        List<ReplayLog.Entry> actual = ReplayLog.read(ByteBuffer.wrap(replayed.toByteArray())).getEntries();
+        for (int i = 0; i < entries.size(); i++) {
+            if (i >= actual.size() || !entries.get(i).sameAs(actual.get(i))) {
+                return new Result(recording.getRoom(), entries.size(), i, entries.get(i),
+                        i < actual.size() ? actual.get(i) : null, elapsed);
+            }
+        }
+        // extra entries at the end are fine, the original's tail may not have been
+        // written before the server stopped
+        return new Result(recording.getRoom(), entries.size(), -1, null, null, elapsed);
+    }
+
+    // a client that was never seen joining (its input was rejected in the original)
+    private static InMemoryServerThread clientFor(Map<Long, InMemoryServerThread> clients, long clientId) {
+        return clients.computeIfAbsent(clientId, id -> new InMemoryServerThread(id, null, payload -> {
+        }));
+    }
+
+    private static List<Path> logFiles(Path path) throws IOException {
+        List<Path> files = new ArrayList<>();
+        if (Files.isDirectory(path)) {
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(path, "*.rpl")) {
+                stream.forEach(files::add);
+            }
+            files.sort(null);
+        } else {
+            files.add(path);
+        }
+        return files;
+    }
+
+    /**
+     * Replays and checks the given replay logs (files or directories). Without
+     * arguments it records a GameSimulation, replays every room and reports the
+     * recording overhead and replay speed.
+     * This is just for testing/demo
+     *
+     * @param args optional replay log files/directories
+     * @throws IOException
+     */
+    public static void main(String[] args) throws IOException {
+        LoggerUtil.LoggerConfig logConfig = new LoggerUtil.LoggerConfig();
+        logConfig.setLogLocation("replayer.log");
+        logConfig.setFileLogLevel(Level.WARNING);
+        logConfig.setConsoleLogLevel(Level.WARNING);
+        LoggerUtil.INSTANCE.setConfig(logConfig);
+        // the room timers print every tick
+        PrintStream console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+
+        List<Path> files = new ArrayList<>();
+        if (args.length > 0) {
+            for (String arg : args) {
+                files.addAll(logFiles(Paths.get(arg)));
+            }
+        } else {
+            long seed = 42;
+            int rooms = 100;
+            long rounds = 20_000;
+            Path directory = Paths.get("replays-demo").toAbsolutePath();
+            double[] seconds = new double[2];
+            for (int pass = 0; pass < 4; pass++) { // first two warm up
+                boolean recording = pass % 2 == 1;
+                if (recording) {
+                    for (Path old : logFiles(Files.createDirectories(directory))) {
+                        Files.delete(old);
+                    }
+                }
+                ReplayLog.setDirectory(recording ? directory.toString() : null);
+                long start = System.nanoTime();
+                GameSimulation simulation = new GameSimulation(seed, rooms, 4, 0.05);
+                simulation.run(rounds);
+                simulation.stopRecording();
+                seconds[pass % 2] = (System.nanoTime() - start) / 1e9;
+            }
+            ReplayLog.setDirectory(null);
+            files.addAll(logFiles(directory));
+            long bytes = 0;
+            for (Path file : files) {
+                bytes += Files.size(file);
+            }
+            console.println(String.format(
+                    "simulated %s rounds in %s rooms: %.2fs without recording, %.2fs recording (%s files, %s KB)",
+                    rounds, rooms, seconds[0], seconds[1], files.size(), bytes / 1024));
+        }
+
+        int identical = 0;
+        long entries = 0;
+        long nanos = 0;
+        for (Path file : files) {
+            Result result = replay(ReplayLog.read(file));
+            entries += result.getEntries();
+            nanos += result.getElapsedNanos();
+            if (result.isIdentical()) {
+                identical++;
+            }
+            if (args.length > 0 || !result.isIdentical()) {
+                console.println(file.getFileName() + " " + result);
+            }
+        }
+        console.println(String.format("%s of %s logs replayed identically, %s entries at %.0f entries/sec",
+                identical, files.size(), entries, entries / (nanos / 1e9)));
+    }
+}
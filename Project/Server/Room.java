@@ -1,26 +1,48 @@
 package Project.Server;
 
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.logging.Level;
 
 import Project.Common.Constants;
+import Project.Common.EventLog;
 import Project.Common.LoggerUtil;
-import Project.Common.RoomAction;
+import Project.Common.RoomDeltaPayload;
+import Project.Common.RoomSnapshotPayload;
 import Project.Common.TextFX;
 import Project.Common.TextFX.Color;
 import Project.Exceptions.DuplicateRoomException;
 import Project.Exceptions.RoomNotFoundException;
+import Project.Server.metrics.Metrics;
 
 public class Room implements AutoCloseable {
     private final String name;// unique name of the Room
     private volatile boolean isRunning = false;
-    protected final ConcurrentHashMap<Long, ServerThread> clientsInRoom = new ConcurrentHashMap<Long, ServerThread>();
+    // keyed by client id without boxing; only touched inside execute() (LobbyRoom keeps its own members)
+    protected final LongObjectMap<ServerThread> clientsInRoom = new LongObjectMap<>();
+    private final ReentrantLock roomLock = new ReentrantLock();
+    private final ContentionStats contention = new ContentionStats();
+    private long stateVersion = 0; // bumped by every RoomDeltaPayload, only touched inside execute() (not used by LobbyRoom)
 
     public final static String LOBBY = "lobby";
 
     private void info(String message) {
+        if (!LoggerUtil.INSTANCE.isLoggable(Level.INFO)) {
+            return;
+        }
         LoggerUtil.INSTANCE.info(TextFX.colorize(String.format("Room[%s]: %s", name, message), Color.PURPLE));
     }
 
+    private void info(Supplier<String> message) {
+        if (LoggerUtil.INSTANCE.isLoggable(Level.INFO)) {
+            info(message.get());
+        }
+    }
+
     public Room(String name) {
         this.name = name;
         isRunning = true;
@@ -35,74 +57,245 @@ public class Room implements AutoCloseable {
         return isRunning;
     }
 
-    protected synchronized void addClient(ServerThread client) {
-        if (!isRunning) { // block action if Room isn't running
-            return;
-        }
-        if (clientsInRoom.containsKey(client.getClientId())) {
-            info("Attempting to add a client that already exists in the room");
-            return;
+    /**
+     * Runs a Room action. The base Room runs it right away while holding the
+     * Room's lock (equivalent to the synchronized methods it replaced);
+     * BaseGameRoom queues it on the room's Mailbox instead.
+     * 
+     * @param action
+     */
+    protected void execute(Runnable action) {
+        contention.lock(roomLock);
+        try {
+            action.run();
+        } finally {
+            roomLock.unlock();
         }
-        clientsInRoom.put(client.getClientId(), client);
-        client.setCurrentRoom(this);
-        client.sendResetUserList();
-        syncExistingClients(client);
-        // notify clients of someone joining
-        joinStatusRelay(client, true);
+    }
 
+    /**
+     * @return how contended this Room's lock has been
+     */
+    public ContentionStats getContentionStats() {
+        return contention;
     }
 
-    protected synchronized void removeClient(ServerThread client) {
-        if (!isRunning) { // block action if Room isn't running
-            return;
-        }
-        if (!clientsInRoom.containsKey(client.getClientId())) {
-            info("Attempting to remove a client that doesn't exist in the room");
-            return;
+    /**
+     * Adds the client to the membership map
+     * 
+     * @param client
+     * @return false if the client was already a member
+     */
+    protected boolean addMember(ServerThread client) {
+        return clientsInRoom.putIfAbsent(client.getClientId(), client) == null;
+    }
+
+    /**
+     * @param clientId
+     * @return the member with that id or null
+     */
+    protected ServerThread getMember(long clientId) {
+        return clientsInRoom.get(clientId);
+    }
+
+    /**
+     * @return how many clients are in the Room
+     */
+    protected int getMemberCount() {
+        return clientsInRoom.size();
+    }
+
+    /**
+     * Removes the client from the membership map
+     * 
+     * @param clientId
+     * @return the removed client or null if it wasn't a member
+     */
+    protected ServerThread removeMember(long clientId) {
+        return clientsInRoom.remove(clientId);
+    }
+
+    /**
+     * Visits every client in the Room; clients the visitor returns true for are
+     * dropped from the Room (same contract as removeIf())
+     * 
+     * @param visitor
+     */
+    protected void forEachClient(Predicate<ServerThread> visitor) {
+        clientsInRoom.removeIf(visitor);
+    }
+
+    /**
+     * Runs a Room action and blocks until it has finished. Used when moving a
+     * client between rooms so a second move can't overtake the first.
+     * Must not be called from another GameRoom's action unless the target is the
+     * lobby, otherwise two rooms could end up waiting on each other.
+     * 
+     * @param action
+     */
+    protected void executeAndWait(Runnable action) {
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        execute(() -> {
+            try {
+                action.run();
+                done.complete(null);
+            } catch (RuntimeException e) {
+                done.completeExceptionally(e);
+            }
+        });
+        done.join();
+    }
+
+    /**
+     * Moves a client out of its current Room (if any) and into next, waiting for
+     * each step. Same rules as executeAndWait(): don't call it from a GameRoom's
+     * action.
+     * 
+     * @param client
+     * @param next
+     */
+    protected static void moveClient(ServerThread client, Room next) {
+        Room currentRoom = client.getCurrentRoom();
+        if (currentRoom != null) {
+            currentRoom.executeAndWait(() -> currentRoom.removeClient(client));
         }
-        ServerThread removedClient = clientsInRoom.get(client.getClientId());
-        if (removedClient != null) {
+        next.executeAndWait(() -> next.addClient(client));
+    }
+
+    protected void addClient(ServerThread client) {
+        execute(() -> {
+            if (!isRunning) { // block action if Room isn't running
+                return;
+            }
+            if (!addMember(client)) {
+                info("Attempting to add a client that already exists in the room");
+                return;
+            }
+            LoggerUtil.INSTANCE.event(EventLog.Type.JOIN, client.getClientId(), getName(), client.getClientName());
+            client.setCurrentRoom(this);
+            // members already here get one delta, the new client one snapshot with
+            // everything (instead of a reset plus a sync per member)
+            broadcastMembership(client, true);
+            client.sendRoomSnapshot(buildSnapshot());
             // notify clients of someone joining
+            joinStatusRelay(client, true);
+        });
+    }
+
+    protected void removeClient(ServerThread client) {
+        execute(() -> {
+            if (!isRunning) { // block action if Room isn't running
+                return;
+            }
+            // removed before the LEAVE gets its version, so a snapshot at that version
+            // or later never lists it
+            ServerThread removedClient = removeMember(client.getClientId());
+            if (removedClient == null) {
+                info("Attempting to remove a client that doesn't exist in the room");
+                return;
+            }
+            // notify clients (and the one leaving) of someone leaving
+            removedClient.sendBroadcast(broadcastMembership(removedClient, false));
             joinStatusRelay(removedClient, false);
-            clientsInRoom.remove(client.getClientId());
+            LoggerUtil.INSTANCE.event(EventLog.Type.LEAVE, client.getClientId(), getName(),
+                    client.getClientName());
             autoCleanup();
-        }
+        });
     }
 
-    private void syncExistingClients(ServerThread incomingClient) {
-        clientsInRoom.values().forEach(serverThread -> {
-            if (serverThread.getClientId() != incomingClient.getClientId()) {
-                boolean failedToSync = !incomingClient.sendClientInfo(serverThread.getClientId(),
-                        serverThread.getClientName(), RoomAction.JOIN, true);
-                if (failedToSync) {
-                    LoggerUtil.INSTANCE.warning(
-                            String.format("Removing disconnected %s from list", serverThread.getDisplayName()));
-                    disconnect(serverThread);
-                }
-            }
+    /**
+     * Builds the member table a client gets when it joins or asks for a resync
+     * 
+     * @return a snapshot at the current state version
+     */
+    protected RoomSnapshotPayload buildSnapshot() {
+        RoomSnapshotPayload snapshot = new RoomSnapshotPayload();
+        snapshot.setMessage(getName());
+        // read before the members: anything at or below it is already in the table
+        snapshot.setVersion(getStateVersion());
+        List<RoomSnapshotPayload.Member> members = new ArrayList<>(getMemberCount());
+        forEachClient(member -> {
+            members.add(new RoomSnapshotPayload.Member(member.getClientId(), member.getClientName(),
+                    member.isReady(), member.didTakeTurn()));
+            return false;
         });
+        snapshot.setMembers(members);
+        return snapshot;
+    }
+
+    /**
+     * @return the version of the last change stamped
+     */
+    protected long getStateVersion() {
+        return stateVersion;
+    }
+
+    /**
+     * Takes the version for the next change. Only called inside execute(), so
+     * versions go out in order (LobbyRoom overrides both with an atomic counter)
+     * 
+     * @return the new version
+     */
+    protected long nextStateVersion() {
+        return ++stateVersion;
+    }
+
+    /**
+     * Stamps the next state version on the change and sends it, encoded once, to
+     * every member
+     * 
+     * @param delta
+     * @param skip  member that shouldn't get it (i.e., the one about to receive a
+     *              snapshot), or null
+     * @return the encoded delta, for a client that isn't a member any more
+     */
+    protected BroadcastFrame broadcastDelta(RoomDeltaPayload delta, ServerThread skip) {
+        delta.setVersion(nextStateVersion());
+        final BroadcastFrame broadcast = ServerThread.broadcastRoomDelta(delta);
+        forEachClient(serverThread -> serverThread != skip
+                && disconnectIfFailed(serverThread, serverThread.sendBroadcast(broadcast)));
+        return broadcast;
+    }
+
+    /**
+     * The usual forEachClient() visitor ending: a member the send failed for is
+     * logged and disconnected
+     * 
+     * @param client
+     * @param sent   what the send returned
+     * @return true if the client was disconnected (drops it from the iteration)
+     */
+    protected boolean disconnectIfFailed(ServerThread client, boolean sent) {
+        if (sent) {
+            return false;
+        }
+        LoggerUtil.INSTANCE.warning(String.format("Removing disconnected %s from list", client.getDisplayName()));
+        disconnect(client);
+        return true;
+    }
+
+    private BroadcastFrame broadcastMembership(ServerThread client, boolean didJoin) {
+        RoomDeltaPayload delta = new RoomDeltaPayload(
+                didJoin ? RoomDeltaPayload.Change.JOIN : RoomDeltaPayload.Change.LEAVE, client.getClientId());
+        delta.setClientName(client.getClientName());
+        return broadcastDelta(delta, didJoin ? client : null);
     }
 
     private void joinStatusRelay(ServerThread client, boolean didJoin) {
-        clientsInRoom.values().removeIf(serverThread -> {
+        forEachClient(serverThread -> {
             String formattedMessage = String.format("Room[%s] %s %s the room",
                     getName(),
                     client.getClientId() == serverThread.getClientId() ? "You"
                             : client.getDisplayName(),
                     didJoin ? "joined" : "left");
             final long senderId = client == null ? Constants.DEFAULT_CLIENT_ID : client.getClientId();
-            // Share info of the client joining or leaving the room
-            boolean failedToSync = !serverThread.sendClientInfo(client.getClientId(),
-                    client.getClientName(), didJoin ? RoomAction.JOIN : RoomAction.LEAVE);
             // Send the server generated message to the current client
-            boolean failedToSend = !serverThread.sendMessage(senderId, formattedMessage);
-            if (failedToSend || failedToSync) {
-                LoggerUtil.INSTANCE.warning(
-                        String.format("Removing disconnected %s from list", serverThread.getDisplayName()));
-                disconnect(serverThread);
-            }
-            return failedToSend;
+            return disconnectIfFailed(serverThread, serverThread.sendMessage(senderId, formattedMessage));
         });
+        if (!didJoin) {
+            // already removed from the Room, but still told
+            client.sendMessage(client.getClientId(), String.format("Room[%s] You left the room", getName()));
+        }
     }
 
     /**
@@ -118,33 +311,36 @@ public class Room implements AutoCloseable {
      * @param sender  ServerThread (client) sending the message or null if it's a
      *                server-generated message
      */
-    protected synchronized void relay(ServerThread sender, String message) {
-        if (!isRunning) { // block action if Room isn't running
-            return;
-        }
-
-        // Note: any desired changes to the message must be done before this line
-        final String senderString = sender == null ? String.format("Room[%s]", getName())
-                : sender.getDisplayName();
-        final long senderId = sender == null ? Constants.DEFAULT_CLIENT_ID : sender.getClientId();
-        // Note: formattedMessage must be final (or effectively final) since outside
-        // scope can't be changed inside a callback function (see removeIf() below)
-        final String formattedMessage = String.format("%s: %s", senderString, message);
-
-        // loop over clients and send out the message; remove client if message failed
-        // to be sent
-        // Note: this uses a lambda expression for each item in the values() collection,
-        // it's one way we can safely remove items during iteration
-        info(String.format("sending message to %s recipients: %s", clientsInRoom.size(), formattedMessage));
-
-        clientsInRoom.values().removeIf(serverThread -> {
-            boolean failedToSend = !serverThread.sendMessage(senderId, formattedMessage);
-            if (failedToSend) {
-                LoggerUtil.INSTANCE.warning(
-                        String.format("Removing disconnected %s from list", serverThread.getDisplayName()));
-                disconnect(serverThread);
+    protected void relay(ServerThread sender, String message) {
+        execute(() -> {
+            if (!isRunning) { // block action if Room isn't running
+                return;
             }
-            return failedToSend;
+
+            // Note: any desired changes to the message must be done before this line
+            final String senderString = sender == null ? String.format("Room[%s]", getName())
+                    : sender.getDisplayName();
+            final long senderId = sender == null ? Constants.DEFAULT_CLIENT_ID : sender.getClientId();
+            // Note: formattedMessage must be final (or effectively final) since outside
+            // scope can't be changed inside a callback function (see removeIf() below)
+            final String formattedMessage = String.format("%s: %s", senderString, message);
+            LoggerUtil.INSTANCE.event(EventLog.Type.RELAY, senderId, getName(), message);
+
+            // loop over clients and send out the message; remove client if message failed
+            // to be sent
+            // Note: this uses a lambda expression for each item in the values() collection,
+            // it's one way we can safely remove items during iteration
+            info(() -> String.format("sending message to %s recipients: %s", getMemberCount(), formattedMessage));
+            final long start = System.nanoTime();
+            final int[] recipients = { 0 };
+            // encoded once, every recipient gets the same bytes
+            final BroadcastFrame broadcast = ServerThread.broadcastMessage(senderId, formattedMessage);
+
+            forEachClient(serverThread -> {
+                recipients[0]++;
+                return disconnectIfFailed(serverThread, serverThread.sendBroadcast(broadcast));
+            });
+            Metrics.INSTANCE.recordRelay(recipients[0], System.nanoTime() - start);
         });
     }
 
@@ -156,49 +352,56 @@ public class Room implements AutoCloseable {
      * 
      * @param client
      */
-    protected synchronized void disconnect(ServerThread client) {
-        if (!isRunning) { // block action if Room isn't running
-            return;
-        }
-        ServerThread disconnectingServerThread = clientsInRoom.remove(client.getClientId());
-        if (disconnectingServerThread != null) {
+    protected void disconnect(ServerThread client) {
+        execute(() -> {
+            if (!isRunning) { // block action if Room isn't running
+                return;
+            }
+            ServerThread disconnectingServerThread = removeMember(client.getClientId());
+            if (disconnectingServerThread != null) {
+                LoggerUtil.INSTANCE.event(EventLog.Type.DISCONNECT, disconnectingServerThread.getClientId(),
+                        getName(), disconnectingServerThread.getClientName());
 
-            clientsInRoom.values().removeIf(serverThread -> {
-                if (serverThread.getClientId() == disconnectingServerThread.getClientId()) {
-                    return true;
-                }
-                boolean failedToSend = !serverThread.sendClientInfo(disconnectingServerThread.getClientId(),
-                        disconnectingServerThread.getClientName(), RoomAction.LEAVE);
-                if (failedToSend) {
-                    LoggerUtil.INSTANCE.warning(
-                            String.format("Removing disconnected %s from list", serverThread.getDisplayName()));
-                    disconnect(serverThread);
-                }
-                return failedToSend;
-            });
-            relay(null, disconnectingServerThread.getDisplayName() + " disconnected");
-            disconnectingServerThread.disconnect();
-        }
-        autoCleanup();
+                broadcastMembership(disconnectingServerThread, false);
+                relay(null, disconnectingServerThread.getDisplayName() + " disconnected");
+                onMemberDisconnected(disconnectingServerThread);
+                disconnectingServerThread.disconnect();
+                // nothing in this Room reads its id or name after this
+                disconnectingServerThread.resetUser();
+            }
+            autoCleanup();
+        });
     }
 
-    protected synchronized void disconnectAll() {
-        info("Disconnect All triggered");
-        if (!isRunning) {
-            return;
-        }
-        clientsInRoom.values().removeIf(client -> {
-            disconnect(client);
-            return true;
+    /**
+     * Called from disconnect() after a member is removed and the others are told,
+     * while its id and name are still set
+     * 
+     * @param client
+     */
+    protected void onMemberDisconnected(ServerThread client) {
+    }
+
+    protected void disconnectAll() {
+        execute(() -> {
+            info("Disconnect All triggered");
+            if (!isRunning) {
+                return;
+            }
+            forEachClient(client -> {
+                disconnect(client);
+                return true;
+            });
+            info("Disconnect All finished");
         });
-        info("Disconnect All finished");
     }
 
     /**
      * Attempts to close the room to free up resources if it's empty
      */
     private void autoCleanup() {
-        if (!Room.LOBBY.equalsIgnoreCase(name) && clientsInRoom.isEmpty()) {
+        // a disconnect nested in another one's broadcast may have closed it already
+        if (isRunning && !Room.LOBBY.equalsIgnoreCase(name) && getMemberCount() == 0) {
             close();
         }
     }
@@ -206,10 +409,10 @@ public class Room implements AutoCloseable {
     @Override
     public void close() {
         // attempt to gracefully close and migrate clients
-        if (!clientsInRoom.isEmpty()) {
+        if (getMemberCount() > 0) {
             relay(null, "Room is shutting down, migrating to lobby");
-            info(String.format("migrating %s clients", clientsInRoom.size()));
-            clientsInRoom.values().removeIf(client -> {
+            info(String.format("migrating %s clients", getMemberCount()));
+            forEachClient(client -> {
                 try {
                     Server.INSTANCE.joinRoom(Room.LOBBY, client);
                 } catch (RoomNotFoundException e) {
@@ -226,8 +429,21 @@ public class Room implements AutoCloseable {
     }
 
     // start handle methods
-    protected void handleListRooms(ServerThread sender, String roomQuery) {
-        sender.sendRooms(Server.INSTANCE.listRooms(roomQuery));
+    /**
+     * A client noticed a gap in the deltas and wants the whole table again
+     * 
+     * @param sender
+     */
+    protected void handleSnapshotRequest(ServerThread sender) {
+        execute(() -> {
+            if (getMember(sender.getClientId()) != null) {
+                sender.sendRoomSnapshot(buildSnapshot());
+            }
+        });
+    }
+
+    protected void handleListRooms(ServerThread sender, String roomQuery, int offset) {
+        sender.sendRooms(Server.INSTANCE.listRooms(roomQuery, offset));
     }
 
     public void handleCreateRoom(ServerThread sender, String roomName) {
@@ -250,7 +466,7 @@ public class Room implements AutoCloseable {
         }
     }
 
-    protected synchronized void handleDisconnect(BaseServerThread sender) {
+    protected void handleDisconnect(BaseServerThread sender) {
         handleDisconnect((ServerThread) sender);
     }
 
@@ -259,19 +475,29 @@ public class Room implements AutoCloseable {
      * 
      * @param serverThread
      */
-    protected synchronized void handleDisconnect(ServerThread sender) {
+    protected void handleDisconnect(ServerThread sender) {
         disconnect(sender);
     }
 
-    protected synchronized void handleReverseText(ServerThread sender, String text) {
+    protected void handleReverseText(ServerThread sender, String text) {
         StringBuilder sb = new StringBuilder(text);
         sb.reverse();
         String rev = sb.toString();
         relay(sender, rev);
     }
 
-    protected synchronized void handleMessage(ServerThread sender, String text) {
+    protected void handleMessage(ServerThread sender, String text) {
         relay(sender, text);
     }
+
+    /**
+     * Tournaments are run from the lobby (see LobbyRoom)
+     * 
+     * @param sender
+     * @param action
+     */
+    protected void handleTournament(ServerThread sender, String action) {
+        sender.sendMessage(Constants.DEFAULT_CLIENT_ID, "Tournaments are run from the lobby, /leaveroom first");
+    }
     // end handle methods
 }
\ No newline at end of file
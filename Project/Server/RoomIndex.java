@@ -0,0 +1,258 @@
+package Project.Server;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.NavigableSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Sorted, substring-searchable index of room names.
+ * <p>
+ * Names are lowercased once when added. A sorted map holds every name and each
+ * n-gram (length 1 to 3) points at the sorted set of names containing it. A
+ * query of up to 3 characters is a single posting lookup; longer queries walk
+ * the smallest posting of their trigrams and confirm each candidate with
+ * contains(). Results come out in alphabetical order, so the first page is the
+ * true top-k.
+ * </p>
+ */
+public class RoomIndex {
+    private static final int GRAM_LENGTH = 3;
+
+    // lowercase name -> name as created
+    private final ConcurrentSkipListMap<String, String> names = new ConcurrentSkipListMap<>();
+    private final ConcurrentHashMap<String, Posting> postings = new ConcurrentHashMap<>();
+    private final AtomicInteger count = new AtomicInteger(); // skip list size() is O(n)
+
+    private static class Posting {
+        private final ConcurrentSkipListSet<String> names = new ConcurrentSkipListSet<>();
+        private final AtomicInteger size = new AtomicInteger();
+    }
+
+    /**
+     * A slice of the matching room names
+     */
+    public static class Page {
+        private final List<String> rooms;
+        private final int offset;
+        private final int total;
+
+        public Page(List<String> rooms, int offset, int total) {
+            this.rooms = rooms;
+            this.offset = offset;
+            this.total = total;
+        }
+
+        public List<String> getRooms() {
+            return rooms;
+        }
+
+        public int getOffset() {
+            return offset;
+        }
+
+        public int getTotal() {
+            return total;
+        }
+    }
+
+    /**
+     * @param name
+     * @return false if the name (ignoring case) was already indexed
+     */
+    public boolean add(String name) {
+        String key = name.toLowerCase(Locale.ROOT);
+        if (names.putIfAbsent(key, name) != null) {
+            return false;
+        }
+        count.incrementAndGet();
+        for (String gram : grams(key)) {
+            // compute() so this can't land in a posting remove() is dropping
+            postings.compute(gram, (g, posting) -> {
+                if (posting == null) {
+                    posting = new Posting();
+                }
+                if (posting.names.add(key)) {
+                    posting.size.incrementAndGet();
+                }
+                return posting;
+            });
+        }
+        return true;
+    }
+
+    /**
+     * @param name
+     * @return false if the name wasn't indexed
+     */
+    public boolean remove(String name) {
+        String key = name.toLowerCase(Locale.ROOT);
+        if (names.remove(key) == null) {
+            return false;
+        }
+        count.decrementAndGet();
+        for (String gram : grams(key)) {
+            // drop the posting once its last name is gone, otherwise every n-gram
+            // ever used stays in the map
+            postings.computeIfPresent(gram, (g, posting) -> {
+                if (posting.names.remove(key)) {
+                    posting.size.decrementAndGet();
+                }
+                return posting.size.get() == 0 ? null : posting;
+            });
+        }
+        return true;
+    }
+
+    public int size() {
+        return count.get();
+    }
+
+    /**
+     * Finds rooms whose name contains the query (ignoring case), alphabetically
+     *
+     * @param query  empty matches every room
+     * @param offset number of matches to skip
+     * @param limit  maximum number of names to return
+     * @return the requested page and the total number of matches
+     */
+    public Page search(String query, int offset, int limit) {
+        String q = query == null ? "" : query.toLowerCase(Locale.ROOT);
+        offset = Math.max(0, offset);
+        List<String> rooms = new ArrayList<>(Math.min(Math.max(limit, 0), 64));
+        if (q.isEmpty()) {
+            int total = count.get();
+            int index = 0;
+            for (String name : names.values()) {
+                if (index++ < offset) {
+                    continue;
+                }
+                if (rooms.size() >= limit) {
+                    break;
+                }
+                rooms.add(name);
+            }
+            return new Page(rooms, offset, total);
+        }
+        if (q.length() <= GRAM_LENGTH) {
+            // the posting is exactly the set of matches, only walk up to the page
+            Posting posting = postings.get(q);
+            if (posting == null) {
+                return new Page(rooms, offset, 0);
+            }
+            int index = 0;
+            for (String key : posting.names) {
+                if (rooms.size() >= limit) {
+                    break;
+                }
+                String name = names.get(key);
+                if (name != null && index++ >= offset) {
+                    rooms.add(name);
+                }
+            }
+            return new Page(rooms, offset, posting.size.get());
+        }
+        int total = 0;
+        for (String key : candidatesFor(q)) {
+            if (!key.contains(q)) {
+                continue;
+            }
+            String name = names.get(key);
+            if (name == null) {
+                continue; // removed while we were iterating
+            }
+            if (total >= offset && rooms.size() < limit) {
+                rooms.add(name);
+            }
+            total++;
+        }
+        return new Page(rooms, offset, total);
+    }
+
+    // smallest posting among the query's trigrams, a superset of the matches
+    private NavigableSet<String> candidatesFor(String q) {
+        Posting smallest = null;
+        for (int i = 0; i + GRAM_LENGTH <= q.length(); i++) {
+            Posting posting = postings.get(q.substring(i, i + GRAM_LENGTH));
+            if (posting == null) {
+                return Collections.emptyNavigableSet(); // some trigram appears in no name
+            }
+            if (smallest == null || posting.size.get() < smallest.size.get()) {
+                smallest = posting;
+            }
+        }
+        return smallest.names;
+    }
+
+    // every distinct substring of length 1..GRAM_LENGTH
+    private static Set<String> grams(String key) {
+        Set<String> grams = new HashSet<>(key.length() * GRAM_LENGTH * 2);
+        for (int length = 1; length <= GRAM_LENGTH; length++) {
+            for (int i = 0; i + length <= key.length(); i++) {
+                grams.add(key.substring(i, i + length));
+            }
+        }
+        return grams;
+    }
+
+    /**
+     * Compares the index against a full scan over 100k rooms. This is just for
+     * testing/demo
+     *
+     * @param args optional room count
+     */
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        String[] words = { "alpha", "bravo", "charlie", "delta", "echo", "foxtrot", "golf", "hotel", "india",
+                "juliet", "kilo", "lima", "mike", "rps", "arena", "lobby", "duel", "ranked", "casual", "night" };
+        Random random = new Random(42);
+        RoomIndex index = new RoomIndex();
+        List<String> all = new ArrayList<>(count);
+        long start = System.nanoTime();
+        while (index.size() < count) {
+            String name = words[random.nextInt(words.length)] + "-" + words[random.nextInt(words.length)] + "-"
+                    + random.nextInt(100_000);
+            if (index.add(name)) {
+                all.add(name);
+            }
+        }
+        System.out.println(String.format("indexed %s rooms in %s ms", count, (System.nanoTime() - start) / 1_000_000));
+
+        String[] queries = { "", "a", "rps", "echo-duel", "ranked-night-4", "zzz" };
+        int iterations = 200;
+        for (String query : queries) {
+            Page page = null;
+            List<String> scanned = null;
+            for (int warmup = 0; warmup < 2; warmup++) {
+                start = System.nanoTime();
+                for (int i = 0; i < iterations; i++) {
+                    page = index.search(query, 0, 10);
+                }
+                long indexNs = (System.nanoTime() - start) / iterations;
+                start = System.nanoTime();
+                for (int i = 0; i < iterations; i++) {
+                    // the previous listRooms() approach, with the sort moved before the limit
+                    scanned = all.stream()
+                            .filter(name -> name.toLowerCase(Locale.ROOT).contains(query))
+                            .sorted(String.CASE_INSENSITIVE_ORDER)
+                            .limit(10)
+                            .collect(Collectors.toList());
+                }
+                long scanNs = (System.nanoTime() - start) / iterations;
+                if (warmup > 0) {
+                    System.out.println(String.format("query '%s': %s matches, index %.1f us, scan %.1f us, same=%s",
+                            query, page.getTotal(), indexNs / 1e3, scanNs / 1e3, page.getRooms().equals(scanned)));
+                }
+            }
+        }
+    }
+}
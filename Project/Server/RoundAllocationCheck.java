@@ -0,0 +1,107 @@
+package Project.Server;
+
+import java.lang.management.ManagementFactory;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+
+import Project.Common.LoggerUtil;
+
+/**
+ * Measures how much garbage the per-round game state makes across many rooms.
+ * <p>
+ * Sets up the given number of GameRooms with four players each (client ids
+ * above the Long cache, like a busy server) and plays rounds on every room's
+ * mailbox, counting bytes allocated by the mailbox thread with the per-thread
+ * allocated byte counter. Two parts are reported: the round bookkeeping
+ * (membership check and recording each player's pick, then clearing the picks
+ * for the next round) and resolveRpsRound(), which also relays the result.
+ * </p>
+ * This is just for testing/demo
+ */
+public class RoundAllocationCheck {
+    private static final String[] CHOICES = { "r", "p", "s" };
+
+    private static final com.sun.management.ThreadMXBean THREADS = (com.sun.management.ThreadMXBean) ManagementFactory
+            .getThreadMXBean();
+
+    // read several times per round, unlike getThreadAllocatedBytes(id) this
+    // doesn't allocate itself
+    private static long allocatedBytes() {
+        return THREADS.getCurrentThreadAllocatedBytes();
+    }
+
+    /**
+     * @param args optional room count and rounds per room
+     * @throws Exception
+     */
+    public static void main(String[] args) throws Exception {
+        int roomCount = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        int players = 4;
+        LoggerUtil.LoggerConfig config = new LoggerUtil.LoggerConfig();
+        config.setLogLocation("round-allocation.log");
+        config.setFileLogLevel(Level.WARNING);
+        config.setConsoleLogLevel(Level.WARNING);
+        LoggerUtil.INSTANCE.setConfig(config);
+        // recipients are never drained here
+        OutboundQueue.configure(16, OutboundQueue.OverflowPolicy.DROP_OLDEST);
+
+        List<GameRoom> rooms = new ArrayList<>();
+        List<ServerThread[]> seated = new ArrayList<>();
+        long nextId = 1_000_000;
+        for (int r = 0; r < roomCount; r++) {
+            GameRoom room = new GameRoom("alloc-" + r);
+            ServerThread[] clients = new ServerThread[players];
+            for (int i = 0; i < players; i++) {
+                clients[i] = new ServerThread(new Socket(), st -> {
+                });
+                clients[i].setClientId(nextId++);
+                clients[i].setClientName("alloc" + nextId);
+                clients[i].isRunning = true;
+                clients[i].setReady(true);
+                ServerThread client = clients[i];
+                room.executeAndWait(() -> room.addClient(client));
+            }
+            rooms.add(room);
+            seated.add(clients);
+        }
+
+        for (int pass = 0; pass < 3; pass++) { // earlier passes warm up the JIT
+            long[] bookkeeping = { 0 };
+            long[] resolving = { 0 };
+            for (int r = 0; r < roomCount; r++) {
+                GameRoom room = rooms.get(r);
+                ServerThread[] clients = seated.get(r);
+                int offset = r;
+                room.executeAndWait(() -> {
+                    for (int round = 0; round < rounds; round++) {
+                        long start = allocatedBytes();
+                        room.clearPicks();
+                        for (int i = 0; i < clients.length; i++) {
+                            try {
+                                room.checkPlayerInRoom(clients[i]);
+                            } catch (Exception e) {
+                                throw new IllegalStateException(e);
+                            }
+                            room.recordPick(clients[i], CHOICES[(i + round + offset) % CHOICES.length]);
+                        }
+                        long picked = allocatedBytes();
+                        room.resolveRpsRound();
+                        long resolved = allocatedBytes();
+                        bookkeeping[0] += picked - start;
+                        resolving[0] += resolved - picked;
+                    }
+                });
+            }
+            if (pass == 2) {
+                long total = (long) roomCount * rounds;
+                System.out.println(String.format(
+                        "%s rooms x %s players, %s rounds: bookkeeping %.1f bytes/round, resolve+relay %.1f bytes/round",
+                        roomCount, players, total, bookkeeping[0] / (double) total, resolving[0] / (double) total));
+            }
+        }
+        System.exit(0); // room mailboxes run on non-daemon pools
+    }
+}
@@ -0,0 +1,227 @@
+package Project.Server;
+
+import java.util.Arrays;
+
+/**
+ * Running counts for a rock-paper-scissors round, kept per seat so a ready
+ * change, a pick or a leave is O(1) to apply, and whether the round is over
+ * and which symbol won are answered from the counts without looking at the
+ * players again.
+ * <p>
+ * Only ready seats count. Each symbol has a tally, folded into a bitmask of
+ * the symbols in play: exactly two in play means the one that beats the other
+ * wins, one or all three is a tie.
+ * </p>
+ * Not thread-safe, GameRoom only uses it on its mailbox.
+ */
+public class RpsTally {
+    public static final char NONE = ' ';
+
+    private static final int ROCK = 1;
+    private static final int PAPER = 2;
+    private static final int SCISSORS = 4;
+
+    private boolean[] ready;
+    private boolean[] tookTurn;
+    private byte[] picks; // symbol bit per seat, 0 if none
+    private final int[] symbolCounts = new int[SCISSORS + 1]; // indexed by symbol bit
+    private int symbolMask = 0;
+    private int readyCount = 0;
+    private int tookTurnCount = 0; // ready seats that took their turn
+
+    /**
+     * @param seats initial seat capacity
+     */
+    public RpsTally(int seats) {
+        ready = new boolean[seats];
+        tookTurn = new boolean[seats];
+        picks = new byte[seats];
+    }
+
+    /**
+     * Grows the tables so seats [0, seats) are usable
+     *
+     * @param seats
+     */
+    public void ensureSeats(int seats) {
+        if (seats > ready.length) {
+            ready = Arrays.copyOf(ready, seats);
+            tookTurn = Arrays.copyOf(tookTurn, seats);
+            picks = Arrays.copyOf(picks, seats);
+        }
+    }
+
+    private static int symbolBit(char choice) {
+        switch (Character.toLowerCase(choice)) {
+            case 'r':
+                return ROCK;
+            case 'p':
+                return PAPER;
+            case 's':
+                return SCISSORS;
+            default:
+                return 0;
+        }
+    }
+
+    private static char symbolOf(int bit) {
+        switch (bit) {
+            case ROCK:
+                return 'r';
+            case PAPER:
+                return 'p';
+            case SCISSORS:
+                return 's';
+            default:
+                return NONE;
+        }
+    }
+
+    // adds (delta 1) or takes back (delta -1) what a ready seat contributes
+    private void count(int seat, int delta) {
+        readyCount += delta;
+        if (tookTurn[seat]) {
+            tookTurnCount += delta;
+        }
+        int bit = picks[seat];
+        if (bit != 0) {
+            symbolCounts[bit] += delta;
+            if (symbolCounts[bit] == 0) {
+                symbolMask &= ~bit;
+            } else {
+                symbolMask |= bit;
+            }
+        }
+    }
+
+    public void setReady(int seat, boolean isReady) {
+        if (ready[seat] != isReady) {
+            if (ready[seat]) {
+                count(seat, -1);
+            }
+            ready[seat] = isReady;
+            if (isReady) {
+                count(seat, 1);
+            }
+        }
+    }
+
+    /**
+     * Marks the seat's turn as taken; a later call replaces the earlier choice
+     *
+     * @param seat
+     * @param choice 'r', 'p' or 's' (any case), anything else takes the turn
+     *               without playing a symbol
+     */
+    public void recordTurn(int seat, char choice) {
+        boolean wasReady = ready[seat];
+        if (wasReady) {
+            count(seat, -1);
+        }
+        tookTurn[seat] = true;
+        picks[seat] = (byte) symbolBit(choice);
+        if (wasReady) {
+            count(seat, 1);
+        }
+    }
+
+    /**
+     * Forgets everything about the seat, i.e., its player left
+     *
+     * @param seat
+     */
+    public void clearSeat(int seat) {
+        setReady(seat, false);
+        tookTurn[seat] = false;
+        picks[seat] = 0;
+    }
+
+    /**
+     * Clears turns and picks, ready flags stay
+     */
+    public void newRound() {
+        Arrays.fill(tookTurn, false);
+        Arrays.fill(picks, (byte) 0);
+        Arrays.fill(symbolCounts, 0);
+        symbolMask = 0;
+        tookTurnCount = 0;
+    }
+
+    public int getReadyCount() {
+        return readyCount;
+    }
+
+    public int getTookTurnCount() {
+        return tookTurnCount;
+    }
+
+    /**
+     * @return true once every ready seat took its turn
+     */
+    public boolean isRoundComplete() {
+        return tookTurnCount == readyCount;
+    }
+
+    /**
+     * @param seat
+     * @return the seat's symbol ('r', 'p' or 's') or NONE
+     */
+    public char getPick(int seat) {
+        return symbolOf(picks[seat]);
+    }
+
+    /**
+     * @return the winning symbol ('r', 'p' or 's'), or NONE for a tie
+     */
+    public char getWinningSymbol() {
+        switch (symbolMask) {
+            case ROCK | SCISSORS:
+                return 'r';
+            case SCISSORS | PAPER:
+                return 's';
+            case PAPER | ROCK:
+                return 'p';
+            default:
+                return NONE;
+        }
+    }
+
+    /**
+     * Plays one round at several table sizes, checking for completion after
+     * every pick like GameRoom does, and prints the cost per pick (flat if
+     * bookkeeping doesn't depend on the number of players).
+     * This is just for testing/demo
+     *
+     * @param args optional largest table size
+     */
+    public static void main(String[] args) {
+        int largest = args.length > 0 ? Integer.parseInt(args[0]) : 65536;
+        char[] choices = { 'r', 'p', 's' };
+        for (int pass = 0; pass < 2; pass++) { // first pass warms up the JIT
+            for (int players = 4; players <= largest; players *= 4) {
+                RpsTally tally = new RpsTally(players);
+                for (int seat = 0; seat < players; seat++) {
+                    tally.setReady(seat, true);
+                }
+                int rounds = Math.max(1, 1_000_000 / players);
+                int completed = 0;
+                long start = System.nanoTime();
+                for (int round = 0; round < rounds; round++) {
+                    tally.newRound();
+                    for (int seat = 0; seat < players; seat++) {
+                        tally.recordTurn(seat, choices[(seat + round) % choices.length]);
+                        if (tally.isRoundComplete()) {
+                            completed++;
+                        }
+                    }
+                }
+                long elapsed = System.nanoTime() - start;
+                if (pass == 1) {
+                    char winner = tally.getWinningSymbol();
+                    System.out.println(String.format("%6s players: %.1f ns/pick (%s rounds, last %s)", players,
+                            elapsed / (double) rounds / players, completed, winner == NONE ? "tied" : "won by " + winner));
+                }
+            }
+        }
+    }
+}
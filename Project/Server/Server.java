@@ -1,50 +1,120 @@
 package Project.Server;
 
 import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.stream.Collectors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
 
+import Project.Common.EventLog;
 import Project.Common.LoggerUtil;
+import Project.Common.RoomResultPayload;
+import Project.Common.TimedEvent;
+import Project.Common.TimerWheel;
 
 import Project.Common.TextFX.Color;
 import Project.Common.TextFX;
 import Project.Exceptions.DuplicateRoomException;
 import Project.Exceptions.RoomNotFoundException;
+import Project.Server.metrics.Counter;
+import Project.Server.metrics.Metrics;
+import Project.Server.metrics.StatsHttpServer;
 
 public enum Server {
     INSTANCE; // Singleton instance
 
+    /**
+     * How client connections are serviced
+     */
+    public enum Transport {
+        THREAD, // per client, a platform thread for the blocking reads and one for the writes (default)
+        VIRTUAL, // same two threads but virtual (Java 21+, older JVMs fall back to THREAD)
+        NIO, // single selector thread plus a small worker pool
+    }
+
     {
         // statically initialize the server-side LoggerUtil
         LoggerUtil.LoggerConfig config = new LoggerUtil.LoggerConfig();
         config.setFileSizeLimit(2048 * 1024); // 2MB
         config.setFileCount(1);
         config.setLogLocation("server.log");
+        config.setAsync(true); // keep file/console writes off the client and room threads
+        config.setEventLogLocation("server-events"); // query with Project.Common.EventLogQuery
         // Set the logger configuration
         LoggerUtil.INSTANCE.setConfig(config);
+        ReplayLog.setDirectory("replays"); // one file per GameRoom that plays, check with Project.Server.Replayer
     }
     private int port = 3000;
     // connected clients
     // Use ConcurrentHashMap for thread-safe client management
     // The key is the unique Room name and the Room is the instance
     private final ConcurrentHashMap<String, Room> rooms = new ConcurrentHashMap<>();
+    private final RoomIndex roomIndex = new RoomIndex(); // sorted/searchable room names
     private boolean isRunning = true;
-    private long nextClientId = 0;
+    private final AtomicLong nextClientId = new AtomicLong(0);
+    private NioServer nioServer;
+    private StatsHttpServer statsServer;
+    private final PlayerStats playerStats; // null if the stats file couldn't be opened
+    private final Counter roomsCreated = Metrics.INSTANCE.counter("rooms.created");
+    private final Counter roomsRemoved = Metrics.INSTANCE.counter("rooms.removed");
 
     private void info(String message) {
+        if (!LoggerUtil.INSTANCE.isLoggable(Level.INFO)) {
+            return;
+        }
         LoggerUtil.INSTANCE.info(TextFX.colorize(String.format("Server: %s", message), Color.YELLOW));
     }
 
     private Server() {
+        playerStats = openPlayerStats();
+        if (playerStats != null) {
+            Metrics.INSTANCE.gauge("stats.players", playerStats::getPlayerCount);
+            Metrics.INSTANCE.gauge("stats.pending", playerStats::getPendingCount);
+            Metrics.INSTANCE.gauge("stats.batches.written", playerStats::getBatchesWritten);
+            Metrics.INSTANCE.gauge("stats.records.written", playerStats::getRecordsWritten);
+        }
+        if (LoggerUtil.INSTANCE.isEventLogEnabled()) {
+            Metrics.INSTANCE.gauge("events.dropped", LoggerUtil.INSTANCE::getEventDroppedCount);
+        }
+        Metrics.INSTANCE.gauge("rooms.active", rooms::size);
+        Metrics.INSTANCE.gauge("timers.timedevent.active", TimedEvent::getActiveCount);
+        Metrics.INSTANCE.gauge("timers.timedevent.started", TimedEvent::getStartedCount);
+        Metrics.INSTANCE.gauge("timers.timedevent.expired", TimedEvent::getExpiredCount);
+        Metrics.INSTANCE.gauge("timers.timedevent.cancelled", TimedEvent::getCancelledCount);
+        Metrics.INSTANCE.gauge("timers.wheel.pending", TimerWheel.INSTANCE::getPendingCount);
         Runtime.getRuntime().addShutdownHook(new Thread(() -> {
             info("JVM is shutting down. Perform cleanup tasks.");
             shutdown();
         }));
     }
 
+    /**
+     * Loads the player stats; the server still runs without them (no scores kept)
+     * 
+     * @return the store, or null if it couldn't be opened
+     */
+    private PlayerStats openPlayerStats() {
+        try {
+            PlayerStats stats = new PlayerStats(new PlayerStats.Config());
+            info(String.format("Loaded stats for %s players (%s records) in %.1f ms", stats.getPlayerCount(),
+                    stats.getRecoveredRecords(), stats.getRecoveryNanos() / 1e6));
+            return stats;
+        } catch (IOException e) {
+            LoggerUtil.INSTANCE.severe(TextFX.colorize("Couldn't open player stats, scores won't be kept", Color.RED),
+                    e);
+            return null;
+        }
+    }
+
     /**
      * Gracefully disconnect clients
      */
@@ -53,22 +123,102 @@ public enum Server {
             // chose removeIf over forEach to avoid potential
             // ConcurrentModificationException
             // since empty rooms tell the server to remove themselves
+            Room lobby = rooms.get(Room.LOBBY);
+            if (lobby != null) {
+                info(String.format("Lobby lock contention: %s", lobby.getContentionStats()));
+            }
             rooms.values().removeIf(room -> {
                 room.disconnectAll();
                 return true;
             });
+            if (nioServer != null) {
+                nioServer.stop();
+            }
+            if (statsServer != null) {
+                statsServer.stop();
+            }
+            if (playerStats != null) {
+                playerStats.close(); // writes the results still in memory
+            }
         } catch (Exception e) {
             e.printStackTrace();
         }
     }
 
-    private void start(int port) {
+    private void start(int port, Transport transport, int statsPort) {
         this.port = port;
         // server listening
-        info("Listening on port " + this.port);
+        info(String.format("Listening on port %s (%s transport)", this.port, transport));
+        info(String.format("Outbound queues hold %s frames, %s when full", OutboundQueue.getDefaultCapacity(),
+                OutboundQueue.getDefaultPolicy()));
+        if (statsPort > 0) {
+            try {
+                // loopback only, the stats are for whoever runs the server
+                statsServer = new StatsHttpServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), statsPort));
+                info(String.format("Metrics at http://localhost:%s/stats", statsPort));
+            } catch (IOException e) {
+                LoggerUtil.INSTANCE.warning(
+                        TextFX.colorize("Couldn't start the stats endpoint on port " + statsPort, Color.RED), e);
+            }
+        }
+        try {
+            createRoom(Room.LOBBY);// create the first room (lobby)
+            if (transport == Transport.NIO) {
+                Metrics.INSTANCE.gauge("connections.threads.each", () -> 0); // selector and workers are shared
+                nioServer = new NioServer(port, Runtime.getRuntime().availableProcessors(),
+                        this::onServerThreadInitialized);
+                nioServer.run(); // blocks until stopped
+            } else {
+                acceptLoop(port, connectionThreadFactory(transport));
+            }
+        } catch (DuplicateRoomException e) {
+            LoggerUtil.INSTANCE.severe(TextFX.colorize("Lobby already exists (this shouldn't happen)", Color.RED));
+        } catch (IOException e) {
+            LoggerUtil.INSTANCE.severe(TextFX.colorize("Error accepting connection", Color.RED), e);
+        } finally {
+            info("Closing server socket");
+        }
+    }
+
+    /**
+     * Picks the ThreadFactory for each client's two threads, the blocking read
+     * loop and the outbound queue's writer.
+     * Virtual threads are looked up reflectively so the server still builds and
+     * runs on JDKs older than 21 (falling back to platform threads).
+     * Which one was picked shows in the stats as connections.threads.virtual.
+     * 
+     * @param transport
+     * @return
+     */
+    private ThreadFactory connectionThreadFactory(Transport transport) {
+        Metrics.INSTANCE.gauge("connections.threads.each", () -> 2);
+        if (transport == Transport.VIRTUAL) {
+            try {
+                Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+                Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+                builder = builderType.getMethod("name", String.class, long.class).invoke(builder, "client-", 0L);
+                ThreadFactory factory = (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+                Metrics.INSTANCE.gauge("connections.threads.virtual", () -> 1);
+                return factory;
+            } catch (ReflectiveOperationException e) {
+                LoggerUtil.INSTANCE.warning(TextFX.colorize(
+                        "Virtual threads aren't available on this JVM, using platform threads", Color.RED));
+            }
+        }
+        Metrics.INSTANCE.gauge("connections.threads.virtual", () -> 0);
+        return Thread::new;
+    }
+
+    /**
+     * Thread-per-client connection loop
+     * 
+     * @param port
+     * @param threadFactory creates the thread each ServerThread runs on
+     * @throws IOException
+     */
+    private void acceptLoop(int port, ThreadFactory threadFactory) throws IOException {
         // Simplified client connection loop
         try (ServerSocket serverSocket = new ServerSocket(port)) {
-            createRoom(Room.LOBBY);// create the first room (lobby)
             while (isRunning) {
                 info("Waiting for next client");
                 Socket incomingClient = serverSocket.accept(); // blocking action, waits for a client connection
@@ -78,15 +228,9 @@ public enum Server {
                 ServerThread serverThread = new ServerThread(incomingClient, this::onServerThreadInitialized);
                 // start the thread (typically an external entity manages the lifecycle and we
                 // don't have the thread start itself)
-                serverThread.start();
+                serverThread.start(threadFactory);
                 // Note: We don't yet add the ServerThread reference to our connectedClients map
             }
-        } catch (DuplicateRoomException e) {
-            LoggerUtil.INSTANCE.severe(TextFX.colorize("Lobby already exists (this shouldn't happen)", Color.RED));
-        } catch (IOException e) {
-            LoggerUtil.INSTANCE.severe(TextFX.colorize("Error accepting connection", Color.RED), e);
-        } finally {
-            info("Closing server socket");
         }
     }
 
@@ -98,9 +242,11 @@ public enum Server {
      */
     private void onServerThreadInitialized(ServerThread serverThread) {
         // Generate Server controlled clientId
-        nextClientId = Math.max(++nextClientId, 1);
-        serverThread.setClientId(nextClientId);
+        // may be called concurrently from several client/worker threads
+        serverThread.setClientId(nextClientId.incrementAndGet());
         serverThread.sendClientId();// syncs the data to the Client
+        LoggerUtil.INSTANCE.event(EventLog.Type.CONNECT, serverThread.getClientId(), null,
+                serverThread.getClientName());
         // add initialized client to the lobby
         info(String.format("*%s initialized*", serverThread.getDisplayName()));
         try {
@@ -120,12 +266,24 @@ public enum Server {
      * @throws DuplicateRoomException
      */
     protected void createRoom(String name) throws DuplicateRoomException {
-        final String nameCheck = name.toLowerCase();
-        if (rooms.containsKey(nameCheck)) {
+        final String nameCheck = name.toLowerCase(Locale.ROOT);
+        final boolean[] created = { false };
+        // atomic check-and-create so two clients racing on the same name can't both
+        // win
+        rooms.computeIfAbsent(nameCheck, key -> {
+            created[0] = true;
+            if (Room.LOBBY.equals(key)) {
+                return new LobbyRoom(LobbyRoom.DEFAULT_SHARDS);
+            }
+            GameRoom room = new GameRoom(name);
+            room.setPlayerStats(playerStats);
+            return room;
+        });
+        if (!created[0]) {
             throw new DuplicateRoomException(String.format("Room %s already exists", name));
         }
-        Room room = Room.LOBBY.equalsIgnoreCase(nameCheck) ? new Room(name) : new GameRoom(name);
-        rooms.put(nameCheck, room);
+        roomIndex.add(name);
+        roomsCreated.increment();
         info(String.format("Created new Room %s", name));
     }
 
@@ -138,37 +296,35 @@ public enum Server {
      * 
      */
     protected void joinRoom(String name, ServerThread client) throws RoomNotFoundException {
-        final String nameCheck = name.toLowerCase();
-        if (!rooms.containsKey(nameCheck)) {
+        final Room next = rooms.get(name.toLowerCase(Locale.ROOT));
+        if (next == null) {
             throw new RoomNotFoundException(String.format("Room %s wasn't found", name));
         }
         Room currentRoom = client.getCurrentRoom();
         if (currentRoom != null) {
             info("Removing client from previous Room " + currentRoom.getName());
-            currentRoom.removeClient(client);
         }
-        Room next = rooms.get(nameCheck);
-        next.addClient(client);
+        Room.moveClient(client, next);
     }
 
     /**
-     * Lists all rooms that partially match the given String
+     * Lists the rooms that partially match the given String, alphabetically and
+     * one page at a time
      * 
      * @param roomQuery
+     * @param offset    number of matches to skip
      * @return
      */
-    protected List<String> listRooms(String roomQuery) {
-        final String nameCheck = roomQuery.toLowerCase();
-        return rooms.values().stream()
-                .filter(room -> room.getName().toLowerCase().contains(nameCheck))// find partially matched rooms
-                .map(room -> room.getName())// map room to String (name)
-                .limit(10) // limit to 10 results
-                .sorted() // sort the results alphabetically
-                .collect(Collectors.toList()); // return a mutable list
+    protected RoomIndex.Page listRooms(String roomQuery, int offset) {
+        return roomIndex.search(roomQuery, offset, RoomResultPayload.PAGE_SIZE);
     }
 
     protected void removeRoom(Room room) {
-        rooms.remove(room.getName().toLowerCase());
+        // only remove this instance, a new room may already have taken the name
+        if (rooms.remove(room.getName().toLowerCase(Locale.ROOT), room)) {
+            roomIndex.remove(room.getName());
+            roomsRemoved.increment();
+        }
         info(String.format("Removed room %s", room.getName()));
     }
 
@@ -216,14 +372,48 @@ public enum Server {
     public static void main(String[] args) {
         LoggerUtil.INSTANCE.info("Server Starting");
         Server server = Server.INSTANCE;
+        // [port] [transport] [stats port] then any "--option value" pairs
+        List<String> positional = new ArrayList<>();
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].startsWith("--") && i + 1 < args.length) {
+                options.put(args[i].substring(2), args[++i]);
+            } else {
+                positional.add(args[i]);
+            }
+        }
         int port = 3000;
+        Transport transport = Transport.THREAD;
         try {
-            port = Integer.parseInt(args[0]);
+            port = Integer.parseInt(positional.get(0));
         } catch (Exception e) {
             // can ignore, will either be index out of bounds or type mismatch
             // will default to the defined value prior to the try/catch
         }
-        server.start(port);
+        try {
+            transport = Transport.valueOf(positional.get(1).toUpperCase(Locale.ROOT));
+        } catch (Exception e) {
+            // same as above, defaults to thread-per-client
+        }
+        int statsPort = port + 1; // plain-text metrics side port, 0 turns it off
+        try {
+            statsPort = Integer.parseInt(positional.get(2));
+        } catch (Exception e) {
+            // same as above, defaults to the port after the game port
+        }
+        try {
+            // frames waiting per client, and whether a full queue drops its oldest
+            // frame or disconnects the client
+            OutboundQueue.configure(
+                    Integer.parseInt(options.getOrDefault("outbound-capacity",
+                            String.valueOf(OutboundQueue.getDefaultCapacity()))),
+                    OutboundQueue.OverflowPolicy.valueOf(options.getOrDefault("outbound-policy",
+                            OutboundQueue.getDefaultPolicy().name()).toUpperCase(Locale.ROOT)));
+        } catch (IllegalArgumentException e) {
+            LoggerUtil.INSTANCE.warning(TextFX.colorize("Invalid outbound queue option, using "
+                    + OutboundQueue.getDefaultCapacity() + "/" + OutboundQueue.getDefaultPolicy(), Color.RED));
+        }
+        server.start(port, transport, statsPort);
         LoggerUtil.INSTANCE.warning("Server Stopped");
     }
 
@@ -1,26 +1,32 @@
 package Project.Server;
 
 import java.net.Socket;
-import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
+import java.util.logging.Level;
+
 import Project.Common.TextFX.Color;
 import Project.Common.ConnectionPayload;
 import Project.Common.Constants;
 import Project.Common.LoggerUtil;
 import Project.Common.Payload;
 import Project.Common.PayloadType;
-import Project.Common.Phase;
-import Project.Common.ReadyPayload;
-import Project.Common.RoomAction;
+import Project.Common.PointsPayload;
+import Project.Common.RoomDeltaPayload;
 import Project.Common.RoomResultPayload;
+import Project.Common.RoomSnapshotPayload;
 import Project.Common.TextFX;
+import Project.Server.metrics.Metrics;
 
 /**
  * A server-side representation of a single client
  */
 public class ServerThread extends BaseServerThread {
+    private static final long SNAPSHOT_REQUEST_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(500);
     private Consumer<ServerThread> onInitializationComplete; // callback to inform when this object is ready
+    private int seat = -1; // slot in the current GameRoom's per-seat tables, -1 when not seated
+    private long lastSnapshotRequest = System.nanoTime() - SNAPSHOT_REQUEST_INTERVAL_NANOS; // read loop only
 
     /**
      * A wrapper method so we don't need to keep typing out the long/complex sysout
@@ -30,6 +36,9 @@ public class ServerThread extends BaseServerThread {
      */
     @Override
     protected void info(String message) {
+        if (!LoggerUtil.INSTANCE.isLoggable(Level.INFO)) {
+            return;
+        }
         LoggerUtil.INSTANCE
                 .info(TextFX.colorize(String.format("Thread[%s]: %s", this.getClientId(), message), Color.CYAN));
     }
@@ -54,118 +63,56 @@ public class ServerThread extends BaseServerThread {
 
     }
 
-    // Start Send*() Methods
-    public boolean sendResetTurnStatus() {
-        ReadyPayload rp = new ReadyPayload();
-        rp.setPayloadType(PayloadType.RESET_TURN);
-        return sendToClient(rp);
-    }
-
-    public boolean sendTurnStatus(long clientId, boolean didTakeTurn) {
-        return sendTurnStatus(clientId, didTakeTurn, false);
-    }
-
-    public boolean sendTurnStatus(long clientId, boolean didTakeTurn, boolean quiet) {
-        // NOTE for now using ReadyPayload as it has the necessary properties
-        // An actual turn may include other data for your project
-        ReadyPayload rp = new ReadyPayload();
-        rp.setPayloadType(quiet ? PayloadType.SYNC_TURN : PayloadType.TURN);
-        rp.setClientId(clientId);
-        rp.setReady(didTakeTurn);
-        return sendToClient(rp);
-    }
-
-    public boolean sendCurrentPhase(Phase phase) {
-        Payload p = new Payload();
-        p.setPayloadType(PayloadType.PHASE);
-        p.setMessage(phase.name());
-        return sendToClient(p);
-    }
-
-    public boolean sendResetReady() {
-        ReadyPayload rp = new ReadyPayload();
-        rp.setPayloadType(PayloadType.RESET_READY);
-        return sendToClient(rp);
-    }
-
-    public boolean sendReadyStatus(long clientId, boolean isReady) {
-        return sendReadyStatus(clientId, isReady, false);
+    /**
+     * Wraps a non-blocking NIO connection and takes a callback
+     * 
+     * @param connection
+     * @param onInitializationComplete method to inform listener that this object is
+     *                                 ready
+     */
+    protected ServerThread(NioServer.Connection connection, Consumer<ServerThread> onInitializationComplete) {
+        Objects.requireNonNull(connection, "Client connection cannot be null");
+        Objects.requireNonNull(onInitializationComplete, "callback cannot be null");
+        info("ServerThread created");
+        this.connection = connection;
+        this.onInitializationComplete = onInitializationComplete;
     }
 
+    // Start Send*() Methods
     /**
-     * Sync ready status of client id
+     * Sends the room's whole member table
      * 
-     * @param clientId who
-     * @param isReady  ready or not
-     * @param quiet    silently mark ready
-     * @return
+     * @param snapshot
+     * @return true for successful send
      */
-    public boolean sendReadyStatus(long clientId, boolean isReady, boolean quiet) {
-        ReadyPayload rp = new ReadyPayload();
-        rp.setClientId(clientId);
-        rp.setReady(isReady);
-        if (quiet) {
-            rp.setPayloadType(PayloadType.SYNC_READY);
-        }
-        return sendToClient(rp);
+    protected boolean sendRoomSnapshot(RoomSnapshotPayload snapshot) {
+        return sendToClient(snapshot);
     }
 
-    public boolean sendRooms(List<String> rooms) {
+    public boolean sendRooms(RoomIndex.Page page) {
         RoomResultPayload rrp = new RoomResultPayload();
-        rrp.setRooms(rooms);
+        rrp.setRooms(page.getRooms());
+        rrp.setOffset(page.getOffset());
+        rrp.setTotal(page.getTotal());
         return sendToClient(rrp);
     }
 
-    protected boolean sendDisconnect(long clientId) {
-        Payload payload = new Payload();
-        payload.setClientId(clientId);
-        payload.setPayloadType(PayloadType.DISCONNECT);
-        return sendToClient(payload);
-    }
-
-    protected boolean sendResetUserList() {
-        return sendClientInfo(Constants.DEFAULT_CLIENT_ID, null, RoomAction.JOIN);
-    }
-
     /**
-     * Syncs Client Info (id, name, join status) to the client
+     * Sends the current metrics snapshot as text
      * 
-     * @param clientId   use -1 for reset/clear
-     * @param clientName
-     * @param action     RoomAction of Join or Leave
      * @return true for successful send
      */
-    protected boolean sendClientInfo(long clientId, String clientName, RoomAction action) {
-        return sendClientInfo(clientId, clientName, action, false);
+    protected boolean sendStats() {
+        Payload payload = new Payload();
+        payload.setPayloadType(PayloadType.STATS);
+        payload.setMessage(Metrics.INSTANCE.render());
+        return sendToClient(payload);
     }
 
-    /**
-     * Syncs Client Info (id, name, join status) to the client
-     * 
-     * @param clientId   use -1 for reset/clear
-     * @param clientName
-     * @param action     RoomAction of Join or Leave
-     * @param isSync     True is used to not show output on the client side (silent
-     *                   sync)
-     * @return true for successful send
-     */
-    protected boolean sendClientInfo(long clientId, String clientName, RoomAction action, boolean isSync) {
-        ConnectionPayload payload = new ConnectionPayload();
-        switch (action) {
-            case JOIN:
-                payload.setPayloadType(PayloadType.ROOM_JOIN);
-                break;
-            case LEAVE:
-                payload.setPayloadType(PayloadType.ROOM_LEAVE);
-                break;
-            default:
-                break;
-        }
-        if (isSync) {
-            payload.setPayloadType(PayloadType.SYNC_CLIENT);
-        }
+    protected boolean sendDisconnect(long clientId) {
+        Payload payload = new Payload();
         payload.setClientId(clientId);
-        payload.setClientName(clientName);
+        payload.setPayloadType(PayloadType.DISCONNECT);
         return sendToClient(payload);
     }
 
@@ -192,14 +139,61 @@ public class ServerThread extends BaseServerThread {
      * @return true for successful send
      */
     protected boolean sendMessage(long clientId, String message) {
+        return sendToClient(messagePayload(clientId, message));
+    }
+
+    /**
+     * Sends a player's total points
+     * 
+     * @param clientId whose points they are
+     * @param points
+     * @return true for successful send
+     */
+    protected boolean sendPoints(long clientId, int points) {
+        return sendToClient(pointsPayload(clientId, points));
+    }
+
+    /**
+     * Sends a payload that was encoded once for many recipients
+     * 
+     * @param broadcast
+     * @return true for successful send
+     */
+    protected boolean sendBroadcast(BroadcastFrame broadcast) {
+        return sendToClient(broadcast);
+    }
+
+    // End Send*() Methods
+
+    // Start Payload builders (shared by the single-client and broadcast paths)
+    private static Payload messagePayload(long clientId, String message) {
         Payload payload = new Payload();
         payload.setPayloadType(PayloadType.MESSAGE);
         payload.setMessage(message);
         payload.setClientId(clientId);
-        return sendToClient(payload);
+        return payload;
     }
 
-    // End Send*() Methods
+    private static PointsPayload pointsPayload(long clientId, int points) {
+        PointsPayload payload = new PointsPayload();
+        payload.setPayloadType(PayloadType.POINTS);
+        payload.setClientId(clientId);
+        payload.setPoints(points);
+        return payload;
+    }
+
+    protected static BroadcastFrame broadcastPoints(long clientId, int points) {
+        return new BroadcastFrame(pointsPayload(clientId, points));
+    }
+
+    protected static BroadcastFrame broadcastRoomDelta(RoomDeltaPayload delta) {
+        return new BroadcastFrame(delta);
+    }
+
+    protected static BroadcastFrame broadcastMessage(long clientId, String message) {
+        return new BroadcastFrame(messagePayload(clientId, message));
+    }
+    // End Payload builders
     @Override
     protected void processPayload(Payload incoming) {
 
@@ -227,7 +221,9 @@ public class ServerThread extends BaseServerThread {
                 currentRoom.handleJoinRoom(this, Room.LOBBY);
                 break;
             case ROOM_LIST:
-                currentRoom.handleListRooms(this, incoming.getMessage());
+                // a plain Payload asks for the first page
+                int offset = incoming instanceof RoomResultPayload ? ((RoomResultPayload) incoming).getOffset() : 0;
+                currentRoom.handleListRooms(this, incoming.getMessage(), offset);
                 break;
             case READY:
                 // no data needed as the intent will be used as the trigger
@@ -257,6 +253,24 @@ public class ServerThread extends BaseServerThread {
                     sendMessage(Constants.DEFAULT_CLIENT_ID, "You must be in a Gameroom to pick.");
                 }
                 break;
+            case TOURNAMENT:
+                currentRoom.handleTournament(this, incoming.getMessage());
+                break;
+            case STATS:
+                // read-only snapshot, answered here without involving the Room
+                sendStats();
+                break;
+            case ROOM_SNAPSHOT: {
+                // at most one resync per interval, a client retries if it still needs one
+                long now = System.nanoTime();
+                if (now - lastSnapshotRequest < SNAPSHOT_REQUEST_INTERVAL_NANOS) {
+                    Metrics.INSTANCE.counter("snapshot.requests.throttled").increment();
+                    break;
+                }
+                lastSnapshotRequest = now;
+                currentRoom.handleSnapshotRequest(this);
+                break;
+            }
             default:
                 LoggerUtil.INSTANCE.warning(TextFX.colorize("Unknown payload type received", Color.RED));
                 break;
@@ -280,6 +294,14 @@ public class ServerThread extends BaseServerThread {
         this.user.setTookTurn(tookTurn);
     }
 
+    protected int getSeat() {
+        return seat;
+    }
+
+    protected void setSeat(int seat) {
+        this.seat = seat;
+    }
+
     @Override
     protected void onInitialized() {
         // once receiving the desired client name the object is ready
@@ -0,0 +1,467 @@
+package Project.Server;
+
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+
+import Project.Common.LoggerUtil;
+import Project.Common.TextFX;
+import Project.Common.TextFX.Color;
+import Project.Common.TimerWheel;
+
+/**
+ * Single elimination rock-paper-scissors tournament played as GameRoom
+ * matches.
+ * <p>
+ * The entrants are shuffled (seeded) into matches of matchSize players. Each
+ * match's winner moves on to the match its bracket slot feeds and everyone
+ * else goes back to the lobby. A match starts as soon as every match feeding
+ * it has finished, so branches of the bracket don't wait on each other; at
+ * most maxActiveMatches are in progress at once and the rest queue, later
+ * stages first. Setting matches up and tearing them down (moving players
+ * between rooms) runs on a fixed pool of workers, the games themselves on the
+ * rooms' mailboxes.
+ * </p>
+ * <p>
+ * A match is decided by round wins after roundsPerMatch rounds, or by the
+ * wins so far when its timeout expires. Players tied for the lead are split
+ * by a coin flip seeded from the tournament's seed.
+ * </p>
+ */
+public class Tournament {
+    private static final AtomicInteger tournamentCount = new AtomicInteger();
+
+    private final String name;
+    private final Config config;
+    private final Room lobby;
+    private final ExecutorService workers;
+    private final CompletableFuture<ServerThread> champion = new CompletableFuture<>();
+    // ready to play, later stages first; guarded by this
+    private final PriorityQueue<Match> waiting = new PriorityQueue<>(
+            Comparator.comparingInt((Match m) -> -m.stage).thenComparingInt(m -> m.index));
+    private int active = 0; // matches being played, guarded by this
+    private int stageCount = 0;
+    private final AtomicLong matchesPlayed = new AtomicLong();
+    private final AtomicLong matchesTimedOut = new AtomicLong();
+
+    private void info(String message) {
+        if (!LoggerUtil.INSTANCE.isLoggable(Level.INFO)) {
+            return;
+        }
+        LoggerUtil.INSTANCE.info(TextFX.colorize(String.format("Tournament[%s]: %s", name, message), Color.CYAN));
+    }
+
+    private void info(Supplier<String> message) {
+        if (LoggerUtil.INSTANCE.isLoggable(Level.INFO)) {
+            info(message.get());
+        }
+    }
+
+    /**
+     * Tournament settings
+     */
+    public static class Config {
+        private int matchSize = 2;
+        private int roundsPerMatch = 3;
+        private long matchTimeoutMillis = 120_000;
+        private int maxActiveMatches = 1024;
+        private int workerThreads = Math.max(2, Runtime.getRuntime().availableProcessors());
+        private long seed = System.nanoTime();
+        private MatchObserver observer = null;
+
+        public int getMatchSize() {
+            return matchSize;
+        }
+
+        /**
+         * @param matchSize players per match, at least 2
+         */
+        public void setMatchSize(int matchSize) {
+            this.matchSize = Math.max(2, matchSize);
+        }
+
+        public int getRoundsPerMatch() {
+            return roundsPerMatch;
+        }
+
+        public void setRoundsPerMatch(int roundsPerMatch) {
+            this.roundsPerMatch = Math.max(1, roundsPerMatch);
+        }
+
+        public long getMatchTimeoutMillis() {
+            return matchTimeoutMillis;
+        }
+
+        /**
+         * @param matchTimeoutMillis time a match may take before it's decided on
+         *                           the rounds won so far
+         */
+        public void setMatchTimeoutMillis(long matchTimeoutMillis) {
+            this.matchTimeoutMillis = matchTimeoutMillis;
+        }
+
+        public int getMaxActiveMatches() {
+            return maxActiveMatches;
+        }
+
+        public void setMaxActiveMatches(int maxActiveMatches) {
+            this.maxActiveMatches = Math.max(1, maxActiveMatches);
+        }
+
+        public int getWorkerThreads() {
+            return workerThreads;
+        }
+
+        public void setWorkerThreads(int workerThreads) {
+            this.workerThreads = Math.max(1, workerThreads);
+        }
+
+        public long getSeed() {
+            return seed;
+        }
+
+        /**
+         * @param seed drives the bracket shuffle and tie breaks
+         */
+        public void setSeed(long seed) {
+            this.seed = seed;
+        }
+
+        public MatchObserver getObserver() {
+            return observer;
+        }
+
+        /**
+         * @param observer also told about every match's rounds and results (i.e.,
+         *                 to drive bots), or null
+         */
+        public void setObserver(MatchObserver observer) {
+            this.observer = observer;
+        }
+    }
+
+    // one slot of the bracket
+    private static class Match {
+        private final int stage;
+        private final int index;
+        private final Match next; // the match the winner moves on to, null for the final
+        private final int expected; // entrants (or feeding matches) to wait for
+        private int reported = 0; // guarded by the Tournament
+        private final List<ServerThread> entrants = new ArrayList<>();
+        private GameRoom room;
+        private TimerWheel.Timeout timeout;
+        private volatile boolean timedOut = false;
+        private final AtomicBoolean finished = new AtomicBoolean();
+
+        private Match(int stage, int index, Match next, int expected) {
+            this.stage = stage;
+            this.index = index;
+            this.next = next;
+            this.expected = expected;
+        }
+    }
+
+    /**
+     * @param lobby  where eliminated players (and the champion) go; null only
+     *               removes them from their match room (for bots)
+     * @param config
+     */
+    public Tournament(Room lobby, Config config) {
+        this.name = "tournament-" + tournamentCount.incrementAndGet();
+        this.lobby = lobby;
+        this.config = config;
+        AtomicInteger workerCount = new AtomicInteger();
+        workers = Executors.newFixedThreadPool(config.getWorkerThreads(), r -> {
+            Thread t = new Thread(r, name + "-worker-" + workerCount.getAndIncrement());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Builds the bracket and starts the first matches
+     *
+     * @param players entrants, i.e., the ready players in the lobby
+     * @return completes with the champion (null if nobody finished)
+     */
+    public CompletableFuture<ServerThread> start(List<ServerThread> players) {
+        int matchSize = config.getMatchSize();
+        List<ServerThread> shuffled = new ArrayList<>(players);
+        Collections.shuffle(shuffled, new Random(config.getSeed()));
+        // sizes of each stage, the last one is the final
+        List<Integer> stageSizes = new ArrayList<>();
+        int entrants = shuffled.size();
+        do {
+            int matches = Math.max(1, (entrants + matchSize - 1) / matchSize);
+            stageSizes.add(matches);
+            entrants = matches;
+        } while (entrants > 1);
+        stageCount = stageSizes.size();
+        // built from the final back so each match knows where its winner goes
+        Match[] later = null;
+        Match[] first = null;
+        for (int stage = stageCount - 1; stage >= 0; stage--) {
+            int fed = stage == 0 ? shuffled.size() : stageSizes.get(stage - 1);
+            Match[] current = new Match[stageSizes.get(stage)];
+            for (int i = 0; i < current.length; i++) {
+                Match next = later == null ? null : later[i / matchSize];
+                current[i] = new Match(stage, i, next, Math.min(matchSize, fed - i * matchSize));
+            }
+            later = current;
+            first = current;
+        }
+        info(() -> String.format("%s players, %s stages, %s first round matches", shuffled.size(), stageCount,
+                stageSizes.get(0)));
+        if (shuffled.isEmpty()) {
+            complete(null);
+        }
+        for (int i = 0; i < shuffled.size(); i++) {
+            report(first[i / matchSize], shuffled.get(i));
+        }
+        return champion;
+    }
+
+    /**
+     * @return completes with the champion
+     */
+    public CompletableFuture<ServerThread> getChampion() {
+        return champion;
+    }
+
+    public int getStageCount() {
+        return stageCount;
+    }
+
+    public long getMatchesPlayed() {
+        return matchesPlayed.get();
+    }
+
+    public long getMatchesTimedOut() {
+        return matchesTimedOut.get();
+    }
+
+    // an entrant (or a feeding match's winner, null if it had none) arrived
+    private synchronized void report(Match match, ServerThread entrant) {
+        if (entrant != null) {
+            match.entrants.add(entrant);
+        }
+        if (++match.reported < match.expected) {
+            return;
+        }
+        if (match.entrants.size() > 1) {
+            waiting.add(match);
+            launch();
+        } else {
+            // a bye, or nobody made it this far
+            advance(match, match.entrants.isEmpty() ? null : match.entrants.get(0));
+        }
+    }
+
+    private synchronized void advance(Match match, ServerThread winner) {
+        if (match.next == null) {
+            complete(winner);
+        } else {
+            report(match.next, winner);
+        }
+    }
+
+    private synchronized void launch() {
+        while (active < config.getMaxActiveMatches() && !waiting.isEmpty()) {
+            Match match = waiting.poll();
+            active++;
+            workers.execute(() -> play(match));
+        }
+    }
+
+    // on a worker
+    private void play(Match match) {
+        GameRoom room = new GameRoom(String.format("%s-r%s-m%s", name, match.stage + 1, match.index + 1));
+        room.setRoundsPerSession(config.getRoundsPerMatch());
+        room.setMatchObserver(new MatchObserver() {
+            @Override
+            public void onRoundStart(GameRoom room, int round) {
+                MatchObserver observer = config.getObserver();
+                if (observer != null) {
+                    observer.onRoundStart(room, round);
+                }
+            }
+
+            @Override
+            public void onSessionEnd(GameRoom room, List<ServerThread> leaders) {
+                MatchObserver observer = config.getObserver();
+                if (observer != null) {
+                    observer.onSessionEnd(room, leaders);
+                }
+                // moving players waits on other rooms, not something to do on this mailbox
+                workers.execute(() -> finish(match, leaders));
+            }
+        });
+        match.room = room;
+        List<ServerThread> present = new ArrayList<>();
+        for (ServerThread player : match.entrants) {
+            // skip anyone who disconnected while waiting
+            if (player.isRunning()) {
+                Room.moveClient(player, room);
+                present.add(player);
+            }
+        }
+        if (present.size() < 2) {
+            finish(match, present);
+            return;
+        }
+        room.relay(null, String.format("%s, round %s of %s: %s players, best of %s", name, match.stage + 1,
+                stageCount, present.size(), config.getRoundsPerMatch()));
+        match.timeout = TimerWheel.INSTANCE.schedule(() -> {
+            match.timedOut = true;
+            room.endMatch();
+        }, config.getMatchTimeoutMillis(), TimeUnit.MILLISECONDS);
+        room.startMatch();
+    }
+
+    // on a worker, once per match
+    private void finish(Match match, List<ServerThread> leaders) {
+        if (!match.finished.compareAndSet(false, true)) {
+            return;
+        }
+        if (match.timeout != null) {
+            match.timeout.cancel();
+        }
+        ServerThread winner = null;
+        if (leaders.size() == 1) {
+            winner = leaders.get(0);
+        } else if (leaders.size() > 1) {
+            long matchId = ((long) match.stage << 32) | match.index;
+            winner = leaders.get(new Random(config.getSeed() * 31 + matchId).nextInt(leaders.size()));
+        }
+        matchesPlayed.incrementAndGet();
+        if (match.timedOut) {
+            matchesTimedOut.incrementAndGet();
+        }
+        GameRoom room = match.room;
+        if (winner != null) {
+            room.relay(null, String.format(match.next == null ? "%s wins the tournament!" : "%s wins and moves on",
+                    winner.getDisplayName()));
+        }
+        for (ServerThread player : match.entrants) {
+            // the winner waits in this room until its next match is ready
+            if (player.getCurrentRoom() == room && (player != winner || match.next == null)) {
+                leave(player, room);
+            }
+        }
+        match.room = null; // done with it, don't keep thousands of rooms around
+        synchronized (this) {
+            active--;
+            advance(match, winner);
+            launch();
+        }
+    }
+
+    private void leave(ServerThread player, Room room) {
+        if (lobby != null) {
+            Room.moveClient(player, lobby);
+        } else {
+            room.executeAndWait(() -> room.removeClient(player));
+        }
+    }
+
+    private void complete(ServerThread winner) {
+        if (champion.complete(winner)) {
+            info(() -> String.format("won by %s after %s matches (%s timed out)",
+                    winner == null ? "nobody" : winner.getDisplayName(), matchesPlayed.get(),
+                    matchesTimedOut.get()));
+            workers.shutdown();
+        }
+    }
+
+    /**
+     * Plays a whole tournament of bots (players without connections that pick
+     * at random as soon as a round starts) and reports how long it took and how
+     * many matches were resolved per second.
+     * This is just for testing/demo
+     *
+     * @param args optional players, match size, rounds per match and the
+     *             wall-clock budget in seconds
+     * @throws Exception
+     */
+    public static void main(String[] args) throws Exception {
+        int players = args.length > 0 ? Integer.parseInt(args[0]) : 65536;
+        int matchSize = args.length > 1 ? Integer.parseInt(args[1]) : 2;
+        int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+        int budgetSeconds = args.length > 3 ? Integer.parseInt(args[3]) : 120;
+        LoggerUtil.LoggerConfig logConfig = new LoggerUtil.LoggerConfig();
+        logConfig.setLogLocation("tournament.log");
+        logConfig.setFileLogLevel(Level.WARNING);
+        logConfig.setConsoleLogLevel(Level.WARNING);
+        LoggerUtil.INSTANCE.setConfig(logConfig);
+        // bots never read what they're sent
+        OutboundQueue.configure(16, OutboundQueue.OverflowPolicy.DROP_OLDEST);
+
+        List<ServerThread> bots = new ArrayList<>(players);
+        for (int i = 0; i < players; i++) {
+            ServerThread bot = new ServerThread(new Socket(), st -> {
+            });
+            bot.setClientId(i + 1);
+            bot.setClientName("bot" + (i + 1));
+            bot.isRunning = true;
+            bots.add(bot);
+        }
+        String[] choices = { "r", "p", "s" };
+        ExecutorService botThreads = Executors.newFixedThreadPool(Math.max(2, Runtime.getRuntime().availableProcessors()),
+                r -> {
+                    Thread t = new Thread(r, "bot");
+                    t.setDaemon(true);
+                    return t;
+                });
+        Config config = new Config();
+        config.setMatchSize(matchSize);
+        config.setRoundsPerMatch(rounds);
+        config.setMatchTimeoutMillis(10_000);
+        config.setSeed(42);
+        config.setObserver(new MatchObserver() {
+            @Override
+            public void onRoundStart(GameRoom room, int round) {
+                List<ServerThread> seated = room.getPlayers();
+                // like real clients, picks arrive from other threads
+                botThreads.execute(() -> {
+                    for (ServerThread bot : seated) {
+                        room.handlePick(bot, choices[ThreadLocalRandom.current().nextInt(choices.length)]);
+                    }
+                });
+            }
+
+            @Override
+            public void onSessionEnd(GameRoom room, List<ServerThread> leaders) {
+            }
+        });
+
+        Tournament tournament = new Tournament(null, config);
+        long start = System.nanoTime();
+        ServerThread winner = tournament.start(bots).get(budgetSeconds * 2L, TimeUnit.SECONDS);
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        System.out.println(String.format("%s players, %s per match, best of %s: %s stages, %s matches (%s timed out)",
+                players, matchSize, rounds, tournament.getStageCount(), tournament.getMatchesPlayed(),
+                tournament.getMatchesTimedOut()));
+        System.out.println(String.format("champion %s after %.2fs, %.0f matches/sec, %s the %ss budget",
+                winner == null ? "none" : winner.getDisplayName(), elapsed, tournament.getMatchesPlayed() / elapsed,
+                elapsed <= budgetSeconds ? "within" : "OVER", budgetSeconds));
+        System.exit(0); // room mailboxes run on non-daemon pools
+    }
+}
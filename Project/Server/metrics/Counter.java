@@ -0,0 +1,39 @@
+package Project.Server.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A named count backed by a LongAdder, so many threads can bump it without
+ * contending on one cache line. Reading it (sum) never blocks writers.
+ */
+public class Counter {
+    private final String name;
+    private final LongAdder count = new LongAdder();
+
+    public Counter(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void increment() {
+        count.increment();
+    }
+
+    public void decrement() {
+        count.decrement();
+    }
+
+    public void add(long amount) {
+        count.add(amount);
+    }
+
+    /**
+     * @return the current total (not an atomic snapshot while writers are active)
+     */
+    public long get() {
+        return count.sum();
+    }
+}
@@ -0,0 +1,186 @@
+package Project.Server.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free latency histogram with HDR-style log-linear buckets.
+ * <p>
+ * Values below 2^SUB_BITS get a bucket each; above that every power of two is
+ * split into 2^SUB_BITS equal buckets, so any recorded value is reported
+ * within about 3% of its true value across the whole long range. Recording is
+ * one atomic increment plus two LongAdder adds; snapshots read the buckets
+ * without stopping writers.
+ * </p>
+ */
+public class Histogram {
+    private static final int SUB_BITS = 5;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    private static final int BUCKET_COUNT = (64 - SUB_BITS) * SUB_COUNT;
+
+    private final String name;
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    public Histogram(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Records one value (negative values are recorded as 0)
+     *
+     * @param value typically a duration in nanoseconds
+     */
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        buckets.incrementAndGet(bucketOf(value));
+        count.increment();
+        sum.add(value);
+        long current = max.get();
+        while (value > current && !max.compareAndSet(current, value)) {
+            current = max.get();
+        }
+    }
+
+    static int bucketOf(long value) {
+        if (value < SUB_COUNT) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value); // >= SUB_BITS
+        int shift = exponent - SUB_BITS;
+        int sub = (int) (value >>> shift); // in [SUB_COUNT, 2 * SUB_COUNT)
+        return (shift + 1) * SUB_COUNT + (sub - SUB_COUNT);
+    }
+
+    // largest value that lands in the bucket
+    static long highestValueIn(int bucket) {
+        if (bucket < SUB_COUNT) {
+            return bucket;
+        }
+        int shift = bucket / SUB_COUNT - 1;
+        long sub = bucket % SUB_COUNT + SUB_COUNT;
+        long lowest = sub << shift;
+        return lowest + (1L << shift) - 1;
+    }
+
+    /**
+     * Copies the current state; values recorded while copying may or may not be
+     * included
+     *
+     * @return a point in time view of the histogram
+     */
+    public Snapshot snapshot() {
+        long[] copy = new long[BUCKET_COUNT];
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            copy[i] = buckets.get(i);
+            total += copy[i];
+        }
+        return new Snapshot(copy, total, sum.sum(), max.get());
+    }
+
+    /**
+     * @return number of recorded values
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * Immutable copy of a histogram's buckets
+     */
+    public static class Snapshot {
+        private final long[] buckets;
+        private final long count;
+        private final long sum;
+        private final long max;
+
+        private Snapshot(long[] buckets, long count, long sum, long max) {
+            this.buckets = buckets;
+            this.count = count;
+            this.sum = sum;
+            this.max = max;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getMax() {
+            return max;
+        }
+
+        public double getMean() {
+            return count == 0 ? 0 : (double) sum / count;
+        }
+
+        /**
+         * @param percentile 0 to 100
+         * @return the highest value in the bucket holding that percentile, never
+         *         more than the recorded max
+         */
+        public long getValueAtPercentile(double percentile) {
+            if (count == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(count * Math.min(100, percentile) / 100.0));
+            long seen = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                seen += buckets[i];
+                if (seen >= rank) {
+                    return Math.min(highestValueIn(i), max);
+                }
+            }
+            return max;
+        }
+    }
+
+    /**
+     * Checks the bucket precision and measures the cost of record() across
+     * threads. This is just for testing/demo
+     *
+     * @param args optional thread count and records per thread
+     * @throws InterruptedException
+     */
+    public static void main(String[] args) throws InterruptedException {
+        int threadCount = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        int perThread = args.length > 1 ? Integer.parseInt(args[1]) : 5_000_000;
+
+        double worstError = 0;
+        for (long value = 1; value < Long.MAX_VALUE / 3; value = value * 3 + 1) {
+            long reported = highestValueIn(bucketOf(value));
+            worstError = Math.max(worstError, (reported - value) / (double) value);
+        }
+        System.out.println(String.format("worst relative error: %.2f%%", worstError * 100));
+
+        Histogram histogram = new Histogram("demo");
+        Thread[] threads = new Thread[threadCount];
+        long start = System.nanoTime();
+        for (int t = 0; t < threadCount; t++) {
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < perThread; i++) {
+                    histogram.record(1_000 + (i & 0xFFFF));
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        long elapsed = System.nanoTime() - start;
+        Snapshot snapshot = histogram.snapshot();
+        System.out.println(String.format(
+                "%s threads: %.1f ns/record, count %s, p50 %s, p99 %s, max %s (exact p50 33768, p99 65883)",
+                threadCount, elapsed / (double) perThread, snapshot.getCount(),
+                snapshot.getValueAtPercentile(50), snapshot.getValueAtPercentile(99), snapshot.getMax()));
+    }
+}
@@ -0,0 +1,235 @@
+package Project.Server.metrics;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.function.LongSupplier;
+
+import Project.Common.PayloadType;
+
+/**
+ * Registry of the server's counters, gauges and latency histograms.
+ * <p>
+ * Hot paths hold on to their Counter/Histogram (or use the record*() methods
+ * below, which index arrays by PayloadType) so recording never touches the
+ * registry maps. Everything is LongAdder or atomic based: rendering a snapshot
+ * reads values while writers keep going and never blocks them.
+ * </p>
+ */
+public enum Metrics {
+    INSTANCE;
+
+    // enum statics aren't initialized yet while INSTANCE is constructed
+    private final PayloadType[] payloadTypes = PayloadType.values();
+
+    private final Map<String, Counter> counters = new ConcurrentSkipListMap<>();
+    private final Map<String, LongSupplier> gauges = new ConcurrentSkipListMap<>();
+    private final Map<String, Histogram> histograms = new ConcurrentSkipListMap<>();
+
+    // indexed by PayloadType ordinal
+    private final Counter[] received = new Counter[payloadTypes.length];
+    private final Counter[] sent = new Counter[payloadTypes.length];
+    private final Histogram[] dispatchNanos = new Histogram[payloadTypes.length];
+
+    private final Counter bytesEncoded = counter("codec.bytes.encoded");
+    private final Counter framesEncoded = counter("codec.frames.encoded");
+    private final Counter bytesDecoded = counter("codec.bytes.decoded");
+    private final Counter framesDecoded = counter("codec.frames.decoded");
+    private final Counter bytesSent = counter("connections.bytes.queued");
+    private final Counter connectionsOpened = counter("connections.opened");
+    private final Counter connectionsClosed = counter("connections.closed");
+    private final Histogram relayNanos = histogram("room.relay.fanout.ns");
+    private final Counter relayRecipients = counter("room.relay.recipients");
+    private final Counter outboundDropped = counter("outbound.frames.dropped");
+    private final Counter outboundRefused = counter("outbound.frames.refused");
+    private final Histogram outboundFlushFrames = histogram("outbound.flush.frames");
+    private final Histogram outboundFlushBytes = histogram("outbound.flush.bytes");
+    private final LongAccumulator outboundMaxDepth = new LongAccumulator(Math::max, 0);
+
+    private final long startedAt = System.currentTimeMillis();
+
+    private Metrics() {
+        for (PayloadType type : payloadTypes) {
+            received[type.ordinal()] = counter("payloads.received." + type);
+            sent[type.ordinal()] = counter("payloads.sent." + type);
+            dispatchNanos[type.ordinal()] = histogram("dispatch." + type + ".ns");
+        }
+        gauge("connections.active", () -> connectionsOpened.get() - connectionsClosed.get());
+        gauge("outbound.depth.max", outboundMaxDepth::get);
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        gauge("jvm.threads.live", threads::getThreadCount);
+        gauge("jvm.threads.peak", threads::getPeakThreadCount);
+        gauge("jvm.heap.used.bytes", () -> memory.getHeapMemoryUsage().getUsed());
+        gauge("process.rss.kb", Metrics::residentKilobytes);
+    }
+
+    private static final Path PROC_STATUS = Paths.get("/proc/self/status");
+
+    /**
+     * @return the process's resident set size (Linux only), -1 if unknown
+     */
+    private static long residentKilobytes() {
+        try {
+            for (String line : Files.readAllLines(PROC_STATUS)) {
+                if (line.startsWith("VmRSS:")) {
+                    return Long.parseLong(line.replaceAll("[^0-9]", ""));
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            // not Linux
+        }
+        return -1;
+    }
+
+    /**
+     * @param name
+     * @return the counter registered under the name, created if needed
+     */
+    public Counter counter(String name) {
+        return counters.computeIfAbsent(name, Counter::new);
+    }
+
+    /**
+     * @param name
+     * @return the histogram registered under the name, created if needed
+     */
+    public Histogram histogram(String name) {
+        return histograms.computeIfAbsent(name, Histogram::new);
+    }
+
+    /**
+     * Registers (or replaces) a value that's read when a snapshot is taken
+     *
+     * @param name
+     * @param value must be cheap and must not block
+     */
+    public void gauge(String name, LongSupplier value) {
+        gauges.put(name, value);
+    }
+
+    public void recordReceived(PayloadType type) {
+        if (type != null) {
+            received[type.ordinal()].increment();
+        }
+    }
+
+    /**
+     * @param type
+     * @param frameBytes size of the frame queued for the connection
+     */
+    public void recordSent(PayloadType type, int frameBytes) {
+        if (type != null) {
+            sent[type.ordinal()].increment();
+        }
+        bytesSent.add(frameBytes);
+    }
+
+    /**
+     * @param type
+     * @param nanos time spent in processPayload()
+     */
+    public void recordDispatch(PayloadType type, long nanos) {
+        if (type != null) {
+            dispatchNanos[type.ordinal()].record(nanos);
+        }
+    }
+
+    /**
+     * @param recipients number of clients the message was handed to
+     * @param nanos      time to encode and queue it for all of them
+     */
+    public void recordRelay(int recipients, long nanos) {
+        relayNanos.record(nanos);
+        relayRecipients.add(recipients);
+    }
+
+    public void recordEncoded(int frameBytes) {
+        framesEncoded.increment();
+        bytesEncoded.add(frameBytes);
+    }
+
+    public void recordDecoded(int frameBytes) {
+        framesDecoded.increment();
+        bytesDecoded.add(frameBytes);
+    }
+
+    /**
+     * @param refused true if the queue was full under the DISCONNECT policy,
+     *                false if it dropped its oldest frame (DROP_OLDEST)
+     */
+    public void recordOutboundOverflow(boolean refused) {
+        (refused ? outboundRefused : outboundDropped).increment();
+    }
+
+    /**
+     * @param depth a connection's new highest queue depth
+     */
+    public void recordOutboundDepth(int depth) {
+        outboundMaxDepth.accumulate(depth);
+    }
+
+    /**
+     * @param frames frames written to one connection in one flush
+     * @param bytes
+     */
+    public void recordOutboundFlush(int frames, long bytes) {
+        outboundFlushFrames.record(frames);
+        outboundFlushBytes.record(bytes);
+    }
+
+    public void connectionOpened() {
+        connectionsOpened.increment();
+    }
+
+    public void connectionClosed() {
+        connectionsClosed.increment();
+    }
+
+    /**
+     * Renders every gauge, every non-zero counter and every non-empty histogram
+     * as plain text, one metric per line. Histogram values are in microseconds
+     * when their name ends in ".ns".
+     *
+     * @return the snapshot text
+     */
+    public String render() {
+        StringBuilder sb = new StringBuilder(4096);
+        sb.append("uptime.seconds ").append((System.currentTimeMillis() - startedAt) / 1000).append('\n');
+        sb.append("# gauges\n");
+        for (Map.Entry<String, LongSupplier> gauge : gauges.entrySet()) {
+            sb.append(gauge.getKey()).append(' ').append(gauge.getValue().getAsLong()).append('\n');
+        }
+        sb.append("# counters\n");
+        for (Counter counter : counters.values()) {
+            long value = counter.get();
+            if (value != 0) {
+                sb.append(counter.getName()).append(' ').append(value).append('\n');
+            }
+        }
+        sb.append("# histograms\n");
+        for (Histogram histogram : histograms.values()) {
+            if (histogram.getCount() == 0) {
+                continue;
+            }
+            Histogram.Snapshot snapshot = histogram.snapshot();
+            boolean nanos = histogram.getName().endsWith(".ns");
+            double scale = nanos ? 1e3 : 1;
+            String name = nanos
+                    ? histogram.getName().substring(0, histogram.getName().length() - 3) + ".us"
+                    : histogram.getName();
+            sb.append(String.format("%s count=%s mean=%.1f p50=%.1f p90=%.1f p99=%.1f p999=%.1f max=%.1f%n", name,
+                    snapshot.getCount(), snapshot.getMean() / scale, snapshot.getValueAtPercentile(50) / scale,
+                    snapshot.getValueAtPercentile(90) / scale, snapshot.getValueAtPercentile(99) / scale,
+                    snapshot.getValueAtPercentile(99.9) / scale, snapshot.getMax() / scale));
+        }
+        return sb.toString();
+    }
+}
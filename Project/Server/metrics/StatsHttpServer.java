@@ -0,0 +1,66 @@
+package Project.Server.metrics;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Serves the Metrics snapshot as plain text on a side port, i.e.
+ * {@code curl http://localhost:3001/stats}.
+ * <p>
+ * Uses the JDK's built-in HTTP server on a single daemon thread; requests
+ * only read the metrics so they never hold up the game/network threads.
+ * </p>
+ */
+public class StatsHttpServer {
+    private final HttpServer server;
+
+    /**
+     * Binds and starts serving /stats
+     *
+     * @param address usually the loopback address and a side port
+     * @throws IOException if the port can't be bound
+     */
+    public StatsHttpServer(InetSocketAddress address) throws IOException {
+        server = HttpServer.create(address, 0);
+        server.createContext("/stats", this::handle);
+        server.createContext("/", this::handle);
+        server.setExecutor(Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "stats-http");
+            thread.setDaemon(true);
+            return thread;
+        }));
+        server.start();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            String path = exchange.getRequestURI().getPath();
+            if (!"GET".equals(exchange.getRequestMethod()) || !(path.equals("/") || path.equals("/stats"))) {
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+            byte[] body = Metrics.INSTANCE.render().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    public InetSocketAddress getAddress() {
+        return server.getAddress();
+    }
+
+    public void stop() {
+        server.stop(0);
+    }
+}
@@ -0,0 +1,20 @@
+package Project.Common;
+
+import java.util.logging.Level;
+
+/**
+ * Keeps logging out of the measurements; only warnings reach the file
+ */
+public final class BenchLogging {
+
+    private BenchLogging() {
+    }
+
+    public static void quiet() {
+        LoggerUtil.LoggerConfig config = new LoggerUtil.LoggerConfig();
+        config.setLogLocation("bench.log");
+        config.setFileLogLevel(Level.WARNING);
+        config.setConsoleLogLevel(Level.OFF);
+        LoggerUtil.INSTANCE.setConfig(config);
+    }
+}
@@ -0,0 +1,53 @@
+package Project.Common;
+
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Formatter;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * LoggerUtil's record formatting, for a colorized line like the server writes
+ * and for a record with parameters
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LoggerFormatBenchmark {
+    private final Formatter formatter = new LoggerUtil.CustomFormatter();
+    private LogRecord info;
+    private LogRecord withParams;
+
+    @Setup
+    public void setup() {
+        info = new LogRecord(Level.INFO,
+                TextFX.colorize("Thread[42]: Sending to client: Payload[MESSAGE] Client Id [42]", TextFX.Color.CYAN));
+        info.setSourceClassName(LoggerFormatBenchmark.class.getName());
+        withParams = new LogRecord(Level.WARNING, "Room[{0}] {1} disconnected");
+        withParams.setParameters(new Object[] { "arena", "bob#7" });
+        withParams.setSourceClassName(LoggerFormatBenchmark.class.getName());
+    }
+
+    @Benchmark
+    public String formatInfo() {
+        return formatter.format(info);
+    }
+
+    @Benchmark
+    public String formatParams() {
+        return formatter.format(withParams);
+    }
+}
@@ -0,0 +1,99 @@
+package Project.Common;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Payload encode/decode with the binary codec, plus a round trip through the
+ * serialized codec it replaced
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PayloadBenchmark {
+    private final PayloadCodec binary = new BinaryPayloadCodec();
+    private final PayloadCodec binaryIn = new BinaryPayloadCodec();
+    private final PayloadCodec serializedOut = new SerializedPayloadCodec();
+    private final PayloadCodec serializedIn = new SerializedPayloadCodec();
+    private Payload message;
+    private RoomResultPayload page;
+    private byte[] messageBody;
+    private byte[] pageBody;
+    private int next = 0;
+
+    private static Payload message(int i) {
+        Payload payload = new Payload();
+        payload.setPayloadType(PayloadType.MESSAGE);
+        payload.setClientId(42);
+        payload.setMessage("alice#42: hello there " + i);
+        return payload;
+    }
+
+    private static byte[] body(byte[] frame) {
+        return Arrays.copyOfRange(frame, PayloadCodec.LENGTH_PREFIX_SIZE, frame.length);
+    }
+
+    @Setup
+    public void setup() throws IOException {
+        message = message(0);
+        page = new RoomResultPayload();
+        List<String> rooms = new ArrayList<>();
+        for (int i = 0; i < RoomResultPayload.PAGE_SIZE; i++) {
+            rooms.add("ranked-night-" + i);
+        }
+        page.setRooms(rooms);
+        page.setOffset(20);
+        page.setTotal(1234);
+        messageBody = body(binary.encode(message));
+        pageBody = body(binary.encode(page));
+    }
+
+    @Benchmark
+    public byte[] binaryEncodeMessage() throws IOException {
+        return binary.encode(message);
+    }
+
+    @Benchmark
+    public Payload binaryDecodeMessage() throws IOException, ClassNotFoundException {
+        return binary.decode(messageBody);
+    }
+
+    @Benchmark
+    public byte[] binaryEncodeRoomList() throws IOException {
+        return binary.encode(page);
+    }
+
+    @Benchmark
+    public Payload binaryDecodeRoomList() throws IOException, ClassNotFoundException {
+        return binary.decode(pageBody);
+    }
+
+    // a fresh Payload and text per op: the serialized stream writes Payloads
+    // unshared but a String it already wrote only goes out as a back-reference
+    @Benchmark
+    public Payload binaryRoundTrip() throws IOException, ClassNotFoundException {
+        return binaryIn.decode(body(binary.encode(message(next++))));
+    }
+
+    @Benchmark
+    public Payload serializedRoundTrip() throws IOException, ClassNotFoundException {
+        return serializedIn.decode(body(serializedOut.encode(message(next++))));
+    }
+}
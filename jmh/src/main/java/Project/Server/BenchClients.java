@@ -0,0 +1,36 @@
+package Project.Server;
+
+import java.net.Socket;
+import java.util.List;
+
+/**
+ * Real ServerThreads without a socket; their outbound queues act as in-memory
+ * sinks that the benchmarks drain after every operation (the drain is part of
+ * the measured cost)
+ */
+final class BenchClients {
+
+    private BenchClients() {
+    }
+
+    static ServerThread[] create(int count, long firstId) {
+        ServerThread[] clients = new ServerThread[count];
+        for (int i = 0; i < count; i++) {
+            clients[i] = new ServerThread(new Socket(), st -> {
+            });
+            clients[i].setClientId(firstId + i);
+            clients[i].setClientName("bench" + (firstId + i));
+            clients[i].isRunning = true;
+        }
+        return clients;
+    }
+
+    static long drain(ServerThread[] clients, List<byte[]> scratch) {
+        long frames = 0;
+        for (ServerThread client : clients) {
+            frames += client.outbound.drainTo(scratch);
+            scratch.clear();
+        }
+        return frames;
+    }
+}
@@ -0,0 +1,68 @@
+package Project.Server;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import Project.Common.BenchLogging;
+import Project.Exceptions.DuplicateRoomException;
+
+/**
+ * Server.listRooms() for the first page of matches, with rooms created through
+ * Server.createRoom(). The Server singleton is initialized but never started
+ * (no ports are opened); each parameter set runs in its own fork so the room
+ * counts don't add up.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ListRoomsBenchmark {
+    private static final String[] WORDS = { "alpha", "bravo", "charlie", "delta", "echo", "foxtrot", "golf",
+            "hotel", "india", "juliet", "kilo", "lima", "mike", "rps", "arena", "lobby", "duel", "ranked",
+            "casual", "night" };
+
+    @Param({ "1000", "10000", "100000" })
+    private int rooms;
+
+    @Param({ "", "rps", "ranked-night" })
+    private String query;
+
+    private Server server;
+
+    @Setup
+    public void setup() {
+        server = Server.INSTANCE;
+        BenchLogging.quiet(); // after the Server's own logger setup
+        ReplayLog.setDirectory(null); // no replay file per room
+        Random random = new Random(42);
+        int created = 0;
+        while (created < rooms) {
+            try {
+                server.createRoom(WORDS[random.nextInt(WORDS.length)] + "-" + WORDS[random.nextInt(WORDS.length)]
+                        + "-" + random.nextInt(100_000));
+                created++;
+            } catch (DuplicateRoomException e) {
+                // drew a name twice, draw another
+            }
+        }
+    }
+
+    @Benchmark
+    public RoomIndex.Page listRooms() {
+        return server.listRooms(query, 0);
+    }
+}
@@ -0,0 +1,74 @@
+package Project.Server;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import Project.Common.BenchLogging;
+
+/**
+ * GameRoom.resolveRpsRound() with every player's pick recorded, run on the
+ * room's mailbox like a real round end. A batch runs per mailbox hop so the
+ * hop isn't what gets measured.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResolveRpsBenchmark {
+    private static final int BATCH = 100;
+    private static final String[] CHOICES = { "r", "p", "s" };
+
+    @Param({ "2", "10", "100" })
+    private int players;
+
+    private final List<byte[]> scratch = new ArrayList<>();
+    private GameRoom room;
+    private ServerThread[] clients;
+
+    @Setup
+    public void setup() {
+        BenchLogging.quiet();
+        ReplayLog.setDirectory(null);
+        room = new GameRoom("bench-rps-" + players);
+        clients = BenchClients.create(players, 1);
+        for (ServerThread client : clients) {
+            room.executeAndWait(() -> room.addClient(client));
+        }
+        room.executeAndWait(() -> {
+            // two players get rock vs scissors so there's a winner, more get all three
+            for (int i = 0; i < clients.length; i++) {
+                room.recordPick(clients[i], players == 2 ? CHOICES[i * 2] : CHOICES[i % CHOICES.length]);
+            }
+        });
+        BenchClients.drain(clients, scratch);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public long resolveRpsRound() {
+        long[] frames = { 0 };
+        room.executeAndWait(() -> {
+            for (int i = 0; i < BATCH; i++) {
+                room.resolveRpsRound();
+                frames[0] += BenchClients.drain(clients, scratch);
+            }
+        });
+        return frames[0];
+    }
+}
@@ -0,0 +1,55 @@
+package Project.Server;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import Project.Common.BenchLogging;
+
+/**
+ * Room.relay() of one chat message to every member, at the room sizes from
+ * user-006
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RoomRelayBenchmark {
+    @Param({ "2", "50", "500" })
+    private int recipients;
+
+    private final List<byte[]> scratch = new ArrayList<>();
+    private Room room;
+    private ServerThread[] clients;
+
+    @Setup
+    public void setup() {
+        BenchLogging.quiet();
+        room = new Room("bench-relay-" + recipients);
+        clients = BenchClients.create(recipients, 1);
+        for (ServerThread client : clients) {
+            room.addClient(client);
+        }
+        BenchClients.drain(clients, scratch);
+    }
+
+    @Benchmark
+    public long relay() {
+        room.relay(clients[0], "hello");
+        return BenchClients.drain(clients, scratch);
+    }
+}